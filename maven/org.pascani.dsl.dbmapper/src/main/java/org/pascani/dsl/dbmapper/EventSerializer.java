@@ -22,7 +22,7 @@ import org.pascani.dsl.lib.Event;
 import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.PascaniRuntime.Context;
 import org.pascani.dsl.lib.infrastructure.AbstractConsumer;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQConsumer;
+import org.pascani.dsl.lib.infrastructure.Transports;
 
 import com.google.common.eventbus.Subscribe;
 
@@ -66,7 +66,7 @@ public class EventSerializer {
 	 * @param eventType
 	 *            The type of event this listener subscribes to
 	 * @throws Exception
-	 *             if something bad happens! @see {@link RabbitMQConsumer}
+	 *             if something bad happens! @see {@link Transports#configured()}
 	 */
 	public EventSerializer(final String exchange, final String routingKey,
 			final Class<? extends Event<?>> eventType, final DbInterface... dbs)
@@ -74,8 +74,8 @@ public class EventSerializer {
 		PascaniRuntime.getRuntimeInstance(Context.LIBRARY)
 				.registerEventListener(this);
 		final String tag = "dbmapper-" + eventType.getCanonicalName();
-		this.consumer = new RabbitMQConsumer(exchange, routingKey, tag,
-				Context.LIBRARY);
+		this.consumer = Transports.configured().consumer(exchange, routingKey,
+				tag, Context.LIBRARY);
 		this.dbs = dbs;
 		this.eventType = eventType;
 		// Open connection and start consuming events
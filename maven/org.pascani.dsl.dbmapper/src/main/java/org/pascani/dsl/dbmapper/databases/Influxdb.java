@@ -97,7 +97,7 @@ public class Influxdb implements DbInterface {
 				.addField("level", e.level()).addField("logger", e.logger())
 				.addField("message", e.value() + "")
 				.addField("cause", e.cause()).addField("source", e.source())
-				.time(e.timestamp(), TimeUnit.MILLISECONDS);
+				.time(e.timestamp(), TimeUnit.NANOSECONDS);
 		return builder.build();
 	}
 
@@ -108,7 +108,7 @@ public class Influxdb implements DbInterface {
 				.addField("message",
 						"Monitor " + e.value() + " has been deployed")
 				.addField("source", e.value() + "")
-				.time(e.timestamp(), TimeUnit.MILLISECONDS);
+				.time(e.timestamp(), TimeUnit.NANOSECONDS);
 		return builder.build();
 	}
 
@@ -119,7 +119,7 @@ public class Influxdb implements DbInterface {
 				.addField("message",
 						"Namespace " + e.value() + " has been deployed")
 				.addField("source", e.value() + "")
-				.time(e.timestamp(), TimeUnit.MILLISECONDS);
+				.time(e.timestamp(), TimeUnit.NANOSECONDS);
 		return builder.build();
 	}
 
@@ -154,7 +154,7 @@ public class Influxdb implements DbInterface {
 	private Point makeRequestString(ChangeEvent e, Serializable value,
 			Map<String, String> tags) {
 		Builder point = Point.measurement(e.variable()).tag(tags)
-				.time(e.timestamp(), TimeUnit.MILLISECONDS);
+				.time(e.timestamp(), TimeUnit.NANOSECONDS);
 		if (value instanceof Range<?>) {
 			Range<?> range = (Range<?>) value;
 			Number start = (Number) range.lowerEndpoint();
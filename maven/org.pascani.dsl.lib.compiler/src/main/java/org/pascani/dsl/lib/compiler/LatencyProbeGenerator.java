@@ -23,7 +23,6 @@ import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.UUID;
 
 import org.jboss.forge.roaster.Roaster;
 import org.jboss.forge.roaster.model.Type;
@@ -40,7 +39,7 @@ import org.pascani.dsl.lib.compiler.util.NameProposal;
 import org.pascani.dsl.lib.events.NetworkLatencyEvent;
 import org.pascani.dsl.lib.infrastructure.AbstractProducer;
 import org.pascani.dsl.lib.infrastructure.ExternalProbe;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQProducer;
+import org.pascani.dsl.lib.infrastructure.Transports;
 
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
@@ -191,11 +190,11 @@ public class LatencyProbeGenerator {
 		JavaClassSource javaClass = Roaster.create(JavaClassSource.class);
 		javaClass.setPackage(_interface.getPackage()).setName(className);
 		javaClass.addInterface(_interface.getCanonicalName());
-		javaClass.addImport(UUID.class);
+		javaClass.addImport(PascaniRuntime.class);
 		javaClass.addImport(NetworkLatencyEvent.class);
 		javaClass.addImport(List.class);
 		javaClass.addImport(AbstractProducer.class);
-		javaClass.addImport(RabbitMQProducer.class);
+		javaClass.addImport(Transports.class);
 
 		for (Import _import : _interface.getImports()) {
 			javaClass.addImport(_import);
@@ -256,7 +255,7 @@ public class LatencyProbeGenerator {
 			Collection<String> paramTypes = Collections2.transform(parameters,
 					getClass);
 
-			eventParams.add("UUID.randomUUID()");
+			eventParams.add("PascaniRuntime.getIdGenerator().next()");
 			eventParams.add(startParam);
 			eventParams.add(_interface.getName() + ".class.getCanonicalName()");
 			eventParams.add(_interface.getName() + ".class.getCanonicalName()");
@@ -302,10 +301,11 @@ public class LatencyProbeGenerator {
 		javaClass.setName(className);
 		javaClass.setPackage(modified.getPackage());
 		javaClass.addInterface(modified.getCanonicalName());
+		javaClass.addImport(PascaniRuntime.class);
 		javaClass.addImport(NetworkLatencyEvent.class);
 		javaClass.addImport(List.class);
 		javaClass.addImport(AbstractProducer.class);
-		javaClass.addImport(RabbitMQProducer.class);
+		javaClass.addImport(Transports.class);
 
 		for (Import _import : modified.getImports()) {
 			javaClass.addImport(_import);
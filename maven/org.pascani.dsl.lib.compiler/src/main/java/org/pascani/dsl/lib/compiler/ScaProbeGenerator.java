@@ -38,6 +38,8 @@ import org.pascani.dsl.lib.events.InvokeEvent;
 import org.pascani.dsl.lib.events.ReturnEvent;
 import org.pascani.dsl.lib.events.TimeLapseEvent;
 import org.pascani.dsl.lib.util.LocalEventProducer;
+import org.pascani.dsl.lib.util.MethodDescriptor;
+import org.pascani.dsl.lib.util.MethodRegistry;
 
 /**
  * This class generates the necessary source code to automatically raise
@@ -75,6 +77,8 @@ public class ScaProbeGenerator extends InterceptorBasedProbeGenerator {
 		javaClass.addImport(LocalEventProducer.class);
 		javaClass.addImport(Event.class);
 		javaClass.addImport(UUID.class);
+		javaClass.addImport(MethodDescriptor.class);
+		javaClass.addImport(MethodRegistry.class);
 
 		for (Class<? extends Event<?>> clazz : events)
 			javaClass.addImport(clazz);
@@ -21,10 +21,11 @@ package org.pascani.dsl.lib.compiler.templates
 import com.google.common.base.Joiner
 import java.util.Collection
 import java.util.List
+import org.pascani.dsl.lib.PascaniRuntime
 import org.pascani.dsl.lib.PascaniRuntime.Context
 import org.pascani.dsl.lib.compiler.util.NameProposal
 import org.pascani.dsl.lib.events.NetworkLatencyEvent
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQProducer
+import org.pascani.dsl.lib.infrastructure.Transports
 
 /**
  * @author Miguel Jiménez - Initial contribution and API
@@ -43,7 +44,7 @@ class NetworkLatencyTemplates {
 		val _return = if(!isVoid) new NameProposal(paramNames).getNewName("_return");
 
 		'''
-			long «startVar» = System.nanoTime();
+			long «startVar» = «PascaniRuntime.simpleName».getClock().nanos();
 			«getParameterTypesArray(paramTypesVar, paramTypes)»
 			
 			«NetworkLatencyEvent.simpleName» «eventVar» = null;
@@ -57,7 +58,7 @@ class NetworkLatencyTemplates {
 			«ELSE»
 				«NetworkLatencyEvent.simpleName» «_return» = new «NetworkLatencyEvent.simpleName»(
 					this.«referenceVar».«methodName»(«eventVar»«params»), 
-					System.nanoTime()
+					«PascaniRuntime.simpleName».getClock().nanos()
 				);
 				«producerVar».produce(«_return»);
 				
@@ -79,7 +80,7 @@ class NetworkLatencyTemplates {
 		val _returnEvent = if(!isVoid) varNames.getNewName("_returnEvent");
 
 		'''
-			long «endVar» = System.nanoTime();
+			long «endVar» = «PascaniRuntime.simpleName».getClock().nanos();
 			«NetworkLatencyEvent.simpleName» «newEventVar» = 
 				new «NetworkLatencyEvent.simpleName» («eventVar», «endVar»);
 			«producerVar».produce(«newEventVar»);
@@ -91,7 +92,7 @@ class NetworkLatencyTemplates {
 				
 				«NetworkLatencyEvent.simpleName» «_returnEvent» = new «NetworkLatencyEvent.simpleName»(
 					«eventVar».transactionId(),
-					System.nanoTime(),
+					«PascaniRuntime.simpleName».getClock().nanos(),
 					«eventVar».methodCaller(),
 					«eventVar».methodProvider(),
 					«eventVar».method(),
@@ -110,7 +111,7 @@ class NetworkLatencyTemplates {
 	def static String getProducerInitialization(String producerVar, String exchange, String routingKey) {
 		'''
 			try {
-				this.«producerVar» = new «RabbitMQProducer.simpleName»("«exchange»", "«routingKey»");
+				this.«producerVar» = «Transports.simpleName».configured().producer("«exchange»", "«routingKey»");
 				this.«producerVar».acceptOnly(«NetworkLatencyEvent.simpleName».class);
 			} catch (Exception e) {
 				throw new RuntimeException(e);
@@ -28,8 +28,10 @@ import org.pascani.dsl.lib.events.InvokeEvent
 import org.pascani.dsl.lib.events.ReturnEvent
 import org.pascani.dsl.lib.events.TimeLapseEvent
 import org.pascani.dsl.lib.infrastructure.AbstractProducer
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQProducer
+import org.pascani.dsl.lib.infrastructure.Transports
 import org.pascani.dsl.lib.util.LocalEventProducer
+import org.pascani.dsl.lib.util.MethodDescriptor
+import org.pascani.dsl.lib.util.MethodRegistry
 
 /**
  * @author Miguel Jiménez - Initial contribution and API
@@ -52,7 +54,7 @@ class ProbeTemplates {
 				«probeClass» probe = new «probeClass»();
 				«IF addProducer»
 					«AbstractProducer.simpleName» producer = 
-						new «RabbitMQProducer.simpleName»("«probesExchange»", "«probeRoutingKey»");
+						«Transports.canonicalName».configured().producer("«probesExchange»", "«probeRoutingKey»");
 					
 					producer.acceptOnly(
 						«FOR clazz : events SEPARATOR ", "»
@@ -86,44 +88,41 @@ class ProbeTemplates {
 		val timeLapseEVar = varNames.getNewName("timeLapseEvent");
 		val returnEVar = varNames.getNewName("returnEvent");
 
-		val parameterTypesVar = varNames.getNewName("parameterTypes")
+		val methodVar = varNames.getNewName("method")
 		val causeVar = varNames.getNewName("cause");
 		val startVar = varNames.getNewName("start");
 		val endVar = varNames.getNewName("end");
 
 		'''
 			«IF !events.isEmpty»
-				UUID «transactionVar» = UUID.randomUUID();
+				UUID «transactionVar» = PascaniRuntime.getIdGenerator().next();
 			«ENDIF»
 			
 			«IF events.contains(InvokeEvent) || events.contains(ExceptionEvent) || events.contains(ReturnEvent)»
-				String[] «parameterTypesVar» = new String[«ijpVar».getMethod().getParameterTypes().length];
-				for (int i = 0; i < «parameterTypesVar».length; i++) {
-					«parameterTypesVar»[i] = «ijpVar».getMethod().getParameterTypes()[i].getCanonicalName();
-				}
+				«MethodDescriptor.simpleName» «methodVar» = «MethodRegistry.simpleName».descriptor(«ijpVar».getMethod());
 			«ENDIF»
 			
 			«IF events.contains(InvokeEvent)»
-				«getInvokeEventContrib(ijpVar, invokeEVar, transactionVar, producerVar, parameterTypesVar)»
+				«getInvokeEventContrib(ijpVar, invokeEVar, transactionVar, producerVar, methodVar)»
 			«ENDIF»
 			
 			«IF events.contains(TimeLapseEvent)»
-				long «startVar» = System.nanoTime();
+				long «startVar» = PascaniRuntime.getClock().nanos();
 			«ENDIF»
 			
 			«IF events.contains(ExceptionEvent)»
-				«getExceptionEventContrib(ijpVar, returnVar, exceptionEVar, causeVar, transactionVar, producerVar, parameterTypesVar)»
+				«getExceptionEventContrib(ijpVar, returnVar, exceptionEVar, causeVar, transactionVar, producerVar, methodVar)»
 			«ELSE»
 				Object «returnVar» = «ijpVar».proceed();
 			«ENDIF»
 			
 			«IF events.contains(TimeLapseEvent)»
-				long «endVar» = System.nanoTime();
+				long «endVar» = PascaniRuntime.getClock().nanos();
 				«getTimeLapseEventContrib(startVar, endVar, timeLapseEVar, transactionVar, producerVar)»
 			«ENDIF»
 			
 			«IF events.contains(ReturnEvent)»
-				«getReturnEventContrib(ijpVar, returnEVar, transactionVar, producerVar, parameterTypesVar)»
+				«getReturnEventContrib(ijpVar, returnEVar, transactionVar, producerVar, methodVar)»
 			«ENDIF»
 			
 			return «returnVar»;
@@ -131,7 +130,7 @@ class ProbeTemplates {
 	}
 
 	def private static String getExceptionEventContrib(String ijpVar, String returnVar, String exceptionEVar,
-		String causeVar, String transactionVar, String producerVar, String parameterTypesVar) {
+		String causeVar, String transactionVar, String producerVar, String methodVar) {
 		'''
 			Object «returnVar» = null;
 			try {
@@ -140,9 +139,7 @@ class ProbeTemplates {
 				«ExceptionEvent.simpleName» «exceptionEVar» = new «ExceptionEvent.simpleName»(
 					«transactionVar»,
 					new Exception(«causeVar»),
-					«ijpVar».getMethod().getDeclaringClass().getCanonicalName(),
-					«ijpVar».getMethod().getName(),
-					«parameterTypesVar»
+					«methodVar»
 				);
 				
 				«producerVar».post(«exceptionEVar»);
@@ -160,26 +157,22 @@ class ProbeTemplates {
 	}
 
 	def private static getInvokeEventContrib(String ijpVar, String invokeEVar, String transactionVar,
-		String producerVar, String parameterTypesVar) {
+		String producerVar, String methodVar) {
 		'''
 			«InvokeEvent.simpleName» «invokeEVar» = new «InvokeEvent.simpleName»(
 				«transactionVar», 
-				«ijpVar».getMethod().getDeclaringClass().getCanonicalName(),
-				«ijpVar».getMethod().getName(),
-				«parameterTypesVar»
+				«methodVar»
 			);
 			«producerVar».post(«invokeEVar»);
 		'''
 	}
 
 	def private static getReturnEventContrib(String ijpVar, String returnEVar, String transactionVar,
-		String producerVar, String parameterTypesVar) {
+		String producerVar, String methodVar) {
 		'''
 			«ReturnEvent.simpleName» «returnEVar» = new «ReturnEvent.simpleName»(
 				«transactionVar», 
-				«ijpVar».getMethod().getDeclaringClass().getCanonicalName(),
-				«ijpVar».getMethod().getName(),
-				«parameterTypesVar»
+				«methodVar»
 			);
 			«producerVar».post(«returnEVar»);
 		'''
@@ -21,10 +21,13 @@ package org.pascani.dsl.lib.sca.intents;
 import java.util.UUID;
 
 import org.ow2.frascati.tinfi.api.IntentJoinPoint;
+import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.events.ExceptionEvent;
 import org.pascani.dsl.lib.events.InvokeEvent;
 import org.pascani.dsl.lib.events.ReturnEvent;
 import org.pascani.dsl.lib.events.TimeLapseEvent;
+import org.pascani.dsl.lib.util.MethodDescriptor;
+import org.pascani.dsl.lib.util.MethodRegistry;
 
 /**
  * @author Miguel Jiménez - Initial contribution and API
@@ -32,38 +35,24 @@ import org.pascani.dsl.lib.events.TimeLapseEvent;
 public class AllEventsIntentHandler extends AbstractIntentHandler {
 
 	public Object invoke(IntentJoinPoint ijp) throws Throwable {
-		UUID transactionId = UUID.randomUUID();
-		String[] parameterTypes = 
-				new String[ijp.getMethod().getParameterTypes().length];
-		for (int i = 0; i < parameterTypes.length; i++) {
-			parameterTypes[i] = 
-					ijp.getMethod().getParameterTypes()[i].getCanonicalName();
-		}
-		InvokeEvent invokeEvent = new InvokeEvent(transactionId,
-				ijp.getMethod().getDeclaringClass().getCanonicalName(), 
-				ijp.getMethod().getName(),
-				parameterTypes);
+		UUID transactionId = PascaniRuntime.getIdGenerator().next();
+		MethodDescriptor method = MethodRegistry.descriptor(ijp.getMethod());
+		InvokeEvent invokeEvent = new InvokeEvent(transactionId, method);
 		super.handler.handle(invokeEvent);
-		long start = System.nanoTime();
+		long start = PascaniRuntime.getClock().nanos();
 		Object _return = null;
 		try {
 			_return = ijp.proceed();
 		} catch (Throwable cause) {
 			ExceptionEvent exceptionEvent = new ExceptionEvent(transactionId,
-					new Exception(cause), 
-					ijp.getMethod().getDeclaringClass().getCanonicalName(),
-					ijp.getMethod().getName(),
-					parameterTypes);
+					new Exception(cause), method);
 			super.handler.handle(exceptionEvent);
 			throw new Throwable(cause);
 		}
-		long end = System.nanoTime();
+		long end = PascaniRuntime.getClock().nanos();
 		TimeLapseEvent timeLapseEvent = new TimeLapseEvent(transactionId, start, end);
 		super.handler.handle(timeLapseEvent);
-		ReturnEvent returnEvent = new ReturnEvent(transactionId,
-				ijp.getMethod().getDeclaringClass().getCanonicalName(), 
-				ijp.getMethod().getName(),
-				parameterTypes);
+		ReturnEvent returnEvent = new ReturnEvent(transactionId, method);
 		super.handler.handle(returnEvent);
 		return _return;
 	}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.sca.intents;
+
+import org.osoa.sca.annotations.Destroy;
+import org.ow2.frascati.tinfi.api.IntentJoinPoint;
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.util.CallCapture;
+
+/**
+ * Intent handler raising the same events as {@link AllEventsIntentHandler},
+ * but only recording primitive timestamps on the intercepted thread. Events
+ * are created and handled in the background by a {@link CallCapture}, which
+ * is closed when this handler is destroyed.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class CapturingIntentHandler extends AbstractIntentHandler {
+
+	/**
+	 * Records the intercepted calls
+	 */
+	private volatile CallCapture capture;
+
+	public Object invoke(IntentJoinPoint ijp) throws Throwable {
+		CallCapture capture = capture();
+		int method = capture.methodId(ijp.getMethod());
+		long start = PascaniRuntime.getClock().nanos();
+		Object _return = null;
+		try {
+			_return = ijp.proceed();
+		} catch (Throwable cause) {
+			capture.record(method, start, PascaniRuntime.getClock().nanos(),
+					cause);
+			throw new Throwable(cause);
+		}
+		capture.record(method, start, PascaniRuntime.getClock().nanos(), null);
+		return _return;
+	}
+
+	private CallCapture capture() {
+		CallCapture capture = this.capture;
+		if (capture == null) {
+			synchronized (this) {
+				capture = this.capture;
+				if (capture == null) {
+					capture = new CallCapture(new CallCapture.Sink() {
+						public void handle(Event<?> event) {
+							handler.handle(event);
+						}
+					});
+					this.capture = capture;
+				}
+			}
+		}
+		return capture;
+	}
+
+	/**
+	 * Stops the background handling of the intercepted calls, after handling
+	 * the pending ones
+	 */
+	@Destroy
+	public synchronized void destroy() {
+		if (this.capture != null) {
+			this.capture.close();
+			this.capture = null;
+		}
+	}
+
+}
@@ -21,7 +21,10 @@ package org.pascani.dsl.lib.sca.intents;
 import java.util.UUID;
 
 import org.ow2.frascati.tinfi.api.IntentJoinPoint;
+import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.events.ExceptionEvent;
+import org.pascani.dsl.lib.util.MethodDescriptor;
+import org.pascani.dsl.lib.util.MethodRegistry;
 
 /**
  * @author Miguel Jiménez - Initial contribution and API
@@ -29,21 +32,14 @@ import org.pascani.dsl.lib.events.ExceptionEvent;
 public class ExceptionIntentHandler extends AbstractIntentHandler {
 
 	public Object invoke(IntentJoinPoint ijp) throws Throwable {
-		UUID transactionId = UUID.randomUUID();
-		String[] parameterTypes = 
-				new String[ijp.getMethod().getParameterTypes().length];
-		for (int i = 0; i < parameterTypes.length; i++) {
-			parameterTypes[i] = 
-					ijp.getMethod().getParameterTypes()[i].getCanonicalName();
-		}
+		UUID transactionId = PascaniRuntime.getIdGenerator().next();
+		MethodDescriptor method = MethodRegistry.descriptor(ijp.getMethod());
 		Object _return = null;
 		try {
 			_return = ijp.proceed();
 		} catch (Throwable cause) {
 			ExceptionEvent exceptionEvent = new ExceptionEvent(transactionId,
-					new Exception(cause),
-					ijp.getMethod().getDeclaringClass().getCanonicalName(),
-					ijp.getMethod().getName(), parameterTypes);
+					new Exception(cause), method);
 			super.handler.handle(exceptionEvent);
 			throw new Throwable(cause);
 		}
@@ -21,7 +21,10 @@ package org.pascani.dsl.lib.sca.intents;
 import java.util.UUID;
 
 import org.ow2.frascati.tinfi.api.IntentJoinPoint;
+import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.events.InvokeEvent;
+import org.pascani.dsl.lib.util.MethodDescriptor;
+import org.pascani.dsl.lib.util.MethodRegistry;
 
 /**
  * @author Miguel Jiménez - Initial contribution and API
@@ -29,16 +32,9 @@ import org.pascani.dsl.lib.events.InvokeEvent;
 public class InvokeIntentHandler extends AbstractIntentHandler {
 
 	public Object invoke(IntentJoinPoint ijp) throws Throwable {
-		UUID transactionId = UUID.randomUUID();
-		String[] parameterTypes = 
-				new String[ijp.getMethod().getParameterTypes().length];
-		for (int i = 0; i < parameterTypes.length; i++) {
-			parameterTypes[i] = 
-					ijp.getMethod().getParameterTypes()[i].getCanonicalName();
-		}
-		InvokeEvent invokeEvent = new InvokeEvent(transactionId,
-				ijp.getMethod().getDeclaringClass().getCanonicalName(),
-				ijp.getMethod().getName(), parameterTypes);
+		UUID transactionId = PascaniRuntime.getIdGenerator().next();
+		MethodDescriptor method = MethodRegistry.descriptor(ijp.getMethod());
+		InvokeEvent invokeEvent = new InvokeEvent(transactionId, method);
 		super.handler.handle(invokeEvent);
 		Object _return = ijp.proceed();
 		return _return;
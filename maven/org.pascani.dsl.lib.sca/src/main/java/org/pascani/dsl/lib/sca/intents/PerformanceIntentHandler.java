@@ -21,6 +21,7 @@ package org.pascani.dsl.lib.sca.intents;
 import java.util.UUID;
 
 import org.ow2.frascati.tinfi.api.IntentJoinPoint;
+import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.events.TimeLapseEvent;
 
 /**
@@ -29,10 +30,10 @@ import org.pascani.dsl.lib.events.TimeLapseEvent;
 public class PerformanceIntentHandler extends AbstractIntentHandler {
 
 	public Object invoke(IntentJoinPoint ijp) throws Throwable {
-		UUID transactionId = UUID.randomUUID();
-		long start = System.nanoTime();
+		UUID transactionId = PascaniRuntime.getIdGenerator().next();
+		long start = PascaniRuntime.getClock().nanos();
 		Object _return = ijp.proceed();
-		long end = System.nanoTime();
+		long end = PascaniRuntime.getClock().nanos();
 		TimeLapseEvent timeLapseEvent = new TimeLapseEvent(transactionId, start, end);
 		super.handler.handle(timeLapseEvent);
 		return _return;
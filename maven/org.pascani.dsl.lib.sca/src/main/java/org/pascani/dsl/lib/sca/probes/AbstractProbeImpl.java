@@ -25,10 +25,11 @@ import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.Probe;
 import org.pascani.dsl.lib.infrastructure.AbstractProducer;
 import org.pascani.dsl.lib.infrastructure.LocalProbe;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQProducer;
+import org.pascani.dsl.lib.infrastructure.Transports;
 import org.pascani.dsl.lib.sca.EventHandler;
 import org.pascani.dsl.lib.util.Exceptions;
 import org.pascani.dsl.lib.util.Resumable;
+import org.pascani.dsl.lib.util.RetentionPolicy;
 
 /**
  * @author Miguel Jiménez - Initial contribution and API
@@ -49,6 +50,12 @@ public abstract class AbstractProbeImpl implements EventHandler, Resumable {
 	 * <li>routingkey: the routing key belonging to this probe
 	 * <li>shutdown: shutdowns probe, producer or both. Values are: probe,
 	 * producer, both
+	 * <li>retention.maxevents: the maximum number of events retained by the
+	 * probe, per event type
+	 * <li>retention.maxage: the maximum age of the events retained by the
+	 * probe, in nanoseconds
+	 * <li>retention.maxbytes: the approximate maximum number of bytes retained
+	 * by the probe, per event type
 	 * <li>pascani.*: Pascani properties. Where * can be replaced for a property
 	 * name
 	 */
@@ -79,6 +86,11 @@ public abstract class AbstractProbeImpl implements EventHandler, Resumable {
 	 */
 	protected LocalProbe probe;
 
+	/**
+	 * Bounds the events retained by the monitor probe
+	 */
+	protected RetentionPolicy retentionPolicy = RetentionPolicy.UNBOUNDED;
+
 	/**
 	 * The accepted events handled by this monitor probe
 	 */
@@ -109,7 +121,7 @@ public abstract class AbstractProbeImpl implements EventHandler, Resumable {
 	@Property public void setProperty(final String property) {
 		String[] data = property.split("=");
 		String name = data[0].trim();
-		String value = data[0].trim();
+		String value = data.length > 1 ? data[1].trim() : "";
 		if (name.startsWith("pascani.")) {
 			System.setProperty(name, value);
 		} else if (name.equals("routingkey")) {
@@ -130,8 +142,23 @@ public abstract class AbstractProbeImpl implements EventHandler, Resumable {
 		} else if (name.equals("shutdown")) {
 			shutdown(value.equals("probe") || value.equals("both"),
 					value.equals("producer") || value.equals("both"));
+		} else if (name.equals("retention.maxevents")) {
+			retentionPolicy(this.retentionPolicy
+					.withMaxEvents(Integer.parseInt(value)));
+		} else if (name.equals("retention.maxage")) {
+			retentionPolicy(this.retentionPolicy
+					.withMaxAge(Long.parseLong(value)));
+		} else if (name.equals("retention.maxbytes")) {
+			retentionPolicy(this.retentionPolicy
+					.withMaxBytes(Long.parseLong(value)));
 		}
 	}
+
+	private void retentionPolicy(final RetentionPolicy policy) {
+		this.retentionPolicy = policy;
+		if (this.probe != null)
+			this.probe.retentionPolicy(policy);
+	}
 	
 	public void shutdown(final boolean probe, final boolean producer) {
 		try {
@@ -158,6 +185,7 @@ public abstract class AbstractProbeImpl implements EventHandler, Resumable {
 			this.probe = new LocalProbe(this.routingKey,
 					PascaniRuntime.Context.PROBE);
 			this.probe.acceptOnly(this.acceptedTypes);
+			this.probe.retentionPolicy(this.retentionPolicy);
 		} catch (Exception e) {
 			Exceptions.sneakyThrow(e);
 		}
@@ -170,10 +198,11 @@ public abstract class AbstractProbeImpl implements EventHandler, Resumable {
 			// shutdown in case it is already initialized
 			if (this.producer != null)
 				this.producer.shutdown();
-			this.producer = new RabbitMQProducer(
+			this.producer = Transports.configured().producer(
 					PascaniRuntime.getEnvironment().get("probes_exchange"),
 					this.routingKey);
 			this.producer.acceptOnly(this.acceptedTypes);
+			this.producer.asynchronousAsConfigured();
 		} catch (Exception e) {
 			Exceptions.sneakyThrow(e);
 		}
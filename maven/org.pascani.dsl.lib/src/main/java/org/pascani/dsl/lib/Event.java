@@ -21,8 +21,6 @@ package org.pascani.dsl.lib;
 import java.io.Serializable;
 import java.util.UUID;
 
-import com.google.common.collect.Range;
-
 /**
  * Standard abstract implementation for simple events
  * 
@@ -47,13 +45,32 @@ public abstract class Event<T> implements Comparable<Event<T>>, Serializable {
 	protected final UUID transactionId;
 
 	/**
-	 * The timestamp when this event is raised, in nanoseconds
+	 * The timestamp when this event is raised, in nanoseconds since the epoch
+	 * (see {@link PascaniRuntime#getClock()})
 	 */
 	protected final long timestamp;
 
 	public Event(final UUID transactionId) {
-		this.timestamp = System.currentTimeMillis();
-		this.identifier = UUID.randomUUID();
+		this.timestamp = PascaniRuntime.getClock().nanos();
+		this.identifier = PascaniRuntime.getIdGenerator().next();
+		this.transactionId = transactionId;
+	}
+
+	/**
+	 * Restores an event from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The universally unique identifier of the event
+	 * @param transactionId
+	 *            The transaction of which the event is part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 */
+	protected Event(final UUID identifier, final UUID transactionId,
+			final long timestamp) {
+		this.timestamp = timestamp;
+		this.identifier = identifier;
 		this.transactionId = transactionId;
 	}
 
@@ -73,31 +90,42 @@ public abstract class Event<T> implements Comparable<Event<T>>, Serializable {
 	}
 	
 	/**
-	 * @return the timestamp when this event is raised, in nanoseconds
+	 * @return the timestamp when this event is raised, in nanoseconds since
+	 *         the epoch
 	 */
 	public long timestamp() {
 		return this.timestamp;
 	}
 
+	/**
+	 * @return the timestamp against which time windows are evaluated; by
+	 *         default, the timestamp when this event is raised
+	 * @see #isInTimeWindow(long, long)
+	 */
+	public long windowTimestamp() {
+		return this.timestamp;
+	}
+
 	/**
 	 * @return the value of this event
 	 */
 	public abstract T value();
 
 	/**
-	 * Checks whether this {@link Event} was raised within a given time window,
-	 * i.e., {@code this.timestamp} is contained in [ {@code start} ,
+	 * Checks whether this {@link Event} belongs to a given time window, i.e.,
+	 * {@link #windowTimestamp()} is contained in [ {@code start} ,
 	 * {@code end}].
 	 * 
 	 * @param start
 	 *            The initial timestamp of the time window
 	 * @param end
 	 *            The final timestamp of the time window
-	 * @return Whether the range [{@code start}, {@code end}] contains the final
-	 *         timestamp this object
+	 * @return Whether the range [{@code start}, {@code end}] contains the
+	 *         window timestamp of this object
 	 */
 	public boolean isInTimeWindow(long start, long end) {
-		return Range.closed(start, end).contains(this.timestamp);
+		long t = windowTimestamp();
+		return start <= t && t <= end;
 	}
 
 	/*
@@ -123,9 +151,8 @@ public abstract class Event<T> implements Comparable<Event<T>>, Serializable {
 		else if ((null == obj) || (obj.getClass() != this.getClass()))
 			return false;
 
-		@SuppressWarnings("unchecked")
-		Event<T> other = (Event<T>) obj;
-		return this.compareTo(other) == 0;
+		Event<?> other = (Event<?>) obj;
+		return this.identifier.equals(other.identifier);
 	}
 	
 	protected int compareInt(long i1, long i2) {
@@ -138,20 +165,15 @@ public abstract class Event<T> implements Comparable<Event<T>>, Serializable {
 		}
 	}
 	
-	/*
-	 * (non-Javadoc)
-	 * @see pascani.lang.Event#compareTo(pascani.lang.Event)
+	/**
+	 * Events are ordered by timestamp and then by identifier. As identifiers
+	 * are time-ordered by default (see {@link PascaniRuntime#getIdGenerator()}
+	 * ), events raised at the same time keep their creation order.
 	 */
 	public int compareTo(final Event<T> o) {
-		int v = 0;
-		
-		v = compareInt(this.timestamp, o.timestamp);
-		if (v != 0) return v;
-
-		v = this.identifier.compareTo(o.identifier);
-		if (v != 0) return v;
-		
-		return v;
+		if (this.timestamp != o.timestamp)
+			return this.timestamp < o.timestamp ? -1 : 1;
+		return this.identifier.compareTo(o.identifier);
 	}
 	
 }
@@ -24,8 +24,13 @@ import java.util.Map;
 import org.pascani.dsl.lib.infrastructure.AbstractProducer;
 import org.pascani.dsl.lib.infrastructure.BasicNamespace;
 import org.pascani.dsl.lib.infrastructure.Monitor;
+import org.pascani.dsl.lib.util.Clock;
+import org.pascani.dsl.lib.util.CoarseClock;
 import org.pascani.dsl.lib.util.ConfigProperties;
+import org.pascani.dsl.lib.util.IdGenerator;
 import org.pascani.dsl.lib.util.LocalEventProducer;
+import org.pascani.dsl.lib.util.PreciseClock;
+import org.pascani.dsl.lib.util.TimeOrderedIdGenerator;
 
 import com.google.common.eventbus.EventBus;
 
@@ -70,6 +75,16 @@ public class PascaniRuntime {
 	 * exchange names)
 	 */
 	private static Map<String, String> environment = null;
+
+	/**
+	 * Generates the identifiers of events and transactions
+	 */
+	private static volatile IdGenerator idGenerator = new TimeOrderedIdGenerator();
+
+	/**
+	 * Provides the timestamps of events
+	 */
+	private static volatile Clock clock = new PreciseClock();
 	
 	/**
 	 * @param context
@@ -120,6 +135,46 @@ public class PascaniRuntime {
 		this.eventBus.register(listener);
 	}
 
+	/**
+	 * @return the generator of event and transaction identifiers. By default,
+	 *         a {@link TimeOrderedIdGenerator}
+	 */
+	public static IdGenerator getIdGenerator() {
+		return idGenerator;
+	}
+
+	/**
+	 * Replaces the generator of event and transaction identifiers. This should
+	 * be done before any event is created
+	 * 
+	 * @param generator
+	 *            The new identifier generator
+	 */
+	public static void setIdGenerator(final IdGenerator generator) {
+		idGenerator = generator;
+	}
+
+	/**
+	 * @return the clock providing the timestamps of events. By default, a
+	 *         {@link PreciseClock}
+	 */
+	public static Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Replaces the clock providing the timestamps of events, for instance, by
+	 * a {@link CoarseClock} where stamping must be as cheap as possible. This
+	 * should be done before any event is created, as timestamps from different
+	 * clocks may not be comparable
+	 * 
+	 * @param clock
+	 *            The new clock
+	 */
+	public static void setClock(final Clock clock) {
+		PascaniRuntime.clock = clock;
+	}
+
 	public static Map<String, String> getEnvironment() {
 		if (environment == null) {
 			ConfigProperties config = new ConfigProperties("pascani.properties",
@@ -138,6 +193,23 @@ public class PascaniRuntime {
 		defaultProps.put("logs_exchange", "logs_exchange");
 		defaultProps.put("rpc_exchange", "rpc_exchange");
 		defaultProps.put("rpc_queue_prefix", "rpc_");
+		defaultProps.put("rpc_timeout", "30000");
+		defaultProps.put("rpc_workers", "4");
+		defaultProps.put("codec", "application/x-pascani-compact");
+		defaultProps.put("producer_batch_size", "1");
+		defaultProps.put("producer_batch_delay", "10");
+		defaultProps.put("producer_queue_size", "0");
+		defaultProps.put("producer_publishers", "1");
+		defaultProps.put("producer_overflow", "DROP_NEWEST");
+		defaultProps.put("producer_block_timeout", "10");
+		defaultProps.put("producer_durability", "PERSISTENT");
+		defaultProps.put("producer_confirm_window", "1024");
+		defaultProps.put("producer_confirm_timeout", "5000");
+		defaultProps.put("consumer_prefetch", "256");
+		defaultProps.put("consumer_ack_size", "32");
+		defaultProps.put("consumer_ack_delay", "100");
+		defaultProps.put("consumer_workers", "0");
+		defaultProps.put("tcp_send_buffer", "16777216");
 		return defaultProps;
 	}
 
@@ -70,6 +70,32 @@ public class ChangeEvent extends Event<Serializable> {
 		this.variable = variable;
 	}
 
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param previousValue
+	 *            The previous value of the variable
+	 * @param newValue
+	 *            The new value of the variable
+	 * @param variable
+	 *            The name of the variable
+	 */
+	public ChangeEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final Serializable previousValue,
+			final Serializable newValue, final String variable) {
+		super(identifier, transactionId, timestamp);
+		this.previousValue = previousValue;
+		this.value = newValue;
+		this.variable = variable;
+	}
+
 	public String variable() {
 		return this.variable;
 	}
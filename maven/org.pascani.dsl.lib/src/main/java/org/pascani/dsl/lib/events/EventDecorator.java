@@ -19,6 +19,7 @@
 package org.pascani.dsl.lib.events;
 
 import java.io.Serializable;
+import java.util.UUID;
 
 import org.pascani.dsl.lib.Event;
 
@@ -53,6 +54,23 @@ public abstract class EventDecorator<T extends Event<? extends Serializable>>
 		this.event = event;
 	}
 
+	/**
+	 * Restores a decorator from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the decorator
+	 * @param timestamp
+	 *            The timestamp when the decorator was created
+	 * @param event
+	 *            The decorated event
+	 */
+	protected EventDecorator(final UUID identifier, final long timestamp,
+			final T event) {
+		super(identifier, event.transactionId(), timestamp);
+		this.event = event;
+	}
+
 	/**
 	 * @return the event being decorated
 	 */
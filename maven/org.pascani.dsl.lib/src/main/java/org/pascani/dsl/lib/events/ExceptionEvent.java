@@ -18,9 +18,12 @@
  */
 package org.pascani.dsl.lib.events;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.util.MethodDescriptor;
+import org.pascani.dsl.lib.util.MethodRegistry;
 
 /**
  * Implementation of {@link Event} for exceptions registry
@@ -40,19 +43,9 @@ public class ExceptionEvent extends Event<Exception> {
 	private final Exception exception;
 
 	/**
-	 * The class in which the exception was raised
+	 * The descriptor of the method
 	 */
-	private final String clazz;
-
-	/**
-	 * The method that raised the exception
-	 */
-	private final String method;
-
-	/**
-	 * The formal parameters of the method
-	 */
-	private final String[] parameters;
+	private MethodDescriptor descriptor;
 
 	/**
 	 * Creates an instance having all of the parameters
@@ -73,9 +66,76 @@ public class ExceptionEvent extends Event<Exception> {
 			final String[] parameters) {
 		super(transactionId);
 		this.exception = exception;
-		this.clazz = clazz;
-		this.method = method;
-		this.parameters = parameters;
+		this.descriptor = MethodRegistry.descriptor(clazz, method, parameters);
+	}
+
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param exception
+	 *            The exception thrown
+	 * @param clazz
+	 *            The class declaring the method
+	 * @param method
+	 *            The method throwing the exception
+	 * @param parameters
+	 *            The parameter types of the method
+	 */
+	public ExceptionEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final Exception exception,
+			final String clazz, final String method,
+			final String[] parameters) {
+		super(identifier, transactionId, timestamp);
+		this.exception = exception;
+		this.descriptor = MethodRegistry.descriptor(clazz, method, parameters);
+	}
+
+	/**
+	 * Creates an instance describing the method with an already computed
+	 * descriptor
+	 * 
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param exception
+	 *            The exception thrown
+	 * @param descriptor
+	 *            The descriptor of the method
+	 */
+	public ExceptionEvent(final UUID transactionId, final Exception exception,
+			final MethodDescriptor descriptor) {
+		super(transactionId);
+		this.exception = exception;
+		this.descriptor = descriptor;
+	}
+
+	/**
+	 * Restores an instance from its recorded data, referring to the method by
+	 * its descriptor
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param exception
+	 *            The exception thrown
+	 * @param descriptor
+	 *            The descriptor of the method
+	 */
+	public ExceptionEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final Exception exception,
+			final MethodDescriptor descriptor) {
+		super(identifier, transactionId, timestamp);
+		this.exception = exception;
+		this.descriptor = descriptor;
 	}
 
 	@Override public Exception value() {
@@ -83,15 +143,25 @@ public class ExceptionEvent extends Event<Exception> {
 	}
 
 	public String clazz() {
-		return this.clazz;
+		return descriptor().clazz();
 	}
 
 	public String method() {
-		return this.method;
+		return descriptor().method();
 	}
 
 	public String[] parameters() {
-		return this.parameters;
+		return descriptor().parameters();
+	}
+
+	/**
+	 * @return the descriptor of the method, resolved against the
+	 *         {@link MethodRegistry} if it was unresolved when decoded
+	 */
+	public MethodDescriptor descriptor() {
+		if (!this.descriptor.isResolved())
+			this.descriptor = MethodRegistry.resolve(this.descriptor);
+		return this.descriptor;
 	}
 
 	/**
@@ -102,9 +172,9 @@ public class ExceptionEvent extends Event<Exception> {
 		sb.append(this.getClass().getCanonicalName() + "\t");
 		sb.append(this.transactionId + "\t");
 		sb.append(this.identifier + "\t");
-		sb.append(this.clazz + "\t");
-		sb.append(this.method + "\t");
-		sb.append(this.parameters + "\t");
+		sb.append(clazz() + "\t");
+		sb.append(method() + "\t");
+		sb.append(Arrays.toString(parameters()) + "\t");
 		sb.append(this.timestamp + "\t");
 		sb.append(value().toString());
 
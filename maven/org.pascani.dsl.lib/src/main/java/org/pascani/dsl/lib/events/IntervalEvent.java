@@ -53,6 +53,25 @@ public class IntervalEvent extends Event<String> {
 		this.expression = expression;
 	}
 
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param expression
+	 *            The cron expression
+	 */
+	public IntervalEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final String expression) {
+		super(identifier, transactionId, timestamp);
+		this.expression = expression;
+	}
+
 	@Override public String value() {
 		return this.expression;
 	}
@@ -22,6 +22,8 @@ import java.util.Arrays;
 import java.util.UUID;
 
 import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.util.MethodDescriptor;
+import org.pascani.dsl.lib.util.MethodRegistry;
 
 /**
  * Implementation of {@link Event} for raising events each time a method is
@@ -37,19 +39,9 @@ public class InvokeEvent extends Event<Long> {
 	private static final long serialVersionUID = 8016321382976600130L;
 
 	/**
-	 * The class providing the method
+	 * The descriptor of the method
 	 */
-	private final String clazz;
-
-	/**
-	 * The invoked method
-	 */
-	private final String method;
-
-	/**
-	 * The formal parameters of the method
-	 */
-	private final String[] parameters;
+	private MethodDescriptor descriptor;
 
 	/**
 	 * Creates an instance having all of the parameters
@@ -66,9 +58,65 @@ public class InvokeEvent extends Event<Long> {
 	public InvokeEvent(final UUID transactionId, final String clazz,
 			final String method, final String[] parameters) {
 		super(transactionId);
-		this.clazz = clazz;
-		this.method = method;
-		this.parameters = parameters;
+		this.descriptor = MethodRegistry.descriptor(clazz, method, parameters);
+	}
+
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param clazz
+	 *            The class declaring the method
+	 * @param method
+	 *            The invoked method
+	 * @param parameters
+	 *            The parameter types of the method
+	 */
+	public InvokeEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final String clazz, final String method,
+			final String[] parameters) {
+		super(identifier, transactionId, timestamp);
+		this.descriptor = MethodRegistry.descriptor(clazz, method, parameters);
+	}
+
+	/**
+	 * Creates an instance describing the method with an already computed
+	 * descriptor
+	 * 
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param descriptor
+	 *            The descriptor of the method
+	 */
+	public InvokeEvent(final UUID transactionId,
+			final MethodDescriptor descriptor) {
+		super(transactionId);
+		this.descriptor = descriptor;
+	}
+
+	/**
+	 * Restores an instance from its recorded data, referring to the method by
+	 * its descriptor
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param descriptor
+	 *            The descriptor of the method
+	 */
+	public InvokeEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final MethodDescriptor descriptor) {
+		super(identifier, transactionId, timestamp);
+		this.descriptor = descriptor;
 	}
 
 	@Override public Long value() {
@@ -76,15 +124,25 @@ public class InvokeEvent extends Event<Long> {
 	}
 
 	public String methodProvider() {
-		return this.clazz;
+		return descriptor().clazz();
 	}
 
 	public String method() {
-		return this.method;
+		return descriptor().method();
 	}
 
 	public String[] methodParameters() {
-		return this.parameters;
+		return descriptor().parameters();
+	}
+
+	/**
+	 * @return the descriptor of the method, resolved against the
+	 *         {@link MethodRegistry} if it was unresolved when decoded
+	 */
+	public MethodDescriptor descriptor() {
+		if (!this.descriptor.isResolved())
+			this.descriptor = MethodRegistry.resolve(this.descriptor);
+		return this.descriptor;
 	}
 
 	/**
@@ -95,9 +153,9 @@ public class InvokeEvent extends Event<Long> {
 		sb.append(this.getClass().getCanonicalName() + "\t");
 		sb.append(this.transactionId + "\t");
 		sb.append(this.identifier + "\t");
-		sb.append(this.clazz + "\t");
-		sb.append(this.method + "\t");
-		sb.append(Arrays.toString(parameters) + "\t");
+		sb.append(methodProvider() + "\t");
+		sb.append(method() + "\t");
+		sb.append(Arrays.toString(methodParameters()) + "\t");
 		sb.append(value());
 
 		return sb.toString();
@@ -62,6 +62,38 @@ public class LogEvent extends Event<Serializable> {
 		this.source = source;
 	}
 
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param logger
+	 *            The name of the logger
+	 * @param level
+	 *            The logging level
+	 * @param message
+	 *            The logged message
+	 * @param cause
+	 *            The cause of the message
+	 * @param source
+	 *            The source of the message
+	 */
+	public LogEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final String logger, final String level,
+			final String message, final String cause, final String source) {
+		super(identifier, transactionId, timestamp);
+		this.logger = logger;
+		this.level = level;
+		this.message = message;
+		this.cause = cause;
+		this.source = source;
+	}
+
 	@Override public Serializable value() {
 		return this.message;
 	}
@@ -19,6 +19,7 @@
 package org.pascani.dsl.lib.events;
 
 import java.io.Serializable;
+import java.util.UUID;
 
 import org.pascani.dsl.lib.Event;
 import org.pascani.dsl.lib.util.EventMapper;
@@ -57,6 +58,25 @@ public class NamedEventDecorator extends
 		this.key = key;
 	}
 
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the decorator
+	 * @param timestamp
+	 *            The timestamp when the decorator was created
+	 * @param key
+	 *            The name identifying the decorated event
+	 * @param event
+	 *            The decorated event
+	 */
+	public NamedEventDecorator(final UUID identifier, final long timestamp,
+			final String key, final Event<? extends Serializable> event) {
+		super(identifier, timestamp, event);
+		this.key = key;
+	}
+
 	/**
 	 * @return the given key to the named event
 	 */
@@ -23,8 +23,6 @@ import java.util.UUID;
 
 import org.pascani.dsl.lib.Event;
 
-import com.google.common.collect.Range;
-
 /**
  * Implementation of {@link Event} for measuring method calls' latency,
  * specially useful to measure network latency in remote methods execution.
@@ -111,6 +109,46 @@ public class NetworkLatencyEvent extends Event<Double> {
 		this._return = _return;
 	}
 
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param start
+	 *            The initial time
+	 * @param end
+	 *            The final time
+	 * @param caller
+	 *            The calling component
+	 * @param callee
+	 *            The called component
+	 * @param method
+	 *            The invoked method
+	 * @param parameters
+	 *            The parameter types of the method
+	 * @param _return
+	 *            The value returned by the method
+	 */
+	public NetworkLatencyEvent(final UUID identifier,
+			final UUID transactionId, final long timestamp, final long start,
+			final long end, final String caller, final String callee,
+			final String method, final String[] parameters, final Object _return) {
+		super(identifier, transactionId, timestamp);
+		this.start = start;
+		this.end = end;
+		this.latency = this.end - this.start;
+		this.caller = caller;
+		this.callee = callee;
+		this.method = method;
+		this.parameters = parameters;
+		this._return = _return;
+	}
+
 	/**
 	 * Creates an instance having all the parameters except for the final
 	 * timestamp. The final timestamp is set to {@code 0}; to re-create the
@@ -186,19 +224,10 @@ public class NetworkLatencyEvent extends Event<Double> {
 	}
 
 	/**
-	 * Checks whether this {@link NetworkLatencyEvent} instance was finished
-	 * measuring within a given time window, i.e., {@code this.end} is contained
-	 * in [{@code start} , {@code end}].
-	 * 
-	 * @param start
-	 *            The initial timestamp of the time window
-	 * @param end
-	 *            The final timestamp of the time window
-	 * @return Whether the range [{@code start}, {@code end}] contains the final
-	 *         timestamp this object
+	 * @return the final timestamp, against which time windows are evaluated
 	 */
-	@Override public boolean isInTimeWindow(long start, long end) {
-		return Range.closed(start, end).contains(this.end);
+	@Override public long windowTimestamp() {
+		return this.end;
 	}
 
 	/**
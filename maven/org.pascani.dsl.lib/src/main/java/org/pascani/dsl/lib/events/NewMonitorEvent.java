@@ -81,6 +81,36 @@ public class NewMonitorEvent extends Event<Serializable> {
 		this.nonPeriodicEvents = nonPeriodicEvents;
 	}
 
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param monitorName
+	 *            The name of the monitor
+	 * @param namespaces
+	 *            The namespaces used by the monitor
+	 * @param periodicEvents
+	 *            The periodic events declared by the monitor
+	 * @param nonPeriodicEvents
+	 *            The non-periodic events declared by the monitor
+	 */
+	public NewMonitorEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final String monitorName,
+			final List<String> namespaces, final List<String> periodicEvents,
+			final List<String> nonPeriodicEvents) {
+		super(identifier, transactionId, timestamp);
+		this.monitorName = monitorName;
+		this.namespaces = namespaces;
+		this.periodicEvents = periodicEvents;
+		this.nonPeriodicEvents = nonPeriodicEvents;
+	}
+
 	@Override public Serializable value() {
 		return this.monitorName;
 	}
@@ -54,6 +54,29 @@ public class NewNamespaceEvent extends Event<Serializable> {
 		this.variables = variables;
 	}
 
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param namespaceName
+	 *            The name of the namespace
+	 * @param variables
+	 *            The variables declared by the namespace
+	 */
+	public NewNamespaceEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final String namespaceName,
+			final List<String> variables) {
+		super(identifier, transactionId, timestamp);
+		this.namespaceName = namespaceName;
+		this.variables = variables;
+	}
+
 	@Override public Serializable value() {
 		return this.namespaceName;
 	}
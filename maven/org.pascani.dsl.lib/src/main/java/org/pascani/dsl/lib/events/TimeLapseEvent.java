@@ -22,8 +22,6 @@ import java.util.UUID;
 
 import org.pascani.dsl.lib.Event;
 
-import com.google.common.collect.Range;
-
 /**
  * Implementation of {@link Event} for time-based data
  * 
@@ -69,6 +67,29 @@ public class TimeLapseEvent extends Event<Double> {
 		this.value = this.end - this.start;
 	}
 
+	/**
+	 * Restores an instance from its recorded data, for instance, after it has
+	 * been decoded
+	 * 
+	 * @param identifier
+	 *            The identifier of the event
+	 * @param transactionId
+	 *            The transaction of which this event makes part
+	 * @param timestamp
+	 *            The timestamp when the event was raised
+	 * @param start
+	 *            The initial time
+	 * @param end
+	 *            The final time
+	 */
+	public TimeLapseEvent(final UUID identifier, final UUID transactionId,
+			final long timestamp, final long start, final long end) {
+		super(identifier, transactionId, timestamp);
+		this.start = start;
+		this.end = end;
+		this.value = this.end - this.start;
+	}
+
 	/**
 	 * Creates an instance based on a previous instance. This is intended to be
 	 * used when timestamps are taken at different places, i.e., the initial and
@@ -102,19 +123,10 @@ public class TimeLapseEvent extends Event<Double> {
 	}
 
 	/**
-	 * Checks whether this {@link TimeLapseEvent} object was finished measuring
-	 * within a given time window, i.e., {@code this.end} is contained in [
-	 * {@code start} , {@code end}].
-	 * 
-	 * @param start
-	 *            The initial timestamp of the time window
-	 * @param end
-	 *            The final timestamp of the time window
-	 * @return {@code true} if the range [{@code start}, {@code end}] contains
-	 *         the final timestamp {@code this} object
+	 * @return the final timestamp, against which time windows are evaluated
 	 */
-	@Override public boolean isInTimeWindow(final long start, final long end) {
-		return Range.closed(start, end).contains(this.end);
+	@Override public long windowTimestamp() {
+		return this.end;
 	}
 
 	@Override public Double value() {
@@ -40,11 +40,33 @@ import com.google.common.eventbus.EventBus;
  */
 public abstract class AbstractConsumer implements Resumable {
 
+	/**
+	 * Handles the events consumed by a consumer, instead of delegating them
+	 * to the default listener
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static interface Handler {
+
+		/**
+		 * Handles a consumed event
+		 * 
+		 * @param event
+		 *            The consumed event
+		 */
+		public void handle(Event<?> event);
+	}
+
 	/**
 	 * The logger
 	 */
 	protected final Logger logger = LogManager.getLogger(getClass());
 
+	/**
+	 * The handler of the consumed events, if any
+	 */
+	protected volatile Handler handler;
+
 	/**
 	 * Starts consuming messages from the queue
 	 */
@@ -55,6 +77,17 @@ public abstract class AbstractConsumer implements Resumable {
 	 */
 	private volatile boolean paused = false;
 
+	/**
+	 * Sets the handler of the consumed events, which is then used by
+	 * {@link #delegateEventHandling(Event)} instead of the default listener
+	 * 
+	 * @param handler
+	 *            The handler of the consumed events
+	 */
+	public void setHandler(final Handler handler) {
+		this.handler = handler;
+	}
+
 	/**
 	 * Delegates the event handling to an interested component; this may be
 	 * done, for instance, by using an {@link EventBus} object.
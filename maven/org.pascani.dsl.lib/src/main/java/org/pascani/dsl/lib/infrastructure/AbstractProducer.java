@@ -21,8 +21,10 @@ package org.pascani.dsl.lib.infrastructure;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.util.LocalEventProducer;
 import org.pascani.dsl.lib.util.Resumable;
+import org.pascani.dsl.lib.util.TypeFilter;
 
 import com.google.common.eventbus.Subscribe;
 
@@ -39,15 +41,25 @@ import com.google.common.eventbus.Subscribe;
  * point for events should be always {@link #produce(Event)}; this allows to
  * filter messages not supposed to be produced.
  * </p>
+ * <p>
+ * Events are published on the producing thread, unless the asynchronous mode
+ * is enabled (see {@link #asynchronous(int, int, OverflowPolicy, long)}).
+ * </p>
  * 
  * @author Miguel Jiménez - Initial contribution and API
  */
 public abstract class AbstractProducer implements Resumable {
 
 	/**
-	 * The list of event classes configured to be produced
+	 * Decides which event classes are produced
+	 */
+	private volatile TypeFilter filter = TypeFilter.ACCEPT_ALL;
+
+	/**
+	 * The time, in milliseconds, to wait for the events pending to be
+	 * published in background when the asynchronous mode is replaced
 	 */
-	private Class<? extends Event<?>>[] acceptedTypes;
+	protected static final long DRAIN_TIMEOUT = 5000;
 
 	/**
 	 * The logger
@@ -59,6 +71,11 @@ public abstract class AbstractProducer implements Resumable {
 	 */
 	private volatile boolean paused = false;
 
+	/**
+	 * Publishes the events in background, if the asynchronous mode is enabled
+	 */
+	private volatile AsyncPublisher asyncPublisher;
+
 	/**
 	 * Listens for {@link Event}s produced by {@link LocalEventProducer}
 	 * objects.
@@ -68,6 +85,11 @@ public abstract class AbstractProducer implements Resumable {
 	 */
 	@Subscribe public final void produce(Event<?> event) {
 		if (!isPaused() && isAcceptedEvent(event)) {
+			AsyncPublisher async = this.asyncPublisher;
+			if (async != null) {
+				async.offer(event);
+				return;
+			}
 			try {
 				publish(event);
 			} catch (Exception e) {
@@ -100,6 +122,90 @@ public abstract class AbstractProducer implements Resumable {
 	 */
 	public abstract void shutdown() throws Exception;
 	
+	/**
+	 * Publishes the produced events from background threads, so that the
+	 * producing threads never wait for the infrastructure, nor receive its
+	 * failures. Events are queued until they are published; when the queue is
+	 * full, the given overflow policy is applied.
+	 * 
+	 * @param capacity
+	 *            The maximum number of events waiting to be published
+	 * @param publishers
+	 *            The number of publishing threads. With more than one, only
+	 *            the events sharing a key keep their relative order (see
+	 *            {@link AsyncPublisher})
+	 * @param policy
+	 *            The policy applied when the queue is full
+	 * @param blockTimeout
+	 *            The time, in milliseconds, a producing thread waits for room
+	 *            under {@link OverflowPolicy#BLOCK}
+	 * @throws InterruptedException
+	 *             If interrupted while the previous publishing threads finish
+	 */
+	public synchronized void asynchronous(final int capacity,
+			final int publishers, final OverflowPolicy policy,
+			final long blockTimeout) throws InterruptedException {
+		synchronous(DRAIN_TIMEOUT);
+		this.asyncPublisher = new AsyncPublisher(new AsyncPublisher.Sink() {
+			public void publish(Event<?> event) throws Exception {
+				AbstractProducer.this.publish(event);
+			}
+		}, capacity, publishers, policy, blockTimeout);
+	}
+
+	/**
+	 * Enables the asynchronous mode as configured in the
+	 * {@code producer_queue_size}, {@code producer_publishers},
+	 * {@code producer_overflow} and {@code producer_block_timeout} properties
+	 * of the Pascani environment. A queue size of zero keeps publishing events
+	 * on the producing threads.
+	 * 
+	 * @throws InterruptedException
+	 *             If interrupted while the previous publishing threads finish
+	 * @see #asynchronous(int, int, OverflowPolicy, long)
+	 */
+	public void asynchronousAsConfigured() throws InterruptedException {
+		int capacity = Integer.parseInt(PascaniRuntime.getEnvironment().get(
+				"producer_queue_size"));
+		if (capacity > 0) {
+			asynchronous(capacity, Integer.parseInt(PascaniRuntime
+					.getEnvironment().get("producer_publishers")),
+					OverflowPolicy.valueOf(PascaniRuntime.getEnvironment()
+							.get("producer_overflow")), Long
+							.parseLong(PascaniRuntime.getEnvironment().get(
+									"producer_block_timeout")));
+		}
+	}
+
+	/**
+	 * Publishes the produced events on the producing threads, once the events
+	 * waiting to be published in background have been published. Events
+	 * offered to the background publisher while it stops are published on
+	 * the producing threads as well.
+	 * 
+	 * @param timeout
+	 *            The maximum time, in milliseconds, to wait for the pending
+	 *            events
+	 * @return whether all of the pending events were published
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	public synchronized boolean synchronous(final long timeout)
+			throws InterruptedException {
+		AsyncPublisher async = this.asyncPublisher;
+		this.asyncPublisher = null;
+		return async == null || async.stop(timeout);
+	}
+
+	/**
+	 * @return the background publisher, holding the counters of the events
+	 *         enqueued, dropped and published, or {@code null} if events are
+	 *         published on the producing threads
+	 */
+	public AsyncPublisher asyncPublisher() {
+		return this.asyncPublisher;
+	}
+
 	/**
 	 * Establishes a set of event classes to be produced
 	 * 
@@ -107,7 +213,7 @@ public abstract class AbstractProducer implements Resumable {
 	 *            The array of classes implementing {@link Event}
 	 */
 	public void acceptOnly(final Class<? extends Event<?>>... acceptedTypes) {
-		this.acceptedTypes = acceptedTypes;
+		this.filter = new TypeFilter(acceptedTypes);
 	}
 
 	/**
@@ -120,15 +226,7 @@ public abstract class AbstractProducer implements Resumable {
 	 *         classes or not
 	 */
 	protected boolean isAcceptedEvent(final Event<?> event) {
-		boolean accepted = this.acceptedTypes == null;
-
-		if (!accepted) {
-			for (int i = 0; i < this.acceptedTypes.length && !accepted; i++) {
-				accepted = this.acceptedTypes[i].isInstance(event);
-			}
-		}
-
-		return accepted;
+		return this.filter.accepts(event);
 	}
 	
 	/*
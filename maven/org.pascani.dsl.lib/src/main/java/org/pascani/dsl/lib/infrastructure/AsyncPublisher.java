@@ -0,0 +1,400 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQConsumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Publishes the events of an {@link AbstractProducer} from background
+ * threads, so that the threads producing events (e.g., instrumented business
+ * threads) never wait for the message queuing system. Events are queued in a
+ * bounded, lock-free queue; when it is full, an {@link OverflowPolicy} is
+ * applied. Publication failures are logged and counted, but never propagated
+ * to the producing threads.
+ * 
+ * <p>
+ * With several publishing threads, the queue is partitioned by the key of the
+ * events ({@link RabbitMQConsumer#DEFAULT_KEY}), and each thread publishes one
+ * partition; thus, events sharing a key (e.g., the changes of a variable) are
+ * published in the order they were produced, while other events may be
+ * published in a different order. Once the publisher is stopping, events are
+ * no longer queued, but published on the producing thread.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class AsyncPublisher {
+
+	/**
+	 * The publishing function of a producer
+	 */
+	public static interface Sink {
+		public void publish(Event<?> event) throws Exception;
+	}
+
+	/**
+	 * Under {@link OverflowPolicy#SAMPLE}, one out of this number of events is
+	 * queued once the queue is half full
+	 */
+	public static final int SAMPLING_RATE = 10;
+
+	/**
+	 * The time, in nanoseconds, an idle publishing thread waits before polling
+	 * the queue again
+	 */
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * The time, in nanoseconds, a blocked producing thread waits before
+	 * checking the queue again
+	 */
+	private static final long BLOCKED_WAIT = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * The logger
+	 */
+	private final Logger logger = LogManager.getLogger(getClass());
+
+	/**
+	 * The pending events, by publishing thread
+	 */
+	private final List<Queue<Event<?>>> queues;
+
+	/**
+	 * The number of pending events, in all of the queues
+	 */
+	private final AtomicInteger size;
+
+	/**
+	 * The maximum number of pending events
+	 */
+	private final int capacity;
+
+	/**
+	 * The policy applied when the queue is full
+	 */
+	private final OverflowPolicy policy;
+
+	/**
+	 * The time, in nanoseconds, a producing thread waits for room under
+	 * {@link OverflowPolicy#BLOCK}
+	 */
+	private final long blockTimeout;
+
+	/**
+	 * Publishes the queued events
+	 */
+	private final Sink sink;
+
+	/**
+	 * The publishing threads
+	 */
+	private final Thread[] publishers;
+
+	/**
+	 * Whether the publishing threads must stop once the queue is empty
+	 */
+	private volatile boolean stopping;
+
+	/**
+	 * The number of producing threads currently offering an event; the
+	 * publishing threads stop once there are none, so that no event queued
+	 * before stopping is left behind
+	 */
+	private final AtomicInteger offering;
+
+	/**
+	 * Counters of the events queued, dropped, published, and whose publication
+	 * failed
+	 */
+	private final AtomicLong enqueued, dropped, published, failed;
+
+	/**
+	 * Counts the events offered while sampling
+	 */
+	private final AtomicLong sampled;
+
+	/**
+	 * @param sink
+	 *            Publishes the queued events
+	 * @param capacity
+	 *            The maximum number of pending events
+	 * @param publishers
+	 *            The number of publishing threads
+	 * @param policy
+	 *            The policy applied when the queue is full
+	 * @param blockTimeout
+	 *            The time, in milliseconds, a producing thread waits for room
+	 *            under {@link OverflowPolicy#BLOCK}
+	 */
+	public AsyncPublisher(final Sink sink, final int capacity,
+			final int publishers, final OverflowPolicy policy,
+			final long blockTimeout) {
+		if (capacity <= 0 || publishers <= 0)
+			throw new IllegalArgumentException(
+					"Both the capacity and the number of publishers must be positive");
+		this.sink = sink;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.blockTimeout = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+		this.queues = newQueues(publishers);
+		this.size = new AtomicInteger();
+		this.offering = new AtomicInteger();
+		this.enqueued = new AtomicLong();
+		this.dropped = new AtomicLong();
+		this.published = new AtomicLong();
+		this.failed = new AtomicLong();
+		this.sampled = new AtomicLong();
+		ThreadFactory factory = new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("pascani-producer-%d").build();
+		this.publishers = new Thread[publishers];
+		for (int i = 0; i < publishers; i++) {
+			final int partition = i;
+			this.publishers[i] = factory.newThread(new Runnable() {
+				public void run() {
+					publishLoop(partition);
+				}
+			});
+			this.publishers[i].start();
+		}
+	}
+
+	private static List<Queue<Event<?>>> newQueues(final int length) {
+		List<Queue<Event<?>>> queues = new ArrayList<Queue<Event<?>>>(length);
+		for (int i = 0; i < length; i++)
+			queues.add(new ConcurrentLinkedQueue<Event<?>>());
+		return queues;
+	}
+
+	/**
+	 * Queues an event to be published, applying the overflow policy if the
+	 * queue is full. If this publisher is stopping, the event is published on
+	 * the calling thread instead.
+	 * 
+	 * @param event
+	 *            The event to publish
+	 * @return whether the event was queued or published, i.e., it was not
+	 *         dropped
+	 */
+	public boolean offer(final Event<?> event) {
+		this.offering.incrementAndGet();
+		try {
+			if (this.stopping) {
+				publish(event);
+				return true;
+			}
+			int partition = partition(event);
+			boolean queued;
+			switch (this.policy) {
+			case BLOCK:
+				queued = tryAdd(partition, event);
+				if (!queued) {
+					long deadline = System.nanoTime() + this.blockTimeout;
+					while (!queued && System.nanoTime() < deadline
+							&& !this.stopping) {
+						LockSupport.parkNanos(BLOCKED_WAIT);
+						queued = tryAdd(partition, event);
+					}
+					if (!queued && this.stopping) {
+						publish(event);
+						return true;
+					}
+				}
+				break;
+			case DROP_OLDEST:
+				queued = tryAdd(partition, event);
+				while (!queued) {
+					if (pollAny(partition) != null)
+						this.dropped.incrementAndGet();
+					queued = tryAdd(partition, event);
+				}
+				break;
+			case SAMPLE:
+				queued = this.size.get() < this.capacity / 2
+						|| this.sampled.incrementAndGet() % SAMPLING_RATE == 0;
+				queued = queued && tryAdd(partition, event);
+				break;
+			default:
+				queued = tryAdd(partition, event);
+			}
+			if (queued)
+				this.enqueued.incrementAndGet();
+			else
+				this.dropped.incrementAndGet();
+			return queued;
+		} finally {
+			this.offering.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the index of the queue of the given event
+	 */
+	private int partition(final Event<?> event) {
+		if (this.queues.size() == 1)
+			return 0;
+		Object key = RabbitMQConsumer.DEFAULT_KEY.apply(event);
+		int hash = key == null ? 0 : key.hashCode();
+		return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE)
+				% this.queues.size();
+	}
+
+	/**
+	 * Reserves room for an event, and queues it
+	 */
+	private boolean tryAdd(final int partition, final Event<?> event) {
+		int current;
+		do {
+			current = this.size.get();
+			if (current >= this.capacity)
+				return false;
+		} while (!this.size.compareAndSet(current, current + 1));
+		this.queues.get(partition).offer(event);
+		return true;
+	}
+
+	private Event<?> poll(final int partition) {
+		Event<?> event = this.queues.get(partition).poll();
+		if (event != null)
+			this.size.decrementAndGet();
+		return event;
+	}
+
+	/**
+	 * Takes the oldest event of the given queue, or of the next non-empty one
+	 */
+	private Event<?> pollAny(final int partition) {
+		for (int i = 0; i < this.queues.size(); i++) {
+			Event<?> event = poll((partition + i) % this.queues.size());
+			if (event != null)
+				return event;
+		}
+		return null;
+	}
+
+	/**
+	 * Publishes an event on the calling thread
+	 */
+	private void publish(final Event<?> event) {
+		try {
+			this.sink.publish(event);
+			this.published.incrementAndGet();
+		} catch (Exception e) {
+			this.failed.incrementAndGet();
+			this.logger.error("Message " + event.identifier()
+					+ " could not be published", e);
+		}
+	}
+
+	/**
+	 * Publishes the events of a queue until this publisher is stopped, no
+	 * producing thread is still queueing an event, and the queue is empty
+	 */
+	private void publishLoop(final int partition) {
+		while (true) {
+			Event<?> event = poll(partition);
+			if (event == null) {
+				if (this.stopping && this.offering.get() == 0) {
+					// Events queued before the last offer completed
+					event = poll(partition);
+					if (event == null)
+						return;
+				} else {
+					LockSupport.parkNanos(IDLE_WAIT);
+					continue;
+				}
+			}
+			publish(event);
+		}
+	}
+
+	/**
+	 * Stops the publishing threads once they have published the pending
+	 * events
+	 * 
+	 * @param timeout
+	 *            The maximum time, in milliseconds, to wait for the pending
+	 *            events to be published
+	 * @return whether all of the pending events were published within the
+	 *         timeout
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted while waiting
+	 */
+	public boolean stop(final long timeout) throws InterruptedException {
+		this.stopping = true;
+		long deadline = System.currentTimeMillis() + timeout;
+		for (Thread publisher : this.publishers) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining > 0)
+				publisher.join(remaining);
+		}
+		return this.size.get() == 0;
+	}
+
+	/**
+	 * @return the number of events queued so far
+	 */
+	public long enqueued() {
+		return this.enqueued.get();
+	}
+
+	/**
+	 * @return the number of events dropped so far
+	 */
+	public long dropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * @return the number of events published so far
+	 */
+	public long published() {
+		return this.published.get();
+	}
+
+	/**
+	 * @return the number of events whose publication failed so far
+	 */
+	public long failed() {
+		return this.failed.get();
+	}
+
+	/**
+	 * @return the number of events waiting to be published
+	 */
+	public int pending() {
+		return this.size.get();
+	}
+
+}
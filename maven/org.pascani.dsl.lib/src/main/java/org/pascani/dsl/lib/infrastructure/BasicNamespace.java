@@ -18,17 +18,14 @@
  */
 package org.pascani.dsl.lib.infrastructure;
 
-import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.events.ChangeEvent;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.EndPoint;
+import org.pascani.dsl.lib.infrastructure.rabbitmq.Durability;
 import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQProducer;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQRpcServer;
 import org.pascani.dsl.lib.util.TaggedValue;
 
 /**
@@ -47,11 +44,6 @@ import org.pascani.dsl.lib.util.TaggedValue;
  */
 public class BasicNamespace implements Namespace, RpcRequestHandler {
 
-	/**
-	 * A RabbitMQ end point (a connection to the server)
-	 */
-	protected final EndPoint endPoint;
-
 	/**
 	 * An RPC server configured to serve external requests, for instance, from
 	 * {@link Monitor} objects
@@ -80,8 +72,9 @@ public class BasicNamespace implements Namespace, RpcRequestHandler {
 	private volatile boolean paused = false;
 
 	/**
-	 * Creates a basic namespace connected to the RabbitMQ server, identified by
-	 * a unique routing key (the fully qualified name of the namespace).
+	 * Creates a basic namespace connected to the messaging infrastructure,
+	 * identified by a unique routing key (the fully qualified name of the
+	 * namespace).
 	 * 
 	 * <p>
 	 * The producer does not need to be registered as event listener, as only
@@ -94,34 +87,24 @@ public class BasicNamespace implements Namespace, RpcRequestHandler {
 	 *            namespaces exchange
 	 * @throws Exception
 	 *             If something bad happens. Check out
-	 *             {@link RabbitMQRpcServer#RabbitMQRpcServer(EndPoint, String, PascaniRuntime.Context)}
+	 *             {@link Transport#rpcServer(String, PascaniRuntime.Context)}
 	 *             for more information.
 	 */
 	@SuppressWarnings("unchecked") public BasicNamespace(
 			final String routingKey) throws Exception {
 		this.variables = new HashMap<String, Map<Map<String,String>,Serializable>>();
 		this.context = PascaniRuntime.Context.NAMESPACE;
-		this.endPoint = new EndPoint();
-		this.producer = new RabbitMQProducer(endPoint, declareQueue(routingKey),
-				routingKey);
+		Transport transport = Transports.configured();
+		this.producer = transport.producer(PascaniRuntime.getEnvironment()
+				.get("namespaces_exchange"), routingKey);
 		this.producer.acceptOnly(ChangeEvent.class);
-		this.server = new RabbitMQRpcServer(endPoint, routingKey,
+		if (this.producer instanceof RabbitMQProducer)
+			((RabbitMQProducer) this.producer).durability(Durability.CONFIRMED);
+		this.server = transport.rpcServer(routingKey,
 				PascaniRuntime.Context.NAMESPACE);
 		startRpcServer();
 	}
 
-	private String declareQueue(final String routingKey) throws IOException {
-		// Create the corresponding namespace queue for the event producer, and
-		// then create a binding between the queue and the configured namespace
-		// exchange.
-		String queue = routingKey;
-		String exchange = PascaniRuntime.getEnvironment()
-				.get("namespaces_exchange");
-		this.endPoint.channel().queueDeclare(queue, false, true, true, null);
-		this.endPoint.channel().queueBind(queue, exchange, routingKey);
-		return exchange;
-	}
-
 	private void startRpcServer() {
 		this.server.setHandler(this);
 		this.server.start();
@@ -228,7 +211,7 @@ public class BasicNamespace implements Namespace, RpcRequestHandler {
 		if (!isPaused()) {
 			synchronized (this.variables) {
 				Serializable previousValue = this.variables.get(variable).get(tags);
-				ChangeEvent event = new ChangeEvent(UUID.randomUUID(),
+				ChangeEvent event = new ChangeEvent(PascaniRuntime.getIdGenerator().next(),
 						previousValue, value, variable);
 				this.variables.get(variable).put(tags, actualNewValue);
 				this.producer.produce(event);
@@ -272,6 +255,7 @@ public class BasicNamespace implements Namespace, RpcRequestHandler {
 	 */
 	public void shutdown() throws Exception {
 		this.server.shutdown();
+		this.producer.shutdown();
 	}
 
 }
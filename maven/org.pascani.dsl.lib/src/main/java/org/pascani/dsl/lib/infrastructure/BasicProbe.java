@@ -18,17 +18,51 @@
  */
 package org.pascani.dsl.lib.infrastructure;
 
+import java.io.Closeable;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.Probe;
-import org.pascani.dsl.lib.util.EventSet;
+import org.pascani.dsl.lib.events.InvokeEvent;
+import org.pascani.dsl.lib.events.NetworkLatencyEvent;
+import org.pascani.dsl.lib.events.TimeLapseEvent;
+import org.pascani.dsl.lib.util.BufferedEventStore;
+import org.pascani.dsl.lib.util.EventAggregate;
+import org.pascani.dsl.lib.util.EventStore;
+import org.pascani.dsl.lib.util.EventStoreFactory;
+import org.pascani.dsl.lib.util.MappedEventStore;
+import org.pascani.dsl.lib.util.MethodDescriptor;
+import org.pascani.dsl.lib.util.MethodRegistry;
+import org.pascani.dsl.lib.util.PartitionedEventStore;
+import org.pascani.dsl.lib.util.QuantileSketch;
+import org.pascani.dsl.lib.util.RetentionPolicy;
+import org.pascani.dsl.lib.util.Rollup;
+import org.pascani.dsl.lib.util.TypeFilter;
+import org.pascani.dsl.lib.util.TypeIndex;
 
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Implementation of {@link Probe} for basic handling of events.
@@ -44,6 +78,112 @@ import com.google.common.eventbus.Subscribe;
  */
 public class BasicProbe implements Probe, RpcRequestHandler {
 
+	/**
+	 * The period, in milliseconds, at which retention policies are enforced
+	 */
+	public static final long EVICTION_PERIOD = 1000;
+
+	/**
+	 * The time, in milliseconds, after which an unread cursor is released
+	 */
+	public static final long CURSOR_TIMEOUT = 60000;
+
+	/**
+	 * The time, in milliseconds, after which a client polling new events is
+	 * released if it does not poll again
+	 */
+	public static final long WATERMARK_TIMEOUT = 3600000;
+
+	/**
+	 * The maximum number of events kept for the clients polling new events.
+	 * Clients falling further behind miss the oldest events.
+	 */
+	public static final int JOURNAL_CAPACITY = 65536;
+
+	/**
+	 * The approximate event size, in bytes, assumed when an event cannot be
+	 * measured
+	 */
+	private static final long DEFAULT_EVENT_SIZE = 256;
+
+	/**
+	 * The background evictor shared among all probes
+	 */
+	private static final ScheduledExecutorService evictor = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("pascani-probe-evictor")
+					.build());
+
+	/**
+	 * The number of stripes of each maintained sketch, a power of two
+	 */
+	private static final int SKETCH_STRIPES = Integer.highestOneBit(Math
+			.max(Runtime.getRuntime().availableProcessors() * 2 - 1, 1));
+
+	/**
+	 * The quantile sketch of the numeric values of one event type. Values are
+	 * added to one of several sketches, depending on the recording thread, so
+	 * that concurrent threads seldom contend for the same sketch; the stripes
+	 * are merged when the sketch is read.
+	 */
+	private static final class Sketch {
+
+		/**
+		 * The timestamp since which values are sketched
+		 */
+		final long origin;
+
+		/**
+		 * The sketched values, by stripe
+		 */
+		final QuantileSketch[] stripes;
+
+		Sketch(final long origin) {
+			this.origin = origin;
+			this.stripes = new QuantileSketch[SKETCH_STRIPES];
+			for (int i = 0; i < this.stripes.length; i++)
+				this.stripes[i] = new QuantileSketch();
+		}
+
+		/**
+		 * @return the index of the stripe of the current thread
+		 */
+		private int stripe() {
+			long id = Thread.currentThread().getId();
+			return (int) (id ^ (id >>> 16)) & (this.stripes.length - 1);
+		}
+
+		void add(final double value) {
+			this.stripes[stripe()].add(value);
+		}
+
+		/**
+		 * Removes a value from the stripe holding it, trying the stripe of
+		 * the current thread first
+		 */
+		void remove(final double value) {
+			int first = stripe();
+			for (int i = 0; i < this.stripes.length; i++) {
+				int index = (first + i) & (this.stripes.length - 1);
+				if (this.stripes[index].remove(value))
+					return;
+			}
+		}
+
+		/**
+		 * Adds the values of every stripe to the given sketch
+		 */
+		void mergeInto(final QuantileSketch sketch) {
+			for (QuantileSketch stripe : this.stripes)
+				sketch.merge(stripe);
+		}
+	}
+
+	/**
+	 * The logger
+	 */
+	protected final Logger logger = LogManager.getLogger(getClass());
+
 	/**
 	 * An RPC server configured to serve external requests, for instance, from
 	 * {@link Monitor} objects
@@ -53,12 +193,80 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 	/**
 	 * A map holding the events as they are raised, grouped by event type
 	 */
-	private final Map<String, EventSet<Event<?>>> events;
+	private final ConcurrentMap<String, EventStore<Event<?>>> events;
+
+	/**
+	 * The keys of the event stores, by each type in the events' hierarchy
+	 */
+	private final TypeIndex storedTypes;
+
+	/**
+	 * Creates the stores in which events are recorded
+	 */
+	private final EventStoreFactory storeFactory;
+
+	/**
+	 * The approximate size, in bytes, of the events of each type
+	 */
+	private final ConcurrentMap<String, Long> eventSizes;
+
+	/**
+	 * The number of events evicted so far, grouped by event type
+	 */
+	private final ConcurrentMap<String, AtomicLong> evictions;
+
+	/**
+	 * The quantile sketches of the numeric values of each event type
+	 */
+	private final ConcurrentMap<String, Sketch> sketches;
+
+	/**
+	 * Bounds the events retained by this probe
+	 */
+	private volatile RetentionPolicy retentionPolicy = RetentionPolicy.UNBOUNDED;
+
+	/**
+	 * The number of buckets to retain for each rollup resolution, by
+	 * resolution
+	 */
+	private volatile Map<Long, Integer> rollupResolutions = Collections
+			.emptyMap();
+
+	/**
+	 * The rollups of the events of each type, by event type and resolution
+	 */
+	private final ConcurrentMap<String, ConcurrentSkipListMap<Long, Rollup>> rollups;
+
+	/**
+	 * The scheduled enforcement of the retention policy, if any
+	 */
+	private ScheduledFuture<?> eviction;
+
+	/**
+	 * The cursors opened to transfer query results in pages
+	 */
+	private final EventCursors cursors;
+
+	/**
+	 * The scheduled expiration of unread cursors
+	 */
+	private final ScheduledFuture<?> cursorExpiration;
+
+	/**
+	 * The recorded events numbered in sequence, for clients polling the events
+	 * recorded since their previous poll
+	 */
+	private final EventJournal journal;
 
 	/**
 	 * An array of {@link Event} subclasses allowed to be accepted by this probe
 	 */
 	protected Class<? extends Event<?>>[] acceptedTypes;
+
+	/**
+	 * Decides which events are recorded, according to {@link #acceptedTypes}
+	 */
+	private volatile TypeFilter filter = TypeFilter.ACCEPT_ALL;
 	
 	/**
 	 * The variable representing the current state (stopped or not)
@@ -68,14 +276,50 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 	/**
 	 * Creates an instance of {@link Probe} with an empty set of events, and
 	 * with a unique identifier within the RPC queue (contained in the
-	 * {@link RpcServer}).
+	 * {@link RpcServer}). Events are recorded in
+	 * {@link PartitionedEventStore} instances.
 	 * 
 	 * @param server
 	 *            A configured {@link RpcServer} instance
 	 */
 	public BasicProbe(final RpcServer server) {
+		this(server, new PartitionedEventStore.Factory());
+	}
+
+	/**
+	 * Creates an instance of {@link Probe} with an empty set of events, and
+	 * with a unique identifier within the RPC queue (contained in the
+	 * {@link RpcServer}).
+	 * 
+	 * @param server
+	 *            A configured {@link RpcServer} instance
+	 * @param storeFactory
+	 *            Creates the stores in which events are recorded, one per event
+	 *            type. Use {@link BufferedEventStore.Factory} for recording
+	 *            from many threads concurrently, and
+	 *            {@link MappedEventStore.Factory} for keeping events off the
+	 *            heap. Stores implementing {@link Closeable} are closed when
+	 *            this probe is shut down
+	 */
+	public BasicProbe(final RpcServer server,
+			final EventStoreFactory storeFactory) {
 		this.server = server;
-		this.events = new HashMap<String, EventSet<Event<?>>>();
+		this.storeFactory = storeFactory;
+		this.events = new ConcurrentHashMap<String, EventStore<Event<?>>>();
+		this.storedTypes = new TypeIndex();
+		this.eventSizes = new ConcurrentHashMap<String, Long>();
+		this.evictions = new ConcurrentHashMap<String, AtomicLong>();
+		this.sketches = new ConcurrentHashMap<String, Sketch>();
+		this.rollups = new ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Rollup>>();
+		this.cursors = new EventCursors(CURSOR_TIMEOUT);
+		this.journal = new EventJournal(WATERMARK_TIMEOUT,
+				JOURNAL_CAPACITY);
+		this.cursorExpiration = evictor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				cursors.expire();
+				journal.expire();
+			}
+		}, EVICTION_PERIOD, EVICTION_PERIOD, TimeUnit.MILLISECONDS);
 		
 		// Start serving RPC requests
 		this.server.setHandler(this);
@@ -90,14 +334,17 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 	 */
 	public void acceptOnly(final Class<? extends Event<?>>... acceptedTypes) {
 		this.acceptedTypes = acceptedTypes;
+		this.filter = new TypeFilter(acceptedTypes);
 	}
 
 	/**
-	 * Listens for events and records them into an {@link EventSet}. When the
+	 * Listens for events and records them into an {@link EventStore}. When the
 	 * {@link #acceptOnly(Class...)} method has been invoked, a check will be
 	 * performed each time an event is received; if the event is instance of one
 	 * of the accepted classes, it will be recorded and {@code true} is
-	 * returned; otherwise, false is returned.
+	 * returned; otherwise, false is returned. Duplicate events are not
+	 * recorded; with a {@link BufferedEventStore}, they are detected (and
+	 * skipped) later on, once the event is merged.
 	 * 
 	 * @param event
 	 *            The event to record
@@ -106,37 +353,293 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 		boolean recorded = false;
 		boolean accept = isAcceptedEvent(event);
 		if (!this.paused && accept) {
-			String key = event.getClass().getCanonicalName();
-			synchronized (this.events) {
-				if (this.events.get(key) == null)
-					this.events.put(key, new EventSet<Event<?>>());
-				recorded = this.events.get(key).add(event);
+			final String key = event.getClass().getCanonicalName();
+			EventStore<Event<?>> store = this.events.get(key);
+			if (store == null) {
+				EventStore<Event<?>> newStore = this.storeFactory.newStore(key);
+				if (newStore instanceof BufferedEventStore) {
+					// Accounted for once merged, as duplicates are known then
+					((BufferedEventStore<Event<?>>) newStore)
+							.setListener(new BufferedEventStore.Listener<Event<?>>() {
+								public void recorded(Event<?> recorded) {
+									account(key, recorded);
+								}
+							});
+				}
+				store = this.events.putIfAbsent(key, newStore);
+				if (store == null) {
+					store = newStore;
+					this.storedTypes.add(event.getClass(), key);
+					this.eventSizes.put(key, sizeOf(event));
+					this.evictions.putIfAbsent(key, new AtomicLong());
+					this.sketches.putIfAbsent(key, new Sketch(Math.min(
+							event.windowTimestamp(), PascaniRuntime.getClock()
+									.nanos())));
+				}
+			}
+			if (store.add(event)) {
+				account(key, event);
+				recorded = true;
+			} else {
+				recorded = store instanceof BufferedEventStore;
 			}
 		}
 		return recorded;
 	}
 
-	protected boolean isAcceptedEvent(final Event<?> event) {
-		boolean accepted = this.acceptedTypes == null;
-		if (!accepted) {
-			for (int i = 0; i < this.acceptedTypes.length && !accepted; i++) {
-				accepted = this.acceptedTypes[i].isInstance(event);
+	/**
+	 * Adds a recorded event to the journal, the sketch and the rollups of its
+	 * type
+	 */
+	private void account(final String key, final Event<?> event) {
+		this.journal.append(event);
+		sketch(key, event, true);
+		if (!this.rollupResolutions.isEmpty()) {
+			for (Rollup rollup : rollupsOf(key).values())
+				rollup.add(event);
+		}
+	}
+
+	/**
+	 * Approximates the size of an event by means of its serialized form
+	 */
+	private long sizeOf(final Event<?> event) {
+		try {
+			return SerializationUtils.serialize(event).length;
+		} catch (Exception e) {
+			return DEFAULT_EVENT_SIZE;
+		}
+	}
+
+	/**
+	 * Establishes the policy bounding the events retained by this probe, per
+	 * event type. The policy is enforced in background every
+	 * {@link #EVICTION_PERIOD} milliseconds.
+	 * 
+	 * @param policy
+	 *            The retention policy
+	 */
+	public synchronized void retentionPolicy(final RetentionPolicy policy) {
+		this.retentionPolicy = policy;
+		if (this.eviction != null) {
+			this.eviction.cancel(false);
+			this.eviction = null;
+		}
+		if (!policy.isUnbounded()) {
+			this.eviction = evictor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						enforceRetentionPolicy();
+					} catch (Exception e) {
+						logger.error("Error enforcing the retention policy", e);
+					}
+				}
+			}, EVICTION_PERIOD, EVICTION_PERIOD, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Maintains incremental rollups of the events of each type at the given
+	 * resolution, from now on. The counts and summaries (without percentiles)
+	 * of time windows starting at a bucket edge, and ending right before a
+	 * bucket edge or after the current time, are then computed from the
+	 * rollups, in time proportional to the number of buckets. Rollups are not
+	 * affected by the retention policy, thus raw events can be evicted
+	 * earlier than the rollups, and such counts and summaries include the
+	 * evicted events (whereas fetching the same window does not).
+	 * 
+	 * @param resolution
+	 *            The width of the buckets, in nanoseconds (e.g.,
+	 *            {@link Rollup#MINUTE})
+	 * @param buckets
+	 *            The number of most recent buckets to retain
+	 */
+	public synchronized void rollup(final long resolution, final int buckets) {
+		Map<Long, Integer> resolutions = new HashMap<Long, Integer>(
+				this.rollupResolutions);
+		resolutions.put(resolution, buckets);
+		this.rollupResolutions = resolutions;
+		for (String type : this.events.keySet()) {
+			ConcurrentSkipListMap<Long, Rollup> rollups = rollupsOf(type);
+			if (rollups.get(resolution).retained() != buckets)
+				rollups.put(resolution, new Rollup(resolution, buckets,
+						PascaniRuntime.getClock().nanos()));
+		}
+	}
+
+	/**
+	 * Discards the rollups of this probe
+	 */
+	public synchronized void disableRollups() {
+		this.rollupResolutions = Collections.emptyMap();
+		this.rollups.clear();
+	}
+
+	/**
+	 * @return the rollups of the given event type, by resolution, creating
+	 *         those missing
+	 */
+	private ConcurrentSkipListMap<Long, Rollup> rollupsOf(final String type) {
+		ConcurrentSkipListMap<Long, Rollup> rollups = this.rollups.get(type);
+		if (rollups == null) {
+			ConcurrentSkipListMap<Long, Rollup> newRollups = new ConcurrentSkipListMap<Long, Rollup>();
+			rollups = this.rollups.putIfAbsent(type, newRollups);
+			if (rollups == null)
+				rollups = newRollups;
+		}
+		Map<Long, Integer> resolutions = this.rollupResolutions;
+		if (rollups.size() < resolutions.size()) {
+			for (Map.Entry<Long, Integer> entry : resolutions.entrySet()) {
+				if (!rollups.containsKey(entry.getKey()))
+					rollups.putIfAbsent(entry.getKey(), new Rollup(
+							entry.getKey(), entry.getValue(), PascaniRuntime
+									.getClock().nanos()));
+			}
+		}
+		return rollups;
+	}
+
+	/**
+	 * Merges the buffered events of the given type, if its store is a
+	 * {@link BufferedEventStore}, so that they are accounted for in the
+	 * journal, the sketch and the rollups
+	 */
+	private void merge(final String type) {
+		EventStore<Event<?>> store = this.events.get(type);
+		if (store instanceof BufferedEventStore)
+			((BufferedEventStore<Event<?>>) store).merge();
+	}
+
+	/**
+	 * Merges the buffered events of all types
+	 * 
+	 * @see #merge(String)
+	 */
+	private void mergeAll() {
+		for (String type : this.events.keySet())
+			merge(type);
+	}
+
+	/**
+	 * @return the coarsest rollup of the given event type that covers the
+	 *         given time window, or {@code null} if there is none
+	 */
+	private Rollup rollupFor(final String type, final long start,
+			final long end) {
+		ConcurrentSkipListMap<Long, Rollup> rollups = this.rollups.get(type);
+		if (rollups == null)
+			return null;
+		merge(type);
+		long now = PascaniRuntime.getClock().nanos();
+		for (Rollup rollup : rollups.descendingMap().values()) {
+			if (rollup.covers(start, end, now))
+				return rollup;
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the value of an event to, or removes it from, the sketch of its type
+	 */
+	private void sketch(final String type, final Event<?> event,
+			final boolean add) {
+		Sketch sketch = this.sketches.get(type);
+		if (sketch == null || !(event.value() instanceof Number)
+				|| event.windowTimestamp() < sketch.origin)
+			return;
+		double value = ((Number) event.value()).doubleValue();
+		if (add)
+			sketch.add(value);
+		else
+			sketch.remove(value);
+	}
+
+	/**
+	 * Discounts the removed events of the given type from the rollups,
+	 * sketches and journal
+	 */
+	private List<Event<?>> discount(final String type,
+			final List<Event<?>> removed) {
+		for (Event<?> event : removed)
+			sketch(type, event, false);
+		ConcurrentSkipListMap<Long, Rollup> rollups = this.rollups.get(type);
+		if (rollups != null) {
+			for (Rollup rollup : rollups.values()) {
+				for (Event<?> event : removed)
+					rollup.remove(event);
 			}
 		}
-		return accepted;
+		this.journal.remove(removed);
+		return removed;
+	}
+
+	/**
+	 * @return the policy bounding the events retained by this probe
+	 */
+	public RetentionPolicy retentionPolicy() {
+		return this.retentionPolicy;
 	}
 
+	/**
+	 * Evicts the events exceeding the limits of the retention policy
+	 */
+	protected void enforceRetentionPolicy() {
+		RetentionPolicy policy = this.retentionPolicy;
+		if (policy.isUnbounded())
+			return;
+		long olderThan = policy.olderThan(PascaniRuntime.getClock().nanos());
+		long retained = 0;
+		for (Map.Entry<String, EventStore<Event<?>>> entry : this.events
+				.entrySet()) {
+			String type = entry.getKey();
+			Long size = this.eventSizes.get(type);
+			int maxEvents = policy.maxEvents(size == null ? 0 : size);
+			int evicted = entry.getValue().evict(olderThan, maxEvents);
+			if (evicted > 0)
+				this.evictions.get(type).addAndGet(evicted);
+			retained += maxEvents;
+		}
+		this.journal.evict(olderThan,
+				(int) Math.min(retained, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * @return the number of events evicted so far, grouped by event type
+	 */
+	public HashMap<String, Long> evictions() {
+		HashMap<String, Long> evictions = new HashMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : this.evictions.entrySet())
+			evictions.put(entry.getKey(), entry.getValue().get());
+		return evictions;
+	}
+
+	/**
+	 * @return the descriptors of the methods known in this component, by
+	 *         identifier (see {@link MethodRegistry})
+	 */
+	public HashMap<Integer, MethodDescriptor> methods() {
+		return MethodRegistry.table();
+	}
+
+	protected boolean isAcceptedEvent(final Event<?> event) {
+		return this.filter.accepts(event);
+	}
+
+	/**
+	 * Resolves the keys of the stores holding events of the given types,
+	 * including their subtypes (e.g., {@link Event} refers to all of the
+	 * stored events)
+	 */
 	protected List<String> types(
 			final List<Class<? extends Event<?>>> eventTypes) {
 		
-		List<String> types = new ArrayList<String>();
-		if (eventTypes == null || eventTypes.isEmpty()) {
-			types.addAll(this.events.keySet());
-		} else {
-			for (Class<? extends Event<?>> t : eventTypes)
-				types.add(t.getCanonicalName());
-		}
-		return types;
+		if (eventTypes == null || eventTypes.isEmpty())
+			return new ArrayList<String>(this.events.keySet());
+		
+		Set<String> types = new LinkedHashSet<String>();
+		for (Class<? extends Event<?>> t : eventTypes)
+			types.addAll(this.storedTypes.keys(t));
+		return new ArrayList<String>(types);
 	}
 
 	/*
@@ -150,26 +653,40 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 		boolean removed = false;
 		for (String clazz : types(eventTypes)) {
 			if (this.events.containsKey(clazz)) {
-				removed = removed
-						|| this.events.get(clazz).clean(start, end).size() > 1;
+				removed = !discount(clazz,
+						this.events.get(clazz).clean(start, end)).isEmpty()
+						|| removed;
 			}
 		}
 		return removed;
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Counts the events raised within a time window. Windows aligned to a
+	 * rollup (see {@link #rollup(long, int)}) are counted from the rollup,
+	 * which includes the events evicted by the retention policy, but not the
+	 * cleaned ones; other windows are counted from the recorded events, thus
+	 * evicted events are not included.
 	 * 
-	 * @see pascani.lang.Probe#count(long, long, java.util.List)
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param eventTypes
+	 *            The types of events to count, or an empty list to count all
+	 *            of them
+	 * @return the number of events within the given time window
 	 */
 	public int count(final long start, final long end,
 			final List<Class<? extends Event<?>>> eventTypes) {
 
 		int count = 0;
 		for (String clazz : types(eventTypes)) {
-			if (this.events.containsKey(clazz)) {
+			Rollup rollup = rollupFor(clazz, start, end);
+			if (rollup != null)
+				count += rollup.count(start, end);
+			else if (this.events.containsKey(clazz))
 				count += this.events.get(clazz).count(start, end);
-			}
 		}
 		return count;
 	}
@@ -185,7 +702,8 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 		int count = 0;
 		for (String clazz : types(eventTypes)) {
 			if (this.events.containsKey(clazz)) {
-				count += this.events.get(clazz).clean(start, end).size();
+				count += discount(clazz,
+						this.events.get(clazz).clean(start, end)).size();
 			}
 		}
 		return count;
@@ -202,7 +720,7 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 		List<Event<?>> fetched = new ArrayList<Event<?>>();
 		for (String clazz : types(eventTypes)) {
 			if (this.events.containsKey(clazz)) {
-				fetched.addAll(this.events.get(clazz).filter(start, end));
+				fetched.addAll(this.events.get(clazz).fetch(start, end));
 			}
 		}
 		return fetched;
@@ -219,28 +737,343 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 		List<Event<?>> fetched = new ArrayList<Event<?>>();
 		for (String clazz : types(eventTypes)) {
 			if (this.events.containsKey(clazz)) {
-				fetched.addAll(this.events.get(clazz).clean(start, end));
+				fetched.addAll(discount(clazz,
+						this.events.get(clazz).clean(start, end)));
 			}
 		}
 		return fetched;
 	}
 
+	/**
+	 * Reads the pages of a cursor from the stores of the given types, removing
+	 * the events through {@link #discount(String, List)} when cleaning
+	 * 
+	 * @param eventTypes
+	 *            The types of events to page, or an empty list to page all of
+	 *            them
+	 * @return a source for {@link EventCursors}
+	 */
+	private EventCursors.Source source(
+			final List<Class<? extends Event<?>>> eventTypes) {
+		return new EventCursors.Source() {
+			public List<Event<?>> fetch(long start, long end, int limit) {
+				List<Event<?>> fetched = new ArrayList<Event<?>>();
+				for (String clazz : types(eventTypes)) {
+					EventStore<Event<?>> store = events.get(clazz);
+					if (store != null)
+						fetched.addAll(store.fetch(start, end, limit));
+				}
+				return fetched;
+			}
+			public void clean(long start, long end) {
+				for (String clazz : types(eventTypes)) {
+					EventStore<Event<?>> store = events.get(clazz);
+					if (store != null)
+						discount(clazz, store.clean(start, end));
+				}
+			}
+		};
+	}
+
+	/**
+	 * Fetches the events recorded since the previous call made by the same
+	 * client. The first call of a client registers it, and returns no events.
+	 * A client polling this probe periodically receives each event once,
+	 * regardless of other clients polling this probe, as long as it polls
+	 * within {@link #WATERMARK_TIMEOUT} milliseconds, and does not fall behind
+	 * by more than {@link #JOURNAL_CAPACITY} events. Evicted and cleaned
+	 * events are not fetched.
+	 * 
+	 * @param client
+	 *            The unique identifier of the client
+	 * @param eventTypes
+	 *            The types of events to fetch, or an empty list to fetch all of
+	 *            them. Events of other types are skipped for this client, thus
+	 *            it should always request the same types
+	 * @return the new events, sorted by the order in which they were recorded
+	 */
+	public List<Event<?>> fetchSince(final String client,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		mergeAll();
+		return this.journal.fetch(client, typeNames(eventTypes));
+	}
+
+	/**
+	 * Counts the events recorded since the previous call made by the same
+	 * client
+	 * 
+	 * @see #fetchSince(String, List)
+	 */
+	public int countSince(final String client,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		mergeAll();
+		return this.journal.count(client, typeNames(eventTypes));
+	}
+
+	/**
+	 * @return the canonical names of the given types, or {@code null} if
+	 *         there are none
+	 */
+	private HashSet<String> typeNames(
+			final List<Class<? extends Event<?>>> eventTypes) {
+		if (eventTypes == null || eventTypes.isEmpty())
+			return null;
+		return new HashSet<String>(types(eventTypes));
+	}
+
+	/**
+	 * Summarizes the values of the numeric-based events raised within a time
+	 * window. As in {@link #count(long, long, List)}, summaries without
+	 * percentiles of windows aligned to a rollup include the events evicted
+	 * by the retention policy. Other windows, and those whose minimum or
+	 * maximum are no longer known because events were cleaned, are summarized
+	 * from the recorded events.
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param eventTypes
+	 *            The types of events to summarize, or an empty list to
+	 *            summarize all of them
+	 * @param percentiles
+	 *            The percentiles to compute, in the range (0, 100]
+	 * @return the summary of the events' values
+	 */
+	public EventAggregate aggregate(final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		if (percentiles.length > 0)
+			return EventAggregate.of(fetch(start, end, eventTypes),
+					percentiles);
+		EventAggregate aggregate = EventAggregate
+				.of(new ArrayList<Event<?>>());
+		for (String clazz : types(eventTypes)) {
+			if (this.events.containsKey(clazz))
+				aggregate = EventAggregate.merge(aggregate,
+						aggregate(clazz, start, end));
+		}
+		return aggregate;
+	}
+
+	/**
+	 * Summarizes the values of the events of the given type raised within a
+	 * time window, from a rollup if possible
+	 */
+	private EventAggregate aggregate(final String type, final long start,
+			final long end) {
+		Rollup rollup = rollupFor(type, start, end);
+		EventAggregate aggregate = null;
+		if (rollup != null)
+			aggregate = rollup.aggregate(start, end);
+		if (aggregate == null)
+			aggregate = EventAggregate.of(this.events.get(type).fetch(start,
+					end));
+		return aggregate;
+	}
+
+	/**
+	 * Sketches the distribution of the values of the numeric-based events
+	 * raised within a time window, so that their percentiles can be estimated
+	 * and merged with the sketches of other probes. Windows spanning from
+	 * before the first event of a type was recorded up to the current time are
+	 * answered from the sketch maintained incrementally for such type, which
+	 * includes the events evicted by the retention policy; other windows are
+	 * sketched from the recorded events.
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param eventTypes
+	 *            The types of events to sketch, or an empty list to sketch all
+	 *            of them
+	 * @return a sketch with the {@link QuantileSketch#DEFAULT_ACCURACY}
+	 */
+	public QuantileSketch sketch(final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		QuantileSketch sketch = new QuantileSketch();
+		long now = PascaniRuntime.getClock().nanos();
+		for (String clazz : types(eventTypes)) {
+			if (!this.events.containsKey(clazz))
+				continue;
+			Sketch maintained = this.sketches.get(clazz);
+			if (maintained != null && start <= maintained.origin && end >= now) {
+				merge(clazz);
+				maintained.mergeInto(sketch);
+			} else {
+				sketch.merge(QuantileSketch.of(this.events.get(clazz).fetch(
+						start, end)));
+			}
+		}
+		return sketch;
+	}
+
+	/**
+	 * Summarizes the values of the numeric-based events raised within a time
+	 * window, grouped by event type
+	 * 
+	 * @see #aggregate(long, long, List, double...)
+	 */
+	public HashMap<String, EventAggregate> aggregateByType(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		HashMap<String, EventAggregate> aggregates = new HashMap<String, EventAggregate>();
+		for (String clazz : types(eventTypes)) {
+			if (!this.events.containsKey(clazz))
+				continue;
+			Rollup rollup = percentiles.length == 0 ? rollupFor(clazz,
+					start, end) : null;
+			EventAggregate aggregate = rollup == null ? null : rollup
+					.aggregate(start, end);
+			if (aggregate != null) {
+				if (rollup.count(start, end) > 0)
+					aggregates.put(clazz, aggregate);
+			} else {
+				List<Event<?>> fetched = this.events.get(clazz).fetch(start,
+						end);
+				if (!fetched.isEmpty())
+					aggregates.put(clazz,
+							EventAggregate.of(fetched, percentiles));
+			}
+		}
+		return aggregates;
+	}
+
+	/**
+	 * Summarizes the latencies of the method executions observed within a time
+	 * window, grouped by the signature of the executed method. Only events
+	 * carrying both a method and a latency are summarized:
+	 * {@link NetworkLatencyEvent}s, and {@link TimeLapseEvent}s whose
+	 * {@link InvokeEvent} (i.e., the one with the same transaction) is stored
+	 * in this probe. The values of invoke, return and exception events are
+	 * timestamps, thus these events are ignored, as well as time lapses whose
+	 * invoke event was not recorded or has been removed.
+	 * 
+	 * @see #aggregate(long, long, List, double...)
+	 */
+	public HashMap<String, EventAggregate> aggregateByMethod(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		Map<String, List<Event<?>>> groups = new HashMap<String, List<Event<?>>>();
+		List<TimeLapseEvent> lapses = new ArrayList<TimeLapseEvent>();
+		for (Event<?> event : fetch(start, end, eventTypes)) {
+			if (event instanceof TimeLapseEvent) {
+				lapses.add((TimeLapseEvent) event);
+			} else if (event instanceof NetworkLatencyEvent) {
+				NetworkLatencyEvent e = (NetworkLatencyEvent) event;
+				group(groups, MethodDescriptor.signature(e.methodProvider(),
+						e.method(), e.methodParameters()), event);
+			}
+		}
+		if (!lapses.isEmpty()) {
+			Map<UUID, String> signatures = invocations(start, lapses);
+			for (TimeLapseEvent lapse : lapses) {
+				String signature = signatures.get(lapse.transactionId());
+				if (signature != null)
+					group(groups, signature, lapse);
+			}
+		}
+		HashMap<String, EventAggregate> aggregates = new HashMap<String, EventAggregate>();
+		for (Map.Entry<String, List<Event<?>>> entry : groups.entrySet())
+			aggregates.put(entry.getKey(),
+					EventAggregate.of(entry.getValue(), percentiles));
+		return aggregates;
+	}
+
+	private static void group(final Map<String, List<Event<?>>> groups,
+			final String signature, final Event<?> event) {
+		List<Event<?>> group = groups.get(signature);
+		if (group == null) {
+			group = new ArrayList<Event<?>>();
+			groups.put(signature, group);
+		}
+		group.add(event);
+	}
+
+	/**
+	 * Resolves the signature of the method executed within the transaction of
+	 * each of the given time lapses, from the stored invoke events. Invoke
+	 * events are raised just before the time lapse starts, thus they are
+	 * looked up from the earliest start minus the longest time lapse, to make
+	 * up for the time elapsed between them.
+	 * 
+	 * @return the method signatures, by transaction identifier
+	 */
+	private Map<UUID, String> invocations(final long start,
+			final List<TimeLapseEvent> lapses) {
+		Set<UUID> transactions = new HashSet<UUID>();
+		long from = start;
+		long longest = 0;
+		long to = start;
+		for (TimeLapseEvent lapse : lapses) {
+			transactions.add(lapse.transactionId());
+			from = Math.min(from, lapse.start());
+			longest = Math.max(longest, lapse.end() - lapse.start());
+			to = Math.max(to, lapse.windowTimestamp());
+		}
+		List<Class<? extends Event<?>>> types = new ArrayList<Class<? extends Event<?>>>();
+		types.add(InvokeEvent.class);
+		Map<UUID, String> signatures = new HashMap<UUID, String>();
+		for (Event<?> event : fetch(from - longest, to, types)) {
+			if (transactions.contains(event.transactionId()))
+				signatures.put(event.transactionId(),
+						((InvokeEvent) event).descriptor().signature());
+		}
+		return signatures;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see pascani.lang.infrastructure.RpcRequestHandler#handle(pascani.lang.
 	 * infrastructure.RpcRequest)
 	 */
-	public synchronized Serializable handle(final RpcRequest request) {
+	public Serializable handle(final RpcRequest request) {
+		Serializable response = null;
+		
+		// Common operations
+		if (request.operation().equals(RpcOperation.PAUSE)) {
+			pause();
+			response = true;
+		} else if (request.operation().equals(RpcOperation.RESUME)) {
+			unpause();
+			response = true;
+		} else if (request.operation().equals(RpcOperation.IS_PAUSED)) {
+			response = isPaused();
+		}
+		
+		// Probe operations
+		else if (request.operation().equals(RpcOperation.PROBE_EVICTIONS))
+			response = evictions();
+		else if (request.operation().equals(RpcOperation.PROBE_METHODS))
+			response = methods();
+		else if (request.operation().equals(RpcOperation.PROBE_CURSOR_NEXT))
+			response = this.cursors.next((UUID) request.getParameter(0),
+					(Integer) request.getParameter(1));
+		else if (request.operation().equals(RpcOperation.PROBE_CURSOR_CLOSE))
+			response = this.cursors.close((UUID) request.getParameter(0));
+		else if (request.operation().equals(RpcOperation.PROBE_FETCH_SINCE))
+			response = (Serializable) fetchSince(
+					(String) request.getParameter(0), eventTypes(request, 1));
+		else if (request.operation().equals(RpcOperation.PROBE_COUNT_SINCE))
+			response = countSince((String) request.getParameter(0),
+					eventTypes(request, 1));
+		else
+			response = handleQuery(request);
+			
+		return response;
+	}
+
+	/**
+	 * Handles the operations querying events within a time window
+	 */
+	private Serializable handleQuery(final RpcRequest request) {
 		Serializable response = null;
 		long start = (Long) request.getParameter(0);
 		long end = (Long) request.getParameter(1);
-
-		@SuppressWarnings("unchecked")
-		List<Class<? extends Event<?>>> eventTypes = (List<Class<? extends Event<?>>>) request
-				.getParameter(2);
+		List<Class<? extends Event<?>>> eventTypes = eventTypes(request, 2);
 		
-		// Probe operations
 		if (request.operation().equals(RpcOperation.PROBE_CLEAN))
 			response = cleanData(start, end, eventTypes);
 		else if (request.operation().equals(RpcOperation.PROBE_COUNT))
@@ -251,20 +1084,45 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 			response = (Serializable) fetch(start, end, eventTypes);
 		else if (request.operation().equals(RpcOperation.PROBE_FETCH_AND_CLEAN))
 			response = (Serializable) fetchAndClean(start, end, eventTypes);
+		else if (request.operation().equals(RpcOperation.PROBE_CURSOR_OPEN))
+			response = this.cursors.open(source(eventTypes), start, end, false);
+		else if (request.operation().equals(RpcOperation.PROBE_CURSOR_OPEN_AND_CLEAN))
+			response = this.cursors.open(source(eventTypes), start, end, true);
+		else if (request.operation().equals(RpcOperation.PROBE_AGGREGATE))
+			response = aggregate(start, end, eventTypes, percentiles(request));
+		else if (request.operation().equals(RpcOperation.PROBE_AGGREGATE_BY_TYPE))
+			response = aggregateByType(start, end, eventTypes,
+					percentiles(request));
+		else if (request.operation().equals(RpcOperation.PROBE_AGGREGATE_BY_METHOD))
+			response = aggregateByMethod(start, end, eventTypes,
+					percentiles(request));
+		else if (request.operation().equals(RpcOperation.PROBE_SKETCH))
+			response = sketch(start, end, eventTypes);
 		
-		// Common operations
-		else if (request.operation().equals(RpcOperation.PAUSE)) {
-			pause();
-			response = true;
-		} else if (request.operation().equals(RpcOperation.RESUME)) {
-			unpause();
-			response = true;
-		} else if (request.operation().equals(RpcOperation.IS_PAUSED)) {
-			response = isPaused();
-		}
-			
 		return response;
 	}
+
+	/**
+	 * Reads the requested event types from a request
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Class<? extends Event<?>>> eventTypes(
+			final RpcRequest request, final int index) {
+		return (List<Class<? extends Event<?>>>) request.getParameter(index);
+	}
+
+	/**
+	 * Reads the requested percentiles from an aggregation request
+	 */
+	private double[] percentiles(final RpcRequest request) {
+		@SuppressWarnings("unchecked")
+		List<Double> list = request.length() > 3 ? (List<Double>) request
+				.getParameter(3) : null;
+		double[] percentiles = new double[list == null ? 0 : list.size()];
+		for (int i = 0; i < percentiles.length; i++)
+			percentiles[i] = list.get(i);
+		return percentiles;
+	}
 	
 	/*
 	 * (non-Javadoc)
@@ -300,7 +1158,15 @@ public class BasicProbe implements Probe, RpcRequestHandler {
 	 *             If something bad happens!
 	 */
 	public void shutdown() throws Exception {
+		retentionPolicy(RetentionPolicy.UNBOUNDED);
+		this.cursorExpiration.cancel(false);
+		this.cursors.clear();
+		this.journal.clear();
 		this.server.shutdown();
+		for (EventStore<Event<?>> store : this.events.values()) {
+			if (store instanceof Closeable)
+				((Closeable) store).close();
+		}
 	}
 
 }
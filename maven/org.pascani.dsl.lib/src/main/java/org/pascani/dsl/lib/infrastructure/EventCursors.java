@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.PascaniRuntime;
+
+/**
+ * Keeps the queries opened as cursors on a {@link BasicProbe}, so that their
+ * results can be transferred in pages of a bounded size. Pages are read
+ * lazily from the event stores, starting from the position (window timestamp
+ * and identifiers already served) reached by the previous page, so opening a
+ * cursor does not materialize the whole result. A cursor is released once its
+ * last page has been served, when it is closed, or after it has not been read
+ * for a while.
+ * <p>
+ * Cursors opened with cleaning remove the events from the stores only after
+ * they have been served, so the events of an expired cursor that were not
+ * read remain available. Events arriving late, with a window timestamp before
+ * the position of such a cursor, are removed without being served.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class EventCursors {
+
+	/**
+	 * The stores a cursor reads its pages from
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public interface Source {
+
+		/**
+		 * Fetches at least the first {@code limit} events (or all of them, if
+		 * there are fewer) within the time window [{@code start}, {@code end}]
+		 * , by window timestamp. The events may be returned in any order.
+		 * 
+		 * @param start
+		 *            The initial timestamp of the time window
+		 * @param end
+		 *            The final timestamp of the time window
+		 * @param limit
+		 *            The number of events required
+		 * @return the earliest events within the time window
+		 */
+		public List<Event<?>> fetch(long start, long end, int limit);
+
+		/**
+		 * Removes the events within the time window [{@code start},
+		 * {@code end}]
+		 * 
+		 * @param start
+		 *            The initial timestamp of the time window
+		 * @param end
+		 *            The final timestamp of the time window
+		 */
+		public void clean(long start, long end);
+
+	}
+
+	/**
+	 * Orders events by window timestamp, and then by identifier
+	 */
+	private static final Comparator<Event<?>> ORDER =
+			new Comparator<Event<?>>() {
+		public int compare(Event<?> o1, Event<?> o2) {
+			long t1 = o1.windowTimestamp();
+			long t2 = o2.windowTimestamp();
+			if (t1 != t2)
+				return t1 < t2 ? -1 : 1;
+			return o1.identifier().compareTo(o2.identifier());
+		}
+	};
+
+	/**
+	 * A query, and the position of its next page
+	 */
+	private static final class Cursor {
+		final Source source;
+		final long start;
+		final long end;
+		final boolean clean;
+
+		/**
+		 * The window timestamp of the last event served
+		 */
+		long position;
+
+		/**
+		 * The identifiers of the events served with the current position
+		 */
+		Set<UUID> served;
+		volatile long lastAccess;
+
+		Cursor(final Source source, final long start, final long end,
+				final boolean clean) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+			this.clean = clean;
+			this.position = start;
+			this.served = new HashSet<UUID>();
+			this.lastAccess = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * The time, in milliseconds, after which an unread cursor is released
+	 */
+	private final long timeout;
+
+	/**
+	 * The open cursors, by identifier
+	 */
+	private final ConcurrentMap<UUID, Cursor> cursors;
+
+	/**
+	 * @param timeout
+	 *            The time, in milliseconds, after which an unread cursor is
+	 *            released
+	 */
+	public EventCursors(final long timeout) {
+		this.timeout = timeout;
+		this.cursors = new ConcurrentHashMap<UUID, Cursor>();
+	}
+
+	/**
+	 * Opens a cursor over the events within the time window [{@code start},
+	 * {@code end}]
+	 * 
+	 * @param source
+	 *            The stores to read the pages from
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param clean
+	 *            Whether the events must be removed from the stores once they
+	 *            have been served
+	 * @return the identifier of the new cursor
+	 */
+	public UUID open(final Source source, final long start, final long end,
+			final boolean clean) {
+		UUID id = PascaniRuntime.getIdGenerator().next();
+		this.cursors.put(id, new Cursor(source, start, end, clean));
+		return id;
+	}
+
+	/**
+	 * Reads the next page of a cursor. The cursor is released when the page
+	 * returned is smaller than the given limit.
+	 * 
+	 * @param id
+	 *            The identifier of the cursor
+	 * @param limit
+	 *            The maximum number of events to return
+	 * @return the next events of the cursor, or {@code null} if the cursor
+	 *         does not exist (e.g., it expired)
+	 */
+	public ArrayList<Event<?>> next(final UUID id, final int limit) {
+		Cursor cursor = this.cursors.get(id);
+		if (cursor == null)
+			return null;
+		ArrayList<Event<?>> page = new ArrayList<Event<?>>(limit);
+		synchronized (cursor) {
+			if (cursor.start <= cursor.end) {
+				// The events served at the current position are fetched again
+				List<Event<?>> fetched = new ArrayList<Event<?>>(
+						cursor.source.fetch(cursor.position, cursor.end,
+								limit + cursor.served.size()));
+				Collections.sort(fetched, ORDER);
+				for (Event<?> event : fetched) {
+					if (page.size() == limit)
+						break;
+					if (event.windowTimestamp() == cursor.position
+							&& cursor.served.contains(event.identifier()))
+						continue;
+					page.add(event);
+				}
+			}
+			if (!page.isEmpty())
+				advance(cursor, page);
+			if (cursor.clean) {
+				if (page.size() < limit)
+					cursor.source.clean(cursor.start, cursor.position);
+				else if (cursor.position > cursor.start)
+					cursor.source.clean(cursor.start, cursor.position - 1);
+			}
+			cursor.lastAccess = System.currentTimeMillis();
+		}
+		if (page.size() < limit)
+			this.cursors.remove(id);
+		return page;
+	}
+
+	/**
+	 * Moves the position of a cursor past the given (ordered) page
+	 */
+	private void advance(final Cursor cursor, final List<Event<?>> page) {
+		long last = page.get(page.size() - 1).windowTimestamp();
+		if (last != cursor.position) {
+			cursor.position = last;
+			cursor.served = new HashSet<UUID>();
+		}
+		for (int i = page.size() - 1; i >= 0
+				&& page.get(i).windowTimestamp() == last; i--)
+			cursor.served.add(page.get(i).identifier());
+	}
+
+	/**
+	 * Releases a cursor
+	 * 
+	 * @param id
+	 *            The identifier of the cursor
+	 * @return whether the cursor existed
+	 */
+	public boolean close(final UUID id) {
+		return this.cursors.remove(id) != null;
+	}
+
+	/**
+	 * Releases the cursors that have not been read within the timeout
+	 */
+	public void expire() {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<UUID, Cursor>> iterator = this.cursors.entrySet()
+				.iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().getValue().lastAccess > this.timeout)
+				iterator.remove();
+		}
+	}
+
+	/**
+	 * Releases all of the cursors
+	 */
+	public void clear() {
+		this.cursors.clear();
+	}
+
+	/**
+	 * @return the number of open cursors
+	 */
+	public int size() {
+		return this.cursors.size();
+	}
+
+}
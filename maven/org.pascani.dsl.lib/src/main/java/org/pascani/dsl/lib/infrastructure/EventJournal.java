@@ -0,0 +1,325 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pascani.dsl.lib.Event;
+
+/**
+ * Numbers the events recorded by a {@link BasicProbe} with a monotonically
+ * increasing sequence, and keeps a watermark per client, so that each client
+ * can poll the events appended since its previous poll. Several clients can
+ * poll the same probe without interfering with each other, and each poll
+ * takes time proportional to the number of new events.
+ * 
+ * <p>
+ * Events are journaled only while there are registered clients, and they are
+ * released once every client has polled them, once the clients that did not
+ * poll them expire, or once they are removed from the probe (by the retention
+ * policy, see {@link #evict(long, int)}, or by clean operations, see
+ * {@link #remove(Collection)}). Besides, the journal never holds more than a
+ * given number of events: clients falling further behind miss the oldest
+ * ones. A client is registered by its first poll, which returns no events; it
+ * expires after it has not polled for a while.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class EventJournal {
+
+	/**
+	 * Replaces the entries of removed events, so that the sequence has no
+	 * gaps for the clients that did not poll them yet
+	 */
+	private static final Object REMOVED = new Object();
+
+	/**
+	 * The last sequence number polled by a client
+	 */
+	private static final class Watermark {
+		long sequence;
+		volatile long lastAccess;
+
+		Watermark(final long sequence) {
+			this.sequence = sequence;
+			this.lastAccess = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * The time, in milliseconds, after which a client that has not polled is
+	 * released
+	 */
+	private final long timeout;
+
+	/**
+	 * The maximum number of journaled events
+	 */
+	private final int capacity;
+
+	/**
+	 * The last sequence number assigned
+	 */
+	private final AtomicLong sequence;
+
+	/**
+	 * The journaled events (or {@link #REMOVED}), by sequence number
+	 */
+	private final ConcurrentSkipListMap<Long, Object> entries;
+
+	/**
+	 * The number of journaled entries
+	 */
+	private final AtomicInteger size;
+
+	/**
+	 * The watermark of each client, by client identifier
+	 */
+	private final ConcurrentMap<String, Watermark> clients;
+
+	/**
+	 * The sequence number up to which events have been evicted
+	 */
+	private volatile long floor;
+
+	/**
+	 * @param timeout
+	 *            The time, in milliseconds, after which a client that has not
+	 *            polled is released
+	 * @param capacity
+	 *            The maximum number of journaled events
+	 */
+	public EventJournal(final long timeout, final int capacity) {
+		this.timeout = timeout;
+		this.capacity = capacity;
+		this.sequence = new AtomicLong();
+		this.entries = new ConcurrentSkipListMap<Long, Object>();
+		this.size = new AtomicInteger();
+		this.clients = new ConcurrentHashMap<String, Watermark>();
+	}
+
+	/**
+	 * Appends an event to the journal, if there are registered clients,
+	 * releasing the oldest event if the journal is full
+	 * 
+	 * @param event
+	 *            The recorded event
+	 */
+	public void append(final Event<?> event) {
+		if (this.clients.isEmpty())
+			return;
+		this.entries.put(this.sequence.incrementAndGet(), event);
+		if (this.size.incrementAndGet() > this.capacity)
+			trim(this.capacity);
+	}
+
+	/**
+	 * Fetches the events appended since the client's previous poll, and
+	 * advances its watermark past them
+	 * 
+	 * @param client
+	 *            The identifier of the client
+	 * @param types
+	 *            The canonical names of the types of events to fetch, or
+	 *            {@code null} to fetch all of them. Events of other types are
+	 *            skipped, thus a client should always poll the same types
+	 * @return the new events, sorted by sequence number
+	 */
+	public ArrayList<Event<?>> fetch(final String client,
+			final Set<String> types) {
+		ArrayList<Event<?>> events = new ArrayList<Event<?>>();
+		poll(client, types, events);
+		return events;
+	}
+
+	/**
+	 * Counts the events appended since the client's previous poll, and
+	 * advances its watermark past them
+	 * 
+	 * @see #fetch(String, Set)
+	 */
+	public int count(final String client, final Set<String> types) {
+		return poll(client, types, null);
+	}
+
+	/**
+	 * Reads the events following the client's watermark, up to the first one
+	 * still being appended, and advances the watermark
+	 * 
+	 * @return the number of events of the given types read
+	 */
+	private int poll(final String client, final Set<String> types,
+			final ArrayList<Event<?>> events) {
+		Watermark watermark = this.clients.get(client);
+		if (watermark == null) {
+			Watermark newWatermark = new Watermark(this.sequence.get());
+			watermark = this.clients.putIfAbsent(client, newWatermark);
+			if (watermark == null)
+				return 0;
+		}
+		int count = 0;
+		synchronized (watermark) {
+			long last = Math.max(watermark.sequence, this.floor);
+			for (Map.Entry<Long, Object> entry : this.entries.tailMap(last,
+					false).entrySet()) {
+				if (entry.getKey() != last + 1)
+					break;
+				last = entry.getKey();
+				if (entry.getValue() == REMOVED)
+					continue;
+				Event<?> event = (Event<?>) entry.getValue();
+				if (types == null
+						|| types.contains(event.getClass().getCanonicalName())) {
+					if (events != null)
+						events.add(event);
+					count++;
+				}
+			}
+			watermark.sequence = last;
+			watermark.lastAccess = System.currentTimeMillis();
+		}
+		release();
+		return count;
+	}
+
+	/**
+	 * Releases the events that every client has already polled
+	 */
+	private void release() {
+		long min = Long.MAX_VALUE;
+		for (Watermark watermark : this.clients.values()) {
+			synchronized (watermark) {
+				min = Math.min(min, watermark.sequence);
+			}
+		}
+		Map.Entry<Long, Object> first;
+		while ((first = this.entries.firstEntry()) != null
+				&& first.getKey() <= min) {
+			if (this.entries.remove(first.getKey()) != null)
+				this.size.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Releases the oldest events until at most the given number of them is
+	 * journaled. Clients that did not poll them will not receive them.
+	 */
+	private void trim(final int max) {
+		while (this.size.get() > max) {
+			Map.Entry<Long, Object> first = this.entries.pollFirstEntry();
+			if (first == null)
+				break;
+			this.floor = Math.max(this.floor, first.getKey());
+			this.size.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Releases the events whose window timestamp is lower than
+	 * {@code olderThan}, from the oldest one onwards, and the oldest events
+	 * exceeding the given number. Clients that did not poll them will not
+	 * receive them.
+	 * 
+	 * @param olderThan
+	 *            The timestamp before which events are released
+	 * @param maxEvents
+	 *            The maximum number of events to keep
+	 * @return the number of released events
+	 */
+	public int evict(final long olderThan, final int maxEvents) {
+		int before = this.size.get();
+		for (Map.Entry<Long, Object> entry : this.entries.entrySet()) {
+			Object value = entry.getValue();
+			if (value != REMOVED
+					&& ((Event<?>) value).windowTimestamp() >= olderThan)
+				break;
+			this.floor = Math.max(this.floor, entry.getKey());
+			if (this.entries.remove(entry.getKey()) != null)
+				this.size.decrementAndGet();
+		}
+		trim(Math.min(maxEvents, this.capacity));
+		return Math.max(before - this.size.get(), 0);
+	}
+
+	/**
+	 * Releases the given events, removed from the probe by a clean
+	 * operation. This takes time proportional to the number of journaled
+	 * events.
+	 * 
+	 * @param removed
+	 *            The removed events
+	 */
+	public void remove(final Collection<? extends Event<?>> removed) {
+		if (removed.isEmpty() || this.size.get() == 0)
+			return;
+		Set<UUID> identifiers = new HashSet<UUID>();
+		for (Event<?> event : removed)
+			identifiers.add(event.identifier());
+		for (Map.Entry<Long, Object> entry : this.entries.entrySet()) {
+			Object value = entry.getValue();
+			if (value != REMOVED
+					&& identifiers.contains(((Event<?>) value).identifier()))
+				this.entries.replace(entry.getKey(), value, REMOVED);
+		}
+	}
+
+	/**
+	 * Releases the clients that have not polled within the timeout, and the
+	 * events only they were waiting for
+	 */
+	public void expire() {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, Watermark>> iterator = this.clients
+				.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().getValue().lastAccess > this.timeout)
+				iterator.remove();
+		}
+		release();
+	}
+
+	/**
+	 * Releases all of the clients and events
+	 */
+	public void clear() {
+		this.clients.clear();
+		this.entries.clear();
+		this.size.set(0);
+	}
+
+	/**
+	 * @return the number of journaled events
+	 */
+	public int size() {
+		return this.size.get();
+	}
+
+}
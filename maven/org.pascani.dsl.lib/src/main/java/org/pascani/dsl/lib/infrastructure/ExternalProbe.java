@@ -20,7 +20,8 @@ package org.pascani.dsl.lib.infrastructure;
 
 import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.Probe;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQConsumer;
+import org.pascani.dsl.lib.util.EventStoreFactory;
+import org.pascani.dsl.lib.util.PartitionedEventStore;
 
 /**
  * This {@link Probe} implementation is specially made for grouping distributed
@@ -46,8 +47,8 @@ public class ExternalProbe extends LocalProbe {
 	protected final AbstractConsumer consumer;
 
 	/**
-	 * Creates an instance connected to a RabbitMQ server, making the recorded
-	 * events reachable for external components.
+	 * Creates an instance connected to the messaging infrastructure, making
+	 * the recorded events reachable for external components.
 	 * 
 	 * <p>
 	 * External components may use a {@link ProbeProxy} instance to access
@@ -66,11 +67,44 @@ public class ExternalProbe extends LocalProbe {
 	 */
 	public ExternalProbe(final String routingKey, PascaniRuntime.Context context)
 			throws Exception {
-		super(routingKey, context);
+		this(routingKey, context, new PartitionedEventStore.Factory());
+	}
 
-		this.consumer = new RabbitMQConsumer(super.endPoint, routingKey,
-				routingKey, context);
+	/**
+	 * Creates an instance connected to the messaging infrastructure, making
+	 * the recorded events reachable for external components.
+	 * 
+	 * @param routingKey
+	 *            A unique name among all the {@link Probe} instances. This name
+	 *            is necessary for external components to send RPC requests to
+	 *            this probe.
+	 * @param context
+	 *            The context in which this probe is used
+	 * @param storeFactory
+	 *            Creates the stores in which events are recorded
+	 * @throws Exception
+	 *             If something bad happens. Check exceptions in
+	 *             {@link LocalProbe#LocalProbe(String, PascaniRuntime.Context, EventStoreFactory)}
+	 */
+	public ExternalProbe(final String routingKey,
+			PascaniRuntime.Context context,
+			final EventStoreFactory storeFactory) throws Exception {
+		super(routingKey, context, storeFactory);
+
+		this.consumer = Transports.configured().consumer(
+				PascaniRuntime.getEnvironment().get("probes_exchange"),
+				routingKey, routingKey, context);
 		this.consumer.start();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.LocalProbe#shutdown()
+	 */
+	@Override public void shutdown() throws Exception {
+		this.consumer.shutdown();
+		super.shutdown();
+	}
+
 }
@@ -18,19 +18,24 @@
  */
 package org.pascani.dsl.lib.infrastructure;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.pascani.dsl.lib.Event;
 import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.Probe;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.EndPoint;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQRpcServer;
+import org.pascani.dsl.lib.util.EventAggregate;
+import org.pascani.dsl.lib.util.EventStoreFactory;
+import org.pascani.dsl.lib.util.MappedEventStore;
+import org.pascani.dsl.lib.util.MethodDescriptor;
+import org.pascani.dsl.lib.util.PartitionedEventStore;
+import org.pascani.dsl.lib.util.QuantileSketch;
+import org.pascani.dsl.lib.util.RetentionPolicy;
 
 /**
  * A simple implementation of {@link Probe} hiding technical details of the
- * connection to the RabbitMQ server.
+ * connection to the messaging infrastructure (see {@link Transports}).
  * 
  * <p>
  * This class acts as a proxy of a {@link BasicProbe} instance, delegating the
@@ -41,11 +46,6 @@ import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQRpcServer;
  */
 public class LocalProbe implements Probe {
 
-	/**
-	 * A RabbitMQ end point (a connection to the server)
-	 */
-	protected final EndPoint endPoint;
-
 	/**
 	 * The RPC server listening for RPC requests
 	 */
@@ -62,8 +62,8 @@ public class LocalProbe implements Probe {
 	protected final PascaniRuntime.Context context;
 
 	/**
-	 * Creates an instance connected to a RabbitMQ server, making the recorded
-	 * events reachable for external components.
+	 * Creates an instance connected to the messaging infrastructure, making
+	 * the recorded events reachable for external components.
 	 * 
 	 * <p>
 	 * External components may use a {@link ProbeProxy} instance to access
@@ -78,28 +78,39 @@ public class LocalProbe implements Probe {
 	 *            The context in which this probe is used
 	 * @throws Exception
 	 *             If something bad happens. Check exceptions in
-	 *             {@link EndPoint#EndPoint(String)}
+	 *             {@link Transport#rpcServer(String, PascaniRuntime.Context)}
 	 */
 	public LocalProbe(final String routingKey,
 			final PascaniRuntime.Context context) throws Exception {
-		this.context = context;
-		this.endPoint = new EndPoint();
-		createQueue(routingKey);
-		this.server = new RabbitMQRpcServer(endPoint, routingKey, this.context);
-		this.probe = new BasicProbe(server);
-		registerProbeAsListener();
+		this(routingKey, context, new PartitionedEventStore.Factory());
 	}
 
 	/**
-	 * Create the corresponding queue, and then create a binding between the
-	 * queue and the probes exchange
+	 * Creates an instance connected to the messaging infrastructure, making
+	 * the recorded events reachable for external components.
+	 * 
+	 * @param routingKey
+	 *            A unique name among all the {@link Probe} instances. This name
+	 *            is necessary for external components to send RPC requests to
+	 *            this probe.
+	 * @param context
+	 *            The context in which this probe is used
+	 * @param storeFactory
+	 *            Creates the stores in which events are recorded, for
+	 *            instance, a {@link MappedEventStore.Factory} to keep them in
+	 *            memory-mapped files
+	 * @throws Exception
+	 *             If something bad happens. Check exceptions in
+	 *             {@link Transport#rpcServer(String, PascaniRuntime.Context)}
 	 */
-	private void createQueue(final String routingKey) throws IOException {
-		String queue = routingKey;
-		String exchange = PascaniRuntime.getEnvironment()
-				.get("probes_exchange");
-		this.endPoint.channel().queueDeclare(queue, false, true, true, null);
-		this.endPoint.channel().queueBind(queue, exchange, routingKey);
+	public LocalProbe(final String routingKey,
+			final PascaniRuntime.Context context,
+			final EventStoreFactory storeFactory) throws Exception {
+		this.context = context;
+		this.server = Transports.configured().rpcServer(routingKey,
+				this.context);
+		this.probe = new BasicProbe(server, storeFactory);
+		registerProbeAsListener();
 	}
 
 	/**
@@ -120,6 +131,108 @@ public class LocalProbe implements Probe {
 		this.probe.acceptOnly(acceptedTypes);
 	}
 
+	/**
+	 * Establishes the policy bounding the events retained by this probe
+	 * 
+	 * @param policy
+	 *            The retention policy
+	 * @see BasicProbe#retentionPolicy(RetentionPolicy)
+	 */
+	public void retentionPolicy(final RetentionPolicy policy) {
+		this.probe.retentionPolicy(policy);
+	}
+
+	/**
+	 * Maintains incremental rollups of the events of each type at the given
+	 * resolution
+	 * 
+	 * @see BasicProbe#rollup(long, int)
+	 */
+	public void rollup(final long resolution, final int buckets) {
+		this.probe.rollup(resolution, buckets);
+	}
+
+	/**
+	 * Discards the rollups of this probe
+	 */
+	public void disableRollups() {
+		this.probe.disableRollups();
+	}
+
+	/**
+	 * @return the policy bounding the events retained by this probe
+	 */
+	public RetentionPolicy retentionPolicy() {
+		return this.probe.retentionPolicy();
+	}
+
+	/**
+	 * @return the number of events evicted so far, grouped by event type
+	 */
+	public Map<String, Long> evictions() {
+		return this.probe.evictions();
+	}
+
+	/**
+	 * @return the descriptors of the methods known in this component, by
+	 *         identifier
+	 */
+	public Map<Integer, MethodDescriptor> methods() {
+		return this.probe.methods();
+	}
+
+	/**
+	 * @see BasicProbe#fetchSince(String, List)
+	 */
+	public List<Event<?>> fetchSince(final String client,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		return this.probe.fetchSince(client, eventTypes);
+	}
+
+	/**
+	 * @see BasicProbe#countSince(String, List)
+	 */
+	public int countSince(final String client,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		return this.probe.countSince(client, eventTypes);
+	}
+
+	/**
+	 * @see BasicProbe#sketch(long, long, List)
+	 */
+	public QuantileSketch sketch(final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		return this.probe.sketch(start, end, eventTypes);
+	}
+
+	/**
+	 * @see BasicProbe#aggregate(long, long, List, double...)
+	 */
+	public EventAggregate aggregate(final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		return this.probe.aggregate(start, end, eventTypes, percentiles);
+	}
+
+	/**
+	 * @see BasicProbe#aggregateByType(long, long, List, double...)
+	 */
+	public Map<String, EventAggregate> aggregateByType(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		return this.probe.aggregateByType(start, end, eventTypes, percentiles);
+	}
+
+	/**
+	 * @see BasicProbe#aggregateByMethod(long, long, List, double...)
+	 */
+	public Map<String, EventAggregate> aggregateByMethod(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		return this.probe.aggregateByMethod(start, end, eventTypes,
+				percentiles);
+	}
+
 	/**
 	 * Records an event
 	 * 
@@ -230,15 +343,15 @@ public class LocalProbe implements Probe {
 	}
 
 	/**
-	 * Shutdowns connections
+	 * Shutdowns connections, cancels the background tasks of the probe and
+	 * releases its event stores
 	 * 
 	 * @throws Exception
 	 *             If something bad happens!
+	 * @see BasicProbe#shutdown()
 	 */
 	public void shutdown() throws Exception {
-		// The end point is shared among all connections to RabbitMQ, shutting
-		// it down does all the job
-		this.endPoint.close();
+		this.probe.shutdown();
 	}
 
 }
@@ -22,12 +22,9 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pascani.dsl.lib.PascaniRuntime;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQRpcClient;
-import org.pascani.dsl.lib.util.SerializationUtils6;
 
 /**
  * @author Miguel Jiménez - Initial contribution and API
@@ -45,8 +42,8 @@ public class NamespaceProxy implements Namespace {
 	private final RpcClient client;
 
 	/**
-	 * Creates a NamespaceProxy instance from a routing key, and the default RPC
-	 * exchange
+	 * Creates a NamespaceProxy instance from a routing key, and the configured
+	 * transport (see {@link Transports#configured()})
 	 * 
 	 * @param routingKey
 	 *            The namespace's routing key
@@ -54,8 +51,7 @@ public class NamespaceProxy implements Namespace {
 	 * @throws Exception
 	 */
 	public NamespaceProxy(String routingKey) throws Exception {
-		this(new RabbitMQRpcClient(PascaniRuntime.getEnvironment().get(
-				"rpc_exchange"), routingKey));
+		this(Transports.configured().rpcClient(routingKey));
 	}
 
 	/**
@@ -79,11 +75,11 @@ public class NamespaceProxy implements Namespace {
 	 *         processing RPC requests) configured with the routing key of the
 	 *         {@link RpcClient} instance
 	 */
-	private byte[] makeActualCall(RpcRequest request, Serializable defaultValue) {
-		byte[] message = SerializationUtils.serialize(request);
-		byte[] response = SerializationUtils.serialize(defaultValue);
+	private Serializable makeActualCall(RpcRequest request,
+			Serializable defaultValue) {
+		Serializable response = defaultValue;
 		try {
-			response = client.makeRequest(message);
+			response = client.call(request);
 		} catch (Exception e) {
 			this.logger.error("Error performing an RPC call to namespace "
 					+ this.client.routingKey(), e.getCause());
@@ -100,8 +96,7 @@ public class NamespaceProxy implements Namespace {
 	public Serializable getVariable(String variable) {
 		RpcRequest request = new RpcRequest(
 				RpcOperation.NAMESPACE_GET_VARIABLE, variable);
-		byte[] response = makeActualCall(request, null);
-		return (Serializable) SerializationUtils6.deserialize(response);
+		return makeActualCall(request, null);
 	}
 	
 	/*
@@ -114,8 +109,7 @@ public class NamespaceProxy implements Namespace {
 		HashMap<String, String> serializableMap = new HashMap<String, String>(tags);
 		RpcRequest request = new RpcRequest(RpcOperation.NAMESPACE_GET_VARIABLE,
 				variable, serializableMap);
-		byte[] response = makeActualCall(request, null);
-		return (Serializable) SerializationUtils6.deserialize(response);
+		return makeActualCall(request, null);
 	}
 
 	/*
@@ -127,8 +121,7 @@ public class NamespaceProxy implements Namespace {
 	public Serializable setVariable(String variable, Serializable value) {
 		RpcRequest request = new RpcRequest(
 				RpcOperation.NAMESPACE_SET_VARIABLE, variable, value);
-		byte[] response = makeActualCall(request, null);
-		return SerializationUtils.deserialize(response);
+		return makeActualCall(request, null);
 	}
 	
 	/*
@@ -158,8 +151,8 @@ public class NamespaceProxy implements Namespace {
 	 */
 	public boolean isPaused() {
 		RpcRequest request = new RpcRequest(RpcOperation.PAUSE);
-		byte[] response = makeActualCall(request, false);
-		return (Boolean) SerializationUtils6.deserialize(response);
+		Serializable response = makeActualCall(request, false);
+		return (Boolean) response;
 	}
 
 	/**
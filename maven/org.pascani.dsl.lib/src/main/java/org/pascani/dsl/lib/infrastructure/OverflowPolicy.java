@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure;
+
+/**
+ * The policies applied by an asynchronous {@link AbstractProducer} when its
+ * queue of pending events is full.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * The producing thread waits for room in the queue, up to a timeout after
+	 * which the event is dropped
+	 */
+	BLOCK,
+
+	/**
+	 * The event being produced is dropped
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * The oldest pending event is dropped to make room for the event being
+	 * produced
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Once the queue is half full, only one out of every
+	 * {@link AsyncPublisher#SAMPLING_RATE} events is queued; when it is full,
+	 * the event being produced is dropped
+	 */
+	SAMPLE
+
+}
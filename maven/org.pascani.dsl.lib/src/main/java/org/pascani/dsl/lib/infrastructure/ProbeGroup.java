@@ -0,0 +1,444 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.Probe;
+import org.pascani.dsl.lib.util.EventAggregate;
+import org.pascani.dsl.lib.util.QuantileSketch;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Queries many remote {@link Probe} instances in parallel, merging their
+ * responses as they arrive.
+ * 
+ * <p>
+ * Every query is sent to all of the probes at once, and completes when all of
+ * them have responded or when the timeout expires, whichever happens first.
+ * Probes that fail or do not respond in time are reported in the
+ * {@link Result}, along with the responses received, so a monitor can still
+ * act on partial results.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class ProbeGroup {
+
+	/**
+	 * Completes the queries whose timeout expires
+	 */
+	private static final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("pascani-probe-group")
+					.build());
+
+	/**
+	 * Combines the responses of two probes
+	 * 
+	 * @param <T>
+	 *            The type of responses
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static interface Merger<T> {
+		public T merge(T a, T b);
+	}
+
+	/**
+	 * The responses of the probes to a query
+	 * 
+	 * @param <T>
+	 *            The type of responses
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static final class Result<T> {
+
+		/**
+		 * The responses received, by routing key
+		 */
+		private final Map<String, T> values;
+
+		/**
+		 * The errors of the probes that failed or did not respond in time, by
+		 * routing key
+		 */
+		private final Map<String, Throwable> failures;
+
+		/**
+		 * The merge of the responses received
+		 */
+		private final T merged;
+
+		private Result(final Map<String, T> values,
+				final Map<String, Throwable> failures, final T merged) {
+			this.values = Collections.unmodifiableMap(values);
+			this.failures = Collections.unmodifiableMap(failures);
+			this.merged = merged;
+		}
+
+		public Map<String, T> values() {
+			return this.values;
+		}
+
+		public Map<String, Throwable> failures() {
+			return this.failures;
+		}
+
+		/**
+		 * @return the merge of the responses received, or {@code null} if
+		 *         none was received
+		 */
+		public T merged() {
+			return this.merged;
+		}
+
+		/**
+		 * @return whether all of the probes responded
+		 */
+		public boolean isComplete() {
+			return this.failures.isEmpty();
+		}
+
+	}
+
+	/**
+	 * Gathers the responses to a single query
+	 */
+	private final class Gathering<T> {
+		final SettableFuture<Result<T>> future = SettableFuture.create();
+		final Merger<T> merger;
+		final Map<String, T> values = new HashMap<String, T>();
+		final Map<String, Throwable> failures = new HashMap<String, Throwable>();
+		T merged;
+
+		Gathering(final Merger<T> merger) {
+			this.merger = merger;
+		}
+
+		synchronized void success(final String key, final T value) {
+			if (this.future.isDone())
+				return;
+			this.values.put(key, value);
+			this.merged = this.merged == null ? value : this.merger.merge(
+					this.merged, value);
+			completeIfDone();
+		}
+
+		synchronized void failure(final String key, final Throwable t) {
+			if (this.future.isDone())
+				return;
+			this.failures.put(key, t);
+			completeIfDone();
+		}
+
+		synchronized void expire() {
+			if (this.future.isDone())
+				return;
+			for (ProbeProxy probe : probes) {
+				String key = probe.routingKey();
+				if (!this.values.containsKey(key)
+						&& !this.failures.containsKey(key))
+					this.failures.put(key, new TimeoutException(
+							"No response within " + timeout + " ms"));
+			}
+			complete();
+		}
+
+		private void completeIfDone() {
+			if (this.values.size() + this.failures.size() == probes.size())
+				complete();
+		}
+
+		private void complete() {
+			this.future.set(new Result<T>(new HashMap<String, T>(this.values),
+					new HashMap<String, Throwable>(this.failures), this.merged));
+		}
+	}
+
+	/**
+	 * The probes in this group
+	 */
+	private final List<ProbeProxy> probes;
+
+	/**
+	 * The time, in milliseconds, to wait for the probes' responses
+	 */
+	private final long timeout;
+
+	/**
+	 * @param timeout
+	 *            The time, in milliseconds, to wait for the probes' responses
+	 * @param probes
+	 *            The probes in this group
+	 */
+	public ProbeGroup(final long timeout, final List<ProbeProxy> probes) {
+		this.timeout = timeout;
+		this.probes = new ArrayList<ProbeProxy>(probes);
+	}
+
+	/**
+	 * Creates a group with proxies to the probes with the given routing keys,
+	 * through the default RPC exchange
+	 * 
+	 * @param timeout
+	 *            The time, in milliseconds, to wait for the probes' responses
+	 * @param routingKeys
+	 *            The probes' routing keys
+	 * @throws Exception
+	 *             If there is a problem connecting to any of the probes
+	 */
+	public ProbeGroup(final long timeout, final String... routingKeys)
+			throws Exception {
+		this.timeout = timeout;
+		this.probes = new ArrayList<ProbeProxy>();
+		for (String routingKey : routingKeys)
+			this.probes.add(new ProbeProxy(routingKey));
+	}
+
+	/**
+	 * Sends a query to all of the probes in this group
+	 * 
+	 * @param query
+	 *            Sends the query to a single probe
+	 * @param merger
+	 *            Combines the responses of the probes
+	 * @return a future holding the responses received within the timeout
+	 */
+	public <T> ListenableFuture<Result<T>> query(
+			final Function<ProbeProxy, ListenableFuture<T>> query,
+			final Merger<T> merger) {
+		final Gathering<T> gathering = new Gathering<T>(merger);
+		if (this.probes.isEmpty()) {
+			gathering.complete();
+			return gathering.future;
+		}
+		for (ProbeProxy probe : this.probes) {
+			final String key = probe.routingKey();
+			ListenableFuture<T> response;
+			try {
+				response = query.apply(probe);
+			} catch (RuntimeException e) {
+				response = Futures.immediateFailedFuture(e);
+			}
+			Futures.addCallback(response, new FutureCallback<T>() {
+				public void onSuccess(T result) {
+					gathering.success(key, result);
+				}
+				public void onFailure(Throwable t) {
+					gathering.failure(key, t);
+				}
+			});
+		}
+		timer.schedule(new Runnable() {
+			public void run() {
+				gathering.expire();
+			}
+		}, this.timeout, TimeUnit.MILLISECONDS);
+		return gathering.future;
+	}
+
+	/**
+	 * Counts the events raised within a time window in all of the probes
+	 * 
+	 * @see Probe#count(long, long, List)
+	 */
+	public ListenableFuture<Result<Integer>> count(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		return query(new Function<ProbeProxy, ListenableFuture<Integer>>() {
+			public ListenableFuture<Integer> apply(ProbeProxy probe) {
+				return probe.countAsync(start, end, eventTypes);
+			}
+		}, SUM);
+	}
+
+	/**
+	 * Counts and removes the events raised within a time window in all of the
+	 * probes
+	 * 
+	 * @see Probe#countAndClean(long, long, List)
+	 */
+	public ListenableFuture<Result<Integer>> countAndClean(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		return query(new Function<ProbeProxy, ListenableFuture<Integer>>() {
+			public ListenableFuture<Integer> apply(ProbeProxy probe) {
+				return probe.countAndCleanAsync(start, end, eventTypes);
+			}
+		}, SUM);
+	}
+
+	/**
+	 * Removes the events raised within a time window in all of the probes
+	 * 
+	 * @see Probe#cleanData(long, long, List)
+	 */
+	public ListenableFuture<Result<Boolean>> cleanData(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		return query(new Function<ProbeProxy, ListenableFuture<Boolean>>() {
+			public ListenableFuture<Boolean> apply(ProbeProxy probe) {
+				return probe.cleanDataAsync(start, end, eventTypes);
+			}
+		}, OR);
+	}
+
+	/**
+	 * Fetches the events raised within a time window in all of the probes
+	 * 
+	 * @see Probe#fetch(long, long, List)
+	 */
+	public ListenableFuture<Result<List<Event<?>>>> fetch(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		return query(
+				new Function<ProbeProxy, ListenableFuture<List<Event<?>>>>() {
+					public ListenableFuture<List<Event<?>>> apply(
+							ProbeProxy probe) {
+						return probe.fetchAsync(start, end, eventTypes);
+					}
+				}, CONCAT);
+	}
+
+	/**
+	 * Fetches and removes the events raised within a time window in all of
+	 * the probes
+	 * 
+	 * @see Probe#fetchAndClean(long, long, List)
+	 */
+	public ListenableFuture<Result<List<Event<?>>>> fetchAndClean(
+			final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		return query(
+				new Function<ProbeProxy, ListenableFuture<List<Event<?>>>>() {
+					public ListenableFuture<List<Event<?>>> apply(
+							ProbeProxy probe) {
+						return probe.fetchAndCleanAsync(start, end, eventTypes);
+					}
+				}, CONCAT);
+	}
+
+	/**
+	 * Summarizes the values of the numeric-based events raised within a time
+	 * window in all of the probes. The merged summary has no percentiles (see
+	 * {@link EventAggregate#merge(EventAggregate, EventAggregate)}).
+	 * 
+	 * @see ProbeProxy#aggregate(long, long, List, double...)
+	 */
+	public ListenableFuture<Result<EventAggregate>> aggregate(
+			final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		return query(
+				new Function<ProbeProxy, ListenableFuture<EventAggregate>>() {
+					public ListenableFuture<EventAggregate> apply(
+							ProbeProxy probe) {
+						return probe.aggregateAsync(start, end, eventTypes,
+								percentiles);
+					}
+				}, AGGREGATE);
+	}
+
+	/**
+	 * Sketches the distribution of the values of the numeric-based events
+	 * raised within a time window in all of the probes. The merged sketch
+	 * estimates the percentiles of all of the values with the same accuracy
+	 * as each sketch.
+	 * 
+	 * @see ProbeProxy#sketch(long, long, List)
+	 */
+	public ListenableFuture<Result<QuantileSketch>> sketch(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		return query(
+				new Function<ProbeProxy, ListenableFuture<QuantileSketch>>() {
+					public ListenableFuture<QuantileSketch> apply(
+							ProbeProxy probe) {
+						return probe.sketchAsync(start, end, eventTypes);
+					}
+				}, SKETCH);
+	}
+
+	/**
+	 * @return the probes in this group
+	 */
+	public List<ProbeProxy> probes() {
+		return Collections.unmodifiableList(this.probes);
+	}
+
+	/**
+	 * Shutdowns the connections of all the probes in this group
+	 * 
+	 * @throws Exception
+	 *             If something bad happens!
+	 */
+	public void shutdown() throws Exception {
+		for (ProbeProxy probe : this.probes)
+			probe.shutdown();
+	}
+
+	private static final Merger<Integer> SUM = new Merger<Integer>() {
+		public Integer merge(Integer a, Integer b) {
+			return a + b;
+		}
+	};
+
+	private static final Merger<Boolean> OR = new Merger<Boolean>() {
+		public Boolean merge(Boolean a, Boolean b) {
+			return a || b;
+		}
+	};
+
+	private static final Merger<List<Event<?>>> CONCAT = new Merger<List<Event<?>>>() {
+		public List<Event<?>> merge(List<Event<?>> a, List<Event<?>> b) {
+			List<Event<?>> events = new ArrayList<Event<?>>(a.size()
+					+ b.size());
+			events.addAll(a);
+			events.addAll(b);
+			return events;
+		}
+	};
+
+	private static final Merger<EventAggregate> AGGREGATE = new Merger<EventAggregate>() {
+		public EventAggregate merge(EventAggregate a, EventAggregate b) {
+			return EventAggregate.merge(a, b);
+		}
+	};
+
+	private static final Merger<QuantileSketch> SKETCH = new Merger<QuantileSketch>() {
+		public QuantileSketch merge(QuantileSketch a, QuantileSketch b) {
+			QuantileSketch sketch = a.copy();
+			sketch.merge(b);
+			return sketch;
+		}
+	};
+
+}
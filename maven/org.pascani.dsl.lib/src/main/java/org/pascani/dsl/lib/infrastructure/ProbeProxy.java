@@ -18,18 +18,34 @@
  */
 package org.pascani.dsl.lib.infrastructure;
 
+import java.io.Closeable;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pascani.dsl.lib.Event;
 import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.Probe;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQRpcClient;
-import org.pascani.dsl.lib.util.SerializationUtils6;
+import org.pascani.dsl.lib.events.ExceptionEvent;
+import org.pascani.dsl.lib.events.InvokeEvent;
+import org.pascani.dsl.lib.events.ReturnEvent;
+import org.pascani.dsl.lib.util.EventAggregate;
+import org.pascani.dsl.lib.util.MethodDescriptor;
+import org.pascani.dsl.lib.util.MethodRegistry;
+import org.pascani.dsl.lib.util.QuantileSketch;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * An implementation of {@link Probe} that makes communication transparent for
@@ -42,6 +58,98 @@ import org.pascani.dsl.lib.util.SerializationUtils6;
  */
 public class ProbeProxy implements Probe {
 
+	/**
+	 * The default number of events transferred per page by a {@link Cursor}
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+
+	/**
+	 * Iterates over the results of a query on the remote probe, requesting
+	 * them in pages of a bounded size as they are consumed. The remote probe
+	 * reads each page from its stores when it is requested, and keeps the
+	 * position of the cursor until the last page is requested, the cursor is
+	 * closed, or the cursor is not read within
+	 * {@link BasicProbe#CURSOR_TIMEOUT} milliseconds.
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public class Cursor implements Iterator<Event<?>>, Closeable {
+
+		/**
+		 * The identifier of the cursor in the remote probe
+		 */
+		private final UUID id;
+
+		/**
+		 * The maximum number of events per page
+		 */
+		private final int pageSize;
+
+		/**
+		 * The events of the current page
+		 */
+		private Iterator<Event<?>> page;
+
+		/**
+		 * Whether the last page has been received
+		 */
+		private boolean exhausted;
+
+		private Cursor(final UUID id, final int pageSize) {
+			this.id = id;
+			this.pageSize = pageSize;
+			this.page = Collections.<Event<?>> emptyList().iterator();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			if (!this.page.hasNext() && !this.exhausted) {
+				List<Event<?>> events = nextPage(this.id, this.pageSize);
+				this.exhausted = events.size() < this.pageSize;
+				this.page = events.iterator();
+			}
+			return this.page.hasNext();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		public Event<?> next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return this.page.next();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Releases the remaining results in the remote probe
+		 */
+		public void close() {
+			if (!this.exhausted) {
+				this.exhausted = true;
+				this.page = Collections.<Event<?>> emptyList().iterator();
+				RpcRequest request = new RpcRequest(
+						RpcOperation.PROBE_CURSOR_CLOSE, this.id);
+				makeActualCall(request, false);
+			}
+		}
+
+	}
+
 	/**
 	 * The logger
 	 */
@@ -53,16 +161,45 @@ public class ProbeProxy implements Probe {
 	private final RpcClient client;
 
 	/**
-	 * Creates a ProbeProxy instance from a routing key, and the default RPC
-	 * exchange.
+	 * Identifies this proxy before the remote probe when polling the events
+	 * recorded since its previous poll
+	 */
+	private final String clientId = PascaniRuntime.getIdGenerator().next()
+			.toString();
+
+	/**
+	 * Resolves the methods referenced by fetched events, without blocking the
+	 * thread delivering the response
+	 */
+	private final AsyncFunction<List<Event<?>>, List<Event<?>>> resolver = new AsyncFunction<List<Event<?>>, List<Event<?>>>() {
+		public ListenableFuture<List<Event<?>>> apply(
+				final List<Event<?>> events) {
+			if (!hasUnresolvedMethods(events))
+				return Futures.immediateFuture(events);
+			RpcRequest request = new RpcRequest(RpcOperation.PROBE_METHODS);
+			return Futures.transform(
+					ProbeProxy.this
+							.<Map<Integer, MethodDescriptor>> makeAsyncCall(request),
+					new Function<Map<Integer, MethodDescriptor>, List<Event<?>>>() {
+						public List<Event<?>> apply(
+								Map<Integer, MethodDescriptor> methods) {
+							register(methods);
+							return events;
+						}
+					});
+		}
+	};
+
+	/**
+	 * Creates a ProbeProxy instance from a routing key, and the configured
+	 * transport (see {@link Transports#configured()}).
 	 * 
 	 * @param routingKey
 	 *            The probe's routing key
 	 * @throws Exception
 	 */
 	public ProbeProxy(String routingKey) throws Exception {
-		this(new RabbitMQRpcClient(PascaniRuntime.getEnvironment().get(
-				"rpc_exchange"), routingKey));
+		this(Transports.configured().rpcClient(routingKey));
 	}
 
 	/**
@@ -74,6 +211,23 @@ public class ProbeProxy implements Probe {
 		this.client = client;
 	}
 
+	/**
+	 * Performs an RPC call to a remote probe without waiting for the response
+	 * 
+	 * @param request
+	 *            The RPC request
+	 * @return a future holding the decoded response
+	 */
+	private <T> ListenableFuture<T> makeAsyncCall(final RpcRequest request) {
+		return Futures.transform(this.client.callAsync(request),
+				new Function<Serializable, T>() {
+					@SuppressWarnings("unchecked")
+					public T apply(Serializable response) {
+						return (T) response;
+					}
+				});
+	}
+
 	/**
 	 * Performs an RPC call to a remote probe
 	 * 
@@ -86,11 +240,11 @@ public class ProbeProxy implements Probe {
 	 *         processing RPC requests) configured with the routing key of the
 	 *         {@link RpcClient} instance
 	 */
-	private byte[] makeActualCall(RpcRequest request, Serializable defaultValue) {
-		byte[] message = SerializationUtils.serialize(request);
-		byte[] response = SerializationUtils.serialize(defaultValue);
+	private Serializable makeActualCall(RpcRequest request,
+			Serializable defaultValue) {
+		Serializable response = defaultValue;
 		try {
-			response = client.makeRequest(message);
+			response = client.call(request);
 		} catch (Exception e) {
 			this.logger.error("Error performing an RPC call to monitor probe "
 					+ this.client.routingKey(), e.getCause());
@@ -112,8 +266,8 @@ public class ProbeProxy implements Probe {
 			final List<Class<? extends Event<?>>> eventTypes) {
 		RpcRequest request = new RpcRequest(RpcOperation.PROBE_CLEAN, start,
 				end, new ArrayList<Class<? extends Event<?>>>(eventTypes));
-		byte[] response = makeActualCall(request, false);
-		return (Boolean) SerializationUtils6.deserialize(response);
+		Serializable response = makeActualCall(request, false);
+		return (Boolean) response;
 	}
 
 	public int count(final long start, final long end) {
@@ -129,8 +283,8 @@ public class ProbeProxy implements Probe {
 			final List<Class<? extends Event<?>>> eventTypes) {
 		RpcRequest request = new RpcRequest(RpcOperation.PROBE_COUNT, start,
 				end, new ArrayList<Class<? extends Event<?>>>(eventTypes));
-		byte[] response = makeActualCall(request, 0);
-		return (Integer) SerializationUtils6.deserialize(response);
+		Serializable response = makeActualCall(request, 0);
+		return (Integer) response;
 	}
 
 	public int countAndClean(final long start, final long end) {
@@ -148,8 +302,8 @@ public class ProbeProxy implements Probe {
 		RpcRequest request = new RpcRequest(RpcOperation.PROBE_COUNT_AND_CLEAN,
 				start, end,
 				new ArrayList<Class<? extends Event<?>>>(eventTypes));
-		byte[] response = makeActualCall(request, 0);
-		return (Integer) SerializationUtils6.deserialize(response);
+		Serializable response = makeActualCall(request, 0);
+		return (Integer) response;
 	}
 
 	public List<Event<?>> fetch(final long start, final long end) {
@@ -166,8 +320,9 @@ public class ProbeProxy implements Probe {
 			final List<Class<? extends Event<?>>> eventTypes) {
 		RpcRequest request = new RpcRequest(RpcOperation.PROBE_FETCH, start,
 				end, new ArrayList<Class<? extends Event<?>>>(eventTypes));
-		byte[] response = makeActualCall(request, new ArrayList<Event<?>>());
-		return (List<Event<?>>) SerializationUtils6.deserialize(response);
+		Serializable response = makeActualCall(request,
+				new ArrayList<Event<?>>());
+		return resolve((List<Event<?>>) response);
 	}
 
 	public List<Event<?>> fetchAndClean(final long start, final long end) {
@@ -186,8 +341,477 @@ public class ProbeProxy implements Probe {
 		RpcRequest request = new RpcRequest(RpcOperation.PROBE_FETCH_AND_CLEAN,
 				start, end,
 				new ArrayList<Class<? extends Event<?>>>(eventTypes));
-		byte[] response = makeActualCall(request, new ArrayList<Event<?>>());
-		return (List<Event<?>>) SerializationUtils6.deserialize(response);
+		Serializable response = makeActualCall(request,
+				new ArrayList<Event<?>>());
+		return resolve((List<Event<?>>) response);
+	}
+
+	/**
+	 * Fetches the events recorded by the remote probe since the previous call
+	 * made by this proxy. The first call returns no events.
+	 * 
+	 * @param eventTypes
+	 *            The types of events to fetch, or an empty list to fetch all of
+	 *            them. It should not change between calls
+	 * @return the new events, sorted by the order in which they were recorded
+	 * @see BasicProbe#fetchSince(String, List)
+	 */
+	public List<Event<?>> fetchSince(
+			final List<Class<? extends Event<?>>> eventTypes) {
+		return fetchSince(this.clientId, eventTypes);
+	}
+
+	/**
+	 * Fetches the events recorded by the remote probe since the previous call
+	 * made by the given client
+	 * 
+	 * @param client
+	 *            The unique identifier of the client, e.g., a monitor's name
+	 * @see BasicProbe#fetchSince(String, List)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Event<?>> fetchSince(final String client,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_FETCH_SINCE,
+				client, new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		Serializable response = makeActualCall(request,
+				new ArrayList<Event<?>>());
+		return resolve((List<Event<?>>) response);
+	}
+
+	/**
+	 * Counts the events recorded by the remote probe since the previous call
+	 * made by this proxy
+	 * 
+	 * @see #fetchSince(List)
+	 */
+	public int countSince(final List<Class<? extends Event<?>>> eventTypes) {
+		return countSince(this.clientId, eventTypes);
+	}
+
+	/**
+	 * Counts the events recorded by the remote probe since the previous call
+	 * made by the given client
+	 * 
+	 * @see #fetchSince(String, List)
+	 */
+	public int countSince(final String client,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_COUNT_SINCE,
+				client, new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		Serializable response = makeActualCall(request, 0);
+		return (Integer) response;
+	}
+	
+	/**
+	 * Removes the events raised within a time window, without blocking the
+	 * calling thread
+	 * 
+	 * @return a future holding whether any event was removed
+	 * @see #cleanData(long, long, List)
+	 */
+	public ListenableFuture<Boolean> cleanDataAsync(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_CLEAN, start, end,
+				new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		return makeAsyncCall(request);
+	}
+
+	/**
+	 * Counts the events raised within a time window, without blocking the
+	 * calling thread
+	 * 
+	 * @return a future holding the number of events
+	 * @see #count(long, long, List)
+	 */
+	public ListenableFuture<Integer> countAsync(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_COUNT, start, end,
+				new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		return makeAsyncCall(request);
+	}
+
+	/**
+	 * Counts and removes the events raised within a time window, without
+	 * blocking the calling thread
+	 * 
+	 * @return a future holding the number of events removed
+	 * @see #countAndClean(long, long, List)
+	 */
+	public ListenableFuture<Integer> countAndCleanAsync(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(
+				RpcOperation.PROBE_COUNT_AND_CLEAN, start, end,
+				new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		return makeAsyncCall(request);
+	}
+
+	/**
+	 * Fetches the events raised within a time window, without blocking the
+	 * calling thread
+	 * 
+	 * @return a future holding the events
+	 * @see #fetch(long, long, List)
+	 */
+	public ListenableFuture<List<Event<?>>> fetchAsync(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_FETCH, start,
+				end, new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		return Futures.transform(
+				this.<List<Event<?>>> makeAsyncCall(request), resolver);
+	}
+
+	/**
+	 * Fetches and removes the events raised within a time window, without
+	 * blocking the calling thread
+	 * 
+	 * @return a future holding the events removed
+	 * @see #fetchAndClean(long, long, List)
+	 */
+	public ListenableFuture<List<Event<?>>> fetchAndCleanAsync(
+			final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(
+				RpcOperation.PROBE_FETCH_AND_CLEAN, start, end,
+				new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		return Futures.transform(
+				this.<List<Event<?>>> makeAsyncCall(request), resolver);
+	}
+
+	/**
+	 * Fetches the events recorded by the remote probe since the previous call
+	 * made by the given client, without blocking the calling thread
+	 * 
+	 * @return a future holding the new events
+	 * @see #fetchSince(String, List)
+	 */
+	public ListenableFuture<List<Event<?>>> fetchSinceAsync(
+			final String client,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_FETCH_SINCE,
+				client, new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		return Futures.transform(
+				this.<List<Event<?>>> makeAsyncCall(request), resolver);
+	}
+
+	/**
+	 * Counts the events recorded by the remote probe since the previous call
+	 * made by the given client, without blocking the calling thread
+	 * 
+	 * @return a future holding the number of new events
+	 * @see #countSince(String, List)
+	 */
+	public ListenableFuture<Integer> countSinceAsync(final String client,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_COUNT_SINCE,
+				client, new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		return makeAsyncCall(request);
+	}
+
+	/**
+	 * Summarizes the values of the numeric-based events raised within a time
+	 * window, without blocking the calling thread
+	 * 
+	 * @see #aggregate(long, long, List, double...)
+	 */
+	public ListenableFuture<EventAggregate> aggregateAsync(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		return makeAsyncCall(aggregationRequest(RpcOperation.PROBE_AGGREGATE,
+				start, end, eventTypes, percentiles));
+	}
+
+	/**
+	 * Summarizes the values of the numeric-based events raised within a time
+	 * window, grouped by event type, without blocking the calling thread
+	 * 
+	 * @see #aggregateByType(long, long, List, double...)
+	 */
+	public ListenableFuture<Map<String, EventAggregate>> aggregateByTypeAsync(
+			final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		return makeAsyncCall(aggregationRequest(
+				RpcOperation.PROBE_AGGREGATE_BY_TYPE, start, end, eventTypes,
+				percentiles));
+	}
+
+	/**
+	 * Summarizes the latencies of the method executions observed within a
+	 * time window, grouped by method, without blocking the calling thread
+	 * 
+	 * @see #aggregateByMethod(long, long, List, double...)
+	 */
+	public ListenableFuture<Map<String, EventAggregate>> aggregateByMethodAsync(
+			final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		return makeAsyncCall(aggregationRequest(
+				RpcOperation.PROBE_AGGREGATE_BY_METHOD, start, end,
+				eventTypes, percentiles));
+	}
+
+	/**
+	 * Sketches the distribution of the values of the numeric-based events
+	 * raised within a time window, without blocking the calling thread
+	 * 
+	 * @see #sketch(long, long, List)
+	 */
+	public ListenableFuture<QuantileSketch> sketchAsync(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_SKETCH, start,
+				end, new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		return makeAsyncCall(request);
+	}
+
+	/**
+	 * Opens a cursor over the events raised within a time window, which
+	 * transfers them in pages as they are consumed
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param eventTypes
+	 *            The types of events to fetch, or an empty list to fetch all
+	 *            of them
+	 * @param pageSize
+	 *            The maximum number of events per page
+	 * @return a lazy iterator over the events
+	 */
+	public Cursor cursor(final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final int pageSize) {
+		return openCursor(RpcOperation.PROBE_CURSOR_OPEN, start, end,
+				eventTypes, pageSize);
+	}
+
+	/**
+	 * Opens a cursor over the events raised within a time window, as in
+	 * {@link #cursor(long, long, List, int)}, removing the events from the
+	 * remote probe as their pages are served. Events not read before the
+	 * cursor is released remain in the remote probe
+	 * 
+	 * @see #cursor(long, long, List, int)
+	 */
+	public Cursor cursorAndClean(final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final int pageSize) {
+		return openCursor(RpcOperation.PROBE_CURSOR_OPEN_AND_CLEAN, start, end,
+				eventTypes, pageSize);
+	}
+
+	/**
+	 * Streams the events raised within a time window to a handler, page by
+	 * page, keeping only one page in memory at a time
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param eventTypes
+	 *            The types of events to fetch, or an empty list to fetch all
+	 *            of them
+	 * @param handler
+	 *            Receives the events
+	 * @return the number of events received
+	 */
+	public int fetch(final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final Function<Event<?>, ?> handler) {
+		int count = 0;
+		Cursor cursor = cursor(start, end, eventTypes, DEFAULT_PAGE_SIZE);
+		try {
+			while (cursor.hasNext()) {
+				handler.apply(cursor.next());
+				count++;
+			}
+		} finally {
+			cursor.close();
+		}
+		return count;
+	}
+
+	private Cursor openCursor(final RpcOperation operation, final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes,
+			final int pageSize) {
+		if (pageSize <= 0)
+			throw new IllegalArgumentException("The page size must be positive");
+		RpcRequest request = new RpcRequest(operation, start, end,
+				new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		Serializable response = makeActualCall(request, null);
+		return new Cursor((UUID) response, pageSize);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Event<?>> nextPage(final UUID cursor, final int pageSize) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_CURSOR_NEXT,
+				cursor, pageSize);
+		Serializable response = makeActualCall(request, null);
+		List<Event<?>> events = (List<Event<?>>) response;
+		if (events == null)
+			throw new IllegalStateException("The cursor " + cursor
+					+ " has expired in probe " + this.client.routingKey());
+		return resolve(events);
+	}
+
+	/**
+	 * @return the number of events evicted so far by the remote probe, grouped
+	 *         by event type
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, Long> evictions() {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_EVICTIONS);
+		Serializable response = makeActualCall(request,
+				new HashMap<String, Long>());
+		return (Map<String, Long>) response;
+	}
+
+	/**
+	 * @return the descriptors of the methods known by the remote probe's
+	 *         component, by identifier
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<Integer, MethodDescriptor> methods() {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_METHODS);
+		Serializable response = makeActualCall(request,
+				new HashMap<Integer, MethodDescriptor>());
+		return (Map<Integer, MethodDescriptor>) response;
+	}
+
+	/**
+	 * Summarizes, within the remote probe, the values of the numeric-based
+	 * events raised within a time window
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param eventTypes
+	 *            The types of events to summarize, or an empty list to
+	 *            summarize all of them
+	 * @param percentiles
+	 *            The percentiles to compute, in the range (0, 100]
+	 * @return the summary of the events' values
+	 */
+	public EventAggregate aggregate(final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		RpcRequest request = aggregationRequest(RpcOperation.PROBE_AGGREGATE,
+				start, end, eventTypes, percentiles);
+		Serializable response = makeActualCall(request, null);
+		return (EventAggregate) response;
+	}
+
+	/**
+	 * Summarizes, within the remote probe, the values of the numeric-based
+	 * events raised within a time window, grouped by event type
+	 * 
+	 * @see #aggregate(long, long, List, double...)
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, EventAggregate> aggregateByType(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		RpcRequest request = aggregationRequest(
+				RpcOperation.PROBE_AGGREGATE_BY_TYPE, start, end, eventTypes,
+				percentiles);
+		Serializable response = makeActualCall(request,
+				new HashMap<String, EventAggregate>());
+		return (Map<String, EventAggregate>) response;
+	}
+
+	/**
+	 * Summarizes, within the remote probe, the latencies of the method
+	 * executions observed within a time window, grouped by the signature of
+	 * the executed method
+	 * 
+	 * @see BasicProbe#aggregateByMethod(long, long, List, double...)
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, EventAggregate> aggregateByMethod(final long start,
+			final long end, final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		RpcRequest request = aggregationRequest(
+				RpcOperation.PROBE_AGGREGATE_BY_METHOD, start, end, eventTypes,
+				percentiles);
+		Serializable response = makeActualCall(request,
+				new HashMap<String, EventAggregate>());
+		return (Map<String, EventAggregate>) response;
+	}
+
+	/**
+	 * Sketches, within the remote probe, the distribution of the values of the
+	 * numeric-based events raised within a time window
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param eventTypes
+	 *            The types of events to sketch, or an empty list to sketch all
+	 *            of them
+	 * @return a sketch of the events' values, mergeable with the sketches of
+	 *         other probes
+	 * @see BasicProbe#sketch(long, long, List)
+	 */
+	public QuantileSketch sketch(final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes) {
+		RpcRequest request = new RpcRequest(RpcOperation.PROBE_SKETCH, start,
+				end, new ArrayList<Class<? extends Event<?>>>(eventTypes));
+		Serializable response = makeActualCall(request, new QuantileSketch());
+		return (QuantileSketch) response;
+	}
+
+	private RpcRequest aggregationRequest(final RpcOperation operation,
+			final long start, final long end,
+			final List<Class<? extends Event<?>>> eventTypes,
+			final double... percentiles) {
+		ArrayList<Double> list = new ArrayList<Double>();
+		for (double percentile : percentiles)
+			list.add(percentile);
+		return new RpcRequest(operation, start, end,
+				new ArrayList<Class<? extends Event<?>>>(eventTypes), list);
+	}
+
+	/**
+	 * Registers the method table of the remote probe if any of the given
+	 * events refers to a method still unknown in this component
+	 */
+	private List<Event<?>> resolve(final List<Event<?>> events) {
+		if (hasUnresolvedMethods(events))
+			register(methods());
+		return events;
+	}
+
+	/**
+	 * Registers the method table of the remote probe, logging the methods
+	 * that contradict the local table
+	 */
+	private void register(final Map<Integer, MethodDescriptor> methods) {
+		List<MethodDescriptor> rejected = MethodRegistry.register(methods);
+		if (!rejected.isEmpty())
+			logger.warn("Methods of probe " + this.client.routingKey()
+					+ " conflicting with local ones: " + rejected);
+	}
+
+	/**
+	 * @return whether any of the given events refers to a method still
+	 *         unknown in this component
+	 */
+	private boolean hasUnresolvedMethods(final List<Event<?>> events) {
+		for (Event<?> event : events) {
+			MethodDescriptor descriptor = null;
+			if (event instanceof InvokeEvent)
+				descriptor = ((InvokeEvent) event).descriptor();
+			else if (event instanceof ReturnEvent)
+				descriptor = ((ReturnEvent) event).descriptor();
+			else if (event instanceof ExceptionEvent)
+				descriptor = ((ExceptionEvent) event).descriptor();
+			if (descriptor != null && !descriptor.isResolved())
+				return true;
+		}
+		return false;
 	}
 	
 	/*
@@ -217,8 +841,8 @@ public class ProbeProxy implements Probe {
 	 */
 	public boolean isPaused() {
 		RpcRequest request = new RpcRequest(RpcOperation.IS_PAUSED);
-		byte[] response = makeActualCall(request, false);
-		return (Boolean) SerializationUtils6.deserialize(response);
+		Serializable response = makeActualCall(request, false);
+		return (Boolean) response;
 	}
 	
 	/**
@@ -18,10 +18,22 @@
  */
 package org.pascani.dsl.lib.infrastructure;
 
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pascani.dsl.lib.Probe;
 import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQRpcClient;
+import org.pascani.dsl.lib.util.Codecs;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * A simple implementation of an RPC client, abstracting the call to send a
@@ -42,6 +54,16 @@ import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQRpcClient;
  */
 public abstract class RpcClient {
 
+	/**
+	 * Performs the asynchronous requests of clients not supporting them
+	 * natively
+	 */
+	private static final ListeningExecutorService requests = MoreExecutors
+			.listeningDecorator(Executors
+					.newCachedThreadPool(new ThreadFactoryBuilder()
+							.setDaemon(true)
+							.setNameFormat("pascani-rpc-client-%d").build()));
+
 	/**
 	 * The routing key of the RPC server (i.e., a remote component processing
 	 * RPC requests)
@@ -68,7 +90,61 @@ public abstract class RpcClient {
 	 *             If something bad happened
 	 */
 	public abstract byte[] makeRequest(byte[] message) throws Exception;
+
+	/**
+	 * Sends a request without waiting for the answer. By default, the request
+	 * is made through {@link #makeRequest(byte[])} from a background thread;
+	 * implementations may override this method to avoid blocking a thread per
+	 * pending request.
+	 * 
+	 * @param message
+	 *            The message to be sent
+	 * @return a future answer of the remote end point
+	 */
+	public ListenableFuture<byte[]> makeAsyncRequest(final byte[] message) {
+		return requests.submit(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return makeRequest(message);
+			}
+		});
+	}
 	
+	/**
+	 * Sends a request and decodes the answer. By default, the request is
+	 * encoded with {@link Codecs#defaultCodec()} and sent through
+	 * {@link #makeRequest(byte[])}; implementations reaching the RPC server
+	 * within the same JVM may override this method to skip serialization.
+	 * 
+	 * @param request
+	 *            The request to be sent
+	 * @return the decoded answer of the remote end point
+	 * @throws Exception
+	 *             If something bad happened
+	 */
+	public Serializable call(final RpcRequest request) throws Exception {
+		return Codecs.decode(makeRequest(Codecs.defaultCodec()
+				.encode(request)));
+	}
+
+	/**
+	 * Sends a request without waiting for the answer, as
+	 * {@link #call(RpcRequest)} does through
+	 * {@link #makeAsyncRequest(byte[])}
+	 * 
+	 * @param request
+	 *            The request to be sent
+	 * @return a future decoded answer of the remote end point
+	 */
+	public ListenableFuture<Serializable> callAsync(final RpcRequest request) {
+		byte[] message = Codecs.defaultCodec().encode(request);
+		return Futures.transform(makeAsyncRequest(message),
+				new Function<byte[], Serializable>() {
+					public Serializable apply(byte[] response) {
+						return Codecs.decode(response);
+					}
+				});
+	}
+
 	/**
 	 * Shutdowns connections
 	 * 
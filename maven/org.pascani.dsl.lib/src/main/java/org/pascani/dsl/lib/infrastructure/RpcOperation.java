@@ -29,10 +29,56 @@ import org.pascani.dsl.lib.Probe;
 public enum RpcOperation {
 	// Probe operations
 	PROBE_CLEAN, PROBE_COUNT, PROBE_COUNT_AND_CLEAN, PROBE_FETCH, PROBE_FETCH_AND_CLEAN,
+	PROBE_EVICTIONS, PROBE_METHODS,
+	PROBE_AGGREGATE, PROBE_AGGREGATE_BY_TYPE, PROBE_AGGREGATE_BY_METHOD,
+	PROBE_SKETCH,
+	PROBE_CURSOR_OPEN, PROBE_CURSOR_OPEN_AND_CLEAN, PROBE_CURSOR_NEXT,
+	PROBE_CURSOR_CLOSE, PROBE_FETCH_SINCE, PROBE_COUNT_SINCE,
 
 	// Namespace operations
 	NAMESPACE_GET_VARIABLE, NAMESPACE_SET_VARIABLE,
 	
 	// Common operations
-	PAUSE, RESUME, IS_PAUSED
+	PAUSE, RESUME, IS_PAUSED;
+
+	/**
+	 * @return whether this operation only reads the state of the component
+	 *         handling it, so it can be handled concurrently with other
+	 *         read-only operations
+	 */
+	public boolean isReadOnly() {
+		switch (this) {
+		case PROBE_COUNT:
+		case PROBE_FETCH:
+		case PROBE_EVICTIONS:
+		case PROBE_METHODS:
+		case PROBE_AGGREGATE:
+		case PROBE_AGGREGATE_BY_TYPE:
+		case PROBE_AGGREGATE_BY_METHOD:
+		case PROBE_SKETCH:
+		case PROBE_CURSOR_OPEN:
+		case PROBE_CURSOR_NEXT:
+		case NAMESPACE_GET_VARIABLE:
+		case IS_PAUSED:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return whether this operation changes the state of the component
+	 *         handling it, so it must be handled exclusively of any other
+	 *         operation. Pausing and resuming only switch a flag, thus they
+	 *         are neither read-only nor exclusive.
+	 */
+	public boolean isExclusive() {
+		switch (this) {
+		case PAUSE:
+		case RESUME:
+			return false;
+		default:
+			return !isReadOnly();
+		}
+	}
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure;
+
+import org.pascani.dsl.lib.PascaniRuntime;
+
+/**
+ * Creates the components connecting probes, namespaces and monitors through a
+ * messaging infrastructure: event producers and consumers, and RPC clients and
+ * servers. Each transport handles the URIs of certain schemes (see
+ * {@link Transports}), e.g., {@code amqp://} for a RabbitMQ server.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public interface Transport {
+
+	/**
+	 * Creates the transport for a given URI
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static interface Factory {
+
+		/**
+		 * @param uri
+		 *            The URI of the messaging infrastructure
+		 * @return a transport connecting to the given URI
+		 * @throws Exception
+		 *             If the URI is not valid
+		 */
+		public Transport create(String uri) throws Exception;
+	}
+
+	/**
+	 * Creates a producer sending events to an exchange
+	 * 
+	 * @param exchange
+	 *            The exchange to which events are sent
+	 * @param routingKey
+	 *            The routing key of the events
+	 * @return a new producer, configured as in the Pascani environment
+	 * @throws Exception
+	 *             If the producer cannot be connected
+	 */
+	public AbstractProducer producer(String exchange, String routingKey)
+			throws Exception;
+
+	/**
+	 * Creates a consumer receiving the events sent to an exchange with a given
+	 * routing key. Consumed events are posted to the runtime of the given
+	 * context, unless a handler is set (see
+	 * {@link AbstractConsumer#setHandler(AbstractConsumer.Handler)}).
+	 * 
+	 * @param exchange
+	 *            The exchange from which events are consumed
+	 * @param routingKey
+	 *            The routing key of interest
+	 * @param tag
+	 *            A unique name for the consumer
+	 * @param context
+	 *            The context in which the consumer is used
+	 * @return a new consumer, configured as in the Pascani environment
+	 * @throws Exception
+	 *             If the consumer cannot be connected
+	 */
+	public AbstractConsumer consumer(String exchange, String routingKey,
+			String tag, PascaniRuntime.Context context) throws Exception;
+
+	/**
+	 * Creates an RPC client sending requests to the RPC server with the given
+	 * routing key
+	 * 
+	 * @param routingKey
+	 *            The routing key of the RPC server
+	 * @return a new RPC client
+	 * @throws Exception
+	 *             If the client cannot be connected
+	 */
+	public RpcClient rpcClient(String routingKey) throws Exception;
+
+	/**
+	 * Creates an RPC server receiving the requests sent to a routing key. The
+	 * server starts processing requests once its handler is set and the
+	 * server is started.
+	 * 
+	 * @param routingKey
+	 *            The routing key of the RPC server (e.g., the name of a probe)
+	 * @param context
+	 *            The context in which the server is used
+	 * @return a new RPC server
+	 * @throws Exception
+	 *             If the server cannot be connected
+	 */
+	public RpcServer rpcServer(String routingKey,
+			PascaniRuntime.Context context) throws Exception;
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.local.LocalTransport;
+import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQTransport;
+import org.pascani.dsl.lib.infrastructure.tcp.TcpRegistry;
+import org.pascani.dsl.lib.infrastructure.tcp.TcpTransport;
+
+/**
+ * Keeps the known {@link Transport} implementations, by URI scheme, and
+ * selects the transport to connect with.
+ * 
+ * <p>
+ * The transport is selected by the {@code uri} property of the Pascani
+ * environment (see {@link PascaniRuntime#getEnvironment()}): {@code amqp://}
+ * and {@code amqps://} URIs connect to a RabbitMQ server, {@code tcp://} URIs
+ * connect components directly through sockets, resolving them through a
+ * {@link TcpRegistry}, while {@code local://} URIs connect components within
+ * the same JVM, without serializing events nor requests.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class Transports {
+
+	/**
+	 * The registered transport factories, by URI scheme
+	 */
+	private static final Map<String, Transport.Factory> factories =
+			new ConcurrentHashMap<String, Transport.Factory>();
+
+	/**
+	 * The transports already created, by URI
+	 */
+	private static final Map<String, Transport> transports =
+			new ConcurrentHashMap<String, Transport>();
+
+	static {
+		Transport.Factory rabbitmq = new Transport.Factory() {
+			public Transport create(String uri) {
+				return new RabbitMQTransport(uri);
+			}
+		};
+		register("amqp", rabbitmq);
+		register("amqps", rabbitmq);
+		register("tcp", new Transport.Factory() {
+			public Transport create(String uri) throws IOException {
+				return new TcpTransport(uri);
+			}
+		});
+		register("local", new Transport.Factory() {
+			public Transport create(String uri) {
+				return new LocalTransport();
+			}
+		});
+	}
+
+	/**
+	 * Registers a transport factory, replacing any other factory for the same
+	 * scheme
+	 * 
+	 * @param scheme
+	 *            The URI scheme handled by the factory
+	 * @param factory
+	 *            The transport factory
+	 */
+	public static void register(final String scheme,
+			final Transport.Factory factory) {
+		factories.put(scheme.toLowerCase(), factory);
+	}
+
+	/**
+	 * @param uri
+	 *            The URI of the messaging infrastructure
+	 * @return the transport connecting to the given URI; all of the calls with
+	 *         the same URI return the same transport
+	 * @throws Exception
+	 *             If there is no transport for the URI scheme, or the
+	 *             transport cannot be created
+	 */
+	public static Transport forUri(final String uri) throws Exception {
+		Transport transport = transports.get(uri);
+		if (transport != null)
+			return transport;
+		int colon = uri.indexOf(':');
+		Transport.Factory factory = colon <= 0 ? null : factories.get(uri
+				.substring(0, colon).toLowerCase());
+		if (factory == null)
+			throw new IllegalArgumentException("There is no transport for "
+					+ uri);
+		synchronized (transports) {
+			transport = transports.get(uri);
+			if (transport == null) {
+				transport = factory.create(uri);
+				transports.put(uri, transport);
+			}
+		}
+		return transport;
+	}
+
+	/**
+	 * @return the transport connecting to the URI configured in the
+	 *         {@code uri} property of the Pascani environment
+	 * @throws Exception
+	 *             If there is no transport for the URI scheme, or the URI is
+	 *             not valid
+	 */
+	public static Transport configured() throws Exception {
+		return forUri(PascaniRuntime.getEnvironment().get("uri"));
+	}
+
+}
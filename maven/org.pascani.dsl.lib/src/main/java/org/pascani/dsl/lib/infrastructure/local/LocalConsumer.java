@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.local;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.AbstractConsumer;
+import org.pascani.dsl.lib.util.LocalEventProducer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Implementation of {@link AbstractConsumer} receiving the events of the
+ * {@link LocalProducer}s with the same exchange and routing key. Events are
+ * queued in a lock-free queue, and handled in order by a pooled thread, thus
+ * producers never wait for the consumers. Events delivered before the consumer
+ * starts are kept until then.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class LocalConsumer extends AbstractConsumer {
+
+	/**
+	 * Handles the queued events of all consumers
+	 */
+	private static final ExecutorService dispatcher = Executors
+			.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("pascani-local-consumer-%d").build());
+
+	/**
+	 * The transport to which this consumer is bound
+	 */
+	private final LocalTransport transport;
+
+	/**
+	 * The exchange from which events are consumed
+	 */
+	private final String exchange;
+
+	/**
+	 * The routing key of interest
+	 */
+	private final String routingKey;
+
+	/**
+	 * An event producer for delegating the event handling
+	 */
+	private final LocalEventProducer<Event<?>> eventProducer;
+
+	/**
+	 * The events waiting to be handled
+	 */
+	private final ConcurrentLinkedQueue<Event<?>> queue;
+
+	/**
+	 * Whether a thread is handling the queued events
+	 */
+	private final AtomicBoolean draining;
+
+	/**
+	 * Handles the queued events
+	 */
+	private final Runnable drainer;
+
+	/**
+	 * Whether this consumer has started consuming events
+	 */
+	private volatile boolean started = false;
+
+	/**
+	 * @param transport
+	 *            The transport to which this consumer is bound
+	 * @param exchange
+	 *            The exchange from which events are consumed
+	 * @param routingKey
+	 *            The routing key of interest
+	 * @param context
+	 *            The context in which this consumer is used
+	 */
+	public LocalConsumer(final LocalTransport transport,
+			final String exchange, final String routingKey,
+			final PascaniRuntime.Context context) {
+		this.transport = transport;
+		this.exchange = exchange;
+		this.routingKey = routingKey;
+		this.eventProducer = new LocalEventProducer<Event<?>>(context);
+		this.queue = new ConcurrentLinkedQueue<Event<?>>();
+		this.draining = new AtomicBoolean(false);
+		this.drainer = new Runnable() {
+			public void run() {
+				drain();
+			}
+		};
+	}
+
+	/**
+	 * Queues an event to be handled by this consumer
+	 * 
+	 * @param event
+	 *            The delivered event
+	 */
+	void deliver(final Event<?> event) {
+		this.queue.offer(event);
+		if (this.started)
+			schedule();
+	}
+
+	/**
+	 * Hands the queued events to a pooled thread, unless one is already
+	 * handling them
+	 */
+	private void schedule() {
+		if (this.draining.compareAndSet(false, true))
+			dispatcher.execute(this.drainer);
+	}
+
+	/**
+	 * Handles the queued events until there are none left
+	 */
+	private void drain() {
+		do {
+			Event<?> event;
+			while ((event = this.queue.poll()) != null) {
+				try {
+					internalDelegateHandling(event);
+				} catch (RuntimeException e) {
+					logger.error("Error handling event " + event.identifier(),
+							e);
+				}
+			}
+			this.draining.set(false);
+			// An event may have been queued after the last poll
+		} while (!this.queue.isEmpty()
+				&& this.draining.compareAndSet(false, true));
+	}
+
+	/**
+	 * @return the exchange from which events are consumed
+	 */
+	String exchange() {
+		return this.exchange;
+	}
+
+	/**
+	 * @return the routing key of interest
+	 */
+	String routingKey() {
+		return this.routingKey;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.AbstractConsumer#startConsuming()
+	 */
+	@Override protected void startConsuming() {
+		this.started = true;
+		schedule();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.AbstractConsumer#delegateEventHandling
+	 * (org.pascani.dsl.lib.Event)
+	 */
+	@Override public void delegateEventHandling(final Event<?> event) {
+		Handler handler = this.handler;
+		if (handler != null)
+			handler.handle(event);
+		else
+			this.eventProducer.post(event);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.AbstractConsumer#shutdown()
+	 */
+	@Override public void shutdown() {
+		this.transport.unbind(this);
+	}
+
+}
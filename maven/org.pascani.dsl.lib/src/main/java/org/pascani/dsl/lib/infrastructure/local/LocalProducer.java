@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.local;
+
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.infrastructure.AbstractProducer;
+
+/**
+ * Implementation of {@link AbstractProducer} handing the produced events to
+ * the {@link LocalConsumer}s bound to the same exchange and routing key
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class LocalProducer extends AbstractProducer {
+
+	/**
+	 * The transport keeping the consumers
+	 */
+	private final LocalTransport transport;
+
+	/**
+	 * The exchange to which events are sent
+	 */
+	private final String exchange;
+
+	/**
+	 * The routing key of the events
+	 */
+	private final String routingKey;
+
+	/**
+	 * @param transport
+	 *            The transport keeping the consumers
+	 * @param exchange
+	 *            The exchange to which events are sent
+	 * @param routingKey
+	 *            The routing key of the events
+	 */
+	public LocalProducer(final LocalTransport transport,
+			final String exchange, final String routingKey) {
+		this.transport = transport;
+		this.exchange = exchange;
+		this.routingKey = routingKey;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.AbstractProducer#publish(org.pascani
+	 * .dsl.lib.Event)
+	 */
+	@Override protected void publish(final Event<?> event) {
+		for (LocalConsumer consumer : this.transport.consumers(this.exchange,
+				this.routingKey))
+			consumer.deliver(event);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.AbstractProducer#shutdown()
+	 */
+	@Override public void shutdown() throws InterruptedException {
+		if (!synchronous(DRAIN_TIMEOUT))
+			logger.warn("Some events were not published before shutting down");
+	}
+
+}
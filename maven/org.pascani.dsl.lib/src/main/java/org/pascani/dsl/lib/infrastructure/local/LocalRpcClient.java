@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.local;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import org.pascani.dsl.lib.infrastructure.RpcClient;
+import org.pascani.dsl.lib.infrastructure.RpcRequest;
+import org.pascani.dsl.lib.util.Codecs;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Implementation of {@link RpcClient} calling the {@link LocalRpcServer} with
+ * the same routing key directly: synchronous requests are handled in the
+ * calling thread, and asynchronous requests in a background thread, so that
+ * several of them are handled concurrently. Requests and responses are only
+ * serialized when using the byte-oriented methods (e.g.,
+ * {@link #makeRequest(byte[])}).
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class LocalRpcClient extends RpcClient {
+
+	/**
+	 * Handles the asynchronous requests of all clients
+	 */
+	private static final ListeningExecutorService dispatcher = MoreExecutors
+			.listeningDecorator(Executors
+					.newCachedThreadPool(new ThreadFactoryBuilder()
+							.setDaemon(true)
+							.setNameFormat("pascani-local-rpc-%d").build()));
+
+	/**
+	 * The transport in which the RPC servers are registered
+	 */
+	private final LocalTransport transport;
+
+	/**
+	 * @param transport
+	 *            The transport in which the RPC servers are registered
+	 * @param routingKey
+	 *            The routing key of the RPC server
+	 */
+	public LocalRpcClient(final LocalTransport transport,
+			final String routingKey) {
+		super(routingKey);
+		this.transport = transport;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.RpcClient#call(org.pascani.dsl.lib
+	 * .infrastructure.RpcRequest)
+	 */
+	@Override public Serializable call(final RpcRequest request)
+			throws Exception {
+		LocalRpcServer server = this.transport.server(this.ROUTING_KEY);
+		if (server == null)
+			throw new IOException("There is no RPC server with routing key "
+					+ this.ROUTING_KEY);
+		return server.handle(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.RpcClient#callAsync(org.pascani.dsl
+	 * .lib.infrastructure.RpcRequest)
+	 */
+	@Override public ListenableFuture<Serializable> callAsync(
+			final RpcRequest request) {
+		return dispatcher.submit(new Callable<Serializable>() {
+			public Serializable call() throws Exception {
+				return LocalRpcClient.this.call(request);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.RpcClient#makeRequest(byte[])
+	 */
+	@Override public byte[] makeRequest(final byte[] message)
+			throws Exception {
+		RpcRequest request = (RpcRequest) Codecs.decode(message);
+		return Codecs.defaultCodec().encode(call(request));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.RpcClient#shutdown()
+	 */
+	@Override public void shutdown() {
+	}
+
+}
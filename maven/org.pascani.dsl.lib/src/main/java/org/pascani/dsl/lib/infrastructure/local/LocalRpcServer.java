@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.local;
+
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.RpcRequest;
+import org.pascani.dsl.lib.infrastructure.RpcServer;
+
+/**
+ * Implementation of {@link RpcServer} handling the requests of
+ * {@link LocalRpcClient}s in the calling thread. As in
+ * {@link org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQConcurrentRpcServer},
+ * read-only operations may run concurrently, while operations modifying the
+ * handler run exclusively.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class LocalRpcServer extends RpcServer {
+
+	/**
+	 * The transport in which this server is registered
+	 */
+	private final LocalTransport transport;
+
+	/**
+	 * The routing key of this server
+	 */
+	private final String routingKey;
+
+	/**
+	 * Shared by read-only operations, and held exclusively by the others
+	 */
+	private final ReadWriteLock lock;
+
+	/**
+	 * Released when this server starts processing requests
+	 */
+	private final CountDownLatch started;
+
+	/**
+	 * Released when this server is shut down
+	 */
+	private final CountDownLatch stopped;
+
+	/**
+	 * @param transport
+	 *            The transport in which this server is registered
+	 * @param routingKey
+	 *            The routing key of the handler (e.g., a probe or a namespace)
+	 */
+	public LocalRpcServer(final LocalTransport transport,
+			final String routingKey) {
+		super(routingKey);
+		this.transport = transport;
+		this.routingKey = routingKey;
+		this.lock = new ReentrantReadWriteLock();
+		this.started = new CountDownLatch(1);
+		this.stopped = new CountDownLatch(1);
+	}
+
+	/**
+	 * Handles a request, waiting for this server to start if necessary
+	 * 
+	 * @param request
+	 *            The RPC request
+	 * @return the response of the handler, or {@code null} if it fails
+	 * @throws TimeoutException
+	 *             If the server does not start within the time configured in
+	 *             the {@code rpc_timeout} property of the Pascani environment
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the server to start
+	 */
+	Serializable handle(final RpcRequest request) throws TimeoutException,
+			InterruptedException {
+		long timeout = Long.parseLong(PascaniRuntime.getEnvironment().get(
+				"rpc_timeout"));
+		if (!this.started.await(timeout, TimeUnit.MILLISECONDS))
+			throw new TimeoutException("The RPC server " + this.routingKey
+					+ " has not started");
+		boolean readOnly = request.operation().isReadOnly();
+		boolean exclusive = request.operation().isExclusive();
+		if (readOnly)
+			this.lock.readLock().lock();
+		else if (exclusive)
+			this.lock.writeLock().lock();
+		try {
+			return delegateHandling(request);
+		} catch (RuntimeException e) {
+			logger.error("Error handling RPC request " + request.operation(), e);
+			return null;
+		} finally {
+			if (readOnly)
+				this.lock.readLock().unlock();
+			else if (exclusive)
+				this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the routing key of this server
+	 */
+	String routingKey() {
+		return this.routingKey;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.RpcServer#startProcessingRequests()
+	 */
+	@Override protected void startProcessingRequests()
+			throws InterruptedException {
+		this.started.countDown();
+		this.stopped.await();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.RpcServer#shutdown()
+	 */
+	@Override public void shutdown() {
+		this.transport.remove(this);
+		this.stopped.countDown();
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.local;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.AbstractConsumer;
+import org.pascani.dsl.lib.infrastructure.AbstractProducer;
+import org.pascani.dsl.lib.infrastructure.RpcClient;
+import org.pascani.dsl.lib.infrastructure.RpcServer;
+import org.pascani.dsl.lib.infrastructure.Transport;
+import org.pascani.dsl.lib.util.RoutingKeys;
+
+/**
+ * Implementation of {@link Transport} connecting components within the same
+ * JVM. Events are handed to the consumers bound to the exchange and routing
+ * key they are produced with (binding keys may contain wildcards, as with a
+ * topic exchange, see {@link RoutingKeys}), and RPC requests are handled by
+ * calling the
+ * request handler of the server directly; neither events nor requests and
+ * responses are serialized, thus they are shared (not copied) among the
+ * components.
+ * 
+ * <p>
+ * Each URI (e.g., {@code local://}) denotes an independent set of exchanges
+ * and RPC servers, which makes this transport a broker-free stand-in for a
+ * RabbitMQ server, for instance in tests.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class LocalTransport implements Transport {
+
+	/**
+	 * The consumers bound to each exchange and routing key
+	 */
+	private final ConcurrentMap<List<String>, CopyOnWriteArrayList<LocalConsumer>>
+			bindings;
+
+	/**
+	 * The consumers bound to each exchange and binding key containing
+	 * wildcards
+	 */
+	private final ConcurrentMap<List<String>, CopyOnWriteArrayList<LocalConsumer>>
+			patterns;
+
+	/**
+	 * The RPC servers, by routing key
+	 */
+	private final ConcurrentMap<String, LocalRpcServer> servers;
+
+	public LocalTransport() {
+		this.bindings =
+				new ConcurrentHashMap<List<String>, CopyOnWriteArrayList<LocalConsumer>>();
+		this.patterns =
+				new ConcurrentHashMap<List<String>, CopyOnWriteArrayList<LocalConsumer>>();
+		this.servers = new ConcurrentHashMap<String, LocalRpcServer>();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#producer(java.lang.String,
+	 * java.lang.String)
+	 */
+	public AbstractProducer producer(final String exchange,
+			final String routingKey) {
+		return new LocalProducer(this, exchange, routingKey);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#consumer(java.lang.String,
+	 * java.lang.String, java.lang.String,
+	 * org.pascani.dsl.lib.PascaniRuntime.Context)
+	 */
+	public AbstractConsumer consumer(final String exchange,
+			final String routingKey, final String tag,
+			final PascaniRuntime.Context context) {
+		LocalConsumer consumer = new LocalConsumer(this, exchange, routingKey,
+				context);
+		bind(consumer);
+		return consumer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#rpcClient(java.lang.String)
+	 */
+	public RpcClient rpcClient(final String routingKey) {
+		return new LocalRpcClient(this, routingKey);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#rpcServer(java.lang.String,
+	 * org.pascani.dsl.lib.PascaniRuntime.Context)
+	 */
+	public RpcServer rpcServer(final String routingKey,
+			final PascaniRuntime.Context context) {
+		LocalRpcServer server = new LocalRpcServer(this, routingKey);
+		this.servers.put(routingKey, server);
+		return server;
+	}
+
+	/**
+	 * @return the consumers bound to the given exchange with the given
+	 *         routing key, or with a binding key matching it
+	 */
+	List<LocalConsumer> consumers(final String exchange,
+			final String routingKey) {
+		List<LocalConsumer> consumers = this.bindings.get(key(exchange,
+				routingKey));
+		if (consumers == null)
+			consumers = Collections.emptyList();
+		if (this.patterns.isEmpty())
+			return consumers;
+		List<LocalConsumer> matching = null;
+		String ex = exchange == null ? "" : exchange;
+		for (Map.Entry<List<String>, CopyOnWriteArrayList<LocalConsumer>> entry :
+				this.patterns.entrySet()) {
+			List<String> key = entry.getKey();
+			if (!key.get(0).equals(ex) || entry.getValue().isEmpty()
+					|| !RoutingKeys.matches(key.get(1), routingKey))
+				continue;
+			if (matching == null)
+				matching = new ArrayList<LocalConsumer>(consumers);
+			matching.addAll(entry.getValue());
+		}
+		return matching == null ? consumers : matching;
+	}
+
+	/**
+	 * Binds a consumer to its exchange and routing key
+	 */
+	void bind(final LocalConsumer consumer) {
+		ConcurrentMap<List<String>, CopyOnWriteArrayList<LocalConsumer>> bindings =
+				bindingsOf(consumer);
+		List<String> key = key(consumer.exchange(), consumer.routingKey());
+		CopyOnWriteArrayList<LocalConsumer> consumers = bindings.get(key);
+		if (consumers == null) {
+			consumers = new CopyOnWriteArrayList<LocalConsumer>();
+			CopyOnWriteArrayList<LocalConsumer> previous = bindings
+					.putIfAbsent(key, consumers);
+			if (previous != null)
+				consumers = previous;
+		}
+		consumers.add(consumer);
+	}
+
+	/**
+	 * Unbinds a consumer from its exchange and routing key
+	 */
+	void unbind(final LocalConsumer consumer) {
+		List<LocalConsumer> consumers = bindingsOf(consumer).get(
+				key(consumer.exchange(), consumer.routingKey()));
+		if (consumers != null)
+			consumers.remove(consumer);
+	}
+
+	/**
+	 * @return the bindings holding the given consumer, depending on whether
+	 *         its binding key contains wildcards
+	 */
+	private ConcurrentMap<List<String>, CopyOnWriteArrayList<LocalConsumer>>
+			bindingsOf(final LocalConsumer consumer) {
+		return RoutingKeys.isPattern(consumer.routingKey()) ? this.patterns
+				: this.bindings;
+	}
+
+	/**
+	 * @return the RPC server with the given routing key, or {@code null} if
+	 *         there is none
+	 */
+	LocalRpcServer server(final String routingKey) {
+		return this.servers.get(routingKey);
+	}
+
+	/**
+	 * Removes an RPC server, if it is still registered
+	 */
+	void remove(final LocalRpcServer server) {
+		this.servers.remove(server.routingKey(), server);
+	}
+
+	private static List<String> key(final String exchange,
+			final String routingKey) {
+		return Arrays.asList(exchange == null ? "" : exchange,
+				routingKey == null ? "" : routingKey);
+	}
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.rabbitmq;
+
+/**
+ * The delivery guarantees of the messages published by a
+ * {@link RabbitMQProducer}, from the cheapest to the most reliable.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public enum Durability {
+
+	/**
+	 * Messages are kept in memory by the broker, thus they are lost if it
+	 * restarts
+	 */
+	TRANSIENT,
+
+	/**
+	 * Messages are written to disk by the broker, but the producer does not
+	 * know whether they reached it
+	 */
+	PERSISTENT,
+
+	/**
+	 * Messages are written to disk by the broker, which confirms their
+	 * reception asynchronously; messages rejected by the broker are reported
+	 * to the producer's {@link RabbitMQProducer.NackListener}
+	 */
+	CONFIRMED
+
+}
@@ -19,6 +19,8 @@
 package org.pascani.dsl.lib.infrastructure.rabbitmq;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 import org.pascani.dsl.lib.PascaniRuntime;
@@ -31,12 +33,74 @@ import com.rabbitmq.client.ConnectionFactory;
  * Basic end point representation containing common factors from Consumer and
  * Producer roles, i.e., required information in both cases.
  * 
+ * <p>
+ * End points connecting to the same URI share two connections: one for the
+ * channels playing the {@link #PUBLISHING} role, and another one for the rest
+ * of the channels (e.g., consumers and RPC clients and servers). Thus, when
+ * the broker blocks publishers for flow control, consumers can still
+ * acknowledge deliveries and RPC servers can still send their replies. Each
+ * connection is opened when an end point first requests a channel on it, and
+ * is closed once all of the end points using it are closed. Each end point
+ * opens its own channels, one per role, as they are first requested;
+ * components sharing an end point thus use different channels, unless they
+ * play the same role.
+ * </p>
+ * 
  * @author Miguel Jiménez - Initial contribution and API
  */
 public class EndPoint {
 
-	private final Channel channel;
-	private final Connection connection;
+	/**
+	 * The role of the channel returned by {@link #channel()}
+	 */
+	public static final String DEFAULT = "default";
+
+	/**
+	 * The role of the channel used by producers to publish events
+	 */
+	public static final String PUBLISHING = "publishing";
+
+	/**
+	 * The connections shared by the publishing channels, by URI, guarded by
+	 * itself
+	 */
+	private static final Map<String, SharedConnection> publishers =
+			new HashMap<String, SharedConnection>();
+
+	/**
+	 * The connections shared by the rest of the channels, by URI, guarded by
+	 * {@link #publishers}
+	 */
+	private static final Map<String, SharedConnection> consumers =
+			new HashMap<String, SharedConnection>();
+
+	/**
+	 * The RabbitMQ connection URI
+	 */
+	private final String uri;
+
+	/**
+	 * The connection shared with other end points by the publishing channels,
+	 * guarded by {@link #channels}
+	 */
+	private SharedConnection publishing;
+
+	/**
+	 * The connection shared with other end points by the rest of the
+	 * channels, guarded by {@link #channels}
+	 */
+	private SharedConnection consuming;
+
+	/**
+	 * The channels opened by this end point, by role, guarded by itself
+	 */
+	private final Map<String, Channel> channels =
+			new HashMap<String, Channel>();
+
+	/**
+	 * Whether this end point has been closed, guarded by {@link #channels}
+	 */
+	private boolean closed = false;
 
 	/**
 	 * Creates a RabbitMQ end point; that is, a connection to the RabbitMQ
@@ -47,16 +111,11 @@ public class EndPoint {
 	 * 
 	 * @throws Exception
 	 *             If something bat happens. Check exceptions in
-	 *             {@link ConnectionFactory#setUri(String)},
-	 *             {@link ConnectionFactory#newConnection()}, and
-	 *             {@link Connection#createChannel()}
+	 *             {@link ConnectionFactory#setUri(String)}
 	 */
 	public EndPoint(final String uri) throws Exception {
-		ConnectionFactory factory = new ConnectionFactory();
-		factory.setAutomaticRecoveryEnabled(true);
-		factory.setUri(uri);
-		this.connection = factory.newConnection();
-		this.channel = this.connection.createChannel();
+		new ConnectionFactory().setUri(uri);
+		this.uri = uri;
 	}
 	
 	/**
@@ -65,20 +124,172 @@ public class EndPoint {
 	 * 
 	 * @throws Exception
 	 *             If something bat happens. Check exceptions in
-	 *             {@link ConnectionFactory#setUri(String)},
-	 *             {@link ConnectionFactory#newConnection()}, and
-	 *             {@link Connection#createChannel()}
+	 *             {@link ConnectionFactory#setUri(String)} and
+	 *             {@link ConnectionFactory#newConnection()}
 	 */
 	public EndPoint() throws Exception {
 		this(PascaniRuntime.getEnvironment().get("uri"));
 	}
 
+	/**
+	 * Closes the channels of this end point, and the connection if no other
+	 * end point uses it. Closing an end point more than once has no effect.
+	 * 
+	 * @throws IOException
+	 *             If an I/O problem is encountered
+	 * @throws TimeoutException
+	 *             If closing a channel or the connection times out
+	 */
 	public void close() throws IOException, TimeoutException {
-		this.channel.close();
-		this.connection.close();
+		synchronized (this.channels) {
+			if (this.closed)
+				return;
+			this.closed = true;
+		}
+		try {
+			for (Channel channel : this.channels.values()) {
+				if (channel.isOpen())
+					channel.close();
+			}
+		} finally {
+			this.channels.clear();
+			try {
+				if (this.publishing != null)
+					release(publishers, this.uri, this.publishing);
+			} finally {
+				if (this.consuming != null)
+					release(consumers, this.uri, this.consuming);
+			}
+		}
 	}
 
+	/**
+	 * @return the channel playing the {@link #DEFAULT} role
+	 * @throws IllegalStateException
+	 *             If the channel cannot be opened
+	 */
 	public Channel channel() {
-		return this.channel;
+		try {
+			return channel(DEFAULT);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the channel playing the given role, opening it (and the
+	 * connection for that role) if necessary.
+	 * 
+	 * @param role
+	 *            The role of the channel, for instance {@link #PUBLISHING} or
+	 *            a consumer tag
+	 * @return the channel playing the given role
+	 * @throws IOException
+	 *             If the channel or its connection cannot be opened
+	 */
+	public Channel channel(final String role) throws IOException {
+		synchronized (this.channels) {
+			Channel channel = this.channels.get(role);
+			if (channel == null) {
+				if (this.closed)
+					throw new IOException("The end point has been closed");
+				channel = connection(role).connection.createChannel();
+				this.channels.put(role, channel);
+			}
+			return channel;
+		}
+	}
+
+	/**
+	 * Returns the connection on which the channels playing the given role are
+	 * opened, acquiring it if necessary. Must be called holding
+	 * {@link #channels}.
+	 */
+	private SharedConnection connection(final String role)
+			throws IOException {
+		try {
+			if (PUBLISHING.equals(role)) {
+				if (this.publishing == null)
+					this.publishing = acquire(publishers, this.uri);
+				return this.publishing;
+			}
+			if (this.consuming == null)
+				this.consuming = acquire(consumers, this.uri);
+			return this.consuming;
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return the number of connections currently shared by the end points
+	 */
+	public static int openConnections() {
+		synchronized (publishers) {
+			return publishers.size() + consumers.size();
+		}
 	}
+
+	/**
+	 * Returns the connection to the given URI, creating it if there is none
+	 * or it was closed, and registers one more end point using it
+	 */
+	private static SharedConnection acquire(
+			final Map<String, SharedConnection> connections, final String uri)
+			throws Exception {
+		synchronized (publishers) {
+			SharedConnection shared = connections.get(uri);
+			if (shared == null || !shared.connection.isOpen()) {
+				ConnectionFactory factory = new ConnectionFactory();
+				factory.setAutomaticRecoveryEnabled(true);
+				factory.setUri(uri);
+				shared = new SharedConnection(factory.newConnection());
+				connections.put(uri, shared);
+			}
+			shared.references++;
+			return shared;
+		}
+	}
+
+	/**
+	 * Unregisters an end point from the given connection, closing it if no
+	 * other end point uses it
+	 */
+	private static void release(
+			final Map<String, SharedConnection> connections, final String uri,
+			final SharedConnection shared) throws IOException {
+		synchronized (publishers) {
+			if (--shared.references > 0)
+				return;
+			if (connections.get(uri) == shared)
+				connections.remove(uri);
+			if (shared.connection.isOpen())
+				shared.connection.close();
+		}
+	}
+
+	/**
+	 * A connection counting the end points that use it
+	 */
+	private static class SharedConnection {
+
+		/**
+		 * The actual connection
+		 */
+		private final Connection connection;
+
+		/**
+		 * The number of end points using the connection, guarded by
+		 * {@link EndPoint#publishers}
+		 */
+		private int references = 0;
+
+		public SharedConnection(final Connection connection) {
+			this.connection = connection;
+		}
+
+	}
+
 }
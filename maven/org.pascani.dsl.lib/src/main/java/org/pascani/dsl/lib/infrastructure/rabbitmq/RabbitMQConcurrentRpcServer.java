@@ -0,0 +1,316 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.rabbitmq;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.RpcOperation;
+import org.pascani.dsl.lib.infrastructure.RpcRequest;
+import org.pascani.dsl.lib.infrastructure.RpcServer;
+import org.pascani.dsl.lib.util.Codec;
+import org.pascani.dsl.lib.util.Codecs;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * An implementation of {@link RpcServer} for the RabbitMQ queuing system that
+ * handles requests with a pool of worker threads.
+ * 
+ * <p>
+ * Read-only operations (see {@link RpcOperation#isReadOnly()}) are handled in
+ * parallel, whereas the operations changing the state of the handler are
+ * handled one at a time, in the order they arrive, and exclusively of any
+ * other operation (see {@link RpcOperation#isExclusive()}); pausing and
+ * resuming are handled in that order too, but without waiting for the
+ * operations in progress. Requests are acknowledged once their response has
+ * been sent, and at most two requests per worker are received in advance.
+ * Requests that cannot be decoded are answered with a failure (see
+ * {@link #FAILURE_HEADER}).
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class RabbitMQConcurrentRpcServer extends RpcServer {
+
+	/**
+	 * The default number of threads handling read-only operations
+	 */
+	public static final int DEFAULT_WORKERS = 4;
+
+	/**
+	 * The header of the replies reporting that a request could not be
+	 * handled, whose value is the reason
+	 */
+	public static final String FAILURE_HEADER = "pascani-failure";
+
+	/**
+	 * An end point connected to a RabbitMQ server
+	 */
+	private final EndPoint endPoint;
+
+	/**
+	 * The queue from which requests are consumed
+	 */
+	private final String queue;
+
+	/**
+	 * The number of threads handling read-only operations
+	 */
+	private final int workers;
+
+	/**
+	 * Handles read-only operations
+	 */
+	private final ExecutorService readers;
+
+	/**
+	 * Handles the operations changing the state of the handler, in order
+	 */
+	private final ExecutorService writer;
+
+	/**
+	 * Excludes read-only operations while a state-changing operation is
+	 * handled
+	 */
+	private final ReadWriteLock lock;
+
+	/**
+	 * Released when this server is shut down
+	 */
+	private final CountDownLatch stopped;
+
+	/**
+	 * Creates an instance with the number of workers configured in the
+	 * {@code rpc_workers} property of the Pascani environment
+	 * 
+	 * @param endPoint
+	 *            An end point connected to a RabbitMQ server
+	 * @param routingKey
+	 *            The routing key of the handler (e.g., a probe or a namespace)
+	 * @param context
+	 *            The context in which the handler is used
+	 * @throws IOException
+	 *             If there is a problem declaring the RPC queue
+	 */
+	public RabbitMQConcurrentRpcServer(final EndPoint endPoint,
+			final String routingKey, final PascaniRuntime.Context context)
+			throws IOException {
+		this(endPoint, routingKey, context, configuredWorkers());
+	}
+
+	/**
+	 * @param endPoint
+	 *            An end point connected to a RabbitMQ server
+	 * @param routingKey
+	 *            The routing key of the handler (e.g., a probe or a namespace)
+	 * @param context
+	 *            The context in which the handler is used
+	 * @param workers
+	 *            The number of threads handling read-only operations
+	 * @throws IOException
+	 *             If there is a problem declaring the RPC queue
+	 */
+	public RabbitMQConcurrentRpcServer(final EndPoint endPoint,
+			final String routingKey, final PascaniRuntime.Context context,
+			final int workers) throws IOException {
+		super(PascaniRuntime.getEnvironment().get("rpc_queue_prefix")
+				+ routingKey);
+		this.endPoint = endPoint;
+		this.workers = workers;
+		this.queue = declareQueue(routingKey);
+		this.readers = Executors.newFixedThreadPool(workers,
+				new ThreadFactoryBuilder().setDaemon(true)
+						.setNameFormat("pascani-rpc-" + routingKey + "-%d")
+						.build());
+		this.writer = Executors
+				.newSingleThreadExecutor(new ThreadFactoryBuilder()
+						.setDaemon(true)
+						.setNameFormat("pascani-rpc-" + routingKey + "-writer")
+						.build());
+		this.lock = new ReentrantReadWriteLock();
+		this.stopped = new CountDownLatch(1);
+	}
+
+	private static int configuredWorkers() {
+		String workers = PascaniRuntime.getEnvironment().get("rpc_workers");
+		return workers == null ? DEFAULT_WORKERS : Integer.parseInt(workers);
+	}
+
+	private String declareQueue(final String routingKey) throws IOException {
+		String prefix = PascaniRuntime.getEnvironment().get("rpc_queue_prefix");
+		String queue = prefix + routingKey;
+		String exchange = PascaniRuntime.getEnvironment().get("rpc_exchange");
+		this.endPoint.channel().queueDeclare(queue, false, true, true, null);
+		this.endPoint.channel().queueBind(queue, exchange, routingKey);
+		return queue;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.RpcServer#startProcessingRequests()
+	 */
+	@Override protected void startProcessingRequests() throws Exception {
+		final Channel channel = this.endPoint.channel();
+		channel.basicQos(this.workers * 2);
+		channel.basicConsume(this.queue, false, new DefaultConsumer(channel) {
+			@Override public void handleDelivery(String consumerTag,
+					final Envelope envelope,
+					final AMQP.BasicProperties properties, final byte[] body) {
+				dispatch(envelope.getDeliveryTag(), properties, body);
+			}
+
+			@Override public void handleShutdownSignal(String consumerTag,
+					ShutdownSignalException sig) {
+				stopped.countDown();
+			}
+		});
+		this.stopped.await();
+	}
+
+	/**
+	 * Decodes a request, and hands it to the corresponding worker
+	 */
+	private void dispatch(final long deliveryTag,
+			final AMQP.BasicProperties properties, final byte[] body) {
+		Codec codec = Codecs.forContentType(properties.getContentType());
+		if (codec == null)
+			codec = Codecs.detect(body);
+		if (codec == null)
+			codec = Codecs.defaultCodec();
+		final Codec requestCodec = codec;
+		final RpcRequest request;
+		try {
+			request = (RpcRequest) codec.decode(body);
+		} catch (RuntimeException e) {
+			this.logger.error("Error decoding an RPC request", e);
+			fail(properties, "The RPC request is malformed");
+			acknowledge(deliveryTag);
+			return;
+		}
+		final boolean readOnly = request.operation().isReadOnly();
+		final boolean exclusive = request.operation().isExclusive();
+		Runnable task = new Runnable() {
+			public void run() {
+				Serializable response = null;
+				if (readOnly)
+					lock.readLock().lock();
+				else if (exclusive)
+					lock.writeLock().lock();
+				try {
+					response = delegateHandling(request);
+				} catch (RuntimeException e) {
+					logger.error("Error handling RPC request "
+							+ request.operation(), e);
+				} finally {
+					if (readOnly)
+						lock.readLock().unlock();
+					else if (exclusive)
+						lock.writeLock().unlock();
+				}
+				reply(properties, requestCodec, response);
+				acknowledge(deliveryTag);
+			}
+		};
+		if (readOnly)
+			this.readers.execute(task);
+		else
+			this.writer.execute(task);
+	}
+
+	private void reply(final AMQP.BasicProperties properties,
+			final Codec codec, final Serializable response) {
+		if (properties.getReplyTo() == null)
+			return;
+		AMQP.BasicProperties replyProperties = new AMQP.BasicProperties.Builder()
+				.correlationId(properties.getCorrelationId())
+				.contentType(codec.contentType()).build();
+		try {
+			byte[] message = codec.encode(response);
+			synchronized (this.endPoint.channel()) {
+				this.endPoint.channel().basicPublish("",
+						properties.getReplyTo(), replyProperties, message);
+			}
+		} catch (Exception e) {
+			this.logger.error("Error replying to an RPC request", e);
+		}
+	}
+
+	/**
+	 * Replies to a request that could not be handled
+	 */
+	private void fail(final AMQP.BasicProperties properties,
+			final String failure) {
+		if (properties.getReplyTo() == null)
+			return;
+		Map<String, Object> headers = new HashMap<String, Object>();
+		headers.put(FAILURE_HEADER, failure);
+		AMQP.BasicProperties replyProperties = new AMQP.BasicProperties.Builder()
+				.correlationId(properties.getCorrelationId())
+				.headers(headers).build();
+		try {
+			synchronized (this.endPoint.channel()) {
+				this.endPoint.channel().basicPublish("",
+						properties.getReplyTo(), replyProperties,
+						failure.getBytes("UTF-8"));
+			}
+		} catch (IOException e) {
+			this.logger.error("Error replying to an RPC request", e);
+		}
+	}
+
+	private void acknowledge(final long deliveryTag) {
+		try {
+			synchronized (this.endPoint.channel()) {
+				this.endPoint.channel().basicAck(deliveryTag, false);
+			}
+		} catch (IOException e) {
+			this.logger.error("Error acknowledging an RPC request", e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.RpcServer#shutdown()
+	 */
+	@Override public void shutdown() throws IOException, TimeoutException {
+		this.readers.shutdown();
+		this.writer.shutdown();
+		this.endPoint.close();
+		this.stopped.countDown();
+	}
+
+}
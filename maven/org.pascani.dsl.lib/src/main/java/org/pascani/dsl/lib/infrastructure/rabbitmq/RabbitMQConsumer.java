@@ -19,14 +19,27 @@
 package org.pascani.dsl.lib.infrastructure.rabbitmq;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.pascani.dsl.lib.Event;
 import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.events.ChangeEvent;
 import org.pascani.dsl.lib.infrastructure.AbstractConsumer;
+import org.pascani.dsl.lib.util.Codecs;
 import org.pascani.dsl.lib.util.LocalEventProducer;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Consumer;
@@ -37,6 +50,19 @@ import com.rabbitmq.client.ShutdownSignalException;
  * Implementation of {@link AbstractConsumer} to work with the RabbitMQ queuing
  * system.
  * 
+ * <p>
+ * The number of unacknowledged messages the server delivers to this consumer
+ * can be limited ({@link #prefetch(int)}), and handled messages can be
+ * acknowledged cumulatively every few messages or milliseconds
+ * ({@link #acknowledge(int, long)}). Events are handled in the thread
+ * delivering the messages, unless they are dispatched to a pool of workers
+ * ({@link #parallel(int, Function)}); in that case, the events sharing a key
+ * are still handled in the order they were delivered. Either way, a message is
+ * acknowledged only after all of the messages delivered before it have been
+ * handled. Each consumer has a channel of its own on the end point, thus
+ * cumulative acknowledgements never cover messages of other consumers.
+ * </p>
+ * 
  * @author Miguel Jiménez - Initial contribution and API
  */
 public class RabbitMQConsumer extends AbstractConsumer implements Consumer {
@@ -46,6 +72,12 @@ public class RabbitMQConsumer extends AbstractConsumer implements Consumer {
 	 */
 	private final EndPoint endPoint;
 
+	/**
+	 * The channel of this consumer, opened on the end point with the consumer
+	 * tag as its role
+	 */
+	private final Channel channel;
+
 	/**
 	 * The consumer tag
 	 */
@@ -61,6 +93,88 @@ public class RabbitMQConsumer extends AbstractConsumer implements Consumer {
 	 */
 	private final LocalEventProducer<Event<?>> eventProducer;
 
+	/**
+	 * Orders events by the variable they change, in the case of
+	 * {@link ChangeEvent}s, or by their transaction otherwise
+	 */
+	public static final Function<Event<?>, Object> DEFAULT_KEY =
+			new Function<Event<?>, Object>() {
+		public Object apply(final Event<?> event) {
+			if (event instanceof ChangeEvent)
+				return ((ChangeEvent) event).variable();
+			return event.transactionId();
+		}
+	};
+
+	/**
+	 * The maximum time, in milliseconds, to wait for the workers to handle the
+	 * pending events when shutting down
+	 */
+	private static final long DRAIN_TIMEOUT = 5000;
+
+	/**
+	 * Sends the pending acknowledgements of all consumers
+	 */
+	private static final ScheduledExecutorService acknowledger = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("pascani-consumer-acker")
+					.build());
+
+	/**
+	 * The maximum number of unacknowledged messages delivered to this
+	 * consumer, or 0 if unlimited
+	 */
+	private int prefetch = 0;
+
+	/**
+	 * The number of handled messages after which an acknowledgement is sent
+	 */
+	private int ackEvery = 1;
+
+	/**
+	 * The scheduled acknowledgement of handled messages, if acknowledgements
+	 * are batched
+	 */
+	private ScheduledFuture<?> acking;
+
+	/**
+	 * The delivery tags of the messages being handled
+	 */
+	private final ConcurrentSkipListSet<Long> inFlight =
+			new ConcurrentSkipListSet<Long>();
+
+	/**
+	 * The latest delivery tag received
+	 */
+	private volatile long delivered = 0;
+
+	/**
+	 * The latest delivery tag acknowledged, guarded by {@link #inFlight}
+	 */
+	private long acknowledged = 0;
+
+	/**
+	 * The number of messages handled since the last acknowledgement, guarded
+	 * by {@link #inFlight}
+	 */
+	private int handled = 0;
+
+	/**
+	 * The single-threaded executors handling the events, one per key
+	 * partition; events are handled in the delivery thread if there are none
+	 */
+	private volatile ExecutorService[] workers = new ExecutorService[0];
+
+	/**
+	 * Computes the key of the events whose relative order is preserved
+	 */
+	private volatile Function<? super Event<?>, ?> key = DEFAULT_KEY;
+
+	/**
+	 * Whether this consumer has started consuming messages
+	 */
+	private volatile boolean consuming = false;
+
 	/**
 	 * Creates a RabbitMQ message consumer
 	 * 
@@ -100,6 +214,7 @@ public class RabbitMQConsumer extends AbstractConsumer implements Consumer {
 			throws IOException, TimeoutException {
 
 		this.endPoint = endPoint;
+		this.channel = endPoint.channel(tag);
 		this.queueName = queue;
 		this.consumerTag = tag;
 		this.eventProducer = new LocalEventProducer<Event<?>>(context);
@@ -154,10 +269,10 @@ public class RabbitMQConsumer extends AbstractConsumer implements Consumer {
 			TimeoutException {
 
 		this.endPoint = endPoint;
-		Channel channel = this.endPoint.channel();
+		this.channel = endPoint.channel(tag);
 
-		this.queueName = channel.queueDeclare().getQueue();
-		channel.queueBind(this.queueName, exchange, routingKey);
+		this.queueName = this.channel.queueDeclare().getQueue();
+		this.channel.queueBind(this.queueName, exchange, routingKey);
 
 		this.consumerTag = tag;
 		this.eventProducer = new LocalEventProducer<Event<?>>(context);
@@ -169,10 +284,12 @@ public class RabbitMQConsumer extends AbstractConsumer implements Consumer {
 	 * @see pascani.lang.infrastructure.AbstractConsumer#startConsuming()
 	 */
 	@Override protected void startConsuming() {
-		Channel channel = this.endPoint.channel();
 		try {
+			if (this.prefetch > 0)
+				this.channel.basicQos(this.prefetch);
 			// start consuming (non auto-acknowledged) messages
-			channel.basicConsume(this.queueName, false, this.consumerTag, this);
+			this.channel.basicConsume(this.queueName, false, this.consumerTag, this);
+			this.consuming = true;
 		} catch (IOException e) {
 			logger.error("Error consuming message from RabbitMQ consumer", e);
 		}
@@ -185,7 +302,11 @@ public class RabbitMQConsumer extends AbstractConsumer implements Consumer {
 	 * pascani.lang.Event)
 	 */
 	@Override public void delegateEventHandling(final Event<?> event) {
-		this.eventProducer.post(event);
+		Handler handler = this.handler;
+		if (handler != null)
+			handler.handle(event);
+		else
+			this.eventProducer.post(event);
 	}
 
 	/*
@@ -199,11 +320,207 @@ public class RabbitMQConsumer extends AbstractConsumer implements Consumer {
 			final Envelope envelope, final BasicProperties props,
 			final byte[] body) throws IOException {
 
-		Event<?> event = (Event<?>) SerializationUtils.deserialize(body);
-		internalDelegateHandling(event);
+		final long tag = envelope.getDeliveryTag();
+		this.inFlight.add(tag);
+		this.delivered = tag;
+
+		List<?> events;
+		try {
+			Object decoded = Codecs.decode(props.getContentType(), body);
+			events = Codecs.isBatch(props.getContentType())
+					? (List<?>) decoded : Collections.singletonList(decoded);
+		} catch (RuntimeException e) {
+			logger.error("Discarding a message that cannot be decoded", e);
+			handled(tag);
+			return;
+		}
+
+		ExecutorService[] workers = this.workers;
+		if (workers.length == 0 || events.isEmpty()) {
+			for (Object event : events)
+				handle((Event<?>) event);
+			handled(tag);
+			return;
+		}
+		final AtomicInteger remaining = new AtomicInteger(events.size());
+		for (Object e : events) {
+			final Event<?> event = (Event<?>) e;
+			Object k = this.key.apply(event);
+			int index = k == null ? 0
+					: (k.hashCode() & Integer.MAX_VALUE) % workers.length;
+			workers[index].execute(new Runnable() {
+				public void run() {
+					handle(event);
+					if (remaining.decrementAndGet() == 0)
+						handled(tag);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Delegates the handling of an event, logging any error
+	 * 
+	 * @param event
+	 *            The event to be handled
+	 */
+	private void handle(final Event<?> event) {
+		try {
+			internalDelegateHandling(event);
+		} catch (RuntimeException e) {
+			logger.error("Error handling event " + event.identifier(), e);
+		}
+	}
 
-		// Acknowledge the received message after it has been handled
-		this.endPoint.channel().basicAck(envelope.getDeliveryTag(), false);
+	/**
+	 * Marks a message as handled, acknowledging it (and all of the messages
+	 * before it, if acknowledgements are cumulative) if enough messages have
+	 * been handled since the last acknowledgement
+	 * 
+	 * @param tag
+	 *            The delivery tag of the message
+	 */
+	private void handled(final long tag) {
+		synchronized (this.inFlight) {
+			this.inFlight.remove(tag);
+			if (this.ackEvery == 1) {
+				try {
+					this.channel.basicAck(tag, false);
+				} catch (IOException e) {
+					logger.error("Error acknowledging message " + tag, e);
+				}
+			} else if (++this.handled >= this.ackEvery) {
+				acknowledgeHandled();
+			}
+		}
+	}
+
+	/**
+	 * @return the latest delivery tag such that all of the messages up to it
+	 *         have been handled
+	 */
+	private long handledUpTo() {
+		// Read the latest tag first: every tag up to it is either in flight or
+		// already handled
+		long upTo = this.delivered;
+		Long oldest = this.inFlight.ceiling(Long.MIN_VALUE);
+		if (oldest != null)
+			upTo = Math.min(upTo, oldest - 1);
+		return upTo;
+	}
+
+	/**
+	 * Acknowledges all of the messages delivered before the oldest message
+	 * that is still being handled, if acknowledgements are cumulative
+	 */
+	private void acknowledgeHandled() {
+		synchronized (this.inFlight) {
+			long upTo = handledUpTo();
+			if (this.ackEvery == 1 || upTo <= this.acknowledged)
+				return;
+			try {
+				this.channel.basicAck(upTo, true);
+				this.acknowledged = upTo;
+				this.handled = 0;
+			} catch (IOException e) {
+				logger.error("Error acknowledging messages up to " + upTo, e);
+			}
+		}
+	}
+
+	/**
+	 * Limits the number of unacknowledged messages the server delivers to
+	 * this consumer, which also bounds the events waiting for a worker. This
+	 * must be set before the consumer starts.
+	 * 
+	 * @param prefetch
+	 *            The maximum number of unacknowledged messages, or 0 if
+	 *            unlimited
+	 */
+	public void prefetch(final int prefetch) {
+		this.prefetch = Math.max(0, prefetch);
+	}
+
+	/**
+	 * Acknowledges the handled messages cumulatively, every {@code maxMessages}
+	 * messages or {@code maxDelay} milliseconds, whatever happens first. The
+	 * number of messages should be lower than the prefetch count; otherwise,
+	 * acknowledgements are only sent by time.
+	 * 
+	 * @param maxMessages
+	 *            The number of handled messages after which an acknowledgement
+	 *            is sent; every message is acknowledged if it is lower than 2
+	 * @param maxDelay
+	 *            The maximum time, in milliseconds, a handled message waits to
+	 *            be acknowledged
+	 */
+	public synchronized void acknowledge(final int maxMessages,
+			final long maxDelay) {
+		if (this.acking != null) {
+			this.acking.cancel(false);
+			this.acking = null;
+		}
+		synchronized (this.inFlight) {
+			acknowledgeHandled();
+			this.acknowledged = handledUpTo();
+			this.handled = 0;
+			this.ackEvery = Math.max(1, maxMessages);
+		}
+		if (this.ackEvery > 1) {
+			this.acking = acknowledger.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					acknowledgeHandled();
+				}
+			}, maxDelay, maxDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Handles the events in a pool of workers. Events with the same key are
+	 * handled by the same worker, thus preserving their relative order; events
+	 * with different keys may be handled in any order. This should be set
+	 * before the consumer starts, as events already waiting for a worker may
+	 * be handled after the ones delivered next.
+	 * 
+	 * @param workers
+	 *            The number of workers; events are handled in the delivery
+	 *            thread if it is lower than 1
+	 * @param key
+	 *            Computes the key of each event, for instance
+	 *            {@link #DEFAULT_KEY}
+	 */
+	public synchronized void parallel(final int workers,
+			final Function<? super Event<?>, ?> key) {
+		ExecutorService[] previous = this.workers;
+		ExecutorService[] executors = new ExecutorService[Math.max(0, workers)];
+		ThreadFactory factory = new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("pascani-consumer-%d").build();
+		for (int i = 0; i < executors.length; i++)
+			executors[i] = Executors.newSingleThreadExecutor(factory);
+		this.key = key;
+		this.workers = executors;
+		for (ExecutorService executor : previous)
+			executor.shutdown();
+	}
+
+	/**
+	 * Configures the prefetch count, acknowledgements and workers as in the
+	 * {@code consumer_prefetch}, {@code consumer_ack_size},
+	 * {@code consumer_ack_delay} and {@code consumer_workers} properties of the
+	 * Pascani environment. Workers partition events by {@link #DEFAULT_KEY}.
+	 * 
+	 * @see #prefetch(int)
+	 * @see #acknowledge(int, long)
+	 * @see #parallel(int, Function)
+	 */
+	public void consumeAsConfigured() {
+		prefetch(Integer.parseInt(PascaniRuntime.getEnvironment().get(
+				"consumer_prefetch")));
+		acknowledge(Integer.parseInt(PascaniRuntime.getEnvironment().get(
+				"consumer_ack_size")), Long.parseLong(PascaniRuntime
+				.getEnvironment().get("consumer_ack_delay")));
+		parallel(Integer.parseInt(PascaniRuntime.getEnvironment().get(
+				"consumer_workers")), DEFAULT_KEY);
 	}
 
 	/*
@@ -264,6 +581,25 @@ public class RabbitMQConsumer extends AbstractConsumer implements Consumer {
 	 * @see pascani.lang.infrastructure.AbstractConsumer#shutdown()
 	 */
 	@Override public void shutdown() throws IOException, TimeoutException {
+		if (this.consuming) {
+			this.consuming = false;
+			this.channel.basicCancel(this.consumerTag);
+		}
+		ExecutorService[] workers = this.workers;
+		parallel(0, this.key);
+		try {
+			long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+			for (ExecutorService worker : workers) {
+				long timeout = deadline - System.currentTimeMillis();
+				if (!worker.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+					logger.warn("Some events were not handled before shutting down");
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		acknowledge(1, 0);
 		this.endPoint.close();
 	}
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.rabbitmq;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.RpcClient;
+import org.pascani.dsl.lib.util.Codec;
+import org.pascani.dsl.lib.util.Codecs;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * An implementation of {@link RpcClient} for the RabbitMQ queuing system that
+ * does not wait for a response before sending the next request. Requests are
+ * published on a single channel, and responses are matched with them through
+ * their correlation identifier as they arrive on a private reply queue.
+ * 
+ * <p>
+ * Every request has a deadline: if no response arrives within the timeout,
+ * the request fails with a {@link TimeoutException}, and the request message
+ * expires if it has not been consumed yet.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class RabbitMQPipelinedRpcClient extends RpcClient {
+
+	/**
+	 * The default time, in milliseconds, to wait for a response
+	 */
+	public static final long DEFAULT_TIMEOUT = 30000;
+
+	/**
+	 * The period, in milliseconds, at which deadlines are checked
+	 */
+	private static final long DEADLINE_PERIOD = 100;
+
+	/**
+	 * Checks the deadlines of the pending requests of all clients
+	 */
+	private static final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("pascani-rpc-deadlines")
+					.build());
+
+	/**
+	 * A request waiting for its response
+	 */
+	private static final class Pending {
+		final SettableFuture<byte[]> future = SettableFuture.create();
+		final long deadline;
+
+		Pending(final long deadline) {
+			this.deadline = deadline;
+		}
+	}
+
+	/**
+	 * An end point connected to a RabbitMQ server
+	 */
+	private final EndPoint endPoint;
+
+	/**
+	 * The exchange to which requests are sent
+	 */
+	private final String exchange;
+
+	/**
+	 * The time, in milliseconds, to wait for a response
+	 */
+	private final long timeout;
+
+	/**
+	 * The queue from which responses are consumed
+	 */
+	private final String replyQueue;
+
+	/**
+	 * The prefix of the correlation identifiers of this client
+	 */
+	private final String prefix;
+
+	/**
+	 * Generates the correlation identifiers of the requests
+	 */
+	private final AtomicLong correlation = new AtomicLong();
+
+	/**
+	 * The requests waiting for their response, by correlation identifier
+	 */
+	private final ConcurrentMap<String, Pending> pending;
+
+	/**
+	 * The scheduled check of the deadlines
+	 */
+	private final ScheduledFuture<?> deadlines;
+
+	/**
+	 * Creates an instance connected to the default RabbitMQ server, with the
+	 * timeout configured in the {@code rpc_timeout} property of the Pascani
+	 * environment
+	 * 
+	 * @param exchange
+	 *            The exchange to which messages are sent
+	 * @param routingKey
+	 *            The queue name of the RPC server
+	 * @throws Exception
+	 *             If there is a problem connecting to the server
+	 */
+	public RabbitMQPipelinedRpcClient(final String exchange,
+			final String routingKey) throws Exception {
+		this(new EndPoint(), exchange, routingKey, configuredTimeout());
+	}
+
+	/**
+	 * @param endPoint
+	 *            An end point connected to a RabbitMQ server
+	 * @param exchange
+	 *            The exchange to which messages are sent
+	 * @param routingKey
+	 *            The queue name of the RPC server
+	 * @param timeout
+	 *            The time, in milliseconds, to wait for a response
+	 * @throws IOException
+	 *             If there is a problem declaring the reply queue
+	 */
+	public RabbitMQPipelinedRpcClient(final EndPoint endPoint,
+			final String exchange, final String routingKey, final long timeout)
+			throws IOException {
+		super(routingKey);
+		this.endPoint = endPoint;
+		this.exchange = exchange;
+		this.timeout = timeout;
+		this.prefix = PascaniRuntime.getIdGenerator().next() + "-";
+		this.pending = new ConcurrentHashMap<String, Pending>();
+		this.replyQueue = this.endPoint.channel().queueDeclare().getQueue();
+		this.endPoint.channel().basicConsume(this.replyQueue, true,
+				new DefaultConsumer(this.endPoint.channel()) {
+					@Override public void handleDelivery(String consumerTag,
+							Envelope envelope, AMQP.BasicProperties properties,
+							byte[] body) {
+						String id = properties.getCorrelationId();
+						Pending request = id == null ? null : pending.remove(id);
+						if (request == null)
+							return;
+						Map<String, Object> headers = properties.getHeaders();
+						Object failure = headers == null ? null : headers
+								.get(RabbitMQConcurrentRpcServer.FAILURE_HEADER);
+						if (failure != null)
+							request.future.setException(new IOException(
+									String.valueOf(failure)));
+						else
+							request.future.set(body);
+					}
+
+					@Override public void handleShutdownSignal(
+							String consumerTag, ShutdownSignalException sig) {
+						failAll(sig);
+					}
+				});
+		this.deadlines = timer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				expire();
+			}
+		}, DEADLINE_PERIOD, DEADLINE_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the timeout configured in the {@code rpc_timeout} property of
+	 *         the Pascani environment
+	 */
+	static long configuredTimeout() {
+		String timeout = PascaniRuntime.getEnvironment().get("rpc_timeout");
+		return timeout == null ? DEFAULT_TIMEOUT : Long.parseLong(timeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.RpcClient#makeAsyncRequest(byte[])
+	 */
+	@Override public ListenableFuture<byte[]> makeAsyncRequest(
+			final byte[] message) {
+		String id = this.prefix + this.correlation.incrementAndGet();
+		Pending request = new Pending(System.currentTimeMillis()
+				+ this.timeout);
+		this.pending.put(id, request);
+		Codec codec = Codecs.detect(message);
+		AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+				.correlationId(id).replyTo(this.replyQueue)
+				.contentType(codec == null ? null : codec.contentType())
+				.expiration(String.valueOf(this.timeout)).build();
+		try {
+			synchronized (this.endPoint.channel()) {
+				this.endPoint.channel().basicPublish(this.exchange,
+						this.ROUTING_KEY, properties, message);
+			}
+		} catch (IOException e) {
+			this.pending.remove(id);
+			request.future.setException(e);
+		}
+		return request.future;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.RpcClient#makeRequest(byte[])
+	 */
+	@Override public byte[] makeRequest(final byte[] message) throws Exception {
+		try {
+			return makeAsyncRequest(message).get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Fails the requests whose deadline has passed
+	 */
+	private void expire() {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, Pending>> iterator = this.pending
+				.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Pending request = iterator.next().getValue();
+			if (request.deadline <= now) {
+				iterator.remove();
+				request.future.setException(new TimeoutException(
+						"No response from " + this.ROUTING_KEY + " within "
+								+ this.timeout + " ms"));
+			}
+		}
+	}
+
+	/**
+	 * Fails all of the pending requests
+	 */
+	private void failAll(final Throwable cause) {
+		Iterator<Pending> iterator = this.pending.values().iterator();
+		while (iterator.hasNext()) {
+			Pending request = iterator.next();
+			iterator.remove();
+			request.future.setException(cause);
+		}
+	}
+
+	/**
+	 * @return the number of requests waiting for their response
+	 */
+	public int pendingRequests() {
+		return this.pending.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.RpcClient#shutdown()
+	 */
+	@Override public void shutdown() throws IOException, TimeoutException {
+		this.deadlines.cancel(false);
+		failAll(new IOException("The RPC client has been shut down"));
+		this.endPoint.close();
+	}
+
+}
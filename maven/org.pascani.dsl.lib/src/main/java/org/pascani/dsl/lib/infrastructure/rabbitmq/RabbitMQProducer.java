@@ -19,23 +19,81 @@
 package org.pascani.dsl.lib.infrastructure.rabbitmq;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.infrastructure.AbstractProducer;
+import org.pascani.dsl.lib.util.Codec;
+import org.pascani.dsl.lib.util.Codecs;
+import org.pascani.dsl.lib.util.TypeIndex;
 
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
 
 /**
  * Implementation of {@link AbstractProducer} to work with the RabbitMQ queuing
  * system.
  * 
+ * <p>
+ * By default, each event is published in its own message. When batching is
+ * enabled (see {@link #batch(int, long)}), events are grouped into messages of
+ * up to a number of events or a delay, whichever comes first, marked with
+ * {@link Codecs#batchContentType(Codec)}. {@link RabbitMQConsumer} unpacks
+ * them transparently.
+ * </p>
+ * <p>
+ * Messages are persistent by default. The {@link Durability} can be changed
+ * for the whole producer, or for specific event types, e.g., to publish
+ * high-volume measurements as {@link Durability#TRANSIENT} messages while
+ * structural changes are {@link Durability#CONFIRMED}. A batch is published
+ * with the most reliable durability of its events.
+ * </p>
+ * 
  * @author Miguel Jiménez - Initial contribution and API
  */
 public class RabbitMQProducer extends AbstractProducer {
 
+	/**
+	 * Receives the events of the messages rejected by the broker
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static interface NackListener {
+
+		/**
+		 * Handles the events of a rejected message, or of a message whose
+		 * confirm was lost because the channel was closed or recovered. This
+		 * method is invoked by the connection's thread, thus it must not
+		 * block.
+		 * 
+		 * @param events
+		 *            The events of the rejected message
+		 */
+		public void nacked(List<Event<?>> events);
+	}
+
 	/**
 	 * An end point connected to a RabbitMQ server
 	 */
@@ -52,6 +110,91 @@ public class RabbitMQProducer extends AbstractProducer {
 	 */
 	private String routingKey;
 
+	/**
+	 * The codec encoding the published events
+	 */
+	private Codec codec = Codecs.defaultCodec();
+
+	/**
+	 * Flushes the pending batches of all producers
+	 */
+	private static final ScheduledExecutorService flusher = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("pascani-producer-batcher")
+					.build());
+
+	/**
+	 * The maximum number of events per message
+	 */
+	private int batchSize = 1;
+
+	/**
+	 * The events waiting to be published, guarded by itself, which also
+	 * guards the channel
+	 */
+	private final ArrayList<Event<?>> batch = new ArrayList<Event<?>>();
+
+	/**
+	 * The scheduled publication of incomplete batches, if batching is enabled
+	 */
+	private ScheduledFuture<?> flushing;
+
+	/**
+	 * The most reliable durability of the events in the current batch
+	 */
+	private Durability batchDurability = Durability.TRANSIENT;
+
+	/**
+	 * The durability of the messages, unless overridden for an event type
+	 */
+	private volatile Durability durability = Durability.PERSISTENT;
+
+	/**
+	 * The durability of the messages of specific event types
+	 */
+	private final Map<Class<?>, Durability> durabilities = new ConcurrentHashMap<Class<?>, Durability>();
+
+	/**
+	 * The durability resolved for each concrete event class
+	 */
+	private final ConcurrentMap<Class<?>, Durability> resolvedDurabilities = new MapMaker()
+			.weakKeys().makeMap();
+
+	/**
+	 * The events of the confirmed messages not yet confirmed by the broker, by
+	 * publishing sequence number. Its monitor is notified when it becomes
+	 * empty.
+	 */
+	private final ConcurrentSkipListMap<Long, List<Event<?>>> unconfirmed = new ConcurrentSkipListMap<Long, List<Event<?>>>();
+
+	/**
+	 * Bounds the number of unconfirmed messages
+	 */
+	private final Semaphore confirmWindow;
+
+	/**
+	 * The maximum time, in milliseconds, to wait for room in the window of
+	 * unconfirmed messages
+	 */
+	private final long confirmTimeout;
+
+	/**
+	 * Whether the channel has been put in confirm mode, guarded by
+	 * {@link #batch}
+	 */
+	private boolean confirming = false;
+
+	/**
+	 * Receives the events of the messages rejected by the broker
+	 */
+	private volatile NackListener nackListener = new NackListener() {
+		public void nacked(List<Event<?>> events) {
+			logger.error(events.size()
+					+ " events were rejected by the broker on exchange "
+					+ exchange);
+		}
+	};
+
 	/**
 	 * Creates a RabbitMQ producer
 	 * 
@@ -83,12 +226,16 @@ public class RabbitMQProducer extends AbstractProducer {
 		this.endPoint = endPoint;
 		this.exchange = exchange == null ? "" : exchange;
 		this.routingKey = routingKey == null ? "" : routingKey;
+		this.confirmWindow = new Semaphore(Integer.parseInt(PascaniRuntime
+				.getEnvironment().get("producer_confirm_window")));
+		this.confirmTimeout = Long.parseLong(PascaniRuntime.getEnvironment()
+				.get("producer_confirm_timeout"));
 	}
 
 	/**
 	 * Creates a RabbitMQ producer from an end point and a list of accepted
 	 * events' classes. Additionally, declares an exchange for this producer's
-	 * default channel. If it does not exist, it will be created on the server.
+	 * channel. If it does not exist, it will be created on the server.
 	 * 
 	 * @param endPoint
 	 *            The configured RabbitMQ end point
@@ -106,8 +253,8 @@ public class RabbitMQProducer extends AbstractProducer {
 			throws IOException {
 
 		this(endPoint, exchange, routingKey);
-		this.endPoint.channel().exchangeDeclare(this.exchange, "direct",
-				durableExchange);
+		this.endPoint.channel(EndPoint.PUBLISHING).exchangeDeclare(
+				this.exchange, "direct", durableExchange);
 	}
 
 	/*
@@ -118,13 +265,320 @@ public class RabbitMQProducer extends AbstractProducer {
 	 * )
 	 */
 	@Override protected void publish(Event<?> event) throws IOException {
-		byte[] data = SerializationUtils.serialize(event);
-		BasicProperties props = new BasicProperties.Builder()
-				.messageId(event.identifier().toString()).deliveryMode(2)
-				.priority(0).type(event.getClass().getCanonicalName()).build();
+		synchronized (this.batch) {
+			Durability durability = durabilityOf(event.getClass());
+			if (this.batchSize > 1) {
+				this.batch.add(event);
+				if (durability.compareTo(this.batchDurability) > 0)
+					this.batchDurability = durability;
+				if (this.batch.size() >= this.batchSize)
+					flush();
+				return;
+			}
+			byte[] data = this.codec.encode(event);
+			BasicProperties.Builder props = new BasicProperties.Builder()
+					.messageId(event.identifier().toString()).priority(0)
+					.type(event.getClass().getCanonicalName())
+					.contentType(this.codec.contentType());
+			send(props, data, durability, Collections
+					.<Event<?>> singletonList(event));
+		}
+	}
+
+	/**
+	 * Publishes a message with the given durability. Confirmed messages wait
+	 * for room in the window of unconfirmed messages, up to the configured
+	 * {@code producer_confirm_timeout}. The channel is locked
+	 * while publishing, as it may be shared with other producers of the same
+	 * end point, which would otherwise shift the sequence numbers.
+	 */
+	private void send(final BasicProperties.Builder props, final byte[] data,
+			final Durability durability, final List<Event<?>> events)
+			throws IOException {
+		Channel channel = this.endPoint.channel(EndPoint.PUBLISHING);
+		props.deliveryMode(durability == Durability.TRANSIENT ? 1 : 2);
+		if (durability != Durability.CONFIRMED) {
+			synchronized (channel) {
+				channel.basicPublish(this.exchange, this.routingKey,
+						props.build(), data);
+			}
+			return;
+		}
+		if (!this.confirming)
+			enableConfirms(channel);
+		try {
+			if (!this.confirmWindow.tryAcquire(this.confirmTimeout,
+					TimeUnit.MILLISECONDS))
+				throw new IOException("Timed out waiting for publisher "
+						+ "confirms on exchange " + this.exchange);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for publisher confirms");
+		}
+		synchronized (channel) {
+			long sequence = channel.getNextPublishSeqNo();
+			this.unconfirmed.put(sequence, events);
+			boolean published = false;
+			try {
+				channel.basicPublish(this.exchange, this.routingKey,
+						props.build(), data);
+				published = true;
+			} finally {
+				if (!published && this.unconfirmed.remove(sequence) != null) {
+					this.confirmWindow.release();
+					signalIfConfirmed();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Puts the channel in confirm mode, and listens for the confirms. The
+	 * pending confirms are lost when the channel is closed or recovered
+	 * (sequence numbers restart), thus their messages are then reported as
+	 * rejected.
+	 */
+	private void enableConfirms(final Channel channel) throws IOException {
+		channel.addConfirmListener(new ConfirmListener() {
+			public void handleAck(long deliveryTag, boolean multiple) {
+				confirm(deliveryTag, multiple, false);
+			}
+
+			public void handleNack(long deliveryTag, boolean multiple) {
+				confirm(deliveryTag, multiple, true);
+			}
+		});
+		channel.addShutdownListener(new ShutdownListener() {
+			public void shutdownCompleted(ShutdownSignalException cause) {
+				confirm(Long.MAX_VALUE, true, true);
+			}
+		});
+		if (channel instanceof Recoverable) {
+			((Recoverable) channel).addRecoveryListener(new RecoveryListener() {
+				public void handleRecovery(Recoverable recoverable) {
+					confirm(Long.MAX_VALUE, true, true);
+				}
+			});
+		}
+		channel.confirmSelect();
+		this.confirming = true;
+	}
+
+	/**
+	 * Releases the confirmed messages, reporting them if they were rejected
+	 */
+	private void confirm(final long deliveryTag, final boolean multiple,
+			final boolean rejected) {
+		ConcurrentNavigableMap<Long, List<Event<?>>> confirmed = multiple ? this.unconfirmed
+				.headMap(deliveryTag, true) : this.unconfirmed.subMap(
+				deliveryTag, true, deliveryTag, true);
+		for (Long sequence : confirmed.keySet()) {
+			List<Event<?>> events = this.unconfirmed.remove(sequence);
+			if (events == null)
+				continue;
+			this.confirmWindow.release();
+			if (rejected) {
+				try {
+					this.nackListener.nacked(events);
+				} catch (RuntimeException e) {
+					logger.error("Error handling rejected events", e);
+				}
+			}
+		}
+		signalIfConfirmed();
+	}
+
+	/**
+	 * Wakes up the threads awaiting confirms, if there are none left
+	 */
+	private void signalIfConfirmed() {
+		if (this.unconfirmed.isEmpty()) {
+			synchronized (this.unconfirmed) {
+				this.unconfirmed.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the broker has confirmed all of the confirmed messages
+	 * published so far
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait, in milliseconds
+	 * @return whether there are no messages left to confirm
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	public boolean awaitConfirms(final long timeout)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (this.unconfirmed) {
+			long remaining = timeout;
+			while (!this.unconfirmed.isEmpty() && remaining > 0) {
+				this.unconfirmed.wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return this.unconfirmed.isEmpty();
+		}
+	}
+
+	/**
+	 * Sets the durability of the messages published by this producer, except
+	 * for the event types with a specific durability
+	 * 
+	 * @param durability
+	 *            The durability of the messages
+	 */
+	public void durability(final Durability durability) {
+		this.durability = durability;
+		this.resolvedDurabilities.clear();
+	}
 
-		Channel c = endPoint.channel();
-		c.basicPublish(this.exchange, this.routingKey, props, data);
+	/**
+	 * Sets the durability of the messages containing events of the given types
+	 * (and their subtypes)
+	 * 
+	 * @param durability
+	 *            The durability of the messages
+	 * @param eventTypes
+	 *            The types of events
+	 */
+	public void durability(final Durability durability,
+			final Class<?>... eventTypes) {
+		for (Class<?> type : eventTypes)
+			this.durabilities.put(type, durability);
+		this.resolvedDurabilities.clear();
+	}
+
+	/**
+	 * Sets the durability of the messages published by this producer as
+	 * configured in the {@code producer_durability} property of the Pascani
+	 * environment
+	 */
+	public void durabilityAsConfigured() {
+		durability(Durability.valueOf(PascaniRuntime.getEnvironment().get(
+				"producer_durability")));
+	}
+
+	/**
+	 * @param eventType
+	 *            A concrete event class
+	 * @return the durability of the messages containing events of the given
+	 *         class, i.e., the durability of its closest type with a specific
+	 *         durability, or the durability of this producer
+	 */
+	public Durability durabilityOf(final Class<?> eventType) {
+		Durability durability = this.resolvedDurabilities.get(eventType);
+		if (durability == null) {
+			durability = this.durability;
+			for (Class<?> type : TypeIndex.hierarchy(eventType)) {
+				if (this.durabilities.containsKey(type)) {
+					durability = this.durabilities.get(type);
+					break;
+				}
+			}
+			this.resolvedDurabilities.put(eventType, durability);
+		}
+		return durability;
+	}
+
+	/**
+	 * Sets the listener receiving the events of the messages rejected by the
+	 * broker. By default, rejections are logged.
+	 * 
+	 * @param listener
+	 *            The listener
+	 */
+	public void onNack(final NackListener listener) {
+		this.nackListener = listener;
+	}
+
+	/**
+	 * Publishes the pending events in a single message
+	 * 
+	 * @throws IOException
+	 *             If the message cannot be published
+	 */
+	public void flush() throws IOException {
+		synchronized (this.batch) {
+			if (this.batch.isEmpty())
+				return;
+			byte[] data = this.codec.encode(this.batch);
+			BasicProperties.Builder props = new BasicProperties.Builder()
+					.messageId(PascaniRuntime.getIdGenerator().next()
+							.toString()).priority(0)
+					.contentType(Codecs.batchContentType(this.codec));
+			List<Event<?>> events = new ArrayList<Event<?>>(this.batch);
+			Durability durability = this.batchDurability;
+			this.batch.clear();
+			this.batchDurability = Durability.TRANSIENT;
+			send(props, data, durability, events);
+		}
+	}
+
+	/**
+	 * Groups the published events into messages of up to {@code maxEvents}
+	 * events. Incomplete batches are published every {@code maxDelay}
+	 * milliseconds, thus no event waits longer than that.
+	 * 
+	 * @param maxEvents
+	 *            The maximum number of events per message; batching is
+	 *            disabled if it is lower than 2
+	 * @param maxDelay
+	 *            The maximum time, in milliseconds, an event waits to be
+	 *            published
+	 * @throws IOException
+	 *             If the pending events cannot be published
+	 */
+	public void batch(final int maxEvents, final long maxDelay)
+			throws IOException {
+		synchronized (this.batch) {
+			flush();
+			if (this.flushing != null) {
+				this.flushing.cancel(false);
+				this.flushing = null;
+			}
+			this.batchSize = Math.max(1, maxEvents);
+			if (this.batchSize > 1) {
+				this.flushing = flusher.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						try {
+							flush();
+						} catch (Exception e) {
+							logger.error("Error publishing a batch of events",
+									e);
+						}
+					}
+				}, maxDelay, maxDelay, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Groups the published events as configured in the
+	 * {@code producer_batch_size} and {@code producer_batch_delay} properties
+	 * of the Pascani environment
+	 * 
+	 * @throws IOException
+	 *             If the pending events cannot be published
+	 * @see #batch(int, long)
+	 */
+	public void batchAsConfigured() throws IOException {
+		batch(Integer.parseInt(PascaniRuntime.getEnvironment().get(
+				"producer_batch_size")), Long.parseLong(PascaniRuntime
+				.getEnvironment().get("producer_batch_delay")));
+	}
+
+	/**
+	 * Sets the codec encoding the published events. By default, this is
+	 * {@link Codecs#defaultCodec()}
+	 * 
+	 * @param codec
+	 *            The codec
+	 */
+	public void setCodec(final Codec codec) {
+		this.codec = codec;
 	}
 
 	/*
@@ -133,6 +587,20 @@ public class RabbitMQProducer extends AbstractProducer {
 	 * @see pascani.lang.infrastructure.AbstractProducer#shutdown()
 	 */
 	@Override public void shutdown() throws IOException, TimeoutException {
+		try {
+			if (!synchronous(DRAIN_TIMEOUT))
+				logger.warn("Some events were not published before shutting down");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		batch(1, 0);
+		try {
+			if (!awaitConfirms(DRAIN_TIMEOUT))
+				logger.warn(this.unconfirmed.size()
+						+ " messages were not confirmed before shutting down");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 		this.endPoint.close();
 	}
 
@@ -22,10 +22,11 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.concurrent.TimeoutException;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.infrastructure.RpcRequest;
 import org.pascani.dsl.lib.infrastructure.RpcServer;
+import org.pascani.dsl.lib.util.Codec;
+import org.pascani.dsl.lib.util.Codecs;
 
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
@@ -40,6 +41,7 @@ public class RabbitMQRpcServer extends RpcServer {
 	/**
 	 * Extends the default functionality of the RabbitMQ RPC server, providing a
 	 * way to handle requests. This implementation removes the ACK confirmation.
+	 * Responses are encoded with the codec of the corresponding request.
 	 * 
 	 * @author Miguel Jiménez - Initial contribution and API
 	 */
@@ -49,11 +51,17 @@ public class RabbitMQRpcServer extends RpcServer {
 			super(channel, queueName);
 		}
 
-		@Override public byte[] handleCall(byte[] requestBody,
-				AMQP.BasicProperties replyProperties) {
-			RpcRequest request = SerializationUtils.deserialize(requestBody);
+		@Override public byte[] handleCall(AMQP.BasicProperties requestProperties,
+				byte[] requestBody, AMQP.BasicProperties replyProperties) {
+			Codec codec = Codecs.forContentType(requestProperties
+					.getContentType());
+			if (codec == null)
+				codec = Codecs.detect(requestBody);
+			if (codec == null)
+				codec = Codecs.defaultCodec();
+			RpcRequest request = (RpcRequest) codec.decode(requestBody);
 			Serializable response = delegateHandling(request);
-			return SerializationUtils.serialize(response);
+			return codec.encode(response);
 		}
 	}
 
@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.rabbitmq;
+
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.AbstractConsumer;
+import org.pascani.dsl.lib.infrastructure.AbstractProducer;
+import org.pascani.dsl.lib.infrastructure.RpcClient;
+import org.pascani.dsl.lib.infrastructure.RpcServer;
+import org.pascani.dsl.lib.infrastructure.Transport;
+
+/**
+ * Implementation of {@link Transport} to work with the RabbitMQ queuing
+ * system. Each component has its own {@link EndPoint}; end points connecting
+ * to the same server share a single connection.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class RabbitMQTransport implements Transport {
+
+	/**
+	 * The RabbitMQ connection URI
+	 */
+	private final String uri;
+
+	/**
+	 * @param uri
+	 *            The RabbitMQ connection URI
+	 */
+	public RabbitMQTransport(final String uri) {
+		this.uri = uri;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#producer(java.lang.String,
+	 * java.lang.String)
+	 */
+	public AbstractProducer producer(final String exchange,
+			final String routingKey) throws Exception {
+		RabbitMQProducer producer = new RabbitMQProducer(
+				new EndPoint(this.uri), exchange, routingKey);
+		producer.batchAsConfigured();
+		producer.durabilityAsConfigured();
+		return producer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#consumer(java.lang.String,
+	 * java.lang.String, java.lang.String,
+	 * org.pascani.dsl.lib.PascaniRuntime.Context)
+	 */
+	public AbstractConsumer consumer(final String exchange,
+			final String routingKey, final String tag,
+			final PascaniRuntime.Context context) throws Exception {
+		RabbitMQConsumer consumer = new RabbitMQConsumer(
+				new EndPoint(this.uri), exchange, routingKey, tag, context);
+		consumer.consumeAsConfigured();
+		return consumer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#rpcClient(java.lang.String)
+	 */
+	public RpcClient rpcClient(final String routingKey) throws Exception {
+		return new RabbitMQPipelinedRpcClient(new EndPoint(this.uri),
+				PascaniRuntime.getEnvironment().get("rpc_exchange"),
+				routingKey, RabbitMQPipelinedRpcClient.configuredTimeout());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#rpcServer(java.lang.String,
+	 * org.pascani.dsl.lib.PascaniRuntime.Context)
+	 */
+	public RpcServer rpcServer(final String routingKey,
+			final PascaniRuntime.Context context) throws Exception {
+		return new RabbitMQConcurrentRpcServer(new EndPoint(this.uri),
+				routingKey, context);
+	}
+
+}
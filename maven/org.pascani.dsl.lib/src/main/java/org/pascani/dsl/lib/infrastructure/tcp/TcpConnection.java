@@ -0,0 +1,659 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.AsyncPublisher;
+import org.pascani.dsl.lib.infrastructure.OverflowPolicy;
+
+/**
+ * A non-blocking socket connection exchanging length-prefixed frames. Each
+ * frame carries a type, the identifier of the stream it belongs to, and a
+ * payload:
+ * 
+ * <pre>
+ * +----------------+--------+----------------+-----------------+
+ * | length (int32) |  type  | stream (int32) | payload         |
+ * +----------------+--------+----------------+-----------------+
+ * </pre>
+ * 
+ * where the length counts the type, the stream and the payload. Streams
+ * multiplex several routing keys over the same connection: a stream is opened
+ * with the name it stands for (see {@link #OPEN}), and the subsequent frames
+ * refer to it by its identifier only.
+ * 
+ * <p>
+ * Frames are written and read by the thread of the {@link TcpReactor} owning
+ * the connection; any thread may send frames, as they are queued and written
+ * in order. The queued frames take up to {@code tcp_send_buffer} bytes (a
+ * property of the Pascani environment); once a slow or stalled peer fills
+ * them, the {@code producer_overflow} policy is applied to the events being
+ * sent (see {@link OverflowPolicy}). Other frames are always queued, as they
+ * are bounded by the requests waiting for a response.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpConnection {
+
+	/**
+	 * Opens a stream; the payload is the name the stream stands for
+	 */
+	public static final byte OPEN = 1;
+
+	/**
+	 * Carries an encoded event
+	 */
+	public static final byte EVENT = 2;
+
+	/**
+	 * Carries a request identifier and an encoded RPC request
+	 */
+	public static final byte REQUEST = 3;
+
+	/**
+	 * Carries a request identifier and the encoded response to the request
+	 */
+	public static final byte RESPONSE = 4;
+
+	/**
+	 * Carries a request identifier and the message of a failed request
+	 */
+	public static final byte FAILURE = 5;
+
+	/**
+	 * Registers an address under a name, in the registry
+	 */
+	public static final byte REGISTER = 6;
+
+	/**
+	 * Unregisters an address from a name, in the registry
+	 */
+	public static final byte UNREGISTER = 7;
+
+	/**
+	 * Asks the registry for the addresses registered under a name, and for
+	 * their updates
+	 */
+	public static final byte WATCH = 8;
+
+	/**
+	 * Carries the addresses registered under a watched name
+	 */
+	public static final byte ENDPOINTS = 9;
+
+	/**
+	 * The maximum size, in bytes, of a frame
+	 */
+	public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The size, in bytes, of the length, type and stream of a frame
+	 */
+	private static final int HEADER_SIZE = 9;
+
+	/**
+	 * The time, in nanoseconds, to wait before checking again whether there
+	 * is room for an event under {@link OverflowPolicy#BLOCK}
+	 */
+	private static final long BLOCKED_WAIT = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * Receives the frames read from a connection
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static interface Listener {
+
+		/**
+		 * Handles a frame, from the reactor thread
+		 * 
+		 * @param connection
+		 *            The connection from which the frame was read
+		 * @param type
+		 *            The type of the frame
+		 * @param stream
+		 *            The stream to which the frame belongs
+		 * @param payload
+		 *            The payload of the frame, only valid during the call
+		 */
+		public void received(TcpConnection connection, byte type, int stream,
+				ByteBuffer payload);
+
+		/**
+		 * Notifies that a connection was closed, from either side
+		 * 
+		 * @param connection
+		 *            The closed connection
+		 */
+		public void closed(TcpConnection connection);
+	}
+
+	/**
+	 * The logger
+	 */
+	private final Logger logger = LogManager.getLogger(getClass());
+
+	/**
+	 * The reactor reading and writing this connection
+	 */
+	private final TcpReactor reactor;
+
+	/**
+	 * The underlying socket channel
+	 */
+	private final SocketChannel channel;
+
+	/**
+	 * Receives the frames read from this connection
+	 */
+	private final Listener listener;
+
+	/**
+	 * The frames waiting to be written
+	 */
+	private final Queue<ByteBuffer> outgoing;
+
+	/**
+	 * The number of bytes of the outgoing frames
+	 */
+	private final AtomicLong queuedBytes;
+
+	/**
+	 * The maximum number of bytes of the outgoing frames
+	 */
+	private final long capacity;
+
+	/**
+	 * The policy applied to the events sent once the outgoing frames reach the
+	 * capacity
+	 */
+	private final OverflowPolicy policy;
+
+	/**
+	 * The time, in nanoseconds, to wait for room under
+	 * {@link OverflowPolicy#BLOCK}
+	 */
+	private final long blockTimeout;
+
+	/**
+	 * Counts the events sent while sampling
+	 */
+	private final AtomicInteger sampled;
+
+	/**
+	 * The number of events dropped by the overflow policy
+	 */
+	private final AtomicLong dropped;
+
+	/**
+	 * Whether the reactor has been asked to write the outgoing frames
+	 */
+	private final AtomicBoolean flushing;
+
+	/**
+	 * Writes the outgoing frames
+	 */
+	private final Runnable flusher;
+
+	/**
+	 * Whether this connection has been closed
+	 */
+	private final AtomicBoolean closed;
+
+	/**
+	 * The names of the streams opened by the remote side, by stream
+	 * identifier. Only accessed from the reactor thread.
+	 */
+	final Map<Integer, String> streams;
+
+	/**
+	 * The registration of the channel within the reactor
+	 */
+	private SelectionKey key;
+
+	/**
+	 * The frame being written. Only accessed from the reactor thread.
+	 */
+	private ByteBuffer writing;
+
+	/**
+	 * Accumulates the bytes read until they form whole frames
+	 */
+	private ByteBuffer incoming;
+
+	/**
+	 * @param reactor
+	 *            The reactor reading and writing this connection
+	 * @param channel
+	 *            The underlying socket channel, in non-blocking mode
+	 * @param listener
+	 *            Receives the frames read from this connection
+	 */
+	TcpConnection(final TcpReactor reactor, final SocketChannel channel,
+			final Listener listener) {
+		this.reactor = reactor;
+		this.channel = channel;
+		this.listener = listener;
+		this.outgoing = new ConcurrentLinkedQueue<ByteBuffer>();
+		this.queuedBytes = new AtomicLong();
+		this.capacity = Long.parseLong(PascaniRuntime.getEnvironment().get(
+				"tcp_send_buffer"));
+		this.policy = OverflowPolicy.valueOf(PascaniRuntime.getEnvironment()
+				.get("producer_overflow"));
+		this.blockTimeout = TimeUnit.MILLISECONDS.toNanos(Long
+				.parseLong(PascaniRuntime.getEnvironment().get(
+						"producer_block_timeout")));
+		this.sampled = new AtomicInteger();
+		this.dropped = new AtomicLong();
+		this.flushing = new AtomicBoolean(false);
+		this.flusher = new Runnable() {
+			public void run() {
+				flushing.set(false);
+				flush();
+			}
+		};
+		this.closed = new AtomicBoolean(false);
+		this.streams = new HashMap<Integer, String>();
+		this.incoming = ByteBuffer.allocate(64 * 1024);
+	}
+
+	/**
+	 * Sends a frame
+	 * 
+	 * @param type
+	 *            The type of the frame
+	 * @param stream
+	 *            The stream to which the frame belongs
+	 * @param payload
+	 *            The payload of the frame
+	 * @return whether the frame was queued, i.e., it was not an event dropped
+	 *         by the overflow policy
+	 * @throws IOException
+	 *             If the connection is closed
+	 */
+	public boolean send(final byte type, final int stream,
+			final byte[] payload) throws IOException {
+		ByteBuffer frame = header(type, stream, payload.length);
+		frame.put(payload).flip();
+		return enqueue(frame);
+	}
+
+	/**
+	 * Sends a frame whose payload starts with a request identifier
+	 * 
+	 * @param type
+	 *            The type of the frame
+	 * @param stream
+	 *            The stream to which the frame belongs
+	 * @param id
+	 *            The request identifier
+	 * @param payload
+	 *            The rest of the payload
+	 * @throws IOException
+	 *             If the connection is closed
+	 */
+	public void send(final byte type, final int stream, final long id,
+			final byte[] payload) throws IOException {
+		ByteBuffer frame = header(type, stream, 8 + payload.length);
+		frame.putLong(id).put(payload).flip();
+		enqueue(frame);
+	}
+
+	/**
+	 * @return a buffer for a frame, with its header already written
+	 */
+	private ByteBuffer header(final byte type, final int stream,
+			final int payloadSize) throws IOException {
+		if (payloadSize > MAX_FRAME_SIZE - HEADER_SIZE)
+			throw new IOException("The frame exceeds the maximum size ("
+					+ MAX_FRAME_SIZE + " bytes)");
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+		frame.putInt(payloadSize + 5).put(type).putInt(stream);
+		return frame;
+	}
+
+	/**
+	 * Queues a frame, applying the overflow policy if it is an event and the
+	 * outgoing frames are full, and asks the reactor to write it unless it
+	 * has already been asked to
+	 * 
+	 * @return whether the frame was queued
+	 */
+	private boolean enqueue(final ByteBuffer frame) throws IOException {
+		if (this.closed.get())
+			throw new IOException("The connection is closed");
+		if (frame.get(4) == EVENT && !reserve(frame.remaining())) {
+			if (this.dropped.incrementAndGet() % 10000 == 1)
+				logger.warn(this.dropped.get() + " events to " + this
+						+ " have been dropped, as it does not keep up");
+			return false;
+		} else if (frame.get(4) != EVENT) {
+			this.queuedBytes.addAndGet(frame.remaining());
+		}
+		this.outgoing.offer(frame);
+		if (this.flushing.compareAndSet(false, true))
+			this.reactor.execute(this.flusher);
+		return true;
+	}
+
+	/**
+	 * Reserves room for an event in the outgoing frames, applying the
+	 * overflow policy if they are full
+	 * 
+	 * @return whether the event can be queued
+	 */
+	private boolean reserve(final int size) {
+		boolean reserved;
+		switch (this.policy) {
+		case BLOCK:
+			reserved = tryReserve(size);
+			if (!reserved) {
+				long deadline = System.nanoTime() + this.blockTimeout;
+				while (!reserved && System.nanoTime() < deadline
+						&& !this.closed.get()) {
+					LockSupport.parkNanos(BLOCKED_WAIT);
+					reserved = tryReserve(size);
+				}
+			}
+			break;
+		case DROP_OLDEST:
+			reserved = tryReserve(size);
+			while (!reserved && dropOldest())
+				reserved = tryReserve(size);
+			break;
+		case SAMPLE:
+			reserved = this.queuedBytes.get() < this.capacity / 2
+					|| this.sampled.incrementAndGet()
+							% AsyncPublisher.SAMPLING_RATE == 0;
+			reserved = reserved && tryReserve(size);
+			break;
+		default:
+			reserved = tryReserve(size);
+		}
+		return reserved;
+	}
+
+	/**
+	 * Reserves room in the outgoing frames, if there is any
+	 */
+	private boolean tryReserve(final int size) {
+		long current;
+		do {
+			current = this.queuedBytes.get();
+			// A frame bigger than the capacity is queued when there are none
+			if (current > 0 && current + size > this.capacity)
+				return false;
+		} while (!this.queuedBytes.compareAndSet(current, current + size));
+		return true;
+	}
+
+	/**
+	 * Removes the oldest event from the outgoing frames
+	 * 
+	 * @return whether an event was removed
+	 */
+	private boolean dropOldest() {
+		Iterator<ByteBuffer> frames = this.outgoing.iterator();
+		while (frames.hasNext()) {
+			ByteBuffer frame = frames.next();
+			if (frame.get(4) == EVENT && this.outgoing.remove(frame)) {
+				this.queuedBytes.addAndGet(-frame.remaining());
+				this.dropped.incrementAndGet();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of events dropped by the overflow policy
+	 */
+	public long dropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Registers this connection within the reactor. Called from the reactor
+	 * thread.
+	 */
+	void register() throws IOException {
+		this.key = this.channel.register(this.reactor.selector(),
+				SelectionKey.OP_READ, this);
+	}
+
+	/**
+	 * Writes the outgoing frames, as long as the socket accepts them; the
+	 * remaining frames are written once the socket is writable again. Called
+	 * from the reactor thread.
+	 */
+	void flush() {
+		if (this.key == null || !this.key.isValid())
+			return;
+		try {
+			while (true) {
+				if (this.writing == null) {
+					// Taken out of the queue, so that it is not dropped
+					this.writing = this.outgoing.poll();
+					if (this.writing == null)
+						break;
+					this.queuedBytes.addAndGet(-this.writing.remaining());
+				}
+				this.channel.write(this.writing);
+				if (this.writing.hasRemaining()) {
+					this.key.interestOps(SelectionKey.OP_READ
+							| SelectionKey.OP_WRITE);
+					return;
+				}
+				this.writing = null;
+			}
+			this.key.interestOps(SelectionKey.OP_READ);
+		} catch (IOException e) {
+			logger.warn("Error writing to " + this, e);
+			close();
+		}
+	}
+
+	/**
+	 * Reads the available bytes, handing the complete frames to the listener.
+	 * Called from the reactor thread.
+	 */
+	void read() {
+		try {
+			if (this.channel.read(this.incoming) < 0) {
+				close();
+				return;
+			}
+			this.incoming.flip();
+			while (this.incoming.remaining() >= 4) {
+				int length = this.incoming.getInt(this.incoming.position());
+				if (length < 5 || length > MAX_FRAME_SIZE - 4)
+					throw new IOException("Invalid frame length " + length);
+				if (this.incoming.remaining() < 4 + length) {
+					if (this.incoming.capacity() < 4 + length)
+						grow(4 + length);
+					break;
+				}
+				int limit = this.incoming.limit();
+				this.incoming.position(this.incoming.position() + 4);
+				byte type = this.incoming.get();
+				int stream = this.incoming.getInt();
+				int end = this.incoming.position() + length - 5;
+				this.incoming.limit(end);
+				ByteBuffer payload = this.incoming.slice();
+				this.incoming.position(end);
+				this.incoming.limit(limit);
+				try {
+					this.listener.received(this, type, stream, payload);
+				} catch (RuntimeException e) {
+					logger.error("Error handling a frame from " + this, e);
+				}
+			}
+			this.incoming.compact();
+		} catch (IOException e) {
+			logger.warn("Error reading from " + this, e);
+			close();
+		}
+	}
+
+	/**
+	 * Replaces the incoming buffer with a bigger one, keeping its content (in
+	 * read mode)
+	 */
+	private void grow(final int capacity) {
+		ByteBuffer bigger = ByteBuffer.allocate(capacity);
+		bigger.put(this.incoming);
+		bigger.flip();
+		this.incoming = bigger;
+	}
+
+	/**
+	 * Encodes a list of strings as a frame payload
+	 * 
+	 * @param values
+	 *            The strings to encode
+	 * @return the encoded strings, preceded by their number
+	 */
+	public static byte[] encode(final Collection<String> values) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		try {
+			output.writeInt(values.size());
+			for (String value : values)
+				output.writeUTF(value);
+		} catch (IOException e) {
+			// Not thrown by in-memory streams
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Encodes a list of strings as a frame payload
+	 * 
+	 * @param values
+	 *            The strings to encode
+	 * @return the encoded strings, preceded by their number
+	 */
+	public static byte[] encode(final String... values) {
+		return encode(Arrays.asList(values));
+	}
+
+	/**
+	 * Decodes a list of strings encoded by {@link #encode(Collection)}
+	 * 
+	 * @param payload
+	 *            The payload containing the strings
+	 * @return the decoded strings
+	 * @throws IOException
+	 *             If the payload is malformed
+	 */
+	public static List<String> decode(final ByteBuffer payload)
+			throws IOException {
+		byte[] data = new byte[payload.remaining()];
+		payload.get(data);
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(
+				data));
+		int size = input.readInt();
+		List<String> values = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++)
+			values.add(input.readUTF());
+		return values;
+	}
+
+	/**
+	 * @param payload
+	 *            The payload of a frame
+	 * @return the remaining bytes of the payload
+	 */
+	public static byte[] bytes(final ByteBuffer payload) {
+		byte[] data = new byte[payload.remaining()];
+		payload.get(data);
+		return data;
+	}
+
+	/**
+	 * Closes this connection, notifying the listener once
+	 */
+	public void close() {
+		if (!this.closed.compareAndSet(false, true))
+			return;
+		if (this.key != null)
+			this.key.cancel();
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			logger.warn("Error closing " + this, e);
+		}
+		this.outgoing.clear();
+		this.queuedBytes.set(0);
+		this.listener.closed(this);
+	}
+
+	/**
+	 * @return whether this connection has been closed
+	 */
+	public boolean isClosed() {
+		return this.closed.get();
+	}
+
+	/**
+	 * @return the local address of this connection
+	 */
+	public InetSocketAddress localAddress() {
+		return (InetSocketAddress) this.channel.socket()
+				.getLocalSocketAddress();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override public String toString() {
+		return String.valueOf(this.channel.socket().getRemoteSocketAddress());
+	}
+
+}
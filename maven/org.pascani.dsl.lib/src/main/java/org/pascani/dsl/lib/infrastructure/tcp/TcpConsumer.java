@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.AbstractConsumer;
+import org.pascani.dsl.lib.util.Codecs;
+import org.pascani.dsl.lib.util.LocalEventProducer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Implementation of {@link AbstractConsumer} receiving the events sent by the
+ * {@link TcpProducer}s with the same exchange and routing key. The encoded
+ * events are queued by the reactor thread, and decoded and handled in order
+ * by a pooled thread, thus slow handlers never stall the connections. Events
+ * received before the consumer starts are kept until then.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpConsumer extends AbstractConsumer {
+
+	/**
+	 * Handles the queued events of all consumers
+	 */
+	private static final ExecutorService dispatcher = Executors
+			.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("pascani-tcp-consumer-%d").build());
+
+	/**
+	 * The transport to which this consumer is bound
+	 */
+	private final TcpTransport transport;
+
+	/**
+	 * The name under which this consumer is registered
+	 */
+	private final String name;
+
+	/**
+	 * An event producer for delegating the event handling
+	 */
+	private final LocalEventProducer<Event<?>> eventProducer;
+
+	/**
+	 * The encoded events waiting to be handled
+	 */
+	private final ConcurrentLinkedQueue<byte[]> queue;
+
+	/**
+	 * Whether a thread is handling the queued events
+	 */
+	private final AtomicBoolean draining;
+
+	/**
+	 * Handles the queued events
+	 */
+	private final Runnable drainer;
+
+	/**
+	 * Whether this consumer has started consuming events
+	 */
+	private volatile boolean started = false;
+
+	/**
+	 * @param transport
+	 *            The transport to which this consumer is bound
+	 * @param name
+	 *            The name under which this consumer is registered
+	 * @param context
+	 *            The context in which this consumer is used
+	 */
+	public TcpConsumer(final TcpTransport transport, final String name,
+			final PascaniRuntime.Context context) {
+		this.transport = transport;
+		this.name = name;
+		this.eventProducer = new LocalEventProducer<Event<?>>(context);
+		this.queue = new ConcurrentLinkedQueue<byte[]>();
+		this.draining = new AtomicBoolean(false);
+		this.drainer = new Runnable() {
+			public void run() {
+				drain();
+			}
+		};
+	}
+
+	/**
+	 * Queues an encoded event to be handled by this consumer
+	 * 
+	 * @param event
+	 *            The received event
+	 */
+	void deliver(final byte[] event) {
+		this.queue.offer(event);
+		if (this.started)
+			schedule();
+	}
+
+	/**
+	 * Hands the queued events to a pooled thread, unless one is already
+	 * handling them
+	 */
+	private void schedule() {
+		if (this.draining.compareAndSet(false, true))
+			dispatcher.execute(this.drainer);
+	}
+
+	/**
+	 * Decodes and handles the queued events until there are none left
+	 */
+	private void drain() {
+		do {
+			byte[] data;
+			while ((data = this.queue.poll()) != null) {
+				try {
+					internalDelegateHandling((Event<?>) Codecs.decode(data));
+				} catch (RuntimeException e) {
+					logger.error("Error handling a received event", e);
+				}
+			}
+			this.draining.set(false);
+			// An event may have been queued after the last poll
+		} while (!this.queue.isEmpty()
+				&& this.draining.compareAndSet(false, true));
+	}
+
+	/**
+	 * @return the name under which this consumer is registered
+	 */
+	String name() {
+		return this.name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.AbstractConsumer#startConsuming()
+	 */
+	@Override protected void startConsuming() {
+		this.started = true;
+		schedule();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.AbstractConsumer#delegateEventHandling
+	 * (org.pascani.dsl.lib.Event)
+	 */
+	@Override public void delegateEventHandling(final Event<?> event) {
+		Handler handler = this.handler;
+		if (handler != null)
+			handler.handle(event);
+		else
+			this.eventProducer.post(event);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.AbstractConsumer#shutdown()
+	 */
+	@Override public void shutdown() throws IOException {
+		this.transport.unbind(this);
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * The addresses of the transports serving a name, as last pushed by the
+ * {@link TcpRegistry}
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpEndpoints {
+
+	/**
+	 * Completed when the registry first answers
+	 */
+	private final SettableFuture<Boolean> resolved;
+
+	/**
+	 * The current addresses
+	 */
+	private volatile List<String> addresses;
+
+	public TcpEndpoints() {
+		this.resolved = SettableFuture.create();
+		this.addresses = Collections.emptyList();
+	}
+
+	/**
+	 * Replaces the current addresses
+	 * 
+	 * @param addresses
+	 *            The addresses pushed by the registry
+	 */
+	void update(final List<String> addresses) {
+		this.addresses = Collections.unmodifiableList(addresses);
+		this.resolved.set(true);
+	}
+
+	/**
+	 * Waits for the registry to answer, if it has not answered yet
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait, in milliseconds
+	 * @return the current addresses, empty if the registry did not answer in
+	 *         time
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	public List<String> await(final long timeout) throws InterruptedException {
+		try {
+			this.resolved.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// Not answered yet
+		} catch (ExecutionException e) {
+			// Never failed
+		}
+		return this.addresses;
+	}
+
+	/**
+	 * @return a future completed when the registry first answers
+	 */
+	public ListenableFuture<Boolean> resolved() {
+		return this.resolved;
+	}
+
+	/**
+	 * @return whether the registry has answered
+	 */
+	public boolean isResolved() {
+		return this.resolved.isDone();
+	}
+
+	/**
+	 * @return the current addresses, empty if the registry has not answered
+	 *         yet
+	 */
+	public List<String> addresses() {
+		return this.addresses;
+	}
+
+}
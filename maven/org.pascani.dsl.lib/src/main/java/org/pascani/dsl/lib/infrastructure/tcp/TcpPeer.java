@@ -0,0 +1,265 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * The connection from a {@link TcpTransport} to another, over which events and
+ * requests for any of the names served by the other transport are sent. Each
+ * name is opened as a stream the first time it is used, and the pending
+ * requests are matched with their responses by identifier. Responses are
+ * completed on the executor of the transport, rather than on the reactor
+ * thread, so that the listeners of the requests cannot stall the connections.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpPeer implements TcpConnection.Listener {
+
+	/**
+	 * Generates the identifiers of requests
+	 */
+	private static final AtomicLong requestIds = new AtomicLong();
+
+	/**
+	 * The logger
+	 */
+	private final Logger logger = LogManager.getLogger(getClass());
+
+	/**
+	 * The transport owning this peer
+	 */
+	private final TcpTransport transport;
+
+	/**
+	 * The streams opened on this connection, by name
+	 */
+	private final ConcurrentMap<String, Integer> streams;
+
+	/**
+	 * The requests waiting for a response, by identifier
+	 */
+	private final ConcurrentMap<Long, SettableFuture<byte[]>> pending;
+
+	/**
+	 * The underlying connection
+	 */
+	private volatile TcpConnection connection;
+
+	/**
+	 * @param transport
+	 *            The transport owning this peer
+	 */
+	TcpPeer(final TcpTransport transport) {
+		this.transport = transport;
+		this.streams = new ConcurrentHashMap<String, Integer>();
+		this.pending = new ConcurrentHashMap<Long, SettableFuture<byte[]>>();
+	}
+
+	/**
+	 * Connects to the other transport
+	 */
+	void connect(final TcpReactor reactor, final InetSocketAddress address)
+			throws IOException {
+		this.connection = reactor.connect(address, this);
+	}
+
+	/**
+	 * @return the identifier of the stream for the given name, opening it if
+	 *         necessary
+	 */
+	private int stream(final String name) throws IOException {
+		Integer stream = this.streams.get(name);
+		if (stream != null)
+			return stream;
+		synchronized (this.streams) {
+			stream = this.streams.get(name);
+			if (stream == null) {
+				stream = this.streams.size() + 1;
+				// Opened before any other frame refers to the stream
+				this.connection.send(TcpConnection.OPEN, stream,
+						TcpConnection.encode(name));
+				this.streams.put(name, stream);
+			}
+		}
+		return stream;
+	}
+
+	/**
+	 * Sends an encoded event to the consumers bound to the given name
+	 * 
+	 * @param name
+	 *            The name of the consumers
+	 * @param event
+	 *            The encoded event
+	 * @return whether the event was queued, i.e., it was not dropped because
+	 *         the other transport does not keep up
+	 * @throws IOException
+	 *             If the connection is closed
+	 */
+	public boolean send(final String name, final byte[] event)
+			throws IOException {
+		return this.connection.send(TcpConnection.EVENT, stream(name), event);
+	}
+
+	/**
+	 * Sends an encoded request to the RPC server registered under the given
+	 * name
+	 * 
+	 * @param name
+	 *            The name of the RPC server
+	 * @param request
+	 *            The encoded request
+	 * @param timeout
+	 *            The time, in milliseconds, after which the request fails with
+	 *            a {@link TimeoutException} if the server has not responded
+	 * @return a future of the encoded response, failed if the server fails,
+	 *         the connection is closed or the timeout elapses before it
+	 *         responds
+	 */
+	public ListenableFuture<byte[]> request(final String name,
+			final byte[] request, final long timeout) {
+		final long id = requestIds.incrementAndGet();
+		final SettableFuture<byte[]> response = SettableFuture.create();
+		final ScheduledFuture<?> deadline;
+		try {
+			deadline = this.transport.executor().schedule(new Runnable() {
+				public void run() {
+					response.setException(new TimeoutException(
+							"No response from " + name + " within " + timeout
+									+ " ms"));
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			response.setException(new IOException("The transport is stopped"));
+			return response;
+		}
+		this.pending.put(id, response);
+		response.addListener(new Runnable() {
+			public void run() {
+				pending.remove(id);
+				deadline.cancel(false);
+			}
+		}, MoreExecutors.directExecutor());
+		try {
+			this.connection.send(TcpConnection.REQUEST, stream(name), id,
+					request);
+		} catch (IOException e) {
+			response.setException(e);
+		}
+		return response;
+	}
+
+	/**
+	 * @return whether the connection is closed
+	 */
+	public boolean isClosed() {
+		return this.connection.isClosed();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.tcp.TcpConnection.Listener#received
+	 * (org.pascani.dsl.lib.infrastructure.tcp.TcpConnection, byte, int,
+	 * java.nio.ByteBuffer)
+	 */
+	public void received(final TcpConnection connection, final byte type,
+			final int stream, final ByteBuffer payload) {
+		if (type != TcpConnection.RESPONSE && type != TcpConnection.FAILURE) {
+			logger.warn("Unexpected frame " + type + " from " + connection);
+			return;
+		}
+		final SettableFuture<byte[]> response = this.pending.get(payload
+				.getLong());
+		if (response == null)
+			return; // Timed out or cancelled
+		if (type == TcpConnection.RESPONSE) {
+			final byte[] data = TcpConnection.bytes(payload);
+			complete(new Runnable() {
+				public void run() {
+					response.set(data);
+				}
+			});
+			return;
+		}
+		IOException failure;
+		try {
+			failure = new IOException(TcpConnection.decode(payload).get(0));
+		} catch (IOException e) {
+			failure = e;
+		}
+		fail(response, failure);
+	}
+
+	/**
+	 * Fails a pending request on the executor of the transport
+	 */
+	private void fail(final SettableFuture<byte[]> response,
+			final Exception cause) {
+		complete(new Runnable() {
+			public void run() {
+				response.setException(cause);
+			}
+		});
+	}
+
+	/**
+	 * Runs a task completing a pending request on the executor of the
+	 * transport, or on the current thread if the transport is stopped
+	 */
+	private void complete(final Runnable task) {
+		try {
+			this.transport.executor().execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.tcp.TcpConnection.Listener#closed(org
+	 * .pascani.dsl.lib.infrastructure.tcp.TcpConnection)
+	 */
+	public void closed(final TcpConnection connection) {
+		for (SettableFuture<byte[]> response : this.pending.values())
+			fail(response, new IOException("The connection to " + connection
+					+ " was closed"));
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.AbstractProducer;
+import org.pascani.dsl.lib.util.Codecs;
+
+/**
+ * Implementation of {@link AbstractProducer} sending the events straight to
+ * the {@link TcpTransport}s whose consumers are bound to the same exchange and
+ * routing key. Each event is encoded once, whatever the number of receiving
+ * transports. Only the first event waits for the consumers to be resolved;
+ * while the registry has not answered, the subsequent events are dropped, as
+ * if there were no consumers, rather than blocking the producing thread.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpProducer extends AbstractProducer {
+
+	/**
+	 * The transport connecting to the consumers
+	 */
+	private final TcpTransport transport;
+
+	/**
+	 * The name under which the consumers are registered
+	 */
+	private final String name;
+
+	/**
+	 * The addresses of the transports with consumers
+	 */
+	private final TcpEndpoints endpoints;
+
+	/**
+	 * The time, in milliseconds, to wait for the consumers to be resolved
+	 * the first time
+	 */
+	private final long timeout;
+
+	/**
+	 * Whether an event has already waited for the consumers to be resolved
+	 */
+	private volatile boolean awaited;
+
+	/**
+	 * @param transport
+	 *            The transport connecting to the consumers
+	 * @param name
+	 *            The name under which the consumers are registered
+	 */
+	public TcpProducer(final TcpTransport transport, final String name) {
+		this.transport = transport;
+		this.name = name;
+		this.endpoints = transport.resolve(name);
+		this.timeout = Long.parseLong(PascaniRuntime.getEnvironment().get(
+				"rpc_timeout"));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.AbstractProducer#publish(org.pascani
+	 * .dsl.lib.Event)
+	 */
+	@Override protected void publish(final Event<?> event) throws Exception {
+		List<String> addresses = this.endpoints.addresses();
+		if (!this.awaited && !this.endpoints.isResolved()) {
+			this.awaited = true;
+			addresses = this.endpoints.await(this.timeout);
+		}
+		byte[] data = null;
+		for (String address : addresses) {
+			if (data == null)
+				data = Codecs.defaultCodec().encode(event);
+			try {
+				// Dropped by the connection if the consumers do not keep up
+				this.transport.peer(address).send(this.name, data);
+			} catch (IOException e) {
+				logger.warn("Message " + event.identifier()
+						+ " could not be sent to " + address, e);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.AbstractProducer#shutdown()
+	 */
+	@Override public void shutdown() throws InterruptedException {
+		if (!synchronous(DRAIN_TIMEOUT))
+			logger.warn("Some events were not published before shutting down");
+	}
+
+}
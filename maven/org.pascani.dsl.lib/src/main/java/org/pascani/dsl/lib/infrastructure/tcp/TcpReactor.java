@@ -0,0 +1,254 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A single thread multiplexing the I/O of a set of {@link TcpConnection}s and
+ * listening sockets through a {@link Selector}. Other threads interact with
+ * the selector by submitting tasks (see {@link #execute(Runnable)}), which run
+ * in the reactor thread between selections.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpReactor implements Runnable {
+
+	/**
+	 * Creates the reactor threads
+	 */
+	private static final ThreadFactory threads = new ThreadFactoryBuilder()
+			.setDaemon(true).setNameFormat("pascani-tcp-reactor-%d").build();
+
+	/**
+	 * The logger
+	 */
+	private final Logger logger = LogManager.getLogger(getClass());
+
+	/**
+	 * Selects the ready channels
+	 */
+	private final Selector selector;
+
+	/**
+	 * The tasks waiting to run in the reactor thread
+	 */
+	private final Queue<Runnable> tasks;
+
+	/**
+	 * Whether this reactor is running
+	 */
+	private volatile boolean running = true;
+
+	/**
+	 * Creates a reactor and starts its thread
+	 * 
+	 * @throws IOException
+	 *             If the selector cannot be opened
+	 */
+	public TcpReactor() throws IOException {
+		this.selector = Selector.open();
+		this.tasks = new ConcurrentLinkedQueue<Runnable>();
+		threads.newThread(this).start();
+	}
+
+	/**
+	 * Listens for connections on the given address
+	 * 
+	 * @param address
+	 *            The address to bind; port 0 selects an ephemeral port
+	 * @param listener
+	 *            Receives the frames of the accepted connections
+	 * @return the bound address
+	 * @throws IOException
+	 *             If the address cannot be bound
+	 */
+	public InetSocketAddress listen(final InetSocketAddress address,
+			final TcpConnection.Listener listener) throws IOException {
+		final ServerSocketChannel server = ServerSocketChannel.open();
+		server.configureBlocking(false);
+		server.socket().setReuseAddress(true);
+		server.socket().bind(address);
+		execute(new Runnable() {
+			public void run() {
+				try {
+					server.register(selector, SelectionKey.OP_ACCEPT, listener);
+				} catch (IOException e) {
+					logger.error("Error listening on " + address, e);
+				}
+			}
+		});
+		return (InetSocketAddress) server.socket().getLocalSocketAddress();
+	}
+
+	/**
+	 * Connects to the given address, waiting until the connection is
+	 * established
+	 * 
+	 * @param address
+	 *            The remote address
+	 * @param listener
+	 *            Receives the frames of the connection
+	 * @return the new connection
+	 * @throws IOException
+	 *             If the connection cannot be established
+	 */
+	public TcpConnection connect(final InetSocketAddress address,
+			final TcpConnection.Listener listener) throws IOException {
+		SocketChannel channel = SocketChannel.open(address);
+		return register(channel, listener);
+	}
+
+	/**
+	 * Hands a connected channel to this reactor
+	 */
+	private TcpConnection register(final SocketChannel channel,
+			final TcpConnection.Listener listener) throws IOException {
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		final TcpConnection connection = new TcpConnection(this, channel,
+				listener);
+		execute(new Runnable() {
+			public void run() {
+				try {
+					connection.register();
+				} catch (IOException e) {
+					logger.error("Error registering " + connection, e);
+					connection.close();
+				}
+			}
+		});
+		return connection;
+	}
+
+	/**
+	 * Runs a task in the reactor thread, after the tasks already submitted
+	 * 
+	 * @param task
+	 *            The task to run
+	 */
+	public void execute(final Runnable task) {
+		this.tasks.offer(task);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * @return the selector of this reactor
+	 */
+	Selector selector() {
+		return this.selector;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while (this.running) {
+			try {
+				this.selector.select();
+				Runnable task;
+				while ((task = this.tasks.poll()) != null)
+					task.run();
+				if (!this.running)
+					break; // The selector is closed
+				Iterator<SelectionKey> keys = this.selector.selectedKeys()
+						.iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable())
+						accept(key);
+					else
+						handle(key);
+				}
+			} catch (Exception e) {
+				logger.error("Error in the TCP reactor", e);
+			}
+		}
+	}
+
+	/**
+	 * Accepts a pending connection
+	 */
+	private void accept(final SelectionKey key) throws IOException {
+		SocketChannel channel = ((ServerSocketChannel) key.channel())
+				.accept();
+		if (channel != null)
+			register(channel, (TcpConnection.Listener) key.attachment());
+	}
+
+	/**
+	 * Reads from, or writes to, a ready connection
+	 */
+	private void handle(final SelectionKey key) {
+		TcpConnection connection = (TcpConnection) key.attachment();
+		if (key.isWritable())
+			connection.flush();
+		if (key.isValid() && key.isReadable())
+			connection.read();
+	}
+
+	/**
+	 * Stops this reactor, closing its connections and listening sockets
+	 */
+	public void shutdown() {
+		execute(new Runnable() {
+			public void run() {
+				running = false;
+				for (SelectionKey key : new ArrayList<SelectionKey>(selector
+						.keys())) {
+					if (key.attachment() instanceof TcpConnection) {
+						((TcpConnection) key.attachment()).close();
+						continue;
+					}
+					try {
+						key.channel().close();
+					} catch (IOException e) {
+						logger.warn("Error closing " + key.channel(), e);
+					}
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					logger.warn("Error closing the selector", e);
+				}
+			}
+		});
+	}
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * A lightweight directory resolving names (e.g., the exchange and routing key
+ * of a set of consumers, or the routing key of an RPC server) to the addresses
+ * of the {@link TcpTransport}s serving them. Transports register the names
+ * they serve, and watch the names they send events and requests to; the
+ * registry pushes the addresses of a watched name whenever they change. The
+ * registrations of a transport are removed when its connection is closed.
+ * The addresses of the consumers of an exchange and routing key include those
+ * of the consumers bound to that exchange with a binding key matching the
+ * routing key (see {@link TcpTransport#matches(String, String)}).
+ * 
+ * <p>
+ * The registry is only involved in resolving names: events and requests flow
+ * directly between transports. It can be embedded (see {@link #start()}), or
+ * run on its own through {@link #main(String[])}.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpRegistry implements TcpConnection.Listener {
+
+	/**
+	 * The default port of the registry
+	 */
+	public static final int DEFAULT_PORT = 5680;
+
+	/**
+	 * The logger
+	 */
+	private final Logger logger = LogManager.getLogger(getClass());
+
+	/**
+	 * The address on which the registry listens
+	 */
+	private final InetSocketAddress address;
+
+	/**
+	 * The addresses registered under each name
+	 */
+	private final SetMultimap<String, String> endpoints;
+
+	/**
+	 * The names and addresses registered by each connection
+	 */
+	private final Map<TcpConnection, SetMultimap<String, String>> registrations;
+
+	/**
+	 * The connections watching each name, and the streams on which they do
+	 */
+	private final Map<String, Map<TcpConnection, Integer>> watchers;
+
+	/**
+	 * Reads and writes the connections of the registry
+	 */
+	private TcpReactor reactor;
+
+	/**
+	 * @param address
+	 *            The address on which the registry listens
+	 */
+	public TcpRegistry(final InetSocketAddress address) {
+		this.address = address;
+		this.endpoints = HashMultimap.create();
+		this.registrations = new HashMap<TcpConnection, SetMultimap<String, String>>();
+		this.watchers = new HashMap<String, Map<TcpConnection, Integer>>();
+	}
+
+	/**
+	 * @param port
+	 *            The port on which the registry listens, on all of the local
+	 *            interfaces
+	 */
+	public TcpRegistry(final int port) {
+		this(new InetSocketAddress(port));
+	}
+
+	/**
+	 * Starts listening for transports
+	 * 
+	 * @return the bound address
+	 * @throws IOException
+	 *             If the address cannot be bound
+	 */
+	public synchronized InetSocketAddress start() throws IOException {
+		this.reactor = new TcpReactor();
+		return this.reactor.listen(this.address, this);
+	}
+
+	/**
+	 * Stops listening, and closes the connections of the transports
+	 */
+	public synchronized void shutdown() {
+		if (this.reactor != null)
+			this.reactor.shutdown();
+		this.reactor = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.tcp.TcpConnection.Listener#received
+	 * (org.pascani.dsl.lib.infrastructure.tcp.TcpConnection, byte, int,
+	 * java.nio.ByteBuffer)
+	 */
+	public void received(final TcpConnection connection, final byte type,
+			final int stream, final ByteBuffer payload) {
+		try {
+			List<String> values = TcpConnection.decode(payload);
+			switch (type) {
+			case TcpConnection.REGISTER:
+				register(connection, values.get(0), values.get(1));
+				break;
+			case TcpConnection.UNREGISTER:
+				unregister(connection, values.get(0), values.get(1));
+				break;
+			case TcpConnection.WATCH:
+				watch(connection, stream, values.get(0));
+				break;
+			default:
+				logger.warn("Unexpected frame " + type + " from " + connection);
+			}
+		} catch (IOException e) {
+			logger.warn("Malformed frame from " + connection, e);
+		}
+	}
+
+	private void register(final TcpConnection connection, final String name,
+			final String endpoint) {
+		SetMultimap<String, String> registered = this.registrations
+				.get(connection);
+		if (registered == null) {
+			registered = HashMultimap.create();
+			this.registrations.put(connection, registered);
+		}
+		registered.put(name, endpoint);
+		if (this.endpoints.put(name, endpoint))
+			notifyWatchers(name);
+	}
+
+	private void unregister(final TcpConnection connection, final String name,
+			final String endpoint) {
+		SetMultimap<String, String> registered = this.registrations
+				.get(connection);
+		if (registered != null && registered.remove(name, endpoint)
+				&& this.endpoints.remove(name, endpoint))
+			notifyWatchers(name);
+	}
+
+	private void watch(final TcpConnection connection, final int stream,
+			final String name) {
+		Map<TcpConnection, Integer> watching = this.watchers.get(name);
+		if (watching == null) {
+			watching = new HashMap<TcpConnection, Integer>();
+			this.watchers.put(name, watching);
+		}
+		watching.put(connection, stream);
+		send(connection, stream, name);
+	}
+
+	/**
+	 * Sends the current addresses of a name to the connections watching it,
+	 * or of the names it matches if it is a pattern
+	 */
+	private void notifyWatchers(final String name) {
+		List<String> names = Collections.singletonList(name);
+		if (TcpTransport.isPattern(name)) {
+			names = new ArrayList<String>();
+			for (String watched : this.watchers.keySet()) {
+				if (TcpTransport.matches(name, watched))
+					names.add(watched);
+			}
+		}
+		for (String watched : names) {
+			Map<TcpConnection, Integer> watching = this.watchers.get(watched);
+			if (watching == null)
+				continue;
+			for (Map.Entry<TcpConnection, Integer> watcher : watching
+					.entrySet())
+				send(watcher.getKey(), watcher.getValue(), watched);
+		}
+	}
+
+	/**
+	 * @return the addresses registered under a name, or under a pattern
+	 *         matching it
+	 */
+	private Set<String> addresses(final String name) {
+		Set<String> addresses = new LinkedHashSet<String>(
+				this.endpoints.get(name));
+		for (String pattern : this.endpoints.keySet()) {
+			if (TcpTransport.isPattern(pattern)
+					&& TcpTransport.matches(pattern, name))
+				addresses.addAll(this.endpoints.get(pattern));
+		}
+		return addresses;
+	}
+
+	private void send(final TcpConnection connection, final int stream,
+			final String name) {
+		try {
+			connection.send(TcpConnection.ENDPOINTS, stream, TcpConnection
+					.encode(addresses(name)));
+		} catch (IOException e) {
+			logger.warn("Error notifying " + connection, e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.tcp.TcpConnection.Listener#closed(org
+	 * .pascani.dsl.lib.infrastructure.tcp.TcpConnection)
+	 */
+	public void closed(final TcpConnection connection) {
+		for (Map<TcpConnection, Integer> watching : this.watchers.values())
+			watching.remove(connection);
+		SetMultimap<String, String> registered = this.registrations
+				.remove(connection);
+		if (registered == null)
+			return;
+		for (String name : new ArrayList<String>(registered.keySet())) {
+			boolean changed = false;
+			for (String endpoint : registered.get(name))
+				changed |= this.endpoints.remove(name, endpoint);
+			if (changed)
+				notifyWatchers(name);
+		}
+	}
+
+	/**
+	 * Runs a registry until the process is terminated
+	 * 
+	 * @param args
+	 *            Optionally, the port on which the registry listens (
+	 *            {@link #DEFAULT_PORT} by default)
+	 * @throws Exception
+	 *             If the registry cannot be started
+	 */
+	public static void main(final String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		InetSocketAddress address = new TcpRegistry(port).start();
+		LogManager.getLogger(TcpRegistry.class).info(
+				"Registry listening on " + address);
+		Thread.currentThread().join();
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.RpcClient;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Implementation of {@link RpcClient} sending the requests straight to the
+ * {@link TcpTransport} of the RPC server. Requests are pipelined over the
+ * connection to that transport, thus asynchronous requests do not take up a
+ * thread while waiting for their responses, nor while the server is being
+ * resolved. Every request fails with a {@link TimeoutException} once the
+ * {@code rpc_timeout} elapses.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpRpcClient extends RpcClient {
+
+	/**
+	 * The transport connecting to the RPC server
+	 */
+	private final TcpTransport transport;
+
+	/**
+	 * The name under which the RPC server is registered
+	 */
+	private final String name;
+
+	/**
+	 * The time, in milliseconds, to wait for a response
+	 */
+	private final long timeout;
+
+	/**
+	 * The address of the transport of the RPC server, once resolved
+	 */
+	private TcpEndpoints endpoints;
+
+	/**
+	 * @param transport
+	 *            The transport connecting to the RPC server
+	 * @param routingKey
+	 *            The routing key of the RPC server
+	 * @param name
+	 *            The name under which the RPC server is registered
+	 */
+	public TcpRpcClient(final TcpTransport transport, final String routingKey,
+			final String name) {
+		super(routingKey);
+		this.transport = transport;
+		this.name = name;
+		this.timeout = Long.parseLong(PascaniRuntime.getEnvironment().get(
+				"rpc_timeout"));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.RpcClient#makeRequest(byte[])
+	 */
+	@Override public byte[] makeRequest(final byte[] message)
+			throws Exception {
+		ListenableFuture<byte[]> response = makeAsyncRequest(message);
+		try {
+			return response.get(this.timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			response.cancel(false);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.RpcClient#makeAsyncRequest(byte[])
+	 */
+	@Override public ListenableFuture<byte[]> makeAsyncRequest(
+			final byte[] message) {
+		final TcpEndpoints endpoints = endpoints();
+		if (endpoints.isResolved())
+			return request(endpoints.addresses(), message, this.timeout);
+
+		// Sent once the server is resolved, without blocking the caller
+		final long start = System.currentTimeMillis();
+		final SettableFuture<byte[]> response = SettableFuture.create();
+		final ScheduledFuture<?> deadline = this.transport.executor()
+				.schedule(new Runnable() {
+					public void run() {
+						response.setException(new TimeoutException(
+								"The RPC server with routing key "
+										+ ROUTING_KEY
+										+ " could not be resolved within "
+										+ timeout + " ms"));
+					}
+				}, this.timeout, TimeUnit.MILLISECONDS);
+		endpoints.resolved().addListener(new Runnable() {
+			public void run() {
+				deadline.cancel(false);
+				if (response.isDone())
+					return;
+				long remaining = timeout
+						- (System.currentTimeMillis() - start);
+				forward(request(endpoints.addresses(), message,
+						Math.max(remaining, 1)), response);
+			}
+		}, this.transport.executor());
+		return response;
+	}
+
+	/**
+	 * Sends a request to the first of the given addresses
+	 */
+	private ListenableFuture<byte[]> request(final List<String> addresses,
+			final byte[] message, final long timeout) {
+		try {
+			if (addresses.isEmpty())
+				throw new IOException("There is no RPC server with routing key "
+						+ this.ROUTING_KEY);
+			return this.transport.peer(addresses.get(0)).request(this.name,
+					message, timeout);
+		} catch (IOException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+	}
+
+	/**
+	 * Completes a future with the outcome of another one, and cancels the
+	 * other one if the former is cancelled
+	 */
+	private static void forward(final ListenableFuture<byte[]> source,
+			final SettableFuture<byte[]> target) {
+		Futures.addCallback(source, new FutureCallback<byte[]>() {
+			public void onSuccess(final byte[] result) {
+				target.set(result);
+			}
+
+			public void onFailure(final Throwable t) {
+				target.setException(t);
+			}
+		});
+		target.addListener(new Runnable() {
+			public void run() {
+				if (target.isCancelled())
+					source.cancel(false);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * @return the addresses of the transport of the RPC server, resolved if
+	 *         necessary
+	 */
+	private synchronized TcpEndpoints endpoints() {
+		if (this.endpoints == null)
+			this.endpoints = this.transport.resolve(this.name);
+		return this.endpoints;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.RpcClient#shutdown()
+	 */
+	@Override public void shutdown() {
+	}
+
+}
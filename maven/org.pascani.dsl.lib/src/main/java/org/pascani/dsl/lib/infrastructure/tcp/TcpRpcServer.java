@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.RpcOperation;
+import org.pascani.dsl.lib.infrastructure.RpcRequest;
+import org.pascani.dsl.lib.infrastructure.RpcServer;
+import org.pascani.dsl.lib.util.Codec;
+import org.pascani.dsl.lib.util.Codecs;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Implementation of {@link RpcServer} receiving the requests sent by
+ * {@link TcpRpcClient}s to its routing key. Read-only operations (see
+ * {@link RpcOperation#isReadOnly()}) are handled in parallel, while the
+ * others are handled one at a time, in order, by a dedicated thread, and
+ * exclusively of any other operation unless they only pause or resume the
+ * handler (see {@link RpcOperation#isExclusive()}); each response is written back on the connection the request came from, in the
+ * codec of the request.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpRpcServer extends RpcServer {
+
+	/**
+	 * Handles the read-only requests of all servers
+	 */
+	private static final ExecutorService readers = Executors
+			.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("pascani-tcp-rpc-reader-%d").build());
+
+	/**
+	 * The transport in which this server is registered
+	 */
+	private final TcpTransport transport;
+
+	/**
+	 * The name under which this server is registered
+	 */
+	private final String name;
+
+	/**
+	 * Handles the requests that are not read-only, in order
+	 */
+	private final ExecutorService writer;
+
+	/**
+	 * Shared by read-only operations, and held exclusively by the others
+	 */
+	private final ReadWriteLock lock;
+
+	/**
+	 * Released when this server starts processing requests
+	 */
+	private final CountDownLatch started;
+
+	/**
+	 * Released when this server is shut down
+	 */
+	private final CountDownLatch stopped;
+
+	/**
+	 * @param transport
+	 *            The transport in which this server is registered
+	 * @param routingKey
+	 *            The routing key of the handler (e.g., a probe or a namespace)
+	 * @param name
+	 *            The name under which this server is registered
+	 */
+	public TcpRpcServer(final TcpTransport transport, final String routingKey,
+			final String name) {
+		super(routingKey);
+		this.transport = transport;
+		this.name = name;
+		this.writer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+				.setDaemon(true).setNameFormat("pascani-tcp-rpc-writer-%d")
+				.build());
+		this.lock = new ReentrantReadWriteLock();
+		this.started = new CountDownLatch(1);
+		this.stopped = new CountDownLatch(1);
+	}
+
+	/**
+	 * Handles a request in background, replying on the given connection.
+	 * Called from the reactor thread.
+	 * 
+	 * @param connection
+	 *            The connection from which the request was read
+	 * @param stream
+	 *            The stream of the request
+	 * @param id
+	 *            The request identifier
+	 * @param body
+	 *            The encoded request
+	 */
+	void handle(final TcpConnection connection, final int stream,
+			final long id, final byte[] body) {
+		Codec codec = Codecs.detect(body);
+		final Codec requestCodec = codec == null ? Codecs.defaultCodec()
+				: codec;
+		final RpcRequest request;
+		try {
+			request = (RpcRequest) requestCodec.decode(body);
+		} catch (RuntimeException e) {
+			logger.error("Error decoding an RPC request", e);
+			reply(connection, stream, id, "The RPC request is malformed");
+			return;
+		}
+		final boolean readOnly = request.operation().isReadOnly();
+		final boolean exclusive = request.operation().isExclusive();
+		Runnable task = new Runnable() {
+			public void run() {
+				Serializable response = null;
+				try {
+					awaitStart();
+				} catch (Exception e) {
+					reply(connection, stream, id, e.getMessage());
+					return;
+				}
+				if (readOnly)
+					lock.readLock().lock();
+				else if (exclusive)
+					lock.writeLock().lock();
+				try {
+					response = delegateHandling(request);
+				} catch (RuntimeException e) {
+					logger.error("Error handling RPC request "
+							+ request.operation(), e);
+				} finally {
+					if (readOnly)
+						lock.readLock().unlock();
+					else if (exclusive)
+						lock.writeLock().unlock();
+				}
+				try {
+					connection.send(TcpConnection.RESPONSE, stream, id,
+							requestCodec.encode(response));
+				} catch (Exception e) {
+					logger.error("Error replying to an RPC request", e);
+				}
+			}
+		};
+		if (readOnly)
+			readers.execute(task);
+		else
+			this.writer.execute(task);
+	}
+
+	/**
+	 * Waits for this server to start, as requests may arrive before
+	 */
+	private void awaitStart() throws Exception {
+		long timeout = Long.parseLong(PascaniRuntime.getEnvironment().get(
+				"rpc_timeout"));
+		if (!this.started.await(timeout, TimeUnit.MILLISECONDS))
+			throw new IOException("The RPC server " + this.name
+					+ " has not started");
+	}
+
+	private void reply(final TcpConnection connection, final int stream,
+			final long id, final String failure) {
+		try {
+			connection.send(TcpConnection.FAILURE, stream, id,
+					TcpConnection.encode(String.valueOf(failure)));
+		} catch (IOException e) {
+			logger.error("Error replying to an RPC request", e);
+		}
+	}
+
+	/**
+	 * @return the name under which this server is registered
+	 */
+	String name() {
+		return this.name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.RpcServer#startProcessingRequests()
+	 */
+	@Override protected void startProcessingRequests()
+			throws InterruptedException {
+		this.started.countDown();
+		this.stopped.await();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.infrastructure.RpcServer#shutdown()
+	 */
+	@Override public void shutdown() throws IOException {
+		this.transport.remove(this);
+		this.writer.shutdown();
+		this.stopped.countDown();
+	}
+
+}
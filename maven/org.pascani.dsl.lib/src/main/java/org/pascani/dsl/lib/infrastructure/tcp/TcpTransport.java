@@ -0,0 +1,613 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.infrastructure.AbstractConsumer;
+import org.pascani.dsl.lib.infrastructure.AbstractProducer;
+import org.pascani.dsl.lib.infrastructure.RpcClient;
+import org.pascani.dsl.lib.infrastructure.RpcServer;
+import org.pascani.dsl.lib.infrastructure.Transport;
+import org.pascani.dsl.lib.util.RoutingKeys;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Implementation of {@link Transport} connecting components directly through
+ * TCP sockets, without a message broker in between. The URI (e.g.,
+ * {@code tcp://host:5680}) denotes a {@link TcpRegistry}, which resolves the
+ * exchanges, routing keys and RPC servers to the transports serving them;
+ * events and requests are then sent straight to those transports, costing a
+ * single network hop.
+ * 
+ * <p>
+ * Each transport listens on an ephemeral port, and keeps a single connection
+ * to each of its peers, over which the routing keys are multiplexed as
+ * streams (see {@link TcpConnection}). Events and requests are encoded with
+ * the default codec. As with a RabbitMQ exchange, events sent to an exchange
+ * and routing key with no consumers are dropped, and binding keys may contain
+ * wildcards, as with a topic exchange (see {@link RoutingKeys}).
+ * </p>
+ * 
+ * <p>
+ * If the connection to the registry is lost, the transport keeps serving the
+ * names already resolved, and reconnects in the background, registering its
+ * names and watching the resolved ones again.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TcpTransport implements Transport, TcpConnection.Listener {
+
+	/**
+	 * The initial time, in milliseconds, to wait before reconnecting to the
+	 * registry; it doubles after each failed attempt
+	 */
+	public static final long RECONNECTION_DELAY = 500;
+
+	/**
+	 * The maximum time, in milliseconds, to wait before reconnecting to the
+	 * registry
+	 */
+	public static final long MAX_RECONNECTION_DELAY = 30000;
+
+	/**
+	 * The prefix of the names under which consumers are registered
+	 */
+	private static final String EVENT_PREFIX = "event/";
+
+	/**
+	 * The logger
+	 */
+	private final Logger logger = LogManager.getLogger(getClass());
+
+	/**
+	 * Reads and writes the connections of this transport
+	 */
+	private final TcpReactor reactor;
+
+	/**
+	 * Completes the responses received by the peers, and runs the timeouts
+	 * and reconnections
+	 */
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * The address of the registry
+	 */
+	private final InetSocketAddress registryAddress;
+
+	/**
+	 * The connection to the registry
+	 */
+	private volatile TcpConnection registry;
+
+	/**
+	 * Whether this transport has been stopped
+	 */
+	private volatile boolean stopped;
+
+	/**
+	 * The address (host:port) on which peers reach this transport
+	 */
+	private final String address;
+
+	/**
+	 * The local consumers, by name
+	 */
+	private final ConcurrentMap<String, CopyOnWriteArrayList<TcpConsumer>> consumers;
+
+	/**
+	 * The names of the local consumers whose binding key contains wildcards
+	 */
+	private final CopyOnWriteArraySet<String> patterns;
+
+	/**
+	 * The local RPC servers, by name
+	 */
+	private final ConcurrentMap<String, TcpRpcServer> servers;
+
+	/**
+	 * The number of local components serving each name registered in the
+	 * registry
+	 */
+	private final Map<String, Integer> registered;
+
+	/**
+	 * The resolved names, by name
+	 */
+	private final ConcurrentMap<String, TcpEndpoints> resolved;
+
+	/**
+	 * The resolved names, by the stream on which the registry sends their
+	 * addresses
+	 */
+	private final ConcurrentMap<Integer, TcpEndpoints> watches;
+
+	/**
+	 * The streams on which the registry sends the addresses of the resolved
+	 * names, by name
+	 */
+	private final Map<String, Integer> watchStreams;
+
+	/**
+	 * The connections to other transports, by address
+	 */
+	private final ConcurrentMap<String, TcpPeer> peers;
+
+	/**
+	 * Generates the identifiers of the watch streams
+	 */
+	private final AtomicInteger watchIds;
+
+	/**
+	 * @param uri
+	 *            The URI of the registry, e.g., {@code tcp://host:5680}
+	 * @throws IOException
+	 *             If the registry cannot be reached, or this transport cannot
+	 *             listen for its peers
+	 */
+	public TcpTransport(final String uri) throws IOException {
+		URI registryUri = URI.create(uri);
+		int port = registryUri.getPort() == -1 ? TcpRegistry.DEFAULT_PORT
+				: registryUri.getPort();
+		this.consumers = new ConcurrentHashMap<String, CopyOnWriteArrayList<TcpConsumer>>();
+		this.patterns = new CopyOnWriteArraySet<String>();
+		this.servers = new ConcurrentHashMap<String, TcpRpcServer>();
+		this.registered = new HashMap<String, Integer>();
+		this.resolved = new ConcurrentHashMap<String, TcpEndpoints>();
+		this.watches = new ConcurrentHashMap<Integer, TcpEndpoints>();
+		this.watchStreams = new HashMap<String, Integer>();
+		this.peers = new ConcurrentHashMap<String, TcpPeer>();
+		this.watchIds = new AtomicInteger();
+		this.executor = Executors.newScheduledThreadPool(Runtime
+				.getRuntime().availableProcessors(), new ThreadFactoryBuilder()
+				.setDaemon(true).setNameFormat("pascani-tcp-executor-%d")
+				.build());
+		this.reactor = new TcpReactor();
+		InetSocketAddress local = this.reactor.listen(new InetSocketAddress(
+				0), this);
+		this.registryAddress = new InetSocketAddress(registryUri.getHost(),
+				port);
+		this.registry = this.reactor.connect(this.registryAddress,
+				new RegistryListener());
+		// Peers reach this transport through the interface facing the
+		// registry
+		this.address = this.registry.localAddress().getAddress()
+				.getHostAddress()
+				+ ":" + local.getPort();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#producer(java.lang.String,
+	 * java.lang.String)
+	 */
+	public AbstractProducer producer(final String exchange,
+			final String routingKey) throws IOException {
+		return new TcpProducer(this, eventName(exchange, routingKey));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#consumer(java.lang.String,
+	 * java.lang.String, java.lang.String,
+	 * org.pascani.dsl.lib.PascaniRuntime.Context)
+	 */
+	public AbstractConsumer consumer(final String exchange,
+			final String routingKey, final String tag,
+			final PascaniRuntime.Context context) throws IOException {
+		TcpConsumer consumer = new TcpConsumer(this, eventName(exchange,
+				routingKey), context);
+		bind(consumer);
+		return consumer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#rpcClient(java.lang.String)
+	 */
+	public RpcClient rpcClient(final String routingKey) {
+		return new TcpRpcClient(this, routingKey, rpcName(routingKey));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.Transport#rpcServer(java.lang.String,
+	 * org.pascani.dsl.lib.PascaniRuntime.Context)
+	 */
+	public RpcServer rpcServer(final String routingKey,
+			final PascaniRuntime.Context context) throws IOException {
+		String name = rpcName(routingKey);
+		TcpRpcServer server = new TcpRpcServer(this, routingKey, name);
+		this.servers.put(name, server);
+		register(name);
+		return server;
+	}
+
+	/**
+	 * Binds a consumer to its name, registering the name if necessary
+	 */
+	void bind(final TcpConsumer consumer) throws IOException {
+		CopyOnWriteArrayList<TcpConsumer> bound = this.consumers.get(consumer
+				.name());
+		if (bound == null) {
+			bound = new CopyOnWriteArrayList<TcpConsumer>();
+			CopyOnWriteArrayList<TcpConsumer> previous = this.consumers
+					.putIfAbsent(consumer.name(), bound);
+			if (previous != null)
+				bound = previous;
+		}
+		bound.add(consumer);
+		if (isPattern(consumer.name()))
+			this.patterns.add(consumer.name());
+		register(consumer.name());
+	}
+
+	/**
+	 * Unbinds a consumer from its name, unregistering the name if no other
+	 * consumer is bound to it
+	 */
+	void unbind(final TcpConsumer consumer) throws IOException {
+		List<TcpConsumer> bound = this.consumers.get(consumer.name());
+		if (bound != null && bound.remove(consumer))
+			unregister(consumer.name());
+	}
+
+	/**
+	 * Removes an RPC server, if it is still registered
+	 */
+	void remove(final TcpRpcServer server) throws IOException {
+		if (this.servers.remove(server.name(), server))
+			unregister(server.name());
+	}
+
+	/**
+	 * Registers this transport under a name, unless it is already registered.
+	 * If the registry is unreachable, the name is registered once it is
+	 * reconnected.
+	 */
+	private void register(final String name) {
+		synchronized (this.registered) {
+			Integer count = this.registered.get(name);
+			this.registered.put(name, count == null ? 1 : count + 1);
+			if (count == null)
+				sendToRegistry(TcpConnection.REGISTER, 0, name, this.address);
+		}
+	}
+
+	/**
+	 * Unregisters this transport from a name, once no local component serves
+	 * it
+	 */
+	private void unregister(final String name) {
+		synchronized (this.registered) {
+			Integer count = this.registered.get(name);
+			if (count == null)
+				return;
+			if (count > 1) {
+				this.registered.put(name, count - 1);
+				return;
+			}
+			this.registered.remove(name);
+			sendToRegistry(TcpConnection.UNREGISTER, 0, name, this.address);
+		}
+	}
+
+	/**
+	 * Sends a frame to the registry, unless it is unreachable; frames lost
+	 * while it is unreachable are sent again once it is reconnected
+	 */
+	private void sendToRegistry(final byte type, final int stream,
+			final String... values) {
+		try {
+			this.registry.send(type, stream, TcpConnection.encode(values));
+		} catch (IOException e) {
+			logger.warn("The registry is unreachable; " + values[0]
+					+ " will be updated once it is reconnected");
+		}
+	}
+
+	/**
+	 * @param name
+	 *            A name served by other transports
+	 * @return the addresses of the transports serving the name, kept up to
+	 *         date by the registry
+	 */
+	TcpEndpoints resolve(final String name) {
+		TcpEndpoints endpoints = this.resolved.get(name);
+		if (endpoints != null)
+			return endpoints;
+		synchronized (this.resolved) {
+			endpoints = this.resolved.get(name);
+			if (endpoints == null) {
+				int stream = this.watchIds.incrementAndGet();
+				endpoints = new TcpEndpoints();
+				this.watches.put(stream, endpoints);
+				this.watchStreams.put(name, stream);
+				this.resolved.put(name, endpoints);
+				sendToRegistry(TcpConnection.WATCH, stream, name);
+			}
+		}
+		return endpoints;
+	}
+
+	/**
+	 * @param address
+	 *            The address (host:port) of another transport
+	 * @return the connection to the given transport, established if
+	 *         necessary
+	 * @throws IOException
+	 *             If the transport cannot be reached
+	 */
+	TcpPeer peer(final String address) throws IOException {
+		TcpPeer peer = this.peers.get(address);
+		if (peer != null && !peer.isClosed())
+			return peer;
+		synchronized (this.peers) {
+			peer = this.peers.get(address);
+			if (peer == null || peer.isClosed()) {
+				int colon = address.lastIndexOf(':');
+				peer = new TcpPeer(this);
+				peer.connect(this.reactor, new InetSocketAddress(address
+						.substring(0, colon), Integer.parseInt(address
+						.substring(colon + 1))));
+				this.peers.put(address, peer);
+			}
+		}
+		return peer;
+	}
+
+	/**
+	 * Connects to the registry again, and registers and watches the names
+	 * again. Retried with an increasing delay until it succeeds or this
+	 * transport is stopped.
+	 */
+	private void reconnect(final long delay) {
+		if (this.stopped)
+			return;
+		this.executor.schedule(new Runnable() {
+			public void run() {
+				if (stopped)
+					return;
+				try {
+					registry = reactor.connect(registryAddress,
+							new RegistryListener());
+				} catch (IOException e) {
+					logger.warn("The registry " + registryAddress
+							+ " is still unreachable: " + e.getMessage());
+					reconnect(Math.min(delay * 2, MAX_RECONNECTION_DELAY));
+					return;
+				}
+				synchronized (registered) {
+					for (String name : registered.keySet())
+						sendToRegistry(TcpConnection.REGISTER, 0, name,
+								address);
+				}
+				synchronized (resolved) {
+					for (Map.Entry<String, Integer> watch : watchStreams
+							.entrySet())
+						sendToRegistry(TcpConnection.WATCH, watch.getValue(),
+								watch.getKey());
+				}
+				logger.info("Reconnected to the registry " + registryAddress);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the executor completing the responses received by the peers,
+	 *         and running timeouts
+	 */
+	ScheduledExecutorService executor() {
+		return this.executor;
+	}
+
+	/**
+	 * @return the address (host:port) on which peers reach this transport
+	 */
+	public String address() {
+		return this.address;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.tcp.TcpConnection.Listener#received
+	 * (org.pascani.dsl.lib.infrastructure.tcp.TcpConnection, byte, int,
+	 * java.nio.ByteBuffer)
+	 */
+	public void received(final TcpConnection connection, final byte type,
+			final int stream, final ByteBuffer payload) {
+		try {
+			switch (type) {
+			case TcpConnection.OPEN:
+				connection.streams.put(stream,
+						TcpConnection.decode(payload).get(0));
+				break;
+			case TcpConnection.EVENT:
+				deliver(connection.streams.get(stream),
+						TcpConnection.bytes(payload));
+				break;
+			case TcpConnection.REQUEST:
+				long id = payload.getLong();
+				String name = connection.streams.get(stream);
+				TcpRpcServer server = name == null ? null : this.servers
+						.get(name);
+				if (server == null)
+					connection.send(TcpConnection.FAILURE, stream, id,
+							TcpConnection.encode("There is no RPC server "
+									+ name));
+				else
+					server.handle(connection, stream, id,
+							TcpConnection.bytes(payload));
+				break;
+			default:
+				logger.warn("Unexpected frame " + type + " from " + connection);
+			}
+		} catch (IOException e) {
+			logger.warn("Error handling a frame from " + connection, e);
+		}
+	}
+
+	/**
+	 * Hands an encoded event to the consumers bound to the given name, or to
+	 * a pattern matching it
+	 */
+	private void deliver(final String name, final byte[] event) {
+		if (name == null)
+			return;
+		List<TcpConsumer> bound = this.consumers.get(name);
+		if (bound == null)
+			bound = Collections.emptyList();
+		for (String pattern : this.patterns) {
+			List<TcpConsumer> matching = this.consumers.get(pattern);
+			if (!matching.isEmpty() && matches(pattern, name)) {
+				bound = new ArrayList<TcpConsumer>(bound);
+				bound.addAll(matching);
+			}
+		}
+		for (TcpConsumer consumer : bound)
+			consumer.deliver(event);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.pascani.dsl.lib.infrastructure.tcp.TcpConnection.Listener#closed(org
+	 * .pascani.dsl.lib.infrastructure.tcp.TcpConnection)
+	 */
+	public void closed(final TcpConnection connection) {
+	}
+
+	/**
+	 * Stops this transport, closing its connections
+	 */
+	public void shutdown() {
+		this.stopped = true;
+		this.reactor.shutdown();
+		this.executor.shutdown();
+	}
+
+	/**
+	 * The name under which the consumers of an exchange and routing key are
+	 * registered
+	 */
+	private static String eventName(final String exchange,
+			final String routingKey) {
+		return EVENT_PREFIX + (exchange == null ? "" : exchange) + "/"
+				+ (routingKey == null ? "" : routingKey);
+	}
+
+	/**
+	 * @return whether the given name is that of consumers whose binding key
+	 *         contains wildcards
+	 */
+	static boolean isPattern(final String name) {
+		int separator = name.indexOf('/', EVENT_PREFIX.length());
+		return name.startsWith(EVENT_PREFIX) && separator >= 0
+				&& RoutingKeys.isPattern(name.substring(separator + 1));
+	}
+
+	/**
+	 * @param pattern
+	 *            The name of consumers whose binding key contains wildcards
+	 * @param name
+	 *            The name of the consumers of an exchange and routing key
+	 * @return whether the events sent to the latter are received by the
+	 *         former, i.e., their exchanges are the same and the binding key
+	 *         matches the routing key
+	 */
+	static boolean matches(final String pattern, final String name) {
+		if (!name.startsWith(EVENT_PREFIX))
+			return false;
+		int separator = pattern.indexOf('/', EVENT_PREFIX.length());
+		return name.length() > separator
+				&& name.indexOf('/', EVENT_PREFIX.length()) == separator
+				&& name.regionMatches(0, pattern, 0, separator)
+				&& RoutingKeys.matches(pattern.substring(separator + 1),
+						name.substring(separator + 1));
+	}
+
+	/**
+	 * The name under which an RPC server is registered
+	 */
+	private static String rpcName(final String routingKey) {
+		return "rpc/" + routingKey;
+	}
+
+	/**
+	 * Receives the addresses of the watched names from the registry
+	 */
+	private class RegistryListener implements TcpConnection.Listener {
+
+		public void received(final TcpConnection connection, final byte type,
+				final int stream, final ByteBuffer payload) {
+			TcpEndpoints endpoints = watches.get(stream);
+			if (type != TcpConnection.ENDPOINTS || endpoints == null) {
+				logger.warn("Unexpected frame " + type + " from the registry");
+				return;
+			}
+			try {
+				endpoints.update(TcpConnection.decode(payload));
+			} catch (IOException e) {
+				logger.warn("Malformed frame from the registry", e);
+			}
+		}
+
+		public void closed(final TcpConnection connection) {
+			if (stopped)
+				return;
+			logger.error("The connection to the registry " + connection
+					+ " was closed; reconnecting");
+			reconnect(RECONNECTION_DELAY);
+		}
+	}
+
+}
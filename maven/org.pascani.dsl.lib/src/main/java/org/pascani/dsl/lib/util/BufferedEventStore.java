@@ -0,0 +1,367 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.pascani.dsl.lib.Event;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * An {@link EventStore} decorator for concurrent recording. Each recording
+ * thread appends events to its own lock-free buffer, thus recording never
+ * blocks, neither on other recording threads nor on readers. Buffers are
+ * merged into the decorated store before each query, and in background once
+ * a buffer reaches a threshold.
+ * 
+ * <p>
+ * Given that buffered events are not checked for duplicates until they are
+ * merged, {@link #add(Event)} always returns {@code false}; the events that
+ * are actually recorded are notified to the listener of the store, if any
+ * (see {@link #setListener(Listener)}), as they are merged.
+ * </p>
+ * 
+ * @param <T>
+ *            The type of events
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class BufferedEventStore<T extends Event<?>> implements EventStore<T>,
+		Closeable {
+
+	/**
+	 * The default number of buffered events after which a merge is scheduled
+	 */
+	public static final int DEFAULT_FLUSH_THRESHOLD = 256;
+
+	/**
+	 * Creates {@link BufferedEventStore} instances decorating the stores
+	 * created by another factory
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static class Factory implements EventStoreFactory {
+
+		private final EventStoreFactory delegate;
+		private final int flushThreshold;
+
+		/**
+		 * @param delegate
+		 *            The factory creating the decorated stores
+		 * @param flushThreshold
+		 *            The number of buffered events after which a merge is
+		 *            scheduled
+		 */
+		public Factory(final EventStoreFactory delegate,
+				final int flushThreshold) {
+			this.delegate = delegate;
+			this.flushThreshold = flushThreshold;
+		}
+
+		/**
+		 * @param delegate
+		 *            The factory creating the decorated stores
+		 */
+		public Factory(final EventStoreFactory delegate) {
+			this(delegate, DEFAULT_FLUSH_THRESHOLD);
+		}
+
+		public Factory() {
+			this(new PartitionedEventStore.Factory());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.pascani.dsl.lib.util.EventStoreFactory#newStore(java.lang.String)
+		 */
+		public EventStore<Event<?>> newStore(final String eventType) {
+			return new BufferedEventStore<Event<?>>(
+					this.delegate.newStore(eventType), this.flushThreshold);
+		}
+	}
+
+	/**
+	 * Notified of the events recorded in the decorated store
+	 * 
+	 * @param <T>
+	 *            The type of events
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static interface Listener<T> {
+
+		/**
+		 * Notifies that an event was merged into the decorated store, that
+		 * is, it was not a duplicate. Called from the merging thread.
+		 * 
+		 * @param event
+		 *            The recorded event
+		 */
+		public void recorded(T event);
+	}
+
+	/**
+	 * Merges the buffers that reached the threshold, for all stores
+	 */
+	private static final ExecutorService merger = Executors
+			.newSingleThreadExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("pascani-store-merger-%d")
+					.build());
+
+	/**
+	 * An append buffer owned by a single recording thread
+	 */
+	private static final class Buffer<T> {
+
+		final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<T>();
+		final AtomicInteger pending = new AtomicInteger();
+		final WeakReference<Thread> owner;
+
+		Buffer(final Thread owner) {
+			this.owner = new WeakReference<Thread>(owner);
+		}
+
+		boolean isOrphan() {
+			Thread thread = this.owner.get();
+			return thread == null || !thread.isAlive();
+		}
+	}
+
+	/**
+	 * The store in which buffered events are eventually merged
+	 */
+	private final EventStore<T> delegate;
+
+	/**
+	 * The buffers of all the threads that have recorded events
+	 */
+	private final ConcurrentLinkedQueue<Buffer<T>> buffers;
+
+	/**
+	 * The buffer of the current thread
+	 */
+	private final ThreadLocal<Buffer<T>> localBuffer;
+
+	/**
+	 * Serializes merging
+	 */
+	private final ReentrantLock mergeLock;
+
+	/**
+	 * The number of buffered events after which a merge is scheduled
+	 */
+	private final int flushThreshold;
+
+	/**
+	 * Whether a merge is scheduled in background
+	 */
+	private final AtomicBoolean mergeScheduled;
+
+	/**
+	 * Merges the buffers in background
+	 */
+	private final Runnable backgroundMerge;
+
+	/**
+	 * Notified of the recorded events
+	 */
+	private volatile Listener<? super T> listener;
+
+	/**
+	 * @param delegate
+	 *            The store in which buffered events are eventually merged
+	 * @param flushThreshold
+	 *            The number of buffered events after which a merge is
+	 *            scheduled
+	 */
+	public BufferedEventStore(final EventStore<T> delegate,
+			final int flushThreshold) {
+		this.delegate = delegate;
+		this.flushThreshold = flushThreshold;
+		this.buffers = new ConcurrentLinkedQueue<Buffer<T>>();
+		this.mergeLock = new ReentrantLock();
+		this.mergeScheduled = new AtomicBoolean(false);
+		this.backgroundMerge = new Runnable() {
+			public void run() {
+				mergeScheduled.set(false);
+				merge();
+			}
+		};
+		this.localBuffer = new ThreadLocal<Buffer<T>>() {
+			@Override protected Buffer<T> initialValue() {
+				Buffer<T> buffer = new Buffer<T>(Thread.currentThread());
+				buffers.add(buffer);
+				return buffer;
+			}
+		};
+	}
+
+	/**
+	 * @param delegate
+	 *            The store in which buffered events are eventually merged
+	 */
+	public BufferedEventStore(final EventStore<T> delegate) {
+		this(delegate, DEFAULT_FLUSH_THRESHOLD);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#add(org.pascani.dsl.lib.Event)
+	 */
+	public boolean add(final T event) {
+		Buffer<T> buffer = this.localBuffer.get();
+		buffer.queue.offer(event);
+		if (buffer.pending.incrementAndGet() >= this.flushThreshold
+				&& this.mergeScheduled.compareAndSet(false, true))
+			merger.execute(this.backgroundMerge);
+		return false;
+	}
+
+	/**
+	 * Sets the listener notified of the events merged into the decorated
+	 * store
+	 * 
+	 * @param listener
+	 *            The listener, or {@code null}
+	 */
+	public void setListener(final Listener<? super T> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Merges all of the buffered events into the decorated store
+	 */
+	public void merge() {
+		this.mergeLock.lock();
+		try {
+			List<T> drained = new ArrayList<T>();
+			Iterator<Buffer<T>> iterator = this.buffers.iterator();
+			while (iterator.hasNext()) {
+				Buffer<T> buffer = iterator.next();
+				drain(buffer, drained);
+				// Threads that are gone will not record events anymore
+				if (buffer.isOrphan() && buffer.queue.isEmpty())
+					iterator.remove();
+			}
+			// Each buffer is almost sorted, but buffers overlap in time;
+			// adding them in order avoids shifting the decorated store
+			Collections.sort(drained, WINDOW_ORDER);
+			Listener<? super T> listener = this.listener;
+			for (T event : drained) {
+				if (this.delegate.add(event) && listener != null)
+					listener.recorded(event);
+			}
+		} finally {
+			this.mergeLock.unlock();
+		}
+	}
+
+	private void drain(final Buffer<T> buffer, final List<T> drained) {
+		T event = null;
+		while ((event = buffer.queue.poll()) != null) {
+			buffer.pending.decrementAndGet();
+			drained.add(event);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#count(long, long)
+	 */
+	public int count(final long start, final long end) {
+		merge();
+		return this.delegate.count(start, end);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#fetch(long, long)
+	 */
+	public List<T> fetch(final long start, final long end) {
+		merge();
+		return this.delegate.fetch(start, end);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#fetch(long, long, int)
+	 */
+	public List<T> fetch(final long start, final long end, final int limit) {
+		merge();
+		return this.delegate.fetch(start, end, limit);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#clean(long, long)
+	 */
+	public List<T> clean(final long start, final long end) {
+		merge();
+		return this.delegate.clean(start, end);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#evict(long, int)
+	 */
+	public int evict(final long olderThan, final int maxSize) {
+		merge();
+		return this.delegate.evict(olderThan, maxSize);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#size()
+	 */
+	public int size() {
+		merge();
+		return this.delegate.size();
+	}
+
+	/**
+	 * Closes the decorated store, if it holds resources
+	 */
+	public void close() throws IOException {
+		if (this.delegate instanceof Closeable)
+			((Closeable) this.delegate).close();
+	}
+
+}
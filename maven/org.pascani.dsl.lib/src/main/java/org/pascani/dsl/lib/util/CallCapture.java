@@ -0,0 +1,327 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.PascaniRuntime;
+import org.pascani.dsl.lib.events.ExceptionEvent;
+import org.pascani.dsl.lib.events.InvokeEvent;
+import org.pascani.dsl.lib.events.ReturnEvent;
+import org.pascani.dsl.lib.events.TimeLapseEvent;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Captures intercepted method calls without allocating on the calling thread,
+ * and materializes the corresponding {@link Event} objects in the background.
+ * 
+ * <p>
+ * Calling threads write primitive call records into their own
+ * {@link CaptureRing}; a shared background thread periodically drains the
+ * rings, and creates {@link InvokeEvent}, {@link TimeLapseEvent},
+ * {@link ReturnEvent} and {@link ExceptionEvent} objects (as configured), with
+ * the timestamps taken when the call happened. The events of a call share a
+ * transaction identifier, generated when the call is drained.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class CallCapture {
+
+	/**
+	 * The default capacity of each thread's ring
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * The period, in milliseconds, at which rings are drained
+	 */
+	public static final long DRAIN_PERIOD = 1;
+
+	/**
+	 * The background drainer shared among all captures
+	 */
+	private static final ScheduledExecutorService drainer = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("pascani-capture-drainer")
+					.build());
+
+	/**
+	 * Receives the materialized events
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static interface Sink {
+		public void handle(Event<?> event);
+	}
+
+	/**
+	 * A thread's ring, along with the thread
+	 */
+	private static final class Registration {
+		final WeakReference<Thread> owner;
+		final CaptureRing ring;
+
+		Registration(final Thread owner, final CaptureRing ring) {
+			this.owner = new WeakReference<Thread>(owner);
+			this.ring = ring;
+		}
+
+		boolean isOrphan() {
+			Thread thread = this.owner.get();
+			return thread == null || !thread.isAlive();
+		}
+	}
+
+	/**
+	 * The logger
+	 */
+	protected final Logger logger = LogManager.getLogger(getClass());
+
+	/**
+	 * Receives the materialized events
+	 */
+	private final Sink sink;
+
+	/**
+	 * The capacity of each thread's ring
+	 */
+	private final int capacity;
+
+	private final boolean invokeEvents;
+	private final boolean timeLapseEvents;
+	private final boolean returnEvents;
+	private final boolean exceptionEvents;
+
+	/**
+	 * The identifiers of the captured methods
+	 */
+	private final ConcurrentMap<Method, Integer> identifiers;
+
+	/**
+	 * The descriptors of the captured methods, by identifier
+	 */
+	private volatile MethodDescriptor[] descriptors;
+
+	/**
+	 * The rings of all the threads recording calls
+	 */
+	private final ConcurrentLinkedQueue<Registration> registrations;
+
+	/**
+	 * The number of calls dropped by the rings already discarded
+	 */
+	private final AtomicLong dropped;
+
+	/**
+	 * The current thread's ring
+	 */
+	private final ThreadLocal<CaptureRing> ring;
+
+	/**
+	 * Materializes drained records
+	 */
+	private final CaptureRing.Visitor materializer;
+
+	/**
+	 * The scheduled draining of this capture
+	 */
+	private final ScheduledFuture<?> draining;
+
+	/**
+	 * @param sink
+	 *            Receives the materialized events
+	 * @param capacity
+	 *            The capacity of each thread's ring
+	 * @param eventTypes
+	 *            The types of events to materialize, among
+	 *            {@link InvokeEvent}, {@link TimeLapseEvent},
+	 *            {@link ReturnEvent} and {@link ExceptionEvent}
+	 */
+	public CallCapture(final Sink sink, final int capacity,
+			final Class<?>... eventTypes) {
+		List<Class<?>> types = Arrays.asList(eventTypes);
+		this.sink = sink;
+		this.capacity = capacity;
+		this.invokeEvents = types.contains(InvokeEvent.class);
+		this.timeLapseEvents = types.contains(TimeLapseEvent.class);
+		this.returnEvents = types.contains(ReturnEvent.class);
+		this.exceptionEvents = types.contains(ExceptionEvent.class);
+		this.identifiers = new ConcurrentHashMap<Method, Integer>();
+		this.descriptors = new MethodDescriptor[0];
+		this.registrations = new ConcurrentLinkedQueue<Registration>();
+		this.dropped = new AtomicLong();
+		this.ring = new ThreadLocal<CaptureRing>() {
+			@Override protected CaptureRing initialValue() {
+				CaptureRing ring = new CaptureRing(CallCapture.this.capacity);
+				registrations.add(new Registration(Thread.currentThread(),
+						ring));
+				return ring;
+			}
+		};
+		this.materializer = new CaptureRing.Visitor() {
+			public void visit(int method, long start, long end, Throwable error) {
+				materialize(method, start, end, error);
+			}
+		};
+		this.draining = drainer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, DRAIN_PERIOD, DRAIN_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates a capture materializing all of the supported event types, with
+	 * rings of {@link #DEFAULT_CAPACITY}
+	 * 
+	 * @param sink
+	 *            Receives the materialized events
+	 */
+	public CallCapture(final Sink sink) {
+		this(sink, DEFAULT_CAPACITY, InvokeEvent.class, TimeLapseEvent.class,
+				ReturnEvent.class, ExceptionEvent.class);
+	}
+
+	/**
+	 * @param method
+	 *            A captured method
+	 * @return the index of the given method within this capture
+	 */
+	public int methodId(final Method method) {
+		Integer id = this.identifiers.get(method);
+		return id == null ? register(method) : id;
+	}
+
+	private synchronized int register(final Method method) {
+		Integer id = this.identifiers.get(method);
+		if (id == null) {
+			MethodDescriptor[] table = Arrays.copyOf(this.descriptors,
+					this.descriptors.length + 1);
+			table[table.length - 1] = MethodRegistry.descriptor(method);
+			this.descriptors = table;
+			id = table.length - 1;
+			this.identifiers.put(method, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Records a method call into the current thread's ring
+	 * 
+	 * @param method
+	 *            The index of the called method (see
+	 *            {@link #methodId(Method)})
+	 * @param start
+	 *            The time when the call started (see
+	 *            {@link PascaniRuntime#getClock()})
+	 * @param end
+	 *            The time when the call finished
+	 * @param error
+	 *            The error thrown by the call, or {@code null}
+	 * @return {@code false} if the current thread's ring is full and the call
+	 *         was dropped
+	 */
+	public boolean record(final int method, final long start, final long end,
+			final Throwable error) {
+		return this.ring.get().offer(method, start, end, error);
+	}
+
+	/**
+	 * Materializes the calls recorded so far
+	 */
+	public synchronized void drain() {
+		Iterator<Registration> iterator = this.registrations.iterator();
+		while (iterator.hasNext()) {
+			Registration registration = iterator.next();
+			boolean orphan = registration.isOrphan();
+			try {
+				registration.ring.drain(this.materializer);
+			} catch (RuntimeException e) {
+				this.logger.error("Error materializing captured calls", e);
+			}
+			if (orphan && registration.ring.isEmpty()) {
+				this.dropped.addAndGet(registration.ring.dropped());
+				iterator.remove();
+			}
+		}
+	}
+
+	private void materialize(final int method, final long start,
+			final long end, final Throwable error) {
+		IdGenerator ids = PascaniRuntime.getIdGenerator();
+		MethodDescriptor descriptor = this.descriptors[method];
+		UUID transactionId = ids.next();
+		if (this.invokeEvents)
+			this.sink.handle(new InvokeEvent(ids.next(), transactionId, start,
+					descriptor));
+		if (error != null) {
+			if (this.exceptionEvents)
+				this.sink.handle(new ExceptionEvent(ids.next(), transactionId,
+						end, new Exception(error), descriptor));
+			return;
+		}
+		if (this.timeLapseEvents)
+			this.sink.handle(new TimeLapseEvent(ids.next(), transactionId, end,
+					start, end));
+		if (this.returnEvents)
+			this.sink.handle(new ReturnEvent(ids.next(), transactionId, end,
+					descriptor));
+	}
+
+	/**
+	 * @return the number of calls dropped because a ring was full
+	 */
+	public long dropped() {
+		long dropped = this.dropped.get();
+		for (Registration registration : this.registrations)
+			dropped += registration.ring.dropped();
+		return dropped;
+	}
+
+	/**
+	 * Stops draining in the background, after materializing the pending calls
+	 */
+	public void close() {
+		this.draining.cancel(false);
+		drainer.execute(new Runnable() {
+			public void run() {
+				drain();
+			}
+		});
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded single-producer, single-consumer ring of method call records. Each
+ * record consists of primitive fields (method identifier, start and end times)
+ * and the {@link Throwable} thrown by the call, if any; they are kept in
+ * preallocated parallel arrays, so recording a call does not allocate.
+ * 
+ * <p>
+ * Only the owning thread may call {@link #offer(int, long, long, Throwable)},
+ * and only one thread at a time may call {@link #drain(Visitor)}. Calls
+ * recorded while the ring is full are dropped, and counted.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public final class CaptureRing {
+
+	/**
+	 * Visits drained records
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static interface Visitor {
+
+		/**
+		 * @param method
+		 *            The identifier of the called method
+		 * @param start
+		 *            The time when the call started
+		 * @param end
+		 *            The time when the call finished
+		 * @param error
+		 *            The error thrown by the call, or {@code null}
+		 */
+		public void visit(int method, long start, long end, Throwable error);
+	}
+
+	private final int mask;
+
+	private final int[] methods;
+
+	private final long[] starts;
+
+	private final long[] ends;
+
+	private final Throwable[] errors;
+
+	/**
+	 * The position of the next record to drain
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * The position of the next record to write
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * The last head read by the producer
+	 */
+	private long cachedHead = 0;
+
+	/**
+	 * The number of dropped records
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            The number of records the ring holds, rounded up to a power of
+	 *            two
+	 */
+	public CaptureRing(final int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("The capacity must be positive");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.mask = size - 1;
+		this.methods = new int[size];
+		this.starts = new long[size];
+		this.ends = new long[size];
+		this.errors = new Throwable[size];
+	}
+
+	/**
+	 * Records a method call. Only the owning thread may invoke this method
+	 * 
+	 * @return {@code false} if the ring is full and the record was dropped
+	 */
+	public boolean offer(final int method, final long start, final long end,
+			final Throwable error) {
+		long t = this.tail.get();
+		if (t - this.cachedHead > this.mask) {
+			this.cachedHead = this.head.get();
+			if (t - this.cachedHead > this.mask) {
+				this.dropped.lazySet(this.dropped.get() + 1);
+				return false;
+			}
+		}
+		int i = (int) t & this.mask;
+		this.methods[i] = method;
+		this.starts[i] = start;
+		this.ends[i] = end;
+		this.errors[i] = error;
+		this.tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Visits and removes the records written so far
+	 * 
+	 * @param visitor
+	 *            The visitor of the records
+	 * @return the number of records drained
+	 */
+	public int drain(final Visitor visitor) {
+		long first = this.head.get();
+		long h = first;
+		long t = this.tail.get();
+		try {
+			while (h < t) {
+				int i = (int) h++ & this.mask;
+				Throwable error = this.errors[i];
+				this.errors[i] = null;
+				visitor.visit(this.methods[i], this.starts[i], this.ends[i],
+						error);
+			}
+		} finally {
+			this.head.lazySet(h);
+		}
+		return (int) (h - first);
+	}
+
+	/**
+	 * @return whether there are records left to drain
+	 */
+	public boolean isEmpty() {
+		return this.head.get() == this.tail.get();
+	}
+
+	/**
+	 * @return the number of records dropped because the ring was full
+	 */
+	public long dropped() {
+		return this.dropped.get();
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link Clock} reading a cached time, which a background thread refreshes
+ * from a {@link PreciseClock} at a fixed resolution. Reading this clock is as
+ * cheap as reading a volatile field, at the cost of timestamps being up to one
+ * resolution period old; events stamped within the same period share the same
+ * timestamp.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class CoarseClock implements Clock {
+
+	/**
+	 * The default resolution, in nanoseconds
+	 */
+	public static final long DEFAULT_RESOLUTION = TimeUnit.MILLISECONDS
+			.toNanos(1);
+
+	/**
+	 * The source of the cached time
+	 */
+	private final Clock source;
+
+	/**
+	 * Refreshes the cached time
+	 */
+	private final ScheduledExecutorService ticker;
+
+	/**
+	 * The cached time
+	 */
+	private volatile long now;
+
+	/**
+	 * @param resolution
+	 *            The period at which the time is refreshed, in nanoseconds
+	 */
+	public CoarseClock(final long resolution) {
+		this.source = new PreciseClock();
+		this.now = this.source.nanos();
+		this.ticker = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+						.setDaemon(true).setNameFormat("pascani-coarse-clock")
+						.build());
+		this.ticker.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				now = source.nanos();
+			}
+		}, resolution, resolution, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Creates a clock with a resolution of {@link #DEFAULT_RESOLUTION}
+	 */
+	public CoarseClock() {
+		this(DEFAULT_RESOLUTION);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Clock#nanos()
+	 */
+	public long nanos() {
+		return this.now;
+	}
+
+	/**
+	 * Stops refreshing the time
+	 */
+	public void stop() {
+		this.ticker.shutdownNow();
+	}
+
+}
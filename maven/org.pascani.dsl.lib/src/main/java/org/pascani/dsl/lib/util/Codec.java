@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang3.SerializationException;
+
+/**
+ * Encodes the objects exchanged between Pascani components (events, RPC
+ * requests and responses) into messages, and decodes them back. Codecs are
+ * identified by a content type, which is sent along with each message when the
+ * transport supports it.
+ * 
+ * @see Codecs
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public interface Codec {
+
+	/**
+	 * @return the content type of the messages produced by this codec
+	 */
+	public String contentType();
+
+	/**
+	 * Encodes an object into a message
+	 * 
+	 * @param object
+	 *            The object to encode
+	 * @return the encoded message
+	 * @throws SerializationException
+	 *             If the object cannot be encoded
+	 */
+	public byte[] encode(Serializable object);
+
+	/**
+	 * Decodes a message produced by {@link #encode(Serializable)}
+	 * 
+	 * @param data
+	 *            The encoded message
+	 * @return the decoded object
+	 * @throws SerializationException
+	 *             If the message cannot be decoded
+	 */
+	public Serializable decode(byte[] data);
+
+	/**
+	 * Checks whether a message seems to be produced by this codec. This is
+	 * used when a message arrives without content type.
+	 * 
+	 * @param data
+	 *            The encoded message
+	 * @return whether the message starts as those produced by this codec
+	 */
+	public boolean recognizes(byte[] data);
+
+}
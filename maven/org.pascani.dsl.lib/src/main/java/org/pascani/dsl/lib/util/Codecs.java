@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.SerializationException;
+import org.pascani.dsl.lib.PascaniRuntime;
+
+/**
+ * Keeps the known {@link Codec} implementations, and selects the codec to
+ * encode or decode messages with.
+ * 
+ * <p>
+ * The default codec is configured through the {@code codec} property of the
+ * Pascani environment (see {@link PascaniRuntime#getEnvironment()}), holding
+ * the content type of a registered codec. Messages received without content
+ * type are decoded by the first codec recognizing them, which allows
+ * components using Java serialization to keep working alongside components
+ * using another codec.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class Codecs {
+
+	/**
+	 * The content type parameter marking messages that contain a list of
+	 * events, encoded as a whole, rather than a single event
+	 */
+	public static final String BATCH_PARAMETER = "batch=true";
+
+	/**
+	 * The registered codecs, by content type
+	 */
+	private static final Map<String, Codec> codecs = new ConcurrentHashMap<String, Codec>();
+
+	/**
+	 * The codec used for encoding messages
+	 */
+	private static volatile Codec defaultCodec;
+
+	static {
+		register(new JavaSerializationCodec());
+		register(new CompactCodec());
+	}
+
+	/**
+	 * Registers a codec, replacing any other codec with the same content type
+	 * 
+	 * @param codec
+	 *            The codec to register
+	 */
+	public static void register(final Codec codec) {
+		codecs.put(codec.contentType(), codec);
+	}
+
+	/**
+	 * @param contentType
+	 *            A content type, possibly with parameters (e.g.,
+	 *            {@link #BATCH_PARAMETER})
+	 * @return the codec registered for the given content type, or {@code null}
+	 *         if there is none
+	 */
+	public static Codec forContentType(final String contentType) {
+		if (contentType == null)
+			return null;
+		int parameters = contentType.indexOf(';');
+		return codecs.get(parameters < 0 ? contentType : contentType
+				.substring(0, parameters).trim());
+	}
+
+	/**
+	 * @param codec
+	 *            The codec encoding a list of events
+	 * @return the content type of a message containing a list of events
+	 */
+	public static String batchContentType(final Codec codec) {
+		return codec.contentType() + "; " + BATCH_PARAMETER;
+	}
+
+	/**
+	 * @param contentType
+	 *            A content type, possibly {@code null}
+	 * @return whether the content type denotes a message containing a list of
+	 *         events
+	 */
+	public static boolean isBatch(final String contentType) {
+		return contentType != null && contentType.contains(BATCH_PARAMETER);
+	}
+
+	/**
+	 * @param data
+	 *            An encoded message
+	 * @return the first codec recognizing the given message, or {@code null}
+	 *         if there is none
+	 */
+	public static Codec detect(final byte[] data) {
+		for (Codec codec : codecs.values()) {
+			if (codec.recognizes(data))
+				return codec;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the codec configured for encoding messages
+	 */
+	public static Codec defaultCodec() {
+		if (defaultCodec == null) {
+			String contentType = PascaniRuntime.getEnvironment().get("codec");
+			Codec codec = forContentType(contentType);
+			defaultCodec = codec == null ? forContentType(CompactCodec.CONTENT_TYPE)
+					: codec;
+		}
+		return defaultCodec;
+	}
+
+	/**
+	 * Decodes a message, using the codec registered for its content type or,
+	 * if the content type is unknown, the codec recognizing the message
+	 * 
+	 * @param contentType
+	 *            The content type of the message, possibly {@code null}
+	 * @param data
+	 *            The encoded message
+	 * @return the decoded object
+	 * @throws SerializationException
+	 *             If no codec can decode the message
+	 */
+	public static Serializable decode(final String contentType,
+			final byte[] data) {
+		Codec codec = forContentType(contentType);
+		if (codec == null)
+			codec = detect(data);
+		if (codec == null)
+			throw new SerializationException("Unknown message format"
+					+ (contentType == null ? "" : " " + contentType));
+		return codec.decode(data);
+	}
+
+	/**
+	 * Decodes a message without content type
+	 * 
+	 * @see #decode(String, byte[])
+	 */
+	public static Serializable decode(final byte[] data) {
+		return decode(null, data);
+	}
+
+}
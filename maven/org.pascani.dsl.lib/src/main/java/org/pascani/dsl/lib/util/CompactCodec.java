@@ -0,0 +1,952 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.events.ChangeEvent;
+import org.pascani.dsl.lib.events.ExceptionEvent;
+import org.pascani.dsl.lib.events.IntervalEvent;
+import org.pascani.dsl.lib.events.InvokeEvent;
+import org.pascani.dsl.lib.events.LogEvent;
+import org.pascani.dsl.lib.events.NamedEventDecorator;
+import org.pascani.dsl.lib.events.NetworkLatencyEvent;
+import org.pascani.dsl.lib.events.NewMonitorEvent;
+import org.pascani.dsl.lib.events.NewNamespaceEvent;
+import org.pascani.dsl.lib.events.ReturnEvent;
+import org.pascani.dsl.lib.events.TimeLapseEvent;
+import org.pascani.dsl.lib.infrastructure.RpcOperation;
+import org.pascani.dsl.lib.infrastructure.RpcRequest;
+
+/**
+ * A {@link Codec} writing a compact binary encoding for the events in
+ * {@link org.pascani.dsl.lib.events}, RPC requests, and the values commonly
+ * found in RPC responses (numbers, strings, identifiers, lists and maps).
+ * 
+ * <p>
+ * Every value is preceded by a tag identifying its type. Integers and
+ * timestamps are written as variable-length (zig-zag) integers, identifiers as
+ * two fixed-length longs, and strings in UTF-8; a string already written in the
+ * same message is replaced by a reference to its first occurrence. Values of
+ * any other type are written with Java serialization.
+ * </p>
+ * 
+ * <p>
+ * Events about method executions carry the signature of the method (see
+ * {@link Output#writeMethod(MethodDescriptor)}), as the identifiers assigned
+ * by the {@link MethodRegistry} are only meaningful within each component.
+ * Thanks to string references, the signature is written in full only once per
+ * message, e.g., once per batch.
+ * </p>
+ * 
+ * <p>
+ * User event types can be encoded compactly by registering a {@link Schema}
+ * for them (see {@link #register(int, Class, Schema)}). Schemas must be
+ * registered with the same tag in every component exchanging such events.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class CompactCodec implements Codec {
+
+	/**
+	 * The content type of compactly encoded messages
+	 */
+	public static final String CONTENT_TYPE = "application/x-pascani-compact";
+
+	/**
+	 * The smallest tag available for user types
+	 */
+	public static final int FIRST_USER_TAG = 64;
+
+	/**
+	 * The first byte of encoded messages. Java serialized messages start with
+	 * 0xAC
+	 */
+	private static final byte MAGIC = (byte) 0xC5;
+
+	/**
+	 * The version of the encoding
+	 */
+	private static final byte VERSION = 3;
+
+	private static final int NULL = 0;
+	private static final int TRUE = 1;
+	private static final int FALSE = 2;
+	private static final int INTEGER = 3;
+	private static final int LONG = 4;
+	private static final int DOUBLE = 5;
+	private static final int FLOAT = 6;
+	private static final int STRING = 7;
+	private static final int STRINGS = 8;
+	private static final int IDENTIFIER = 9;
+	private static final int LIST = 10;
+	private static final int MAP = 11;
+	private static final int CLASS = 12;
+	private static final int JAVA = 13;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Writes and reads objects of a specific type
+	 * 
+	 * @param <T>
+	 *            The type of objects
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static interface Schema<T> {
+
+		/**
+		 * Writes the fields of an object
+		 * 
+		 * @param object
+		 *            The object to write
+		 * @param out
+		 *            The output message
+		 */
+		public void write(T object, Output out);
+
+		/**
+		 * Reads the fields written by {@link #write(Object, Output)}, in the
+		 * same order, and creates the corresponding object
+		 * 
+		 * @param in
+		 *            The input message
+		 * @return the object read
+		 */
+		public T read(Input in);
+	}
+
+	/**
+	 * A registered {@link Schema}, along with its tag
+	 */
+	private static final class Entry {
+		final int tag;
+		final Schema<Object> schema;
+
+		@SuppressWarnings("unchecked") Entry(final int tag,
+				final Schema<?> schema) {
+			this.tag = tag;
+			this.schema = (Schema<Object>) schema;
+		}
+	}
+
+	/**
+	 * The registered schemas, by type
+	 */
+	private static final Map<Class<?>, Entry> byType = new ConcurrentHashMap<Class<?>, Entry>();
+
+	/**
+	 * The registered schemas, by tag
+	 */
+	private static final Map<Integer, Entry> byTag = new ConcurrentHashMap<Integer, Entry>();
+
+	/**
+	 * A growable message being written
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static final class Output {
+
+		private byte[] buffer = new byte[128];
+
+		private int size = 0;
+
+		/**
+		 * The strings written so far, and their position
+		 */
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		private Output() {
+			writeByte(MAGIC);
+			writeByte(VERSION);
+		}
+
+		private void ensure(final int length) {
+			if (this.size + length > this.buffer.length)
+				this.buffer = Arrays.copyOf(this.buffer,
+						Math.max(this.buffer.length << 1, this.size + length));
+		}
+
+		private void writeUnsigned(int value) {
+			ensure(5);
+			while ((value & ~0x7F) != 0) {
+				this.buffer[this.size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.buffer[this.size++] = (byte) value;
+		}
+
+		public void writeByte(final int value) {
+			ensure(1);
+			this.buffer[this.size++] = (byte) value;
+		}
+
+		public void writeBoolean(final boolean value) {
+			writeByte(value ? 1 : 0);
+		}
+
+		/**
+		 * Writes a variable-length integer: small absolute values take less
+		 * bytes
+		 */
+		public void writeVarInt(final int value) {
+			writeUnsigned((value << 1) ^ (value >> 31));
+		}
+
+		/**
+		 * Writes a variable-length long: small absolute values take less bytes
+		 */
+		public void writeVarLong(final long value) {
+			long v = (value << 1) ^ (value >> 63);
+			ensure(10);
+			while ((v & ~0x7FL) != 0) {
+				this.buffer[this.size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			this.buffer[this.size++] = (byte) v;
+		}
+
+		/**
+		 * Writes a fixed-length long
+		 */
+		public void writeLong(final long value) {
+			ensure(8);
+			for (int shift = 56; shift >= 0; shift -= 8)
+				this.buffer[this.size++] = (byte) (value >>> shift);
+		}
+
+		public void writeDouble(final double value) {
+			writeLong(Double.doubleToLongBits(value));
+		}
+
+		public void writeBytes(final byte[] value) {
+			writeUnsigned(value.length);
+			ensure(value.length);
+			System.arraycopy(value, 0, this.buffer, this.size, value.length);
+			this.size += value.length;
+		}
+
+		/**
+		 * Writes a possibly {@code null} string, or a reference to it if it
+		 * was already written in this message
+		 */
+		public void writeString(final String value) {
+			if (value == null) {
+				writeUnsigned(0);
+				return;
+			}
+			Integer index = this.strings.get(value);
+			if (index != null) {
+				writeUnsigned((index << 1) | 1);
+				return;
+			}
+			this.strings.put(value, this.strings.size());
+			byte[] bytes = value.getBytes(UTF8);
+			writeUnsigned((bytes.length + 1) << 1);
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, this.buffer, this.size, bytes.length);
+			this.size += bytes.length;
+		}
+
+		/**
+		 * Writes a possibly {@code null} array of strings
+		 */
+		public void writeStrings(final String[] values) {
+			writeUnsigned(values == null ? 0 : values.length + 1);
+			if (values != null)
+				for (String value : values)
+					writeString(value);
+		}
+
+		/**
+		 * Writes a possibly {@code null} list of strings
+		 */
+		public void writeStrings(final List<String> values) {
+			writeUnsigned(values == null ? 0 : values.size() + 1);
+			if (values != null)
+				for (String value : values)
+					writeString(value);
+		}
+
+		/**
+		 * Writes a possibly {@code null} identifier
+		 */
+		public void writeIdentifier(final UUID value) {
+			writeBoolean(value != null);
+			if (value != null) {
+				writeLong(value.getMostSignificantBits());
+				writeLong(value.getLeastSignificantBits());
+			}
+		}
+
+		/**
+		 * Writes the signature of a method, or its identifier if the
+		 * descriptor is unresolved. The signature is read back as the
+		 * descriptor registered for it in the decoding component.
+		 */
+		public void writeMethod(final MethodDescriptor descriptor) {
+			if (!descriptor.isResolved()) {
+				writeString(null);
+				writeVarInt(descriptor.id());
+				return;
+			}
+			writeString(descriptor.clazz());
+			writeString(descriptor.method());
+			writeStrings(descriptor.parameters());
+		}
+
+		/**
+		 * Writes the identifier, transaction and timestamp of an event. These
+		 * are read back with {@link Input#readIdentifier()} (twice) and
+		 * {@link Input#readVarLong()}
+		 */
+		public void writeHeader(final Event<?> event) {
+			writeIdentifier(event.identifier());
+			writeIdentifier(event.transactionId());
+			writeVarLong(event.timestamp());
+		}
+
+		/**
+		 * Writes a value of any type, preceded by its tag
+		 */
+		public void writeValue(final Object value) {
+			if (value == null) {
+				writeByte(NULL);
+				return;
+			}
+			Class<?> type = value.getClass();
+			Entry entry = byType.get(type);
+			if (entry != null) {
+				writeUnsigned(entry.tag);
+				entry.schema.write(value, this);
+			} else if (type == Boolean.class) {
+				writeByte((Boolean) value ? TRUE : FALSE);
+			} else if (type == Integer.class) {
+				writeByte(INTEGER);
+				writeVarInt((Integer) value);
+			} else if (type == Long.class) {
+				writeByte(LONG);
+				writeVarLong((Long) value);
+			} else if (type == Double.class) {
+				writeByte(DOUBLE);
+				writeDouble((Double) value);
+			} else if (type == Float.class) {
+				writeByte(FLOAT);
+				writeVarInt(Float.floatToIntBits((Float) value));
+			} else if (type == String.class) {
+				writeByte(STRING);
+				writeString((String) value);
+			} else if (type == String[].class) {
+				writeByte(STRINGS);
+				writeStrings((String[]) value);
+			} else if (type == UUID.class) {
+				writeByte(IDENTIFIER);
+				writeIdentifier((UUID) value);
+			} else if (type == ArrayList.class) {
+				List<?> list = (List<?>) value;
+				writeByte(LIST);
+				writeUnsigned(list.size());
+				for (Object element : list)
+					writeValue(element);
+			} else if (type == HashMap.class) {
+				Map<?, ?> map = (Map<?, ?>) value;
+				writeByte(MAP);
+				writeUnsigned(map.size());
+				for (Map.Entry<?, ?> e : map.entrySet()) {
+					writeValue(e.getKey());
+					writeValue(e.getValue());
+				}
+			} else if (value instanceof Class<?>) {
+				writeByte(CLASS);
+				writeString(((Class<?>) value).getName());
+			} else if (value instanceof Serializable) {
+				writeByte(JAVA);
+				writeBytes(SerializationUtils.serialize((Serializable) value));
+			} else {
+				throw new SerializationException("Cannot encode an instance of "
+						+ type.getName());
+			}
+		}
+
+		private byte[] toByteArray() {
+			return Arrays.copyOf(this.buffer, this.size);
+		}
+	}
+
+	/**
+	 * A message being read
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static final class Input {
+
+		private final byte[] data;
+
+		private int position;
+
+		/**
+		 * The strings read so far, in order
+		 */
+		private final List<String> strings = new ArrayList<String>();
+
+		private Input(final byte[] data) {
+			this.data = data;
+			this.position = 2;
+		}
+
+		private int readUnsigned() {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				byte b = this.data[this.position++];
+				value |= (b & 0x7F) << shift;
+				if (b >= 0)
+					return value;
+			}
+			throw new SerializationException("Malformed variable-length integer");
+		}
+
+		private int readLength() {
+			return checkLength(readUnsigned());
+		}
+
+		/**
+		 * Checks that a length read from the message does not exceed the
+		 * remaining bytes
+		 */
+		private int checkLength(final int length) {
+			if (length < -1 || length > this.data.length - this.position)
+				throw new SerializationException("Malformed length " + length);
+			return length;
+		}
+
+		public int readByte() {
+			return this.data[this.position++];
+		}
+
+		public boolean readBoolean() {
+			return readByte() != 0;
+		}
+
+		public int readVarInt() {
+			int value = readUnsigned();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		public long readVarLong() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = this.data[this.position++];
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0)
+					return (value >>> 1) ^ -(value & 1);
+			}
+			throw new SerializationException("Malformed variable-length long");
+		}
+
+		public long readLong() {
+			long value = 0;
+			for (int i = 0; i < 8; i++)
+				value = (value << 8) | (this.data[this.position++] & 0xFF);
+			return value;
+		}
+
+		public double readDouble() {
+			return Double.longBitsToDouble(readLong());
+		}
+
+		public byte[] readBytes() {
+			int length = readLength();
+			byte[] value = Arrays.copyOfRange(this.data, this.position,
+					this.position + length);
+			this.position += length;
+			return value;
+		}
+
+		public String readString() {
+			int value = readUnsigned();
+			if (value == 0)
+				return null;
+			if ((value & 1) == 1)
+				return this.strings.get(value >>> 1);
+			int length = checkLength((value >>> 1) - 1);
+			String string = new String(this.data, this.position, length, UTF8);
+			this.position += length;
+			this.strings.add(string);
+			return string;
+		}
+
+		public String[] readStrings() {
+			int length = checkLength(readUnsigned() - 1);
+			if (length < 0)
+				return null;
+			String[] values = new String[length];
+			for (int i = 0; i < length; i++)
+				values[i] = readString();
+			return values;
+		}
+
+		public List<String> readStringList() {
+			int length = checkLength(readUnsigned() - 1);
+			if (length < 0)
+				return null;
+			List<String> values = new ArrayList<String>(length);
+			for (int i = 0; i < length; i++)
+				values.add(readString());
+			return values;
+		}
+
+		public UUID readIdentifier() {
+			if (!readBoolean())
+				return null;
+			return new UUID(readLong(), readLong());
+		}
+
+		/**
+		 * Reads a method written by
+		 * {@link Output#writeMethod(MethodDescriptor)}
+		 */
+		public MethodDescriptor readMethod() {
+			String clazz = readString();
+			if (clazz == null)
+				return MethodRegistry.lookup(readVarInt());
+			return MethodRegistry.descriptor(clazz, readString(),
+					readStrings());
+		}
+
+		/**
+		 * Reads a value written by {@link Output#writeValue(Object)}
+		 */
+		public Object readValue() {
+			int tag = readUnsigned();
+			switch (tag) {
+			case NULL:
+				return null;
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case INTEGER:
+				return readVarInt();
+			case LONG:
+				return readVarLong();
+			case DOUBLE:
+				return readDouble();
+			case FLOAT:
+				return Float.intBitsToFloat(readVarInt());
+			case STRING:
+				return readString();
+			case STRINGS:
+				return readStrings();
+			case IDENTIFIER:
+				return readIdentifier();
+			case LIST: {
+				int size = readLength();
+				List<Object> list = new ArrayList<Object>(size);
+				for (int i = 0; i < size; i++)
+					list.add(readValue());
+				return list;
+			}
+			case MAP: {
+				int size = readLength();
+				Map<Object, Object> map = new HashMap<Object, Object>();
+				for (int i = 0; i < size; i++)
+					map.put(readValue(), readValue());
+				return map;
+			}
+			case CLASS:
+				return loadClass(readString());
+			case JAVA:
+				return SerializationUtils6.deserialize(readBytes());
+			default:
+				Entry entry = byTag.get(tag);
+				if (entry == null)
+					throw new SerializationException("Unknown tag " + tag);
+				return entry.schema.read(this);
+			}
+		}
+
+		private Class<?> loadClass(final String name) {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			try {
+				return Class.forName(name, false, loader);
+			} catch (ClassNotFoundException e) {
+				try {
+					return Class.forName(name, false,
+							CompactCodec.class.getClassLoader());
+				} catch (ClassNotFoundException e1) {
+					throw new SerializationException(e1);
+				}
+			}
+		}
+	}
+
+	static {
+		registerBuiltIns();
+	}
+
+	/**
+	 * Registers the schema of a user type
+	 * 
+	 * @param tag
+	 *            A unique number identifying the type in the encoded messages,
+	 *            greater than or equal to {@link #FIRST_USER_TAG}
+	 * @param type
+	 *            The type of objects written by the schema. Subclasses are
+	 *            not written by the schema
+	 * @param schema
+	 *            The schema writing and reading objects of the given type
+	 * @throws IllegalArgumentException
+	 *             If the tag is reserved, or already registered for another
+	 *             type
+	 */
+	public static <T extends Serializable> void register(final int tag,
+			final Class<T> type, final Schema<T> schema) {
+		if (tag < FIRST_USER_TAG)
+			throw new IllegalArgumentException("Tag " + tag
+					+ " is reserved for built-in types");
+		Entry previous = byTag.get(tag);
+		if (previous != null && byType.get(type) != previous)
+			throw new IllegalArgumentException("Tag " + tag
+					+ " is already registered for another type");
+		put(tag, type, schema);
+	}
+
+	private static void put(final int tag, final Class<?> type,
+			final Schema<?> schema) {
+		Entry entry = new Entry(tag, schema);
+		byTag.put(tag, entry);
+		byType.put(type, entry);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Codec#contentType()
+	 */
+	public String contentType() {
+		return CONTENT_TYPE;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Codec#encode(java.io.Serializable)
+	 */
+	public byte[] encode(final Serializable object) {
+		Output out = new Output();
+		out.writeValue(object);
+		return out.toByteArray();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Codec#decode(byte[])
+	 */
+	public Serializable decode(final byte[] data) {
+		if (!recognizes(data))
+			throw new SerializationException("Not a compactly encoded message");
+		try {
+			return (Serializable) new Input(data).readValue();
+		} catch (SerializationException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw new SerializationException("Malformed message", e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Codec#recognizes(byte[])
+	 */
+	public boolean recognizes(final byte[] data) {
+		return data.length > 1 && data[0] == MAGIC && data[1] == VERSION;
+	}
+
+	private static void registerBuiltIns() {
+		put(16, RpcRequest.class, new Schema<RpcRequest>() {
+			public void write(RpcRequest request, Output out) {
+				out.writeString(request.operation().name());
+				out.writeUnsigned(request.length());
+				for (int i = 0; i < request.length(); i++)
+					out.writeValue(request.getParameter(i));
+			}
+			public RpcRequest read(Input in) {
+				RpcOperation operation = RpcOperation.valueOf(in.readString());
+				Serializable[] parameters = new Serializable[in.readLength()];
+				for (int i = 0; i < parameters.length; i++)
+					parameters[i] = (Serializable) in.readValue();
+				return new RpcRequest(operation, parameters);
+			}
+		});
+		put(17, TimeLapseEvent.class, new Schema<TimeLapseEvent>() {
+			public void write(TimeLapseEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeVarLong(e.start());
+				out.writeVarLong(e.end() - e.start());
+			}
+			public TimeLapseEvent read(Input in) {
+				UUID id = in.readIdentifier();
+				UUID tx = in.readIdentifier();
+				long timestamp = in.readVarLong();
+				long start = in.readVarLong();
+				return new TimeLapseEvent(id, tx, timestamp, start, start
+						+ in.readVarLong());
+			}
+		});
+		put(18, NetworkLatencyEvent.class, new Schema<NetworkLatencyEvent>() {
+			public void write(NetworkLatencyEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeVarLong(e.start());
+				out.writeVarLong(e.end() - e.start());
+				out.writeString(e.methodCaller());
+				out.writeString(e.methodProvider());
+				out.writeString(e.method());
+				out.writeStrings(e.methodParameters());
+				out.writeValue(e.methodReturn());
+			}
+			public NetworkLatencyEvent read(Input in) {
+				UUID id = in.readIdentifier();
+				UUID tx = in.readIdentifier();
+				long timestamp = in.readVarLong();
+				long start = in.readVarLong();
+				long end = start + in.readVarLong();
+				return new NetworkLatencyEvent(id, tx, timestamp, start, end,
+						in.readString(), in.readString(), in.readString(),
+						in.readStrings(), in.readValue());
+			}
+		});
+		put(19, InvokeEvent.class, new Schema<InvokeEvent>() {
+			public void write(InvokeEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeMethod(e.descriptor());
+			}
+			public InvokeEvent read(Input in) {
+				return new InvokeEvent(in.readIdentifier(),
+						in.readIdentifier(), in.readVarLong(),
+						in.readMethod());
+			}
+		});
+		put(20, ReturnEvent.class, new Schema<ReturnEvent>() {
+			public void write(ReturnEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeMethod(e.descriptor());
+			}
+			public ReturnEvent read(Input in) {
+				return new ReturnEvent(in.readIdentifier(),
+						in.readIdentifier(), in.readVarLong(),
+						in.readMethod());
+			}
+		});
+		put(21, ExceptionEvent.class, new Schema<ExceptionEvent>() {
+			public void write(ExceptionEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeValue(e.value());
+				out.writeMethod(e.descriptor());
+			}
+			public ExceptionEvent read(Input in) {
+				return new ExceptionEvent(in.readIdentifier(),
+						in.readIdentifier(), in.readVarLong(),
+						(Exception) in.readValue(),
+						in.readMethod());
+			}
+		});
+		put(22, ChangeEvent.class, new Schema<ChangeEvent>() {
+			public void write(ChangeEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeValue(e.previousValue());
+				out.writeValue(e.value());
+				out.writeString(e.variable());
+			}
+			public ChangeEvent read(Input in) {
+				return new ChangeEvent(in.readIdentifier(),
+						in.readIdentifier(), in.readVarLong(),
+						(Serializable) in.readValue(),
+						(Serializable) in.readValue(), in.readString());
+			}
+		});
+		put(23, IntervalEvent.class, new Schema<IntervalEvent>() {
+			public void write(IntervalEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeString(e.value());
+			}
+			public IntervalEvent read(Input in) {
+				return new IntervalEvent(in.readIdentifier(),
+						in.readIdentifier(), in.readVarLong(), in.readString());
+			}
+		});
+		put(24, LogEvent.class, new Schema<LogEvent>() {
+			public void write(LogEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeString(e.logger());
+				out.writeString(e.level());
+				out.writeString((String) e.value());
+				out.writeString(e.cause());
+				out.writeString(e.source());
+			}
+			public LogEvent read(Input in) {
+				return new LogEvent(in.readIdentifier(), in.readIdentifier(),
+						in.readVarLong(), in.readString(), in.readString(),
+						in.readString(), in.readString(), in.readString());
+			}
+		});
+		put(25, NewMonitorEvent.class, new Schema<NewMonitorEvent>() {
+			public void write(NewMonitorEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeString((String) e.value());
+				out.writeStrings(e.namespaces());
+				out.writeStrings(e.periodicEvents());
+				out.writeStrings(e.nonPeriodicEvents());
+			}
+			public NewMonitorEvent read(Input in) {
+				return new NewMonitorEvent(in.readIdentifier(),
+						in.readIdentifier(), in.readVarLong(),
+						in.readString(), in.readStringList(),
+						in.readStringList(), in.readStringList());
+			}
+		});
+		put(26, NewNamespaceEvent.class, new Schema<NewNamespaceEvent>() {
+			public void write(NewNamespaceEvent e, Output out) {
+				out.writeHeader(e);
+				out.writeString((String) e.value());
+				out.writeStrings(e.variables());
+			}
+			public NewNamespaceEvent read(Input in) {
+				return new NewNamespaceEvent(in.readIdentifier(),
+						in.readIdentifier(), in.readVarLong(),
+						in.readString(), in.readStringList());
+			}
+		});
+		put(27, NamedEventDecorator.class, new Schema<NamedEventDecorator>() {
+			public void write(NamedEventDecorator e, Output out) {
+				out.writeIdentifier(e.identifier());
+				out.writeVarLong(e.timestamp());
+				out.writeString(e.key());
+				out.writeValue(e.decoratedEvent());
+			}
+			@SuppressWarnings("unchecked")
+			public NamedEventDecorator read(Input in) {
+				return new NamedEventDecorator(in.readIdentifier(),
+						in.readVarLong(), in.readString(),
+						(Event<? extends Serializable>) in.readValue());
+			}
+		});
+		put(28, MethodDescriptor.class, new Schema<MethodDescriptor>() {
+			public void write(MethodDescriptor d, Output out) {
+				out.writeVarInt(d.id());
+				out.writeString(d.clazz());
+				out.writeString(d.method());
+				out.writeStrings(d.parameters());
+			}
+			public MethodDescriptor read(Input in) {
+				return new MethodDescriptor(in.readVarInt(), in.readString(),
+						in.readString(), in.readStrings());
+			}
+		});
+		put(29, EventAggregate.class, new Schema<EventAggregate>() {
+			public void write(EventAggregate a, Output out) {
+				out.writeVarLong(a.count());
+				out.writeDouble(a.sum());
+				out.writeDouble(a.min());
+				out.writeDouble(a.max());
+				out.writeDouble(a.mean());
+				out.writeDouble(a.variance());
+				out.writeUnsigned(a.percentiles().length);
+				for (int i = 0; i < a.percentiles().length; i++) {
+					out.writeDouble(a.percentiles()[i]);
+					out.writeDouble(a.percentileValues()[i]);
+				}
+			}
+			public EventAggregate read(Input in) {
+				long count = in.readVarLong();
+				double sum = in.readDouble();
+				double min = in.readDouble();
+				double max = in.readDouble();
+				double mean = in.readDouble();
+				double variance = in.readDouble();
+				int length = in.readLength();
+				double[] percentiles = new double[length];
+				double[] values = new double[length];
+				for (int i = 0; i < length; i++) {
+					percentiles[i] = in.readDouble();
+					values[i] = in.readDouble();
+				}
+				return new EventAggregate(count, sum, min, max, mean,
+						variance, percentiles, values);
+			}
+		});
+		put(30, QuantileSketch.class, new Schema<QuantileSketch>() {
+			public void write(QuantileSketch s, Output out) {
+				QuantileSketch sketch = s.copy();
+				out.writeDouble(sketch.accuracy());
+				writeBuckets(sketch.positive(), out);
+				writeBuckets(sketch.negative(), out);
+				out.writeVarLong(sketch.zeros());
+				out.writeVarLong(sketch.count());
+				out.writeDouble(sketch.sum());
+				out.writeDouble(sketch.min());
+				out.writeDouble(sketch.max());
+			}
+			public QuantileSketch read(Input in) {
+				double accuracy = in.readDouble();
+				QuantileSketch.Buckets positive = readBuckets(in);
+				QuantileSketch.Buckets negative = readBuckets(in);
+				return new QuantileSketch(accuracy, positive, negative,
+						in.readVarLong(), in.readVarLong(), in.readDouble(),
+						in.readDouble(), in.readDouble());
+			}
+			/**
+			 * Writes the non-empty range of the buckets only
+			 */
+			private void writeBuckets(QuantileSketch.Buckets b, Output out) {
+				int from = 0, to = b.counts.length;
+				while (from < to && b.counts[from] == 0)
+					from++;
+				while (to > from && b.counts[to - 1] == 0)
+					to--;
+				out.writeVarInt(b.offset + from);
+				out.writeUnsigned(to - from);
+				for (int i = from; i < to; i++)
+					out.writeVarLong(b.counts[i]);
+			}
+			private QuantileSketch.Buckets readBuckets(Input in) {
+				int offset = in.readVarInt();
+				long[] counts = new long[in.readLength()];
+				for (int i = 0; i < counts.length; i++)
+					counts[i] = in.readVarLong();
+				return new QuantileSketch.Buckets(counts, offset);
+			}
+		});
+	}
+
+}
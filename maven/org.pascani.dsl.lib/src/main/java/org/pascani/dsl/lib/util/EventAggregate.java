@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.pascani.dsl.lib.Event;
+
+/**
+ * Summary statistics of the values of numeric-based events (i.e., events
+ * whose value is a {@link Number}), computed where the events are stored so
+ * that only the summary has to be transferred.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public final class EventAggregate implements Serializable {
+
+	/**
+	 * Serial version UID
+	 */
+	private static final long serialVersionUID = 3306451632104914180L;
+
+	/**
+	 * The number of values
+	 */
+	private final long count;
+
+	/**
+	 * The sum of the values
+	 */
+	private final double sum;
+
+	/**
+	 * The minimum value
+	 */
+	private final double min;
+
+	/**
+	 * The maximum value
+	 */
+	private final double max;
+
+	/**
+	 * The arithmetic mean of the values
+	 */
+	private final double mean;
+
+	/**
+	 * The (sample) variance of the values
+	 */
+	private final double variance;
+
+	/**
+	 * The requested percentiles, in the range (0, 100]
+	 */
+	private final double[] percentiles;
+
+	/**
+	 * The values of the requested percentiles
+	 */
+	private final double[] percentileValues;
+
+	/**
+	 * Creates an instance having all of the parameters
+	 */
+	public EventAggregate(final long count, final double sum,
+			final double min, final double max, final double mean,
+			final double variance, final double[] percentiles,
+			final double[] percentileValues) {
+		this.count = count;
+		this.sum = sum;
+		this.min = min;
+		this.max = max;
+		this.mean = mean;
+		this.variance = variance;
+		this.percentiles = percentiles;
+		this.percentileValues = percentileValues;
+	}
+
+	/**
+	 * Summarizes the given statistics
+	 * 
+	 * @param stats
+	 *            The statistics to summarize
+	 * @param percentiles
+	 *            The percentiles to compute, in the range (0, 100]
+	 * @return a summary of the given statistics
+	 */
+	public static EventAggregate of(final DescriptiveStatistics stats,
+			final double... percentiles) {
+		double[] values = new double[percentiles.length];
+		for (int i = 0; i < percentiles.length; i++)
+			values[i] = stats.getPercentile(percentiles[i]);
+		return new EventAggregate(stats.getN(), stats.getSum(),
+				stats.getMin(), stats.getMax(), stats.getMean(),
+				stats.getVariance(), percentiles.clone(), values);
+	}
+
+	/**
+	 * Summarizes the values of the given events, ignoring those whose value
+	 * is not a {@link Number}
+	 * 
+	 * @param events
+	 *            The events to summarize
+	 * @param percentiles
+	 *            The percentiles to compute, in the range (0, 100]
+	 * @return a summary of the events' values
+	 */
+	public static EventAggregate of(final Collection<? extends Event<?>> events,
+			final double... percentiles) {
+		DescriptiveStatistics stats = new DescriptiveStatistics();
+		for (Event<?> event : events) {
+			if (event.value() instanceof Number)
+				stats.addValue(((Number) event.value()).doubleValue());
+		}
+		return of(stats, percentiles);
+	}
+
+	/**
+	 * Combines the summaries of two disjoint sets of values. Count, sum,
+	 * minimum, maximum, mean and variance are combined exactly; percentiles
+	 * cannot be derived from the summaries, so they are {@link Double#NaN}
+	 * unless one of the sets is empty.
+	 * 
+	 * @param a
+	 *            A summary
+	 * @param b
+	 *            Another summary
+	 * @return the summary of the union of both sets of values
+	 */
+	public static EventAggregate merge(final EventAggregate a,
+			final EventAggregate b) {
+		if (a.count == 0)
+			return b;
+		if (b.count == 0)
+			return a;
+		long count = a.count + b.count;
+		double delta = b.mean - a.mean;
+		double m2 = a.variance * (a.count - 1) + b.variance * (b.count - 1)
+				+ delta * delta * a.count * b.count / count;
+		double[] values = new double[a.percentiles.length];
+		Arrays.fill(values, Double.NaN);
+		return new EventAggregate(count, a.sum + b.sum, Math.min(a.min,
+				b.min), Math.max(a.max, b.max), (a.sum + b.sum) / count, m2
+				/ (count - 1), a.percentiles.clone(), values);
+	}
+
+	public long count() {
+		return this.count;
+	}
+
+	public double sum() {
+		return this.sum;
+	}
+
+	public double min() {
+		return this.min;
+	}
+
+	public double max() {
+		return this.max;
+	}
+
+	public double mean() {
+		return this.mean;
+	}
+
+	public double variance() {
+		return this.variance;
+	}
+
+	public double standardDeviation() {
+		return Math.sqrt(this.variance);
+	}
+
+	public double[] percentiles() {
+		return this.percentiles;
+	}
+
+	public double[] percentileValues() {
+		return this.percentileValues;
+	}
+
+	/**
+	 * @param percentile
+	 *            One of the requested percentiles
+	 * @return the value of the given percentile, or {@link Double#NaN} if it
+	 *         was not requested
+	 */
+	public double percentile(final double percentile) {
+		for (int i = 0; i < this.percentiles.length; i++) {
+			if (this.percentiles[i] == percentile)
+				return this.percentileValues[i];
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Returns the string representation of this aggregate for logging
+	 * purposes.
+	 */
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("count=" + this.count + "\t");
+		sb.append("sum=" + this.sum + "\t");
+		sb.append("min=" + this.min + "\t");
+		sb.append("max=" + this.max + "\t");
+		sb.append("mean=" + this.mean + "\t");
+		sb.append("variance=" + this.variance + "\t");
+		sb.append("percentiles=" + Arrays.toString(this.percentiles) + "\t");
+		sb.append(Arrays.toString(this.percentileValues));
+		return sb.toString();
+	}
+
+}
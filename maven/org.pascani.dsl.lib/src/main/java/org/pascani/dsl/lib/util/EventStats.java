@@ -44,6 +44,45 @@ public final class EventStats {
 		this(Lists.newArrayList(events));
 	}
 
+	/**
+	 * Merges the sketches of several sets of values (e.g., obtained from
+	 * different probes), to estimate the percentiles of all of the values
+	 * without transferring them.
+	 * 
+	 * @param sketches
+	 *            Sketches with the same accuracy
+	 * @return a sketch of all of the values
+	 */
+	public static QuantileSketch merge(
+			final Collection<QuantileSketch> sketches) {
+		QuantileSketch merged = null;
+		for (QuantileSketch sketch : sketches) {
+			if (merged == null)
+				merged = sketch.copy();
+			else
+				merged.merge(sketch);
+		}
+		return merged == null ? new QuantileSketch() : merged;
+	}
+
+	/**
+	 * @see #merge(Collection)
+	 */
+	public static QuantileSketch merge(final QuantileSketch... sketches) {
+		return merge(Lists.newArrayList(sketches));
+	}
+
+	/**
+	 * Adds the events' (numerical) values to a {@link QuantileSketch}, which
+	 * estimates their percentiles using a bounded amount of memory, and can be
+	 * merged with other sketches.
+	 * 
+	 * @return a sketch of the events' values
+	 */
+	public QuantileSketch sketch() {
+		return QuantileSketch.of(this.events);
+	}
+
 	/**
 	 * Adds the events' (numerical) values to a {@link DescriptiveStatistics}
 	 * instance.
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.Probe;
+
+/**
+ * A storage of {@link Event} objects supporting the queries made by
+ * {@link Probe} instances, i.e., counting, fetching and removing the events
+ * raised within a time window. Time windows are evaluated against
+ * {@link Event#windowTimestamp()}, thus both limits are inclusive.
+ * 
+ * <p>
+ * Implementations must be thread-safe.
+ * </p>
+ * 
+ * @param <T>
+ *            The type of events
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public interface EventStore<T extends Event<?>> {
+
+	/**
+	 * Orders events by their window timestamp, as stores sort them
+	 */
+	public static final Comparator<Event<?>> WINDOW_ORDER =
+			new Comparator<Event<?>>() {
+		public int compare(Event<?> o1, Event<?> o2) {
+			long t1 = o1.windowTimestamp();
+			long t2 = o2.windowTimestamp();
+			return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+		}
+	};
+
+	/**
+	 * Stores an event
+	 * 
+	 * @param event
+	 *            The event to store
+	 * @return whether the event was stored or not (e.g., it was already
+	 *         stored)
+	 */
+	public boolean add(T event);
+
+	/**
+	 * Counts the events raised within the time window [{@code start},
+	 * {@code end}]
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @return the number of events within the given time window
+	 */
+	public int count(long start, long end);
+
+	/**
+	 * Fetches the events raised within the time window [{@code start},
+	 * {@code end}], sorted by their window timestamp
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @return a {@link List} containing the events within the given time window
+	 */
+	public List<T> fetch(long start, long end);
+
+	/**
+	 * Fetches the first events raised within the time window [{@code start},
+	 * {@code end}], sorted by their window timestamp
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param limit
+	 *            The maximum number of events to fetch
+	 * @return a {@link List} containing at most {@code limit} events, the
+	 *         earliest within the given time window
+	 */
+	public List<T> fetch(long start, long end, int limit);
+
+	/**
+	 * Removes the events raised within the time window [{@code start},
+	 * {@code end}]
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @return the removed events
+	 */
+	public List<T> clean(long start, long end);
+
+	/**
+	 * Removes the events whose window timestamp is lower than
+	 * {@code olderThan}, and then the oldest events until at most
+	 * {@code maxSize} events remain.
+	 * 
+	 * @param olderThan
+	 *            The timestamp before which all events are removed
+	 * @param maxSize
+	 *            The maximum number of events to keep
+	 * @return the number of removed events
+	 */
+	public int evict(long olderThan, int maxSize);
+
+	/**
+	 * @return the number of events in this store
+	 */
+	public int size();
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.infrastructure.BasicProbe;
+
+/**
+ * Creates the {@link EventStore} instances used by a {@link BasicProbe} to
+ * record events. One store is created for each recorded event type.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public interface EventStoreFactory {
+
+	/**
+	 * Creates an empty store
+	 * 
+	 * @param eventType
+	 *            The (canonical) name of the type of events to be stored
+	 * @return a new {@link EventStore} instance
+	 */
+	public EventStore<Event<?>> newStore(String eventType);
+
+}
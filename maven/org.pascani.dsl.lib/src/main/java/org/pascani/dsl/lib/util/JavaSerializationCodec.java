@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.ObjectStreamConstants;
+import java.io.Serializable;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+/**
+ * A {@link Codec} based on the standard Java serialization
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class JavaSerializationCodec implements Codec {
+
+	/**
+	 * The content type of Java serialized objects
+	 */
+	public static final String CONTENT_TYPE = "application/x-java-serialized-object";
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Codec#contentType()
+	 */
+	public String contentType() {
+		return CONTENT_TYPE;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Codec#encode(java.io.Serializable)
+	 */
+	public byte[] encode(final Serializable object) {
+		return SerializationUtils.serialize(object);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Codec#decode(byte[])
+	 */
+	public Serializable decode(final byte[] data) {
+		return (Serializable) SerializationUtils6.deserialize(data);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Codec#recognizes(byte[])
+	 */
+	public boolean recognizes(final byte[] data) {
+		return data.length > 1
+				&& data[0] == (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8)
+				&& data[1] == (byte) ObjectStreamConstants.STREAM_MAGIC;
+	}
+
+}
@@ -0,0 +1,678 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pascani.dsl.lib.Event;
+
+/**
+ * An {@link EventStore} keeping events off the heap, in memory-mapped segment
+ * files. This is intended for long observation windows, in which holding the
+ * {@link Event} objects on the heap would cost GC pauses to the monitored
+ * application.
+ * 
+ * <p>
+ * Each segment is a file containing fixed-layout index records, growing from
+ * the beginning of the file, and the encoded events, growing from its end. An
+ * index record contains the window timestamp and the identifier of the event,
+ * the location of its encoded form (see {@link CompactCodec}) and a state
+ * flag:
+ * </p>
+ * 
+ * <pre>
+ * | timestamp (8) | id msb (8) | id lsb (8) | offset (4) | length (4) | state (4) |
+ * </pre>
+ * 
+ * <p>
+ * Time-range queries are answered from the index records only, by binary
+ * search over a small on-heap permutation sorting the records of each segment
+ * by timestamp, and only the returned events are decoded. Duplicates are
+ * detected through an on-heap hash table of the records of each segment,
+ * keyed by the identifiers stored in the index records. Removed events are marked in their
+ * index records, and segments whose events are all removed are deleted.
+ * Evicting by count removes events in arrival order.
+ * </p>
+ * 
+ * @param <T>
+ *            The type of events
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class MappedEventStore<T extends Event<?>> implements EventStore<T>,
+		Closeable {
+
+	/**
+	 * The default size of a segment file, in bytes
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * The size of an index record, in bytes
+	 */
+	private static final int RECORD_SIZE = 36;
+
+	private static final int TIMESTAMP = 0;
+	private static final int MSB = 8;
+	private static final int LSB = 16;
+	private static final int OFFSET = 24;
+	private static final int LENGTH = 28;
+	private static final int STATE = 32;
+
+	private static final int LIVE = 0;
+	private static final int REMOVED = 1;
+
+	/**
+	 * A sequence to name store directories uniquely
+	 */
+	private static final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * Creates {@link MappedEventStore} instances within a parent directory
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static class Factory implements EventStoreFactory {
+
+		private final File directory;
+		private final int segmentSize;
+
+		/**
+		 * @param directory
+		 *            The directory in which the segment files of each store
+		 *            are created
+		 * @param segmentSize
+		 *            The size of each segment file, in bytes
+		 */
+		public Factory(final File directory, final int segmentSize) {
+			this.directory = directory;
+			this.segmentSize = segmentSize;
+		}
+
+		/**
+		 * Creates stores within the temporary directory
+		 */
+		public Factory() {
+			this(new File(System.getProperty("java.io.tmpdir"), "pascani"),
+					DEFAULT_SEGMENT_SIZE);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.pascani.dsl.lib.util.EventStoreFactory#newStore(java.lang.String)
+		 */
+		public EventStore<Event<?>> newStore(final String eventType) {
+			File dir = new File(this.directory, eventType + "-"
+					+ System.currentTimeMillis() + "-"
+					+ sequence.incrementAndGet());
+			return new MappedEventStore<Event<?>>(dir, this.segmentSize);
+		}
+	}
+
+	/**
+	 * A memory-mapped segment file. Segments are not thread-safe; the owning
+	 * store guards them.
+	 */
+	private static final class Segment {
+
+		final File file;
+		final RandomAccessFile raf;
+		final MappedByteBuffer buffer;
+		final int capacity;
+
+		int records = 0;
+		int removed = 0;
+		int dataStart;
+		long minTimestamp = Long.MAX_VALUE;
+		long maxTimestamp = Long.MIN_VALUE;
+
+		/**
+		 * The records sorted by timestamp (records with the same timestamp
+		 * keep their arrival order)
+		 */
+		int[] order = new int[64];
+
+		/**
+		 * An open-addressing hash table of the records by event identifier:
+		 * each slot holds a record plus one, or zero if empty. Identifiers are
+		 * read back from the index records.
+		 */
+		int[] ids = new int[128];
+
+		Segment(final File file, final int capacity) throws IOException {
+			this.file = file;
+			this.capacity = capacity;
+			this.dataStart = capacity;
+			this.raf = new RandomAccessFile(file, "rw");
+			this.buffer = this.raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+
+		boolean fits(final int length) {
+			return (this.records + 1) * RECORD_SIZE + length <= this.dataStart;
+		}
+
+		void append(final long timestamp, final UUID id, final byte[] data) {
+			this.dataStart -= data.length;
+			ByteBuffer view = this.buffer.duplicate();
+			view.position(this.dataStart);
+			view.put(data);
+
+			int record = this.records;
+			int base = record * RECORD_SIZE;
+			this.buffer.putLong(base + TIMESTAMP, timestamp);
+			this.buffer.putLong(base + MSB, id.getMostSignificantBits());
+			this.buffer.putLong(base + LSB, id.getLeastSignificantBits());
+			this.buffer.putInt(base + OFFSET, this.dataStart);
+			this.buffer.putInt(base + LENGTH, data.length);
+			this.buffer.putInt(base + STATE, LIVE);
+
+			this.minTimestamp = Math.min(this.minTimestamp, timestamp);
+			this.maxTimestamp = Math.max(this.maxTimestamp, timestamp);
+			this.records++;
+			insert(record, timestamp);
+			index(record);
+		}
+
+		/**
+		 * Inserts a record into the sorted order. Events arrive almost in
+		 * chronological order, thus only a few ranks are shifted.
+		 */
+		private void insert(final int record, final long timestamp) {
+			if (record == this.order.length)
+				this.order = Arrays.copyOf(this.order, record * 2);
+			int rank = record;
+			while (rank > 0 && timestamp(this.order[rank - 1]) > timestamp)
+				rank--;
+			System.arraycopy(this.order, rank, this.order, rank + 1, record
+					- rank);
+			this.order[rank] = record;
+		}
+
+		/**
+		 * Adds a record to the identifier table, growing it to keep its load
+		 * factor under one half
+		 */
+		private void index(final int record) {
+			if (this.records * 2 > this.ids.length) {
+				int[] previous = this.ids;
+				this.ids = new int[previous.length * 2];
+				for (int slot : previous) {
+					if (slot != 0)
+						this.ids[emptySlot(slot - 1)] = slot;
+				}
+			}
+			this.ids[emptySlot(record)] = record + 1;
+		}
+
+		private int emptySlot(final int record) {
+			int base = record * RECORD_SIZE;
+			int mask = this.ids.length - 1;
+			int i = hash(this.buffer.getLong(base + MSB),
+					this.buffer.getLong(base + LSB)) & mask;
+			while (this.ids[i] != 0)
+				i = (i + 1) & mask;
+			return i;
+		}
+
+		private static int hash(final long msb, final long lsb) {
+			long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+
+		long timestamp(final int record) {
+			return this.buffer.getLong(record * RECORD_SIZE + TIMESTAMP);
+		}
+
+		/**
+		 * @return the record with the given rank in the sorted order
+		 */
+		int record(final int rank) {
+			return this.order[rank];
+		}
+
+		boolean isLive(final int record) {
+			return this.buffer.getInt(record * RECORD_SIZE + STATE) == LIVE;
+		}
+
+		void remove(final int record) {
+			this.buffer.putInt(record * RECORD_SIZE + STATE, REMOVED);
+			this.removed++;
+		}
+
+		boolean contains(final UUID id) {
+			long msb = id.getMostSignificantBits();
+			long lsb = id.getLeastSignificantBits();
+			int mask = this.ids.length - 1;
+			for (int i = hash(msb, lsb) & mask; this.ids[i] != 0; i = (i + 1)
+					& mask) {
+				int record = this.ids[i] - 1;
+				int base = record * RECORD_SIZE;
+				if (this.buffer.getLong(base + MSB) == msb
+						&& this.buffer.getLong(base + LSB) == lsb
+						&& isLive(record))
+					return true;
+			}
+			return false;
+		}
+
+		byte[] data(final int record) {
+			int base = record * RECORD_SIZE;
+			byte[] data = new byte[this.buffer.getInt(base + LENGTH)];
+			ByteBuffer view = this.buffer.duplicate();
+			view.position(this.buffer.getInt(base + OFFSET));
+			view.get(data);
+			return data;
+		}
+
+		/**
+		 * @return the first rank to examine for a time window starting at
+		 *         {@code start}
+		 */
+		int from(final long start) {
+			int low = 0, high = this.records;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (timestamp(this.order[mid]) < start)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		/**
+		 * @return the rank after the last one to examine for a time window
+		 *         ending at {@code end}
+		 */
+		int to(final long end) {
+			int low = 0, high = this.records;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (timestamp(this.order[mid]) <= end)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		int live() {
+			return this.records - this.removed;
+		}
+
+		/**
+		 * Releases the mapping and the file handle, and deletes the file. The
+		 * segment must not be read afterwards.
+		 */
+		void delete() {
+			unmap(this.buffer);
+			try {
+				this.raf.close();
+			} catch (IOException e) {
+				// the file is deleted anyway
+			}
+			if (!this.file.delete())
+				this.file.deleteOnExit();
+		}
+
+		/**
+		 * Releases a mapping right away, if the platform allows it; otherwise
+		 * it is released once the buffer is garbage collected
+		 */
+		private static void unmap(final MappedByteBuffer buffer) {
+			try {
+				Method cleaner = buffer.getClass().getMethod("cleaner");
+				cleaner.setAccessible(true);
+				Object instance = cleaner.invoke(buffer);
+				if (instance != null)
+					instance.getClass().getMethod("clean").invoke(instance);
+			} catch (Exception e) {
+				// left to the garbage collector
+			}
+		}
+	}
+
+	/**
+	 * The logger
+	 */
+	private final Logger logger = LogManager.getLogger(getClass());
+
+	/**
+	 * The directory containing the segment files
+	 */
+	private final File directory;
+
+	/**
+	 * The size of each segment file, in bytes
+	 */
+	private final int segmentSize;
+
+	/**
+	 * The segments, in creation order
+	 */
+	private final LinkedList<Segment> segments;
+
+	/**
+	 * Guards the segments
+	 */
+	private final ReadWriteLock lock;
+
+	/**
+	 * Encodes the events written into segments
+	 */
+	private final Codec codec = new CompactCodec();
+
+	/**
+	 * The number of segments created so far
+	 */
+	private int segmentCount = 0;
+
+	/**
+	 * @param directory
+	 *            The directory in which segment files are created
+	 * @param segmentSize
+	 *            The size of each segment file, in bytes
+	 */
+	public MappedEventStore(final File directory, final int segmentSize) {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IllegalArgumentException("Directory " + directory
+					+ " could not be created");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.segments = new LinkedList<Segment>();
+		this.lock = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * Encodes an event to be written into a segment
+	 */
+	protected byte[] encode(final T event) {
+		return this.codec.encode(event);
+	}
+
+	/**
+	 * Decodes an event previously encoded by {@link #encode(Event)}
+	 */
+	@SuppressWarnings("unchecked")
+	protected T decode(final byte[] data) {
+		return (T) this.codec.decode(data);
+	}
+
+	private Segment writableSegment(final int length) throws IOException {
+		Segment last = this.segments.isEmpty() ? null : this.segments.getLast();
+		if (last == null || !last.fits(length)) {
+			File file = new File(this.directory, "segment-"
+					+ (this.segmentCount++));
+			last = new Segment(file, Math.max(this.segmentSize, RECORD_SIZE
+					+ length));
+			this.segments.add(last);
+		}
+		return last;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#add(org.pascani.dsl.lib.Event)
+	 */
+	public boolean add(final T event) {
+		long timestamp = event.windowTimestamp();
+		byte[] data = encode(event);
+		this.lock.writeLock().lock();
+		try {
+			for (Segment s : this.segments) {
+				if (s.minTimestamp <= timestamp && timestamp <= s.maxTimestamp
+						&& s.contains(event.identifier()))
+					return false;
+			}
+			writableSegment(data.length).append(timestamp,
+					event.identifier(), data);
+			return true;
+		} catch (IOException e) {
+			this.logger.error("Error writing event " + event.identifier()
+					+ " into a segment file", e);
+			return false;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private boolean overlaps(final Segment s, final long start, final long end) {
+		return s.live() > 0 && s.minTimestamp <= end && start <= s.maxTimestamp;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#count(long, long)
+	 */
+	public int count(final long start, final long end) {
+		int count = 0;
+		this.lock.readLock().lock();
+		try {
+			for (Segment s : this.segments) {
+				if (!overlaps(s, start, end))
+					continue;
+				if (s.removed == 0) {
+					count += s.to(end) - s.from(start);
+				} else {
+					for (int i = s.from(start), to = s.to(end); i < to; i++) {
+						if (s.isLive(s.record(i)))
+							count++;
+					}
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#fetch(long, long)
+	 */
+	public List<T> fetch(final long start, final long end) {
+		List<T> fetched = new ArrayList<T>();
+		this.lock.readLock().lock();
+		try {
+			for (Segment s : this.segments) {
+				if (!overlaps(s, start, end))
+					continue;
+				for (int i = s.from(start), to = s.to(end); i < to; i++) {
+					int record = s.record(i);
+					if (s.isLive(record))
+						fetched.add(decode(s.data(record)));
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		return fetched;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#fetch(long, long, int)
+	 */
+	public List<T> fetch(final long start, final long end, final int limit) {
+		List<T> fetched = new ArrayList<T>();
+		int segments = 0;
+		this.lock.readLock().lock();
+		try {
+			for (Segment s : this.segments) {
+				if (!overlaps(s, start, end))
+					continue;
+				segments++;
+				int taken = 0;
+				for (int i = s.from(start), to = s.to(end); i < to
+						&& taken < limit; i++) {
+					int record = s.record(i);
+					if (s.isLive(record)) {
+						fetched.add(decode(s.data(record)));
+						taken++;
+					}
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		if (segments > 1) {
+			// Segments may overlap in time
+			Collections.sort(fetched, WINDOW_ORDER);
+			if (fetched.size() > limit)
+				fetched.subList(limit, fetched.size()).clear();
+		}
+		return fetched;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#clean(long, long)
+	 */
+	public List<T> clean(final long start, final long end) {
+		List<T> removed = new ArrayList<T>();
+		this.lock.writeLock().lock();
+		try {
+			Iterator<Segment> iterator = this.segments.iterator();
+			while (iterator.hasNext()) {
+				Segment s = iterator.next();
+				if (!overlaps(s, start, end))
+					continue;
+				for (int i = s.from(start), to = s.to(end); i < to; i++) {
+					int record = s.record(i);
+					if (s.isLive(record)) {
+						removed.add(decode(s.data(record)));
+						s.remove(record);
+					}
+				}
+				if (s.live() == 0 && iterator.hasNext()) {
+					iterator.remove();
+					s.delete();
+				}
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		return removed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#evict(long, int)
+	 */
+	public int evict(final long olderThan, final int maxSize) {
+		int evicted = 0;
+		this.lock.writeLock().lock();
+		try {
+			int excess = Math.max(size0() - Math.max(maxSize, 0), 0);
+			Iterator<Segment> iterator = this.segments.iterator();
+			while (iterator.hasNext()) {
+				Segment s = iterator.next();
+				if (excess >= s.live() || s.maxTimestamp < olderThan) {
+					excess = Math.max(excess - s.live(), 0);
+					evicted += s.live();
+					iterator.remove();
+					s.delete();
+					continue;
+				}
+				// Only the oldest records of a segment can be evicted, and
+				// late events may have been appended to later segments
+				if (excess == 0 && s.minTimestamp >= olderThan)
+					continue;
+				for (int i = 0, to = s.from(olderThan); i < s.records
+						&& (i < to || excess > 0); i++) {
+					int record = s.record(i);
+					if (s.isLive(record)) {
+						s.remove(record);
+						excess = Math.max(excess - 1, 0);
+						evicted++;
+					}
+				}
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		return evicted;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#size()
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return size0();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	private int size0() {
+		int size = 0;
+		for (Segment s : this.segments)
+			size += s.live();
+		return size;
+	}
+
+	/**
+	 * Deletes all of the segment files
+	 */
+	public void close() throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			for (Segment s : this.segments)
+				s.delete();
+			this.segments.clear();
+			if (!this.directory.delete())
+				this.directory.deleteOnExit();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+}
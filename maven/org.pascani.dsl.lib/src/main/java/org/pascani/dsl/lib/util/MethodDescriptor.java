@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Describes an intercepted method by the names of its declaring class, the
+ * method itself and its parameter types, along with an integer identifier
+ * assigned by the {@link MethodRegistry}. Events about method executions
+ * share the descriptor of the method, so the names are computed only once.
+ * 
+ * <p>
+ * Encoded events carry the method signature, which is resolved against the
+ * {@link MethodRegistry} of the decoding component. A descriptor may only be
+ * unresolved, that is, only know its identifier, if it was encoded without
+ * being resolved in the first place; it is resolved once the method table of
+ * the component that raised the event is registered (see
+ * {@link MethodRegistry#register(java.util.Map)}).
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public final class MethodDescriptor implements Serializable {
+
+	/**
+	 * Serial version UID
+	 */
+	private static final long serialVersionUID = -2739519384815245651L;
+
+	/**
+	 * The identifier of the method
+	 */
+	private final int id;
+
+	/**
+	 * The class declaring the method
+	 */
+	private final String clazz;
+
+	/**
+	 * The name of the method
+	 */
+	private final String method;
+
+	/**
+	 * The parameter types of the method
+	 */
+	private final String[] parameters;
+
+	/**
+	 * @param id
+	 *            The identifier of the method
+	 * @param clazz
+	 *            The class declaring the method
+	 * @param method
+	 *            The name of the method
+	 * @param parameters
+	 *            The parameter types of the method
+	 */
+	public MethodDescriptor(final int id, final String clazz,
+			final String method, final String[] parameters) {
+		this.id = id;
+		this.clazz = clazz;
+		this.method = method;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Creates an unresolved descriptor
+	 * 
+	 * @param id
+	 *            The identifier of the method
+	 */
+	public MethodDescriptor(final int id) {
+		this(id, null, null, null);
+	}
+
+	/**
+	 * @return the signature identifying the specified method, i.e., the names
+	 *         of its declaring class, the method and its parameter types
+	 */
+	public static String signature(final String clazz, final String method,
+			final String[] parameters) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(clazz + "#" + method + "(");
+		for (int i = 0; parameters != null && i < parameters.length; i++) {
+			if (i > 0)
+				sb.append(",");
+			sb.append(parameters[i]);
+		}
+		return sb.append(")").toString();
+	}
+
+	/**
+	 * @return the signature of the described method
+	 */
+	public String signature() {
+		return signature(this.clazz, this.method, this.parameters);
+	}
+
+	/**
+	 * @return whether the names of the method are known
+	 */
+	public boolean isResolved() {
+		return this.method != null;
+	}
+
+	public int id() {
+		return this.id;
+	}
+
+	public String clazz() {
+		return this.clazz;
+	}
+
+	public String method() {
+		return this.method;
+	}
+
+	public String[] parameters() {
+		return this.parameters;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof MethodDescriptor))
+			return false;
+		MethodDescriptor other = (MethodDescriptor) obj;
+		return this.id == other.id
+				&& (this.clazz == null ? other.clazz == null : this.clazz
+						.equals(other.clazz))
+				&& (this.method == null ? other.method == null : this.method
+						.equals(other.method))
+				&& Arrays.equals(this.parameters, other.parameters);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override public int hashCode() {
+		return this.id;
+	}
+
+	/**
+	 * Returns the string representation of this descriptor for logging
+	 * purposes.
+	 */
+	@Override public String toString() {
+		return isResolved() ? signature() : "#" + this.id;
+	}
+
+}
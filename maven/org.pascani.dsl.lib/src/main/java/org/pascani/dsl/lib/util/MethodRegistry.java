@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.pascani.dsl.lib.infrastructure.ProbeProxy;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Assigns integer identifiers to intercepted methods, and keeps their
+ * {@link MethodDescriptor}s so that events about method executions can refer
+ * to them by identifier.
+ * 
+ * <p>
+ * Identifiers are derived from a hash of the method signature. When two
+ * signatures collide, the one registered last takes the next free identifier,
+ * thus identifiers depend on the registration order and are only meaningful
+ * within a component: encoded events carry the method signature instead (see
+ * {@link CompactCodec}), which decoding components register locally. Method
+ * tables of other components (e.g., the one returned by
+ * {@link ProbeProxy#methods()}) are only merged where they do not contradict
+ * the local one.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class MethodRegistry {
+
+	/**
+	 * The descriptors of the intercepted methods
+	 */
+	private static final ConcurrentMap<Method, MethodDescriptor> methods = new ConcurrentHashMap<Method, MethodDescriptor>();
+
+	/**
+	 * The known descriptors, by identifier
+	 */
+	private static final ConcurrentMap<Integer, MethodDescriptor> descriptors = new ConcurrentHashMap<Integer, MethodDescriptor>();
+
+	/**
+	 * @param method
+	 *            An intercepted method
+	 * @return the descriptor of the given method, computed the first time the
+	 *         method is seen
+	 */
+	public static MethodDescriptor descriptor(final Method method) {
+		MethodDescriptor descriptor = methods.get(method);
+		if (descriptor == null) {
+			descriptor = register(method);
+			MethodDescriptor previous = methods.putIfAbsent(method, descriptor);
+			if (previous != null)
+				descriptor = previous;
+		}
+		return descriptor;
+	}
+
+	/**
+	 * @return the descriptor of the specified method, registering it if it is
+	 *         not known yet
+	 */
+	public static MethodDescriptor descriptor(final String clazz,
+			final String method, final String[] parameters) {
+		return register(MethodDescriptor.signature(clazz, method, parameters),
+				clazz, method, parameters);
+	}
+
+	private static MethodDescriptor register(final Method method) {
+		Class<?>[] types = method.getParameterTypes();
+		String[] parameters = new String[types.length];
+		for (int i = 0; i < types.length; i++)
+			parameters[i] = types[i].getCanonicalName();
+		String clazz = method.getDeclaringClass().getCanonicalName();
+		return register(
+				MethodDescriptor.signature(clazz, method.getName(), parameters),
+				clazz, method.getName(), parameters);
+	}
+
+	private static MethodDescriptor register(final String signature,
+			final String clazz, final String method, final String[] parameters) {
+		int id = Hashing.murmur3_32()
+				.hashString(signature, Charset.forName("UTF-8")).asInt();
+		while (true) {
+			MethodDescriptor descriptor = descriptors.get(id);
+			if (descriptor == null) {
+				descriptor = new MethodDescriptor(id, clazz, method, parameters);
+				MethodDescriptor previous = descriptors.putIfAbsent(id,
+						descriptor);
+				if (previous == null)
+					return descriptor;
+				descriptor = previous;
+			}
+			if (signature.equals(descriptor.signature()))
+				return descriptor;
+			id++;
+		}
+	}
+
+	/**
+	 * Registers the method table of another component. Descriptors whose
+	 * identifier is already taken by a different method in this component are
+	 * rejected, as are unresolved descriptors.
+	 * 
+	 * @param table
+	 *            The descriptors of the methods, by identifier
+	 * @return the rejected descriptors
+	 */
+	public static List<MethodDescriptor> register(
+			final Map<Integer, MethodDescriptor> table) {
+		List<MethodDescriptor> rejected = new ArrayList<MethodDescriptor>();
+		for (MethodDescriptor descriptor : table.values()) {
+			if (!descriptor.isResolved()) {
+				rejected.add(descriptor);
+				continue;
+			}
+			MethodDescriptor previous = descriptors.putIfAbsent(
+					descriptor.id(), descriptor);
+			if (previous != null
+					&& !previous.signature().equals(descriptor.signature()))
+				rejected.add(descriptor);
+		}
+		return rejected;
+	}
+
+	/**
+	 * @param id
+	 *            The identifier of a method
+	 * @return the descriptor of the method, or an unresolved descriptor if the
+	 *         identifier is unknown
+	 */
+	public static MethodDescriptor lookup(final int id) {
+		MethodDescriptor descriptor = descriptors.get(id);
+		return descriptor == null ? new MethodDescriptor(id) : descriptor;
+	}
+
+	/**
+	 * @param descriptor
+	 *            A possibly unresolved descriptor
+	 * @return the known descriptor with the same identifier, or the given
+	 *         descriptor if the identifier is still unknown
+	 */
+	public static MethodDescriptor resolve(final MethodDescriptor descriptor) {
+		if (descriptor.isResolved())
+			return descriptor;
+		MethodDescriptor known = descriptors.get(descriptor.id());
+		return known == null ? descriptor : known;
+	}
+
+	/**
+	 * @return a snapshot of the known descriptors, by identifier
+	 */
+	public static HashMap<Integer, MethodDescriptor> table() {
+		return new HashMap<Integer, MethodDescriptor>(descriptors);
+	}
+
+}
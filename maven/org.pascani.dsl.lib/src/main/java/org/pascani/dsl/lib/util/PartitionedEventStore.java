@@ -0,0 +1,436 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pascani.dsl.lib.Event;
+
+/**
+ * An {@link EventStore} that partitions events into fixed-width time buckets.
+ * Within each partition, window timestamps are kept in a sorted primitive
+ * {@code long[]} column, parallel to the column of events; thus counting and
+ * fetching are binary searches over the partitions overlapping the time
+ * window, and cleaning drops the partitions completely contained in it.
+ * 
+ * <p>
+ * Events commonly arrive in (almost) chronological order, in which case adding
+ * an event is an append to the last partition.
+ * </p>
+ * 
+ * @param <T>
+ *            The type of events
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class PartitionedEventStore<T extends Event<?>> implements EventStore<T> {
+
+	/**
+	 * The default partition width, in the same unit of event timestamps (one
+	 * second)
+	 */
+	public static final long DEFAULT_PARTITION_WIDTH = TimeUnit.SECONDS
+			.toNanos(1);
+
+	/**
+	 * The initial capacity of a partition
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Creates {@link PartitionedEventStore} instances
+	 * 
+	 * @author Miguel Jiménez - Initial contribution and API
+	 */
+	public static class Factory implements EventStoreFactory {
+
+		private final long partitionWidth;
+
+		/**
+		 * @param partitionWidth
+		 *            The width of each time partition, in the same unit of
+		 *            event timestamps
+		 */
+		public Factory(final long partitionWidth) {
+			this.partitionWidth = partitionWidth;
+		}
+
+		public Factory() {
+			this(DEFAULT_PARTITION_WIDTH);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.pascani.dsl.lib.util.EventStoreFactory#newStore(java.lang.String)
+		 */
+		public EventStore<Event<?>> newStore(final String eventType) {
+			return new PartitionedEventStore<Event<?>>(this.partitionWidth);
+		}
+	}
+
+	/**
+	 * A time bucket containing the events whose window timestamp is within
+	 * [{@code key * width}, {@code (key + 1) * width}). Partitions are not
+	 * thread-safe; the owning store guards them.
+	 */
+	protected static final class Partition {
+
+		private long[] timestamps = new long[INITIAL_CAPACITY];
+		private Object[] events = new Object[INITIAL_CAPACITY];
+		private int size = 0;
+
+		/**
+		 * @return the index of the first timestamp greater than or equal to
+		 *         {@code timestamp}
+		 */
+		int lowerBound(final long timestamp) {
+			int low = 0, high = this.size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.timestamps[mid] < timestamp)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		/**
+		 * @return the index of the first timestamp strictly greater than
+		 *         {@code timestamp}
+		 */
+		int upperBound(final long timestamp) {
+			int low = 0, high = this.size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.timestamps[mid] <= timestamp)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		boolean add(final long timestamp, final Object event) {
+			int index = this.size;
+			if (this.size > 0 && this.timestamps[this.size - 1] >= timestamp) {
+				index = upperBound(timestamp);
+				// Events with the same timestamp are contiguous
+				for (int i = index - 1; i >= 0
+						&& this.timestamps[i] == timestamp; i--) {
+					if (this.events[i].equals(event))
+						return false;
+				}
+			}
+			if (this.size == this.timestamps.length) {
+				int capacity = this.size << 1;
+				this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+				this.events = Arrays.copyOf(this.events, capacity);
+			}
+			if (index < this.size) {
+				System.arraycopy(this.timestamps, index, this.timestamps,
+						index + 1, this.size - index);
+				System.arraycopy(this.events, index, this.events, index + 1,
+						this.size - index);
+			}
+			this.timestamps[index] = timestamp;
+			this.events[index] = event;
+			this.size++;
+			return true;
+		}
+
+		/**
+		 * Removes the elements in [{@code from}, {@code to})
+		 */
+		void remove(final int from, final int to) {
+			int moved = this.size - to;
+			System.arraycopy(this.timestamps, to, this.timestamps, from, moved);
+			System.arraycopy(this.events, to, this.events, from, moved);
+			Arrays.fill(this.events, from + moved, this.size, null);
+			this.size -= to - from;
+		}
+
+		long first() {
+			return this.timestamps[0];
+		}
+
+		long last() {
+			return this.timestamps[this.size - 1];
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		Object get(final int index) {
+			return this.events[index];
+		}
+	}
+
+	/**
+	 * The logger
+	 */
+	private final Logger logger = LogManager.getLogger(getClass());
+
+	/**
+	 * The partitions, sorted by their key
+	 */
+	private final NavigableMap<Long, Partition> partitions;
+
+	/**
+	 * The width of each partition
+	 */
+	private final long partitionWidth;
+
+	/**
+	 * Guards the partitions
+	 */
+	private final ReadWriteLock lock;
+
+	/**
+	 * The number of events in this store
+	 */
+	private int size;
+
+	/**
+	 * @param partitionWidth
+	 *            The width of each time partition, in the same unit of event
+	 *            timestamps
+	 */
+	public PartitionedEventStore(final long partitionWidth) {
+		if (partitionWidth <= 0)
+			throw new IllegalArgumentException(
+					"The partition width must be positive");
+		this.partitionWidth = partitionWidth;
+		this.partitions = new TreeMap<Long, Partition>();
+		this.lock = new ReentrantReadWriteLock();
+	}
+
+	public PartitionedEventStore() {
+		this(DEFAULT_PARTITION_WIDTH);
+	}
+
+	private long partitionKey(final long timestamp) {
+		long key = timestamp / this.partitionWidth;
+		// Round towards negative infinity
+		if (timestamp < 0 && key * this.partitionWidth != timestamp)
+			key--;
+		return key;
+	}
+
+	/**
+	 * @return the partitions that may contain events within [{@code start},
+	 *         {@code end}]
+	 */
+	private NavigableMap<Long, Partition> overlapping(final long start,
+			final long end) {
+		return this.partitions.subMap(partitionKey(start), true,
+				partitionKey(end), true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#add(org.pascani.dsl.lib.Event)
+	 */
+	public boolean add(final T event) {
+		long timestamp = event.windowTimestamp();
+		boolean added = false;
+		this.lock.writeLock().lock();
+		try {
+			Long key = partitionKey(timestamp);
+			Partition partition = this.partitions.get(key);
+			if (partition == null) {
+				partition = new Partition();
+				this.partitions.put(key, partition);
+			}
+			added = partition.add(timestamp, event);
+			if (added)
+				this.size++;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		if (added && this.logger.isInfoEnabled())
+			this.logger.info(event);
+		return added;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#count(long, long)
+	 */
+	public int count(final long start, final long end) {
+		if (start > end)
+			return 0;
+		int count = 0;
+		this.lock.readLock().lock();
+		try {
+			for (Partition p : overlapping(start, end).values()) {
+				if (start <= p.first() && p.last() <= end)
+					count += p.size();
+				else
+					count += p.upperBound(end) - p.lowerBound(start);
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#fetch(long, long)
+	 */
+	public List<T> fetch(final long start, final long end) {
+		List<T> fetched = new ArrayList<T>();
+		if (start > end)
+			return fetched;
+		this.lock.readLock().lock();
+		try {
+			for (Partition p : overlapping(start, end).values()) {
+				collect(p, p.lowerBound(start), p.upperBound(end), fetched);
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		return fetched;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#fetch(long, long, int)
+	 */
+	public List<T> fetch(final long start, final long end, final int limit) {
+		List<T> fetched = new ArrayList<T>();
+		if (start > end)
+			return fetched;
+		this.lock.readLock().lock();
+		try {
+			for (Partition p : overlapping(start, end).values()) {
+				int from = p.lowerBound(start);
+				int to = p.upperBound(end);
+				collect(p, from, Math.min(to, from + limit - fetched.size()),
+						fetched);
+				if (fetched.size() >= limit)
+					break;
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		return fetched;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#clean(long, long)
+	 */
+	public List<T> clean(final long start, final long end) {
+		List<T> removed = new ArrayList<T>();
+		if (start > end)
+			return removed;
+		this.lock.writeLock().lock();
+		try {
+			Iterator<Map.Entry<Long, Partition>> entries = overlapping(start,
+					end).entrySet().iterator();
+			while (entries.hasNext()) {
+				Partition p = entries.next().getValue();
+				int from = p.lowerBound(start);
+				int to = p.upperBound(end);
+				collect(p, from, to, removed);
+				if (from == 0 && to == p.size())
+					entries.remove(); // drop the whole partition
+				else if (from < to)
+					p.remove(from, to);
+			}
+			this.size -= removed.size();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		return removed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#evict(long, int)
+	 */
+	public int evict(final long olderThan, final int maxSize) {
+		int evicted = 0;
+		this.lock.writeLock().lock();
+		try {
+			Iterator<Partition> iterator = this.partitions.values().iterator();
+			while (iterator.hasNext()) {
+				Partition p = iterator.next();
+				int excess = Math.max(this.size - Math.max(maxSize, 0), 0);
+				int to = Math.max(p.lowerBound(olderThan), Math.min(excess,
+						p.size()));
+				if (to == 0)
+					break;
+				if (to == p.size())
+					iterator.remove();
+				else
+					p.remove(0, to);
+				this.size -= to;
+				evicted += to;
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		return evicted;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.EventStore#size()
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.size;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collect(final Partition partition, final int from,
+			final int to, final List<T> target) {
+		for (int i = from; i < to; i++)
+			target.add((T) partition.get(i));
+	}
+
+}
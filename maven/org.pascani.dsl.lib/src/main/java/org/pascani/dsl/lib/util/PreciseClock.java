@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A monotonic, high-resolution {@link Clock}. The value of
+ * {@link System#nanoTime()} is translated into the epoch by an offset
+ * calibrated against {@link System#currentTimeMillis()} when the clock is
+ * created; the clock is then unaffected by later adjustments of the system
+ * time.
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class PreciseClock implements Clock {
+
+	/**
+	 * The maximum time spent calibrating the clock, in milliseconds
+	 */
+	private static final long MAX_CALIBRATION = 50;
+
+	/**
+	 * The difference between the epoch and the origin of
+	 * {@link System#nanoTime()}, in nanoseconds
+	 */
+	private final long offset;
+
+	public PreciseClock() {
+		this.offset = calibrate();
+	}
+
+	/**
+	 * Waits for the next tick of {@link System#currentTimeMillis()}, so that
+	 * the offset is not off by a fraction of a tick
+	 */
+	private static long calibrate() {
+		long millis = System.currentTimeMillis();
+		long deadline = millis + MAX_CALIBRATION;
+		long current;
+		long nanos;
+		do {
+			nanos = System.nanoTime();
+			current = System.currentTimeMillis();
+		} while (current == millis && current < deadline);
+		return TimeUnit.MILLISECONDS.toNanos(current) - nanos;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.Clock#nanos()
+	 */
+	public long nanos() {
+		return System.nanoTime() + this.offset;
+	}
+
+}
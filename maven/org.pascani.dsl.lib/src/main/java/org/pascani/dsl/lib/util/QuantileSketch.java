@@ -0,0 +1,487 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import org.pascani.dsl.lib.Event;
+
+/**
+ * A mergeable quantile sketch of numeric values, in the form of a histogram
+ * with logarithmically sized buckets. Any percentile is estimated with a
+ * relative error bounded by the accuracy given at creation, using memory
+ * proportional to the logarithm of the range of the values (a few KB for
+ * latencies spanning nanoseconds to hours). Sketches with the same accuracy
+ * can be merged without losing accuracy, e.g., to compute the percentiles
+ * of the values recorded by several probes.
+ * 
+ * <p>
+ * Values whose magnitude is below {@link #MIN_MAGNITUDE} are counted as zero.
+ * This class is thread-safe.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public final class QuantileSketch implements Serializable {
+
+	/**
+	 * Serial version UID
+	 */
+	private static final long serialVersionUID = -3127842951374285106L;
+
+	/**
+	 * The default relative accuracy of the estimated percentiles (1%)
+	 */
+	public static final double DEFAULT_ACCURACY = 0.01;
+
+	/**
+	 * The smallest magnitude distinguished from zero
+	 */
+	public static final double MIN_MAGNITUDE = 1e-9;
+
+	/**
+	 * The counts of contiguous buckets, starting at a given bucket index
+	 */
+	static final class Buckets implements Serializable {
+
+		/**
+		 * Serial version UID
+		 */
+		private static final long serialVersionUID = 6409872271046935783L;
+
+		long[] counts;
+		int offset;
+
+		Buckets() {
+			this(new long[0], 0);
+		}
+
+		Buckets(final long[] counts, final int offset) {
+			this.counts = counts;
+			this.offset = offset;
+		}
+
+		void add(final int index, final long count) {
+			if (this.counts.length == 0) {
+				this.counts = new long[8];
+				this.offset = index - 4;
+			} else if (index < this.offset
+					|| index >= this.offset + this.counts.length) {
+				int from = Math.min(this.offset, index);
+				int to = Math.max(this.offset + this.counts.length, index + 1);
+				int length = Math.max(to - from, this.counts.length * 2);
+				if (index < this.offset)
+					from = to - length;
+				long[] counts = new long[length];
+				System.arraycopy(this.counts, 0, counts, this.offset - from,
+						this.counts.length);
+				this.counts = counts;
+				this.offset = from;
+			}
+			this.counts[index - this.offset] += count;
+		}
+
+		boolean remove(final int index) {
+			int i = index - this.offset;
+			if (i < 0 || i >= this.counts.length || this.counts[i] == 0)
+				return false;
+			this.counts[i]--;
+			return true;
+		}
+
+		void addAll(final Buckets other) {
+			for (int i = 0; i < other.counts.length; i++) {
+				if (other.counts[i] != 0)
+					add(other.offset + i, other.counts[i]);
+			}
+		}
+
+		Buckets copy() {
+			return new Buckets(this.counts.clone(), this.offset);
+		}
+	}
+
+	/**
+	 * The relative accuracy of the estimated percentiles
+	 */
+	private final double accuracy;
+
+	/**
+	 * The ratio between the limits of a bucket
+	 */
+	private final double gamma;
+
+	/**
+	 * The natural logarithm of {@link #gamma}
+	 */
+	private final double logGamma;
+
+	/**
+	 * The buckets of the positive values
+	 */
+	private final Buckets positive;
+
+	/**
+	 * The buckets of the negative values, by magnitude
+	 */
+	private final Buckets negative;
+
+	/**
+	 * The number of values counted as zero
+	 */
+	private long zeros;
+
+	/**
+	 * The number of values
+	 */
+	private long count;
+
+	/**
+	 * The sum of the values
+	 */
+	private double sum;
+
+	/**
+	 * The minimum value
+	 */
+	private double min = Double.NaN;
+
+	/**
+	 * The maximum value
+	 */
+	private double max = Double.NaN;
+
+	/**
+	 * Creates an empty sketch with the {@link #DEFAULT_ACCURACY}
+	 */
+	public QuantileSketch() {
+		this(DEFAULT_ACCURACY);
+	}
+
+	/**
+	 * Creates an empty sketch
+	 * 
+	 * @param accuracy
+	 *            The relative accuracy of the estimated percentiles, in the
+	 *            range (0, 1)
+	 */
+	public QuantileSketch(final double accuracy) {
+		this(accuracy, new Buckets(), new Buckets(), 0, 0, 0, Double.NaN,
+				Double.NaN);
+	}
+
+	/**
+	 * Creates an instance having all of the parameters
+	 */
+	QuantileSketch(final double accuracy, final Buckets positive,
+			final Buckets negative, final long zeros, final long count,
+			final double sum, final double min, final double max) {
+		if (accuracy <= 0 || accuracy >= 1)
+			throw new IllegalArgumentException(
+					"The accuracy must be in the range (0, 1)");
+		this.accuracy = accuracy;
+		this.gamma = (1 + accuracy) / (1 - accuracy);
+		this.logGamma = Math.log(this.gamma);
+		this.positive = positive;
+		this.negative = negative;
+		this.zeros = zeros;
+		this.count = count;
+		this.sum = sum;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Sketches the values of the given events, ignoring those whose value is
+	 * not a {@link Number}
+	 * 
+	 * @param events
+	 *            The events to sketch
+	 * @return a sketch of the events' values, with the
+	 *         {@link #DEFAULT_ACCURACY}
+	 */
+	public static QuantileSketch of(final Collection<? extends Event<?>> events) {
+		QuantileSketch sketch = new QuantileSketch();
+		for (Event<?> event : events) {
+			if (event.value() instanceof Number)
+				sketch.add(((Number) event.value()).doubleValue());
+		}
+		return sketch;
+	}
+
+	/**
+	 * @return the index of the bucket containing the given magnitude
+	 */
+	private int index(final double magnitude) {
+		return (int) Math.ceil(Math.log(magnitude) / this.logGamma);
+	}
+
+	/**
+	 * @return the estimated value of the bucket with the given index
+	 */
+	private double value(final int index) {
+		return 2 * Math.pow(this.gamma, index) / (this.gamma + 1);
+	}
+
+	/**
+	 * Adds a value to this sketch
+	 * 
+	 * @param value
+	 *            The value to add
+	 */
+	public synchronized void add(final double value) {
+		if (Double.isNaN(value))
+			return;
+		if (value >= MIN_MAGNITUDE)
+			this.positive.add(index(value), 1);
+		else if (value <= -MIN_MAGNITUDE)
+			this.negative.add(index(-value), 1);
+		else
+			this.zeros++;
+		this.min = this.count == 0 ? value : Math.min(this.min, value);
+		this.max = this.count == 0 ? value : Math.max(this.max, value);
+		this.count++;
+		this.sum += value;
+	}
+
+	/**
+	 * Removes a value previously added to this sketch. If the value falls in
+	 * the bucket of the minimum or the maximum, the new minimum or maximum is
+	 * estimated from the remaining values, within the relative accuracy of
+	 * this sketch.
+	 * 
+	 * @param value
+	 *            The value to remove
+	 * @return whether the value was in this sketch
+	 */
+	public synchronized boolean remove(final double value) {
+		boolean removed;
+		if (Double.isNaN(value))
+			return false;
+		if (value >= MIN_MAGNITUDE)
+			removed = this.positive.remove(index(value));
+		else if (value <= -MIN_MAGNITUDE)
+			removed = this.negative.remove(index(-value));
+		else if (removed = this.zeros > 0)
+			this.zeros--;
+		if (removed) {
+			this.count--;
+			this.sum -= value;
+			if (this.count == 0) {
+				this.min = this.max = Double.NaN;
+			} else {
+				if (value <= this.min || sameBucket(value, this.min))
+					this.min = lowest();
+				if (value >= this.max || sameBucket(value, this.max))
+					this.max = highest();
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return whether the given values fall in the same bucket
+	 */
+	private boolean sameBucket(final double a, final double b) {
+		if (a >= MIN_MAGNITUDE && b >= MIN_MAGNITUDE)
+			return index(a) == index(b);
+		if (a <= -MIN_MAGNITUDE && b <= -MIN_MAGNITUDE)
+			return index(-a) == index(-b);
+		return Math.abs(a) < MIN_MAGNITUDE && Math.abs(b) < MIN_MAGNITUDE;
+	}
+
+	/**
+	 * @return the estimated value of the lowest non-empty bucket
+	 */
+	private double lowest() {
+		for (int i = this.negative.counts.length - 1; i >= 0; i--) {
+			if (this.negative.counts[i] != 0)
+				return -value(this.negative.offset + i);
+		}
+		if (this.zeros > 0)
+			return 0;
+		for (int i = 0; i < this.positive.counts.length; i++) {
+			if (this.positive.counts[i] != 0)
+				return value(this.positive.offset + i);
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * @return the estimated value of the highest non-empty bucket
+	 */
+	private double highest() {
+		for (int i = this.positive.counts.length - 1; i >= 0; i--) {
+			if (this.positive.counts[i] != 0)
+				return value(this.positive.offset + i);
+		}
+		if (this.zeros > 0)
+			return 0;
+		for (int i = 0; i < this.negative.counts.length; i++) {
+			if (this.negative.counts[i] != 0)
+				return -value(this.negative.offset + i);
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Adds the values of another sketch to this one
+	 * 
+	 * @param other
+	 *            A sketch with the same accuracy
+	 * @throws IllegalArgumentException
+	 *             If the sketches have different accuracies
+	 */
+	public void merge(final QuantileSketch other) {
+		if (other.accuracy != this.accuracy)
+			throw new IllegalArgumentException(
+					"Cannot merge sketches with different accuracies");
+		QuantileSketch snapshot = other.copy();
+		if (snapshot.count == 0)
+			return;
+		synchronized (this) {
+			this.positive.addAll(snapshot.positive);
+			this.negative.addAll(snapshot.negative);
+			this.zeros += snapshot.zeros;
+			this.min = this.count == 0 ? snapshot.min : Math.min(this.min,
+					snapshot.min);
+			this.max = this.count == 0 ? snapshot.max : Math.max(this.max,
+					snapshot.max);
+			this.count += snapshot.count;
+			this.sum += snapshot.sum;
+		}
+	}
+
+	/**
+	 * @return a copy of this sketch
+	 */
+	public synchronized QuantileSketch copy() {
+		return new QuantileSketch(this.accuracy, this.positive.copy(),
+				this.negative.copy(), this.zeros, this.count, this.sum,
+				this.min, this.max);
+	}
+
+	/**
+	 * Estimates a percentile of the values in this sketch
+	 * 
+	 * @param percentile
+	 *            The percentile, in the range (0, 100]
+	 * @return the estimated value, within the relative accuracy of this
+	 *         sketch, or {@link Double#NaN} if this sketch is empty
+	 */
+	public synchronized double percentile(final double percentile) {
+		if (this.count == 0)
+			return Double.NaN;
+		long rank = (long) Math.ceil(percentile / 100 * this.count);
+		rank = Math.max(1, Math.min(rank, this.count));
+		long seen = 0;
+		for (int i = this.negative.counts.length - 1; i >= 0; i--) {
+			seen += this.negative.counts[i];
+			if (seen >= rank)
+				return clamp(-value(this.negative.offset + i));
+		}
+		seen += this.zeros;
+		if (seen >= rank)
+			return clamp(0);
+		for (int i = 0; i < this.positive.counts.length; i++) {
+			seen += this.positive.counts[i];
+			if (seen >= rank)
+				return clamp(value(this.positive.offset + i));
+		}
+		return this.max;
+	}
+
+	private double clamp(final double value) {
+		return Math.max(this.min, Math.min(this.max, value));
+	}
+
+	/**
+	 * Estimates several percentiles of the values in this sketch
+	 * 
+	 * @param percentiles
+	 *            The percentiles, in the range (0, 100]
+	 * @return the estimated values, in the same order
+	 * @see #percentile(double)
+	 */
+	public double[] percentiles(final double... percentiles) {
+		double[] values = new double[percentiles.length];
+		for (int i = 0; i < percentiles.length; i++)
+			values[i] = percentile(percentiles[i]);
+		return values;
+	}
+
+	public double accuracy() {
+		return this.accuracy;
+	}
+
+	public synchronized long count() {
+		return this.count;
+	}
+
+	public synchronized double sum() {
+		return this.sum;
+	}
+
+	public synchronized double min() {
+		return this.min;
+	}
+
+	public synchronized double max() {
+		return this.max;
+	}
+
+	/**
+	 * @return the buckets of the positive values
+	 */
+	Buckets positive() {
+		return this.positive;
+	}
+
+	/**
+	 * @return the buckets of the negative values
+	 */
+	Buckets negative() {
+		return this.negative;
+	}
+
+	/**
+	 * @return the number of values counted as zero
+	 */
+	long zeros() {
+		return this.zeros;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("count=" + this.count + "\t");
+		sb.append("min=" + this.min + "\t");
+		sb.append("max=" + this.max + "\t");
+		sb.append("p50=" + percentile(50) + "\t");
+		sb.append("p99=" + percentile(99) + "\t");
+		sb.append("p999=" + percentile(99.9));
+		return sb.toString();
+	}
+
+}
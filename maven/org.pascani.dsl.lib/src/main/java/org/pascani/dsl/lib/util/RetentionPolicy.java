@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.io.Serializable;
+
+import org.pascani.dsl.lib.Event;
+
+/**
+ * Bounds the events retained by a probe, per event type. A policy may limit
+ * the number of events, their age, and the approximate number of bytes they
+ * occupy; a value of {@code 0} means no limit.
+ * 
+ * <p>
+ * Policies are immutable; use {@link #withMaxEvents(int)},
+ * {@link #withMaxAge(long)} and {@link #withMaxBytes(long)} to derive new
+ * policies.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public final class RetentionPolicy implements Serializable {
+
+	/**
+	 * Serial version UID
+	 */
+	private static final long serialVersionUID = -3361283420961815032L;
+
+	/**
+	 * A policy retaining every event
+	 */
+	public static final RetentionPolicy UNBOUNDED = new RetentionPolicy(0, 0, 0);
+
+	/**
+	 * The maximum number of events per event type
+	 */
+	private final int maxEvents;
+
+	/**
+	 * The maximum age of events, in the same unit of event timestamps
+	 */
+	private final long maxAge;
+
+	/**
+	 * The approximate maximum number of bytes per event type
+	 */
+	private final long maxBytes;
+
+	/**
+	 * @param maxEvents
+	 *            The maximum number of events per event type
+	 * @param maxAge
+	 *            The maximum age of events, in the same unit of event
+	 *            timestamps
+	 * @param maxBytes
+	 *            The approximate maximum number of bytes per event type
+	 */
+	public RetentionPolicy(final int maxEvents, final long maxAge,
+			final long maxBytes) {
+		if (maxEvents < 0 || maxAge < 0 || maxBytes < 0)
+			throw new IllegalArgumentException(
+					"Retention limits cannot be negative");
+		this.maxEvents = maxEvents;
+		this.maxAge = maxAge;
+		this.maxBytes = maxBytes;
+	}
+
+	public RetentionPolicy withMaxEvents(final int maxEvents) {
+		return new RetentionPolicy(maxEvents, this.maxAge, this.maxBytes);
+	}
+
+	public RetentionPolicy withMaxAge(final long maxAge) {
+		return new RetentionPolicy(this.maxEvents, maxAge, this.maxBytes);
+	}
+
+	public RetentionPolicy withMaxBytes(final long maxBytes) {
+		return new RetentionPolicy(this.maxEvents, this.maxAge, maxBytes);
+	}
+
+	/**
+	 * @return whether this policy retains every event
+	 */
+	public boolean isUnbounded() {
+		return this.maxEvents == 0 && this.maxAge == 0 && this.maxBytes == 0;
+	}
+
+	/**
+	 * Computes the maximum number of events to retain of a given type
+	 * 
+	 * @param eventSize
+	 *            The approximate size of an event of such type, in bytes
+	 * @return the maximum number of events to retain, or
+	 *         {@link Integer#MAX_VALUE} if there is no limit
+	 */
+	public int maxEvents(final long eventSize) {
+		long max = this.maxEvents == 0 ? Integer.MAX_VALUE : this.maxEvents;
+		if (this.maxBytes > 0 && eventSize > 0)
+			max = Math.min(max, this.maxBytes / eventSize);
+		return (int) max;
+	}
+
+	/**
+	 * Computes the timestamp before which events must be evicted
+	 * 
+	 * @param now
+	 *            The current timestamp
+	 * @return the timestamp before which {@link Event} objects are evicted, or
+	 *         {@link Long#MIN_VALUE} if there is no age limit
+	 */
+	public long olderThan(final long now) {
+		return this.maxAge == 0 ? Long.MIN_VALUE : now - this.maxAge;
+	}
+
+	public int maxEvents() {
+		return this.maxEvents;
+	}
+
+	public long maxAge() {
+		return this.maxAge;
+	}
+
+	public long maxBytes() {
+		return this.maxBytes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override public String toString() {
+		return "maxevents=" + this.maxEvents + ", maxage=" + this.maxAge
+				+ ", maxbytes=" + this.maxBytes;
+	}
+
+}
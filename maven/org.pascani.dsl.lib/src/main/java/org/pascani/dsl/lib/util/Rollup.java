@@ -0,0 +1,306 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.pascani.dsl.lib.Event;
+
+/**
+ * Incremental summaries of the events of one type, in buckets of a fixed
+ * resolution (e.g., one per second). Each bucket holds the number of events,
+ * and the count, sum, minimum, maximum and sum of squares of their numeric
+ * values, so that the queries over time windows aligned to bucket edges can
+ * be answered without the events themselves.
+ * 
+ * <p>
+ * Only the most recent buckets are retained. A rollup covers the events
+ * raised since the first bucket edge after its creation, or since the oldest
+ * retained bucket.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class Rollup {
+
+	/**
+	 * A resolution of one second, in nanoseconds
+	 */
+	public static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * A resolution of one minute, in nanoseconds
+	 */
+	public static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+	/**
+	 * A resolution of one hour, in nanoseconds
+	 */
+	public static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+	/**
+	 * The summary of the events raised within a bucket
+	 */
+	private static final class Bucket {
+		long events;
+		long count;
+		double sum;
+		double sumOfSquares;
+		double min = Double.NaN;
+		double max = Double.NaN;
+
+		/**
+		 * Whether events have been removed, so the minimum and maximum may no
+		 * longer be exact
+		 */
+		boolean stale;
+
+		synchronized void add(final Object value) {
+			this.events++;
+			if (value instanceof Number) {
+				double v = ((Number) value).doubleValue();
+				this.count++;
+				this.sum += v;
+				this.sumOfSquares += v * v;
+				this.min = this.count == 1 ? v : Math.min(this.min, v);
+				this.max = this.count == 1 ? v : Math.max(this.max, v);
+			}
+		}
+
+		synchronized void remove(final Object value) {
+			this.events--;
+			if (value instanceof Number) {
+				double v = ((Number) value).doubleValue();
+				this.count--;
+				this.sum -= v;
+				this.sumOfSquares -= v * v;
+				this.stale = true;
+			}
+		}
+	}
+
+	/**
+	 * The width of the buckets, in nanoseconds
+	 */
+	private final long resolution;
+
+	/**
+	 * The maximum number of buckets to retain
+	 */
+	private final int retained;
+
+	/**
+	 * The buckets, by initial timestamp
+	 */
+	private final ConcurrentSkipListMap<Long, Bucket> buckets;
+
+	/**
+	 * The timestamp since which the events are summarized
+	 */
+	private volatile long coveredFrom;
+
+	/**
+	 * @param resolution
+	 *            The width of the buckets, in nanoseconds (e.g.,
+	 *            {@link #MINUTE})
+	 * @param retained
+	 *            The maximum number of buckets to retain
+	 * @param now
+	 *            The current timestamp, in nanoseconds since the epoch
+	 */
+	public Rollup(final long resolution, final int retained, final long now) {
+		if (resolution <= 0 || retained <= 0)
+			throw new IllegalArgumentException(
+					"Both the resolution and the number of buckets must be positive");
+		this.resolution = resolution;
+		this.retained = retained;
+		this.buckets = new ConcurrentSkipListMap<Long, Bucket>();
+		this.coveredFrom = edge(now) + (now % resolution == 0 ? 0 : resolution);
+	}
+
+	/**
+	 * @return the initial timestamp of the bucket containing the given
+	 *         timestamp
+	 */
+	private long edge(final long timestamp) {
+		return timestamp - timestamp % this.resolution;
+	}
+
+	/**
+	 * Summarizes an event, unless it was raised before the time covered by
+	 * this rollup. A late event older than all of the retained buckets, when
+	 * there are no buckets left to retain, is not summarized either; the time
+	 * covered by this rollup starts after it instead.
+	 * 
+	 * @param event
+	 *            The recorded event
+	 */
+	public void add(final Event<?> event) {
+		long timestamp = event.windowTimestamp();
+		if (timestamp < this.coveredFrom)
+			return;
+		Long key = edge(timestamp);
+		Bucket bucket = this.buckets.get(key);
+		if (bucket == null && this.buckets.size() >= this.retained) {
+			Map.Entry<Long, Bucket> oldest = this.buckets.firstEntry();
+			if (oldest != null && key < oldest.getKey()) {
+				uncover(key);
+				return;
+			}
+		}
+		if (bucket == null) {
+			Bucket newBucket = new Bucket();
+			bucket = this.buckets.putIfAbsent(key, newBucket);
+			if (bucket == null) {
+				bucket = newBucket;
+				trim();
+			}
+		}
+		bucket.add(event.value());
+	}
+
+	/**
+	 * Discounts an event that has been removed from the probe
+	 * 
+	 * @param event
+	 *            The removed event
+	 */
+	public void remove(final Event<?> event) {
+		long timestamp = event.windowTimestamp();
+		if (timestamp < this.coveredFrom)
+			return;
+		Bucket bucket = this.buckets.get(edge(timestamp));
+		if (bucket != null)
+			bucket.remove(event.value());
+	}
+
+	/**
+	 * Discards the oldest buckets exceeding the number of retained buckets
+	 */
+	private void trim() {
+		while (this.buckets.size() > this.retained) {
+			Map.Entry<Long, Bucket> oldest = this.buckets.pollFirstEntry();
+			if (oldest == null)
+				break;
+			uncover(oldest.getKey());
+		}
+	}
+
+	/**
+	 * Moves the time covered by this rollup past the given bucket
+	 */
+	private synchronized void uncover(final long bucket) {
+		this.coveredFrom = Math.max(this.coveredFrom, bucket
+				+ this.resolution);
+	}
+
+	/**
+	 * Checks whether the time window [{@code start}, {@code end}] can be
+	 * answered from this rollup, i.e., it is covered by this rollup, it starts
+	 * at a bucket edge, and it ends right before a bucket edge or after
+	 * {@code now}
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @param now
+	 *            The current timestamp
+	 * @return whether the time window is aligned to this rollup
+	 */
+	public boolean covers(final long start, final long end, final long now) {
+		return start >= this.coveredFrom && start % this.resolution == 0
+				&& (end >= now || (end + 1) % this.resolution == 0);
+	}
+
+	/**
+	 * Counts the events raised within a time window, which must be covered
+	 * (see {@link #covers(long, long, long)})
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @return the number of events within the given time window
+	 */
+	public long count(final long start, final long end) {
+		long events = 0;
+		for (Bucket bucket : this.buckets.subMap(start, true, end, true)
+				.values()) {
+			synchronized (bucket) {
+				events += bucket.events;
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Summarizes the numeric values of the events raised within a time window,
+	 * which must be covered (see {@link #covers(long, long, long)})
+	 * 
+	 * @param start
+	 *            The initial timestamp of the time window
+	 * @param end
+	 *            The final timestamp of the time window
+	 * @return the summary of the events' values, or {@code null} if the
+	 *         minimum or maximum are no longer known because events were
+	 *         removed within the time window
+	 */
+	public EventAggregate aggregate(final long start, final long end) {
+		long count = 0;
+		double sum = 0, sumOfSquares = 0;
+		double min = Double.NaN, max = Double.NaN;
+		for (Bucket bucket : this.buckets.subMap(start, true, end, true)
+				.values()) {
+			synchronized (bucket) {
+				if (bucket.count == 0)
+					continue;
+				if (bucket.stale)
+					return null;
+				min = count == 0 ? bucket.min : Math.min(min, bucket.min);
+				max = count == 0 ? bucket.max : Math.max(max, bucket.max);
+				count += bucket.count;
+				sum += bucket.sum;
+				sumOfSquares += bucket.sumOfSquares;
+			}
+		}
+		double mean = count == 0 ? Double.NaN : sum / count;
+		double variance = count == 0 ? Double.NaN : count == 1 ? 0
+				: Math.max(0, (sumOfSquares - sum * sum / count) / (count - 1));
+		return new EventAggregate(count, sum, min, max, mean, variance,
+				new double[0], new double[0]);
+	}
+
+	/**
+	 * @return the width of the buckets, in nanoseconds
+	 */
+	public long resolution() {
+		return this.resolution;
+	}
+
+	/**
+	 * @return the maximum number of buckets to retain
+	 */
+	public int retained() {
+		return this.retained;
+	}
+
+}
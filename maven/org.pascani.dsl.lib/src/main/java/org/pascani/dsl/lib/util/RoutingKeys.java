@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+/**
+ * Matches routing keys against binding keys as an AMQP topic exchange does.
+ * Both keys are lists of words delimited by dots; in a binding key,
+ * {@code *} stands for exactly one word, and {@code #} for zero or more
+ * words. For instance, {@code a.*} matches {@code a.b} but neither {@code a}
+ * nor {@code a.b.c}, and {@code #} matches any routing key.
+ * 
+ * <p>
+ * This allows the transports without a message broker to bind consumers the
+ * same way they are bound to a RabbitMQ topic exchange.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class RoutingKeys {
+
+	/**
+	 * @param bindingKey
+	 *            A binding key
+	 * @return whether the binding key contains wildcards, i.e., it may match
+	 *         other routing keys than itself
+	 */
+	public static boolean isPattern(final String bindingKey) {
+		if (bindingKey == null)
+			return false;
+		for (String word : bindingKey.split("\\.", -1)) {
+			if (word.equals("*") || word.equals("#"))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param bindingKey
+	 *            A binding key, possibly containing wildcards
+	 * @param routingKey
+	 *            The routing key of a message
+	 * @return whether a consumer bound with the binding key receives a message
+	 *         published with the routing key
+	 */
+	public static boolean matches(final String bindingKey,
+			final String routingKey) {
+		String binding = bindingKey == null ? "" : bindingKey;
+		String routing = routingKey == null ? "" : routingKey;
+		if (binding.equals(routing))
+			return true;
+		return matches(binding.split("\\.", -1), 0, routing.split("\\.", -1),
+				0);
+	}
+
+	private static boolean matches(final String[] binding, final int b,
+			final String[] routing, final int r) {
+		if (b == binding.length)
+			return r == routing.length;
+		if (binding[b].equals("#")) {
+			// Zero or more words, trying the shortest sequences first
+			for (int i = r; i <= routing.length; i++) {
+				if (matches(binding, b + 1, routing, i))
+					return true;
+			}
+			return false;
+		}
+		if (r == routing.length)
+			return false;
+		if (!binding[b].equals("*") && !binding[b].equals(routing[r]))
+			return false;
+		return matches(binding, b + 1, routing, r + 1);
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link IdGenerator} producing identifiers that sort by creation time,
+ * without any shared lock or random number generation per identifier.
+ * 
+ * <p>
+ * The most significant bits of an identifier hold the current time in
+ * milliseconds (48 bits) followed by a per-thread sequence (16 bits); the
+ * least significant bits hold the IETF variant, a random node identifier
+ * chosen when the generator is created (30 bits), and a slot assigned to each
+ * thread on its first use (32 bits). Identifiers generated by the same thread
+ * are strictly increasing: when the sequence of a millisecond is exhausted, the
+ * next millisecond is used.
+ * </p>
+ * 
+ * <p>
+ * Identifiers are ordered by {@link UUID#compareTo(UUID)} according to their
+ * creation time (up to clock differences among threads), but they are not
+ * RFC 4122 random identifiers: they reveal when they were created.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+	private static final int SEQUENCE_BITS = 16;
+
+	private static final long VARIANT = 0x8000000000000000L;
+
+	/**
+	 * The per-thread generation state
+	 */
+	private static final class State {
+		final long slot;
+		long last = 0;
+
+		State(final long slot) {
+			this.slot = slot;
+		}
+	}
+
+	/**
+	 * The node identifier, shifted to its position
+	 */
+	private final long node;
+
+	/**
+	 * The next thread slot
+	 */
+	private final AtomicInteger slots = new AtomicInteger();
+
+	/**
+	 * The state of each thread
+	 */
+	private final ThreadLocal<State> state = new ThreadLocal<State>() {
+		@Override protected State initialValue() {
+			return new State(slots.getAndIncrement() & 0xFFFFFFFFL);
+		}
+	};
+
+	/**
+	 * Creates a generator with a random node identifier
+	 */
+	public TimeOrderedIdGenerator() {
+		this(new SecureRandom().nextInt());
+	}
+
+	/**
+	 * @param node
+	 *            The node identifier. Only its 30 least significant bits are
+	 *            used
+	 */
+	public TimeOrderedIdGenerator(final int node) {
+		this.node = (node & 0x3FFFFFFFL) << 32;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.pascani.dsl.lib.util.IdGenerator#next()
+	 */
+	public UUID next() {
+		State s = this.state.get();
+		long next = System.currentTimeMillis() << SEQUENCE_BITS;
+		if (next <= s.last)
+			next = s.last + 1;
+		s.last = next;
+		return new UUID(next, VARIANT | this.node | s.slot);
+	}
+
+	/**
+	 * @param identifier
+	 *            An identifier produced by this class
+	 * @return the time, in milliseconds, when the identifier was produced
+	 */
+	public static long timestamp(final UUID identifier) {
+		return identifier.getMostSignificantBits() >>> SEQUENCE_BITS;
+	}
+
+}
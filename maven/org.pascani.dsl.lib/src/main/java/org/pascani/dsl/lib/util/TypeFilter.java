@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Decides whether objects are instances of any of a set of accepted types,
+ * caching the decision for each concrete class. After the first object of a
+ * class has been judged, judging another object of the same class takes a
+ * single lookup, regardless of the number of accepted types.
+ * 
+ * <p>
+ * Classes are weakly referenced, thus they can be unloaded while cached.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public final class TypeFilter {
+
+	/**
+	 * A filter accepting every object
+	 */
+	public static final TypeFilter ACCEPT_ALL = new TypeFilter();
+
+	/**
+	 * The accepted types, or {@code null} if every type is accepted
+	 */
+	private final Class<?>[] acceptedTypes;
+
+	/**
+	 * The decision made for each concrete class
+	 */
+	private final ConcurrentMap<Class<?>, Boolean> decisions;
+
+	/**
+	 * @param acceptedTypes
+	 *            The accepted types (classes or interfaces). If none is given,
+	 *            every object is accepted
+	 */
+	public TypeFilter(final Class<?>... acceptedTypes) {
+		this.acceptedTypes = acceptedTypes == null
+				|| acceptedTypes.length == 0 ? null : acceptedTypes.clone();
+		this.decisions = new MapMaker().weakKeys().makeMap();
+	}
+
+	/**
+	 * @param object
+	 *            The object under judgment
+	 * @return whether the object is an instance of any of the accepted types
+	 */
+	public boolean accepts(final Object object) {
+		return accepts(object.getClass());
+	}
+
+	/**
+	 * @param clazz
+	 *            A concrete class
+	 * @return whether the class is assignable to any of the accepted types
+	 */
+	public boolean accepts(final Class<?> clazz) {
+		if (this.acceptedTypes == null)
+			return true;
+		Boolean accepted = this.decisions.get(clazz);
+		if (accepted == null) {
+			accepted = false;
+			for (int i = 0; i < this.acceptedTypes.length && !accepted; i++)
+				accepted = this.acceptedTypes[i].isAssignableFrom(clazz);
+			this.decisions.put(clazz, accepted);
+		}
+		return accepted;
+	}
+
+	/**
+	 * @return whether this filter accepts every object
+	 */
+	public boolean acceptsAll() {
+		return this.acceptedTypes == null;
+	}
+
+}
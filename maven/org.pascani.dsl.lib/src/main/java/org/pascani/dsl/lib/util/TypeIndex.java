@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.util;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Indexes a set of concrete classes, each one identified by a key, by their
+ * full type hierarchy (i.e., superclasses and implemented interfaces), so
+ * that the keys of the classes assignable to any given type are found with a
+ * single lookup.
+ * 
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public final class TypeIndex {
+
+	/**
+	 * The keys of the indexed classes, by each one of their supertypes
+	 * (including themselves)
+	 */
+	private final ConcurrentMap<Class<?>, Set<String>> keys;
+
+	public TypeIndex() {
+		this.keys = new ConcurrentHashMap<Class<?>, Set<String>>();
+	}
+
+	/**
+	 * Indexes a concrete class
+	 * 
+	 * @param clazz
+	 *            The class to index
+	 * @param key
+	 *            The key identifying the class
+	 */
+	public void add(final Class<?> clazz, final String key) {
+		for (Class<?> type : hierarchy(clazz)) {
+			Set<String> keys = this.keys.get(type);
+			if (keys == null) {
+				Set<String> newKeys = Collections
+						.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+				keys = this.keys.putIfAbsent(type, newKeys);
+				if (keys == null)
+					keys = newKeys;
+			}
+			keys.add(key);
+		}
+	}
+
+	/**
+	 * @param type
+	 *            A class or interface
+	 * @return the keys of the indexed classes assignable to the given type
+	 */
+	public Set<String> keys(final Class<?> type) {
+		Set<String> keys = this.keys.get(type);
+		return keys == null ? Collections.<String> emptySet() : Collections
+				.unmodifiableSet(keys);
+	}
+
+	/**
+	 * Removes all of the indexed classes
+	 */
+	public void clear() {
+		this.keys.clear();
+	}
+
+	/**
+	 * @param clazz
+	 *            A class
+	 * @return the given class, its superclasses, and all of the interfaces
+	 *         they implement
+	 */
+	public static Set<Class<?>> hierarchy(final Class<?> clazz) {
+		Set<Class<?>> hierarchy = new LinkedHashSet<Class<?>>();
+		collect(clazz, hierarchy);
+		return hierarchy;
+	}
+
+	private static void collect(final Class<?> clazz,
+			final Set<Class<?>> hierarchy) {
+		if (clazz == null || !hierarchy.add(clazz))
+			return;
+		collect(clazz.getSuperclass(), hierarchy);
+		for (Class<?> i : clazz.getInterfaces())
+			collect(i, hierarchy);
+	}
+
+}
@@ -27,7 +27,7 @@ import org.pascani.dsl.lib.Probe;
 import org.pascani.dsl.lib.events.ChangeEvent;
 import org.pascani.dsl.lib.infrastructure.AbstractConsumer;
 import org.pascani.dsl.lib.infrastructure.ProbeProxy;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQConsumer;
+import org.pascani.dsl.lib.infrastructure.Transports;
 
 import com.google.common.base.Function;
 
@@ -98,9 +98,10 @@ public abstract class NonPeriodicEvent<T extends Event<?>>
 		String exchange = getType().equals(ChangeEvent.class)
 				? PascaniRuntime.getEnvironment().get("namespaces_exchange")
 				: PascaniRuntime.getEnvironment().get("probes_exchange");
-		return new RabbitMQConsumer(exchange, routingKey, consumerTag,
-				context) {
-			@Override public void delegateEventHandling(final Event<?> event) {
+		AbstractConsumer consumer = Transports.configured().consumer(exchange,
+				routingKey, consumerTag, context);
+		consumer.setHandler(new AbstractConsumer.Handler() {
+			public void handle(final Event<?> event) {
 				if (event.getClass().equals(getType())) {
 					boolean notify = true;
 					if (getType().equals(ChangeEvent.class)) {
@@ -114,7 +115,8 @@ public abstract class NonPeriodicEvent<T extends Event<?>>
 					}
 				}
 			}
-		};
+		});
+		return consumer;
 	}
 
 	/*
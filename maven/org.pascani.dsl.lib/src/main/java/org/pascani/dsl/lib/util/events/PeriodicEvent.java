@@ -23,8 +23,8 @@ import static org.quartz.JobBuilder.newJob;
 import static org.quartz.TriggerBuilder.newTrigger;
 
 import java.text.ParseException;
-import java.util.UUID;
 
+import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.events.IntervalEvent;
 import org.pascani.dsl.lib.util.CronConstant;
 import org.pascani.dsl.lib.util.Exceptions;
@@ -53,7 +53,7 @@ public class PeriodicEvent extends ManagedEvent<IntervalEvent> {
 		@Override public void execute(JobExecutionContext context)
 				throws JobExecutionException {
 			JobDataMap jobData = context.getJobDetail().getJobDataMap();
-			IntervalEvent event = new IntervalEvent(UUID.randomUUID(),
+			IntervalEvent event = new IntervalEvent(PascaniRuntime.getIdGenerator().next(),
 					jobData.getString("expression"));
 			PeriodicEvent e = (PeriodicEvent) jobData.get("this");
 			e.setChanged();
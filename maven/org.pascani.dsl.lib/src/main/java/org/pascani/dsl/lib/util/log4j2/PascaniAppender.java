@@ -19,7 +19,6 @@
 package org.pascani.dsl.lib.util.log4j2;
 
 import java.io.Serializable;
-import java.util.UUID;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -36,7 +35,7 @@ import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 import org.apache.logging.log4j.core.layout.PatternLayout;
 import org.pascani.dsl.lib.PascaniRuntime;
 import org.pascani.dsl.lib.infrastructure.AbstractProducer;
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQProducer;
+import org.pascani.dsl.lib.infrastructure.Transports;
 
 /**
  * @author Miguel Jiménez - Initial contribution and API
@@ -55,7 +54,7 @@ public final class PascaniAppender extends AbstractAppender {
 	private final Lock readLock;
 
 	/**
-	 * The event producer connected to RabbitMQ
+	 * The event producer connected to the messaging infrastructure
 	 */
 	private final AbstractProducer producer;
 
@@ -64,7 +63,7 @@ public final class PascaniAppender extends AbstractAppender {
 			throws Exception {
 		super(name, filter, layout, ignoreExceptions);
 		this.readLock = new ReentrantReadWriteLock().readLock();
-		this.producer = new RabbitMQProducer(
+		this.producer = Transports.configured().producer(
 				PascaniRuntime.getEnvironment().get("logs_exchange"),
 				this.getClass().getCanonicalName());
 	}
@@ -82,7 +81,7 @@ public final class PascaniAppender extends AbstractAppender {
 			String thrown = event.getThrown() == null ? ""
 					: ExceptionUtils.getStackTrace(event.getThrown());
 			org.pascani.dsl.lib.events.LogEvent e = new org.pascani.dsl.lib.events.LogEvent(
-					UUID.randomUUID(), event.getLoggerName(),
+					PascaniRuntime.getIdGenerator().next(), event.getLoggerName(),
 					event.getLevel().name(),
 					event.getMessage().getFormattedMessage(), thrown,
 					event.getSource() + "");
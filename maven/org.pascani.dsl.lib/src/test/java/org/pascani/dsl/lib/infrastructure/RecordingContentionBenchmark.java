@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2015 Universidad Icesi
+ * 
+ * This file is part of the Pascani project.
+ * 
+ * The Pascani project is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * The Pascani project is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with The Pascani project. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pascani.dsl.lib.infrastructure;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pascani.dsl.lib.Event;
+import org.pascani.dsl.lib.events.ChangeEvent;
+import org.pascani.dsl.lib.util.BufferedEventStore;
+import org.pascani.dsl.lib.util.PartitionedEventStore;
+
+/**
+ * Measures the throughput of {@link BasicProbe#recordEvent(Event)} with 1 to
+ * 64 recording threads, while another thread fetches (and cleans) the
+ * recorded events as fast as it can, as a monitor polling the probe would.
+ * Each run records the same number of events, split among the recording
+ * threads, and ends once all of them have been fetched.
+ * 
+ * <p>
+ * Usage: {@code RecordingContentionBenchmark [partitioned|buffered]
+ * [events per run]}. The first argument selects the stores of the probe
+ * (i.e., {@link PartitionedEventStore} alone, or decorated with
+ * {@link BufferedEventStore}). For each number of threads, it prints the
+ * rate at which the recording threads recorded the events, the rate at which
+ * they were recorded and fetched, and the number of fetches.
+ * </p>
+ * 
+ * @author Miguel Jiménez - Initial contribution and API
+ */
+public class RecordingContentionBenchmark {
+
+	/**
+	 * The numbers of recording threads to measure
+	 */
+	private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+	/**
+	 * An RPC server that receives no requests, so that the probe is measured
+	 * without any transport
+	 */
+	private static class SilentRpcServer extends RpcServer {
+
+		private final CountDownLatch stopped = new CountDownLatch(1);
+
+		public SilentRpcServer() {
+			super("benchmark");
+			setDaemon(true);
+		}
+
+		@Override protected void startProcessingRequests() throws Exception {
+			this.stopped.await();
+		}
+
+		@Override public void shutdown() throws Exception {
+			this.stopped.countDown();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		boolean buffered = args.length > 0 && args[0].equals("buffered");
+		int events = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		System.out.println("threads\trecorded/s\tfetched/s\tfetches");
+		run(buffered, THREADS[THREADS.length - 1], events); // warm up
+		for (int threads : THREADS) {
+			long[] result = run(buffered, threads, events);
+			System.out.println(threads + "\t" + rate(events, result[0]) + "\t"
+					+ rate(events, result[1]) + "\t" + result[2]);
+		}
+		System.exit(0);
+	}
+
+	private static long rate(final long events, final long nanos) {
+		return events * 1000000000L / Math.max(nanos, 1);
+	}
+
+	/**
+	 * Records events from the given number of threads, fetching them
+	 * concurrently
+	 * 
+	 * @return the time, in nanoseconds, to record the events and to fetch
+	 *         them, and the number of fetches
+	 */
+	private static long[] run(final boolean buffered, final int threads,
+			final int events) throws Exception {
+		final BasicProbe probe = buffered ? new BasicProbe(
+				new SilentRpcServer(), new BufferedEventStore.Factory(
+						new PartitionedEventStore.Factory())) : new BasicProbe(
+				new SilentRpcServer(), new PartitionedEventStore.Factory());
+		final AtomicLong fetches = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> recorders = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			final int count = events / threads
+					+ (i < events % threads ? 1 : 0);
+			recorders.add(new Thread() {
+				@Override public void run() {
+					await(start);
+					UUID transaction = UUID.randomUUID();
+					for (int j = 0; j < count; j++) {
+						probe.recordEvent(new ChangeEvent(transaction,
+								(Serializable) j, j + 1, "x"));
+					}
+				}
+			});
+		}
+		Thread fetcher = new Thread() {
+			@Override public void run() {
+				await(start);
+				List<Class<? extends Event<?>>> all = new ArrayList<Class<? extends Event<?>>>();
+				long fetched = 0;
+				while (fetched < events) {
+					fetched += probe.fetchAndClean(0, Long.MAX_VALUE, all)
+							.size();
+					fetches.incrementAndGet();
+				}
+			}
+		};
+		for (Thread recorder : recorders)
+			recorder.start();
+		fetcher.start();
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread recorder : recorders)
+			recorder.join();
+		long recorded = System.nanoTime() - begin;
+		fetcher.join();
+		long fetched = System.nanoTime() - begin;
+		probe.shutdown();
+		return new long[] { recorded, fetched, fetches.get() };
+	}
+
+	private static void await(final CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -28,7 +28,6 @@ import java.util.Collections
 import java.util.List
 import java.util.Map
 import java.util.Observable
-import java.util.UUID
 import org.eclipse.xtext.common.types.JvmGenericType
 import org.eclipse.xtext.common.types.JvmMember
 import org.eclipse.xtext.common.types.JvmOperation
@@ -51,7 +50,7 @@ import org.pascani.dsl.lib.infrastructure.AbstractProducer
 import org.pascani.dsl.lib.infrastructure.BasicNamespace
 import org.pascani.dsl.lib.infrastructure.NamespaceProxy
 import org.pascani.dsl.lib.infrastructure.ProbeProxy
-import org.pascani.dsl.lib.infrastructure.rabbitmq.RabbitMQProducer
+import org.pascani.dsl.lib.infrastructure.Transports
 import org.pascani.dsl.lib.sca.FrascatiUtils
 import org.pascani.dsl.lib.sca.PascaniUtils
 import org.pascani.dsl.lib.util.Exceptions
@@ -251,9 +250,9 @@ class PascaniJvmModelInferrer extends AbstractModelInferrer {
 					String exchange = «typeRef(PascaniRuntime)».getEnvironment().get("monitors_exchange");
 					String routingKey = "org.pascani.deployment";
 					try {
-						«typeRef(AbstractProducer)» producer = new «typeRef(RabbitMQProducer)»(exchange, routingKey);
+						«typeRef(AbstractProducer)» producer = «typeRef(Transports)».configured().producer(exchange, routingKey);
 						«typeRef(NewMonitorEvent)» event = new «typeRef(NewMonitorEvent)»(
-							«typeRef(UUID)».randomUUID(), 
+							«typeRef(PascaniRuntime)».getIdGenerator().next(), 
 							"«monitor.fullyQualifiedName»", 
 							«typeRef(Lists)».<String>newArrayList(«usings»), 
 							«typeRef(Lists)».<String>newArrayList(«periodicEvents»), 
@@ -564,8 +563,8 @@ class PascaniJvmModelInferrer extends AbstractModelInferrer {
 					String exchange = «typeRef(PascaniRuntime)».getEnvironment().get("namespaces_exchange");
 					String routingKey = "org.pascani.deployment";
 					try {
-						«typeRef(AbstractProducer)» producer = new «typeRef(RabbitMQProducer)»(exchange, routingKey);
-						«typeRef(NewNamespaceEvent)» event = new «typeRef(NewNamespaceEvent)»(«typeRef(UUID)».randomUUID(), 
+						«typeRef(AbstractProducer)» producer = «typeRef(Transports)».configured().producer(exchange, routingKey);
+						«typeRef(NewNamespaceEvent)» event = new «typeRef(NewNamespaceEvent)»(«typeRef(PascaniRuntime)».getIdGenerator().next(), 
 							"«namespace.fullyQualifiedName»", 
 							«typeRef(Lists)».<String>newArrayList(«variables»));
 						producer.produce(event);